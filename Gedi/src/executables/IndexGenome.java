@@ -33,6 +33,7 @@ import gedi.core.region.GenomicRegionStorageExtensionPoint;
 import gedi.core.region.ImmutableReferenceGenomicRegion;
 import gedi.core.region.intervalTree.MemoryIntervalTreeStorage;
 import gedi.core.sequence.FastaIndexSequenceProvider;
+import gedi.core.sequence.PackedSequenceWriter;
 import gedi.core.workspace.loader.WorkspaceItemLoaderExtensionPoint;
 import gedi.util.ArrayUtils;
 import gedi.util.FileUtils;
@@ -119,6 +120,7 @@ public class IndexGenome {
 		boolean ignoreMulti = false;
 		boolean transcriptome = true;
 		boolean bowtie = true;
+		boolean packed = false;
 		
 		int i;
 		for (i=0; i<args.length; i++) {
@@ -149,6 +151,9 @@ public class IndexGenome {
 			else if (args[i].equals("-nobowtie")) {
 				bowtie=false;
 			}
+			else if (args[i].equals("-packed")) {
+				packed=true;
+			}
 			else if (args[i].equals("-ignoreMulti")) {
 				ignoreMulti=true;
 			}
@@ -320,6 +325,7 @@ public class IndexGenome {
 					progress.init().setDescription("Indexing annotation file in "+annopath);
 					GtfFileReader gtf = new GtfFileReader(annotPath, "exon");
 					gtf.setProgress(progress);
+					gtf.setThreads(Math.min(4, Runtime.getRuntime().availableProcessors()));
 					gtf.setTableOutput(genetabpath,transtabpath);
 					
 					MemoryIntervalTreeStorage<Transcript> mem = ignoreMulti?gtf.readIntoMemoryTakeFirst(new StreamLineWriter(System.err)):gtf.readIntoMemoryThrowOnNonUnique();
@@ -349,11 +355,27 @@ public class IndexGenome {
 			}
 		}
 		
+		String packedpath = FileUtils.getFullNameWithoutExtension(seqpath)+".pseq";
+		File packedFile = new File(packedpath);
+		// regenerate the packed file if it is outdated w.r.t. the fasta (index)
+		if (packed && (!packedFile.exists() || packedFile.lastModified()<new File(seqpath).lastModified() || (seq!=null && packedFile.lastModified()<seq.lastModified()))) {
+			progress.init().setDescription("Writing packed sequences to "+packedpath);
+			FastaIndexSequenceProvider sss = new FastaIndexSequenceProvider(new FastaIndexFile(seqpath).open());
+			PackedSequenceWriter pw = new PackedSequenceWriter(packedpath);
+			pw.addAll(sss);
+			pw.close();
+			sss.close();
+			progress.finish();
+		}
+		
 		if (name==null && annotPath==null) name = FileUtils.getNameWithoutExtension(seq);
 		if (name==null) name = FileUtils.getNameWithoutExtension(annotPath);
 		LineWriter out = new LineOrientedFile(output!=null?output:Config.getInstance().getConfigFolder()+"/genomic/"+name+".oml").write();
 		
-		out.writef("<Genomic>\n\t<FastaIndexSequenceProvider file=\"%s\" />",new File(seqpath).getAbsolutePath());
+		if (packed)
+			out.writef("<Genomic>\n\t<PackedSequenceProvider file=\"%s\" />",packedFile.getAbsolutePath());
+		else
+			out.writef("<Genomic>\n\t<FastaIndexSequenceProvider file=\"%s\" />",new File(seqpath).getAbsolutePath());
 		
 		
 		
@@ -459,6 +481,7 @@ public class IndexGenome {
 		System.err.println(" -n <name>\t\tName of the genome for later use (Default: file name of gtf/genbank-file)");
 		System.err.println(" -o <file>\t\tSpecify output file (Default: ~/.gedi/genomic/${name}.oml)");
 		System.err.println(" -nobowtie\t\t\tDo not create bowtie indices");
+		System.err.println(" -packed\t\t\tAlso create a 2-bit packed, memory mapped sequence file and use it in the genome");
 		System.err.println(" -p\t\t\tShow progress");
 		System.err.println(" -h\t\t\tShow this message");
 		System.err.println(" -D\t\t\tOutput debugging information");
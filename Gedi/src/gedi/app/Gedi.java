@@ -70,8 +70,9 @@ public class Gedi {
 	private synchronized static Properties getVersions() throws IOException {
 		if (versions==null) {
 			versions = new Properties();
-			for (ClassPath cp : ClassPathCache.getInstance().getClasspath()) {
-				for (String res : cp.listResources("resources"))
+			ClassPathCache cache = ClassPathCache.getInstance();
+			for (ClassPath cp : cache.getClasspath()) {
+				for (String res : cache.listResources(cp, "resources"))
 					if (res.endsWith(".version"))
 						versions.load(cp.getResourceAsStream("/resources/"+res));
 			}
@@ -21,22 +21,30 @@ package gedi.app.classpath;
 
 import gedi.app.Config;
 import gedi.app.Startup;
+import gedi.util.FileUtils;
 import gedi.util.StringUtils;
 import gedi.util.io.text.LineIterator;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Stack;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeSet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
 
 /**
- * Simple class resolution: Skip packages, take according to priority list
+ * Simple class resolution: Skip packages, take according to priority list. The contents of jars are taken from the
+ * {@link ClassPathIndex} whenever possible.
  * @author erhard
  *
  */
@@ -45,6 +53,8 @@ public class ClassPathCache {
 	
 	private static final Logger log = Logger.getLogger( ClassPathCache.class.getName() );
 	
+	private static final String INDEX_NAME = "classpath.index";
+	
 	
 	private static ClassPathCache instance;
 	public static ClassPathCache getInstance() {
@@ -61,125 +71,236 @@ public class ClassPathCache {
 		classpath = fac.createFromPath(clp);
 	}
 	
-	private HashSet<String> fullnames;
-	private HashMap<String,String> classes;
-	private HashMap<String,HashSet<String>> packageToClasses;
-	private HashMap<String,ClassPath> classPaths; // full name to jar/dir
+	/**
+	 * Cache for the given class path using the given (already loaded) index instead of the one in the config folder
+	 * @param classpath
+	 * @param index
+	 */
+	public ClassPathCache(CompositeClassPath classpath, ClassPathIndex index) {
+		this.classpath = classpath;
+		this.index = index;
+	}
+	
+	private ClassPathIndex index;
+	private HashMap<ClassPath,Map<String,String[]>> listings = new HashMap<ClassPath, Map<String,String[]>>();
+	
+	private volatile Map<String,String[]>[] allListings; // same order as classpath
+	private volatile HashMap<String,String> classes;
+	private HashMap<String,HashSet<String>> packageToClasses = new HashMap<String, HashSet<String>>();
 	
 	public ClassPath[] getClasspath() {
 		return classpath.getClassPaths().clone();
 	}
 	
+	/**
+	 * The persistent index of the jars in the class path (in the config folder); it is read at the first call.
+	 * @return
+	 */
+	public synchronized ClassPathIndex getIndex() {
+		if (index==null) {
+			index = new ClassPathIndex(new File(Config.getInstance().getConfigFolder(),INDEX_NAME));
+			index.load();
+		}
+		return index;
+	}
+	
+	private synchronized Map<String,String[]> getListing(ClassPath cp) {
+		return listings.computeIfAbsent(cp, getIndex()::getListing);
+	}
+	
+	private Map<String,String[]>[] getListings() {
+		Map<String,String[]>[] re = this.allListings;
+		return re!=null?re:readListings();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private synchronized Map<String,String[]>[] readListings() {
+		Map<String,String[]>[] re = this.allListings;
+		if (re==null) {
+			ClassPath[] cps = classpath.getClassPaths();
+			re = new Map[cps.length];
+			for (int i=0; i<cps.length; i++) {
+				log.log(Level.FINE, "Reading "+cps[i].getURL());
+				re[i] = getListing(cps[i]);
+			}
+			getIndex().save();
+			this.allListings = re;
+		}
+		return re;
+	}
+	
+	/**
+	 * Index of the class path entry containing the given resource (the last one if there are several); -1 if there is none
+	 * @param pack in / notation
+	 * @param name
+	 * @return
+	 */
+	private int findClassPath(String pack, String name) {
+		Map<String,String[]>[] listings = getListings();
+		for (int i=listings.length-1; i>=0; i--) {
+			String[] res = listings[i].get(pack);
+			if (res!=null && Arrays.binarySearch(res, name)>=0)
+				return i;
+		}
+		return -1;
+	}
+	
 	public void discover() {
+		if (classes==null)
+			buildClasses();
+	}
+	
+	private synchronized void buildClasses() {
 		if (classes==null){
 			log.log(Level.INFO, "Discovering classes in classpath");
 			
-			fullnames = new HashSet<String>();
-			classes = new HashMap<String, String>();
-			packageToClasses = new HashMap<>();
-			classPaths = new HashMap<String, ClassPath>();
-			
-			ClassPath[] cps = classpath.getClassPaths().clone();
-
-			for (ClassPath cp : cps) {
-				log.log(Level.FINE, "Reading "+cp.getURL());
-				Stack<String> pack = new Stack<>();
-				pack.push("");
-				int n=0;
-				while (!pack.isEmpty()) {
-					String p = pack.pop();
-					for (String c : cp.listPackages(p))
-						if (c.length()>0)
-							pack.push(p.length()==0?c:(p+"/"+c));
-					for (String c : cp.listResources(p)) {
+			ArrayList<String> fullnames = new ArrayList<String>();
+			for (Map<String,String[]> listing : getListings())
+				for (Entry<String,String[]> e : listing.entrySet()) {
+					String p = e.getKey().replace('/', '.');
+					for (String c : e.getValue()) 
 						if (c.endsWith(".class")) {
 							c = c.substring(0,c.length()-6);
-							String full = (p.length()==0?c:(p+"/"+c)).replace('/', '.');
-//							if (classes.containsKey(c) && !full.equals(classes.get(c))) {
-//								if (c.endsWith("Utils")) {
-//									if (full.startsWith("gedi/util"))
-//										classes.put(c, full);
-//									else
-//										log.log(Level.FINE, "Hide Utils class "+full);
-//	
-//								} else {
-//									if (classes.get(c)!=null)
-//										log.log(Level.FINE, "Multiple occurrences of "+c+"; hidden from simple referencing!");
-//									classes.put(c,null);
-//								}
-//							} else
-							fullnames.add(full);
-							if (full.contains("."))
-								classes.put(full, full);
+							fullnames.add(p.length()==0?c:(p+"."+c));
 						}
-						String full = (p.length()==0?c:(p+"/"+c));
-						classPaths.put(full, cp);
-						String name = full.substring(full.lastIndexOf('/')+1);
-						packageToClasses.computeIfAbsent(p.replace('/', '.'), x->new HashSet<>()).add(name);
-						n++;
-						
-					}
 				}
-				log.log(Level.FINE, "Found "+n+" classes");
-				
+			
+			HashMap<String,String> classes = new HashMap<String, String>(fullnames.size()*2);
+			for (String full : fullnames)
+				if (full.contains("."))
+					classes.put(full, full);
+			
+			String priorities;
+			try (InputStream in = Config.getInstance().getPackagePriorities()) {
+				priorities = StringUtils.concat("\n", FileUtils.readAllLines(in));
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot load package priorities!",e);
 			}
 			
-			log.log(Level.INFO, "Preparing simple class references");
-			try (LineIterator it = new LineIterator(Config.getInstance().getPackagePriorities(), "#")){
-				while (it.hasNext()) {
-					String line = it.next();
-					String pref = line;
-					log.log(Level.FINE, "Prioritize "+pref);
-					boolean recursive = pref.endsWith("**") || pref.endsWith("?");
-					boolean ignoreMulti = pref.endsWith("?");
-					if (pref.endsWith("**")) pref = pref.substring(0, pref.length()-1);
-					
-					if (!pref.endsWith(".*") && !pref.endsWith(".?") && !pref.equals("?"))
-						throw new RuntimeException("Illegal package "+pref);
-					pref = pref.substring(0, pref.length()-1);
-					
-					HashMap<String,String> simple = new HashMap<String, String>();
-					for (String f : fullnames) {
-						if (f.startsWith(pref) && (recursive || !f.substring(pref.length()).contains("."))) {
-							String c = f.substring(f.lastIndexOf('.')+1);
-							boolean isinner = false;
-							if (c.contains("$")) {
-								c = c.substring(c.lastIndexOf('$')+1);
-								if (StringUtils.isNumeric(c))
-									continue; // no anonymous classes
-								isinner = true;
-							}
-							if (!classes.containsKey(c)) {
-								if (!ignoreMulti && simple.containsKey(c)) {
-									if (!isinner) {
-										if (simple.get(c).contains("$"))
-											simple.put(c, f);
-										else
-											throw new RuntimeException(c+" exists more than once in package "+line+": "+f+" and "+simple.get(c));
-									}
-								} else
-									simple.put(c, f);
-							}
+			long key = getSimpleNamesKey(priorities);
+			HashMap<String,String> simpleNames = getIndex().getNameMap(key);
+			if (simpleNames==null) {
+				log.log(Level.INFO, "Preparing simple class references");
+				simpleNames = resolveSimpleNames(new TreeSet<String>(fullnames), classes, priorities);
+				getIndex().putNameMap(key, simpleNames);
+				getIndex().save();
+			}
+			classes.putAll(simpleNames);
+			this.classes = classes;
+		}
+	}
+	
+	/**
+	 * Checksum of everything the simple names are computed from: the jars (by path, modification time and size), the
+	 * contents of all other class path entries and the package priorities.
+	 * @param priorities
+	 * @return
+	 */
+	private long getSimpleNamesKey(String priorities) {
+		CRC32 crc = new CRC32();
+		ClassPath[] cps = classpath.getClassPaths();
+		Map<String,String[]>[] listings = getListings();
+		for (int i=0; i<cps.length; i++) {
+			if (cps[i] instanceof JARClassPath) {
+				File f = ((JARClassPath)cps[i]).getFile();
+				crc.update((f.getAbsolutePath()+"\t"+f.lastModified()+"\t"+f.length()+"\n").getBytes(StandardCharsets.UTF_8));
+			} else {
+				for (Entry<String,String[]> e : listings[i].entrySet()) {
+					crc.update(e.getKey().getBytes(StandardCharsets.UTF_8));
+					for (String r : e.getValue())
+						crc.update(r.getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+		crc.update(priorities.getBytes(StandardCharsets.UTF_8));
+		return crc.getValue();
+	}
+	
+	/**
+	 * Resolves simple names (and names of inner classes) according to the priorities; returns only the names that are not
+	 * contained in classes (the full names).
+	 * @param fullnames
+	 * @param classes
+	 * @param priorities
+	 * @return
+	 */
+	private static HashMap<String,String> resolveSimpleNames(TreeSet<String> fullnames, HashMap<String,String> classes, String priorities) {
+		HashMap<String,String> re = new HashMap<String, String>();
+		try (LineIterator it = new LineIterator(priorities, "#")){
+			while (it.hasNext()) {
+				String line = it.next();
+				String pref = line;
+				log.log(Level.FINE, "Prioritize "+pref);
+				boolean recursive = pref.endsWith("**") || pref.endsWith("?");
+				boolean ignoreMulti = pref.endsWith("?");
+				if (pref.endsWith("**")) pref = pref.substring(0, pref.length()-1);
+				
+				if (!pref.endsWith(".*") && !pref.endsWith(".?") && !pref.equals("?"))
+					throw new RuntimeException("Illegal package "+pref);
+				pref = pref.substring(0, pref.length()-1);
+				
+				HashMap<String,String> simple = new HashMap<String, String>();
+				// fullnames is sorted, i.e. all classes starting with pref are in a contiguous range
+				for (String f : fullnames.subSet(pref, pref+Character.MAX_VALUE)) {
+					if (recursive || !f.substring(pref.length()).contains(".")) {
+						String c = f.substring(f.lastIndexOf('.')+1);
+						boolean isinner = false;
+						if (c.contains("$")) {
+							c = c.substring(c.lastIndexOf('$')+1);
+							if (StringUtils.isNumeric(c))
+								continue; // no anonymous classes
+							isinner = true;
+						}
+						if (!classes.containsKey(c) && !re.containsKey(c)) {
+							if (!ignoreMulti && simple.containsKey(c)) {
+								if (!isinner) {
+									if (simple.get(c).contains("$"))
+										simple.put(c, f);
+									else
+										throw new RuntimeException(c+" exists more than once in package "+line+": "+f+" and "+simple.get(c));
+								}
+							} else
+								simple.put(c, f);
 						}
 					}
-					for (String c : simple.keySet())
-						if (!classes.containsKey(c))
-							classes.put(c, simple.get(c));
 				}
-				
-				for (String c : fullnames)
-					if (!c.contains(".") && !classes.containsKey(c))
-						classes.put(c, c);
-			} catch (IOException e) {
-				throw new RuntimeException("Cannot load package priorities!",e);
+				for (String c : simple.keySet())
+					if (!classes.containsKey(c) && !re.containsKey(c))
+						re.put(c, simple.get(c));
 			}
+			
+			for (String c : fullnames)
+				if (!c.contains(".") && !classes.containsKey(c) && !re.containsKey(c))
+					re.put(c, c);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot load package priorities!",e);
 		}
+		return re;
 	}
 	
 	
+	/**
+	 * Lists the resources of a package (in / notation) of the given class path entry; for jars, the listing is taken from the
+	 * {@link ClassPathIndex} (i.e. the jar is only scanned if it is not up to date in the index). Never null.
+	 * @param cp
+	 * @param pack
+	 * @return
+	 */
+	public String[] listResources(ClassPath cp, String pack) {
+		if (!(cp instanceof JARClassPath))
+			return cp.listResources(pack);
+		String[] re = getListing(cp).get(pack);
+		return re==null?new String[0]:re;
+	}
+	
+	/**
+	 * Runs all {@link Startup}s in the gedi.startup packages of the class path; jars are not scanned if they are up to date
+	 * in the {@link ClassPathIndex}.
+	 */
 	public void startup() {
-		for (ClassPath cp : classpath.getClassPaths()) 
-			for (String c : cp.listResources("gedi/startup")) 
+		for (ClassPath cp : classpath.getClassPaths()) {
+			String[] startups = listResources(cp, "gedi/startup");
+			for (String c : startups) 
 				if (c.endsWith(".class")) {
 					try {
 						Class<?> cls = Class.forName("gedi.startup."+c.substring(0, c.length()-6));
@@ -193,11 +314,29 @@ public class ClassPathCache {
 					}
 					
 				}
+		}
+		getIndex().save();
 	}
 	
 	
-	public HashSet<String> getClassesOfPackage(String pack) {
-		discover();
+	/**
+	 * Simple names of all classes (and of all other resources) in the given package; null if there is no such package.
+	 * @param pack
+	 * @return
+	 */
+	public synchronized HashSet<String> getClassesOfPackage(String pack) {
+		if (!packageToClasses.containsKey(pack)) {
+			HashSet<String> re = null;
+			for (Map<String,String[]> listing : getListings()) {
+				String[] res = listing.get(pack.replace('.', '/'));
+				if (res!=null) {
+					if (re==null) re = new HashSet<String>();
+					for (String c : res)
+						re.add(c.endsWith(".class")?c.substring(0, c.length()-6):c);
+				}
+			}
+			packageToClasses.put(pack, re);
+		}
 		return packageToClasses.get(pack);
 	}
 	
@@ -207,25 +346,33 @@ public class ClassPathCache {
 
 	
 	public ClassPath getClassPathOfClass(Class<?> cls) {
-		discover();
 		if (cls.isArray()) 
 			cls = cls.getComponentType();
 		String path = cls.getName();
 		if (path.contains("$"))
 			path = path.substring(0,path.indexOf('$'));
-		path = path.replace('.', '/');
-		return classPaths.get(path);
+		return getClassPathOfFile(path.replace('.', '/'));
 	}
 	
+	/**
+	 * Gets the class path entry containing the given file (for classes without the .class extension)
+	 * @param path
+	 * @return
+	 */
 	public ClassPath getClassPathOfFile(String path) {
-		discover();
-		return classPaths.get(path);
+		int slash = path.lastIndexOf('/');
+		String pack = slash==-1?"":path.substring(0, slash);
+		String name = path.substring(slash+1);
+		int re = findClassPath(pack, name+".class");
+		if (re==-1) re = findClassPath(pack, name);
+		return re==-1?null:classpath.getClassPaths()[re];
 	}
 	
 	
 	public boolean existsClass(String fullName) {
-		discover();
-		return fullnames.contains(fullName);
+		int dot = fullName.lastIndexOf('.');
+		String pack = dot==-1?"":fullName.substring(0, dot).replace('.', '/');
+		return findClassPath(pack, fullName.substring(dot+1)+".class")!=-1;
 	}
 	
 	public HashMap<String,String> getNameToFullNameMap() {
@@ -0,0 +1,279 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gedi.app.classpath;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Stack;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent listing of the packages and resources of jar files, keyed by their paths and validated by their modification
+ * times and sizes, such that jars do not have to be opened and scanned at each start. In addition, a few name maps derived
+ * from the listings can be stored under a key chosen by the caller. The file is protected by a checksum;
+ * if it is missing, corrupt or from an older version, it is silently rebuilt. Directories are always listed from the file
+ * system.
+ *
+ * @author erhard
+ *
+ */
+public class ClassPathIndex {
+
+	private static final Logger log = Logger.getLogger( ClassPathIndex.class.getName() );
+
+	private static final int MAGIC = 0x47435049;
+	private static final int VERSION = 1;
+	private static final int MAX_NAME_MAPS = 4;
+
+	private File file;
+	private HashMap<String,Entry> entries = new HashMap<String, Entry>();
+	private LinkedHashMap<Long,HashMap<String,String>> nameMaps = new LinkedHashMap<Long, HashMap<String,String>>();
+	private boolean dirty = false;
+
+	public ClassPathIndex(File file) {
+		this.file = file;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Reads the index file; returns false (and starts with an empty index) if it is missing or invalid.
+	 * @return
+	 */
+	public synchronized boolean load() {
+		entries.clear();
+		nameMaps.clear();
+		dirty = false;
+		if (!file.exists()) return false;
+
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+			if (in.readInt()!=MAGIC || in.readInt()!=VERSION)
+				throw new IOException("Unknown format!");
+			long crc = in.readLong();
+			byte[] payload = new byte[in.readInt()];
+			in.readFully(payload);
+			CRC32 check = new CRC32();
+			check.update(payload);
+			if (check.getValue()!=crc)
+				throw new IOException("Checksum mismatch!");
+
+			DataInputStream pin = new DataInputStream(new ByteArrayInputStream(payload));
+			int n = pin.readInt();
+			for (int i=0; i<n; i++) {
+				Entry e = new Entry(pin.readUTF(), pin.readLong(), pin.readLong());
+				int np = pin.readInt();
+				for (int p=0; p<np; p++) {
+					String pack = pin.readUTF();
+					String[] res = new String[pin.readInt()];
+					for (int r=0; r<res.length; r++)
+						res[r] = pin.readUTF();
+					e.listing.put(pack, res);
+				}
+				entries.put(e.path, e);
+			}
+			int nm = pin.readInt();
+			for (int i=0; i<nm; i++) {
+				long key = pin.readLong();
+				HashMap<String,String> map = new HashMap<String, String>();
+				int size = pin.readInt();
+				for (int j=0; j<size; j++)
+					map.put(pin.readUTF(), pin.readUTF());
+				nameMaps.put(key, map);
+			}
+			return true;
+		} catch (IOException | RuntimeException e) {
+			log.log(Level.INFO, "Class path index "+file+" is invalid, rebuilding it: "+e.getMessage());
+			entries.clear();
+			nameMaps.clear();
+			dirty = true;
+			return false;
+		}
+	}
+
+	/**
+	 * Gets all packages (in / notation, the root package is the empty string) and their resources of the given class path,
+	 * from the index if it is a jar that has not been modified since it was indexed.
+	 * @param cp
+	 * @return
+	 */
+	public Map<String,String[]> getListing(ClassPath cp) {
+		if (!(cp instanceof JARClassPath))
+			return list(cp);
+
+		File f = ((JARClassPath)cp).getFile();
+		String path = f.getAbsolutePath();
+		synchronized (this) {
+			Entry e = entries.get(path);
+			if (e!=null && e.lastModified==f.lastModified() && e.length==f.length())
+				return e.listing;
+		}
+
+		log.log(Level.FINE, "Indexing "+path);
+		Entry e = new Entry(path, f.lastModified(), f.length());
+		e.listing = list(cp);
+		synchronized (this) {
+			entries.put(path, e);
+			dirty = true;
+		}
+		return e.listing;
+	}
+
+	/**
+	 * Gets a name map stored by {@link #putNameMap(long, HashMap)}, or null.
+	 * @param key
+	 * @return
+	 */
+	public synchronized HashMap<String,String> getNameMap(long key) {
+		return nameMaps.get(key);
+	}
+
+	/**
+	 * Stores a name map (e.g. the simple names resolved by {@link ClassPathCache}) for the given key (e.g. a checksum of
+	 * all inputs it has been computed from); only the most recent ones are kept.
+	 * @param key
+	 * @param map
+	 */
+	public synchronized void putNameMap(long key, HashMap<String,String> map) {
+		nameMaps.remove(key);
+		nameMaps.put(key, map);
+		while (nameMaps.size()>MAX_NAME_MAPS)
+			nameMaps.remove(nameMaps.keySet().iterator().next());
+		dirty = true;
+	}
+
+	public synchronized boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Writes the index if anything has changed since it was loaded; entries of jars that do not exist anymore are removed.
+	 * The file is replaced atomically (if supported by the file system), such that concurrently starting JVMs either see the
+	 * old or the new index.
+	 */
+	public synchronized void save() {
+		if (!dirty) return;
+
+		for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); )
+			if (!new File(it.next().path).exists())
+				it.remove();
+
+		File tmp = null;
+		try {
+			ByteArrayOutputStream buff = new ByteArrayOutputStream();
+			DataOutputStream pout = new DataOutputStream(buff);
+			pout.writeInt(entries.size());
+			for (Entry e : entries.values()) {
+				pout.writeUTF(e.path);
+				pout.writeLong(e.lastModified);
+				pout.writeLong(e.length);
+				pout.writeInt(e.listing.size());
+				for (String pack : e.listing.keySet()) {
+					pout.writeUTF(pack);
+					String[] res = e.listing.get(pack);
+					pout.writeInt(res.length);
+					for (String r : res)
+						pout.writeUTF(r);
+				}
+			}
+			pout.writeInt(nameMaps.size());
+			for (Long key : nameMaps.keySet()) {
+				pout.writeLong(key);
+				HashMap<String,String> map = nameMaps.get(key);
+				pout.writeInt(map.size());
+				for (String k : map.keySet()) {
+					pout.writeUTF(k);
+					pout.writeUTF(map.get(k));
+				}
+			}
+			pout.close();
+			byte[] payload = buff.toByteArray();
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+
+			tmp = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+			try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(crc.getValue());
+				out.writeInt(payload.length);
+				out.write(payload);
+			}
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			dirty = false;
+		} catch (IOException e) {
+			log.log(Level.WARNING, "Could not write class path index "+file, e);
+			if (tmp!=null) tmp.delete();
+		}
+	}
+
+	/**
+	 * Lists all packages and their (sorted) resources by traversing the given class path.
+	 * @param cp
+	 * @return
+	 */
+	public static LinkedHashMap<String,String[]> list(ClassPath cp) {
+		LinkedHashMap<String,String[]> re = new LinkedHashMap<String, String[]>();
+		Stack<String> pack = new Stack<>();
+		pack.push("");
+		while (!pack.isEmpty()) {
+			String p = pack.pop();
+			for (String c : cp.listPackages(p))
+				if (c.length()>0)
+					pack.push(p.length()==0?c:(p+"/"+c));
+			String[] res = cp.listResources(p);
+			Arrays.sort(res);
+			re.put(p, res);
+		}
+		return re;
+	}
+
+	private static class Entry {
+		private String path;
+		private long lastModified;
+		private long length;
+		private Map<String,String[]> listing = new LinkedHashMap<String, String[]>();
+
+		public Entry(String path, long lastModified, long length) {
+			this.path = path;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+
+}
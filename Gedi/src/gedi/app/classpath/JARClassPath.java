@@ -60,26 +60,56 @@ public class JARClassPath implements ClassPath {
 	private final File file;
 	private final Package root = new Package();
 	private JarFile jarFile;
+	private boolean loaded = false;
 	private static final Logger logger = Logger.getLogger(JARClassPath.class.getCanonicalName());
 
+	/**
+	 * The entries are read at the first access, such that jars listed in the {@link ClassPathIndex} are not opened at all
+	 * unless a resource is requested.
+	 * @param jarFile
+	 */
 	public JARClassPath(File jarFile) {
 		this.file = jarFile;
-		try {
-			loadEntries();
-		} catch (IOException e) {
-			throw new RuntimeException("Could not load JAR file "+jarFile.getName(),e);
-		}
 	}
 
+	public File getFile() {
+		return file;
+	}
+
+	private synchronized void ensureLoaded() {
+		if (!loaded) {
+			try {
+				loadEntries();
+			} catch (IOException e) {
+				throw new RuntimeException("Could not load JAR file "+file.getName(),e);
+			}
+		}
+	}
 	
-	public ClassPath loadEntries() throws IOException {
-		try {
-			jarFile = new JarFile(file);
-		} catch (ZipException e) {
-			logger.warning("Failed to read Jar file " + file.getAbsolutePath());
-			throw e;
+	/**
+	 * Whether the entries of the jar have been enumerated (i.e. it has been listed, not only opened to read resources)
+	 * @return
+	 */
+	public synchronized boolean isLoaded() {
+		return loaded;
+	}
+	
+	private synchronized JarFile open() throws IOException {
+		if (jarFile==null) {
+			try {
+				jarFile = new JarFile(file);
+			} catch (ZipException e) {
+				logger.warning("Failed to read Jar file " + file.getAbsolutePath());
+				throw e;
+			}
 		}
-		Enumeration<JarEntry> enumeration = jarFile.entries();
+		return jarFile;
+	}
+
+	
+	public synchronized ClassPath loadEntries() throws IOException {
+		if (loaded) return this;
+		Enumeration<JarEntry> enumeration = open().entries();
 		while (enumeration.hasMoreElements()) {
 			JarEntry entry = enumeration.nextElement();
 			String path = entry.getName();
@@ -89,10 +119,12 @@ public class JARClassPath implements ClassPath {
 				addResource(path);
 			}
 		}
+		loaded = true;
 		return this;
 	}
 	
 	public boolean isResource(String resource) {
+		ensureLoaded();
 		int index = resource.lastIndexOf("/");
 		String path = index == -1 ? "" : resource.substring(0, index);
 		String name = index == -1 ? resource : resource.substring(index + 1);
@@ -101,10 +133,12 @@ public class JARClassPath implements ClassPath {
 	}
 
 	public boolean isPackage(String packageName) {
+		ensureLoaded();
 		return getPackage(packageName) != null;
 	}
 
 	public String[] listPackages(String packageName) {
+		ensureLoaded();
 		Package pkg = getPackage(packageName);
 		if (pkg == null) {
 			return new String[0];
@@ -114,6 +148,7 @@ public class JARClassPath implements ClassPath {
 	}
 
 	public String[] listResources(String packageName) {
+		ensureLoaded();
 		Package pkg = getPackage(packageName);
 		if (pkg == null) {
 			return new String[0];
@@ -143,15 +178,15 @@ public class JARClassPath implements ClassPath {
 		while (resource.startsWith("/")) {
 			resource = resource.substring(1);
 		}
-		ZipEntry entry = jarFile.getEntry(resource);
-		if (entry == null) {
-			return null;
-		} else {
-			try {
-				return jarFile.getInputStream(entry);
-			} catch (IOException e) {
-				throw new RuntimeException(e);
-			}
+		// only the central directory is read, the entries are not enumerated
+		try {
+			JarFile jar = open();
+			ZipEntry entry = jar.getEntry(resource);
+			if (entry == null) 
+				return null;
+			return jar.getInputStream(entry);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
 		}
 	}
 
@@ -45,6 +45,8 @@ public class StorageSource<D> implements GenomicRegionDataSource<IntervalTree<Ge
 	private HashMap<String,String> invNameMapping = new HashMap<String, String>();
 	private boolean noReferenceSequences = false;
 	
+	private TileCache<IntervalTree<GenomicRegion,D>> cache = new TileCache<IntervalTree<GenomicRegion,D>>(this::query, IntervalTree::size);
+	
 	public StorageSource() {
 	}
 	
@@ -54,14 +56,17 @@ public class StorageSource<D> implements GenomicRegionDataSource<IntervalTree<Ge
 	
 	public void add(GenomicRegionStorage<D> storage) {
 		this.storages.add(storage);
+		if (cache!=null) cache.clear();
 	}
 	
 	public void addTranscripts(Genomic genomic) {
 		this.storages.add((GenomicRegionStorage<D>) genomic.getTranscripts());
+		if (cache!=null) cache.clear();
 	}
 	
 	public void addGenes(Genomic genomic) {
 		this.storages.add((GenomicRegionStorage<D>) genomic.getGenes());
+		if (cache!=null) cache.clear();
 	}
 	
 	public void setReferenceSequenceConversion(
@@ -73,6 +78,27 @@ public class StorageSource<D> implements GenomicRegionDataSource<IntervalTree<Ge
 		this.noReferenceSequences = true;
 	}
 	
+	/**
+	 * Query the storages for each location instead of going through the {@link TileCache} (e.g. for storages that are modified
+	 * while being displayed)
+	 */
+	public void noCache() {
+		if (cache!=null) cache.clear();
+		this.cache = null;
+	}
+	
+	/**
+	 * Removes the cached tiles of this source; must be called when the source is not used anymore, as all tile caches share
+	 * a global LRU list (this is done by {@link gedi.gui.genovis.TracksDataManager#dispose()} when a pipeline is replaced).
+	 */
+	public void dispose() {
+		if (cache!=null) cache.clear();
+	}
+	
+	public TileCache<IntervalTree<GenomicRegion,D>> getCache() {
+		return cache;
+	}
+	
 	public void map(String incoming, String here) {
 		nameMapping.put(incoming, here);
 		invNameMapping.put(here,incoming);
@@ -85,6 +111,17 @@ public class StorageSource<D> implements GenomicRegionDataSource<IntervalTree<Ge
 		if (nameMapping.containsKey(reference.getName())) 
 			reference = Chromosome.obtain(nameMapping.get(reference.getName()), reference.getStrand());
 		
+		if (cache==null)
+			return query(reference, region);
+		
+		IntervalTree<GenomicRegion, D> re = new IntervalTree<GenomicRegion, D>(reference.toStrand(filter));
+		for (IntervalTree<GenomicRegion, D> tile : cache.get(reference, region))
+			tile.iterateIntervalsIntersecting(region.getStart(), region.getStop(), r->region.intersects(r))
+				.forEachRemaining(e->re.put(e.getKey(), e.getValue()));
+		return re;
+	}
+	
+	private IntervalTree<GenomicRegion,D> query(ReferenceSequence reference, GenomicRegion region) {
 		IntervalTree<GenomicRegion, D> re = new IntervalTree<GenomicRegion, D>(reference.toStrand(filter));
 		for (GenomicRegionStorage<D> storage : storages) 
 			if (filter==null || filter==reference.getStrand())
@@ -0,0 +1,357 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gedi.core.data.mapper;
+
+import gedi.core.reference.ReferenceSequence;
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.core.region.GenomicRegion;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.ToLongFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caches the results of a data source in tiles, keyed by reference, zoom level and tile index. The tile size of a zoom level
+ * is minTileSize*2^level, and the level for a query is the smallest one whose tiles are at least half as long as the query,
+ * i.e. each query touches at most three tiles. After each query, the neighbouring tiles are loaded in the background, such that
+ * scrolling through a locus does not hit the underlying files again. Background loads that have not started yet are cancelled
+ * when the next query of this cache wants other neighbours. A query that needs such a tile loads it itself.
+ *
+ * All tile caches share a single LRU list that is trimmed to a common budget of elements (as counted by the weigher of each cache).
+ * Caches that are not used anymore must be {@link #clear()}ed, otherwise their tiles (and the loader) are kept until they are evicted.
+ *
+ * Safe for concurrent callers.
+ *
+ * @author erhard
+ *
+ * @param <T>
+ */
+public class TileCache<T> {
+
+	private static final Logger log = Logger.getLogger( TileCache.class.getName() );
+
+	public static final int DEFAULT_MIN_TILE_SIZE = 1<<12;
+	public static final int DEFAULT_PREFETCH = 1;
+	public static final long DEFAULT_BUDGET = 1<<22;
+
+	private static final Object lock = new Object();
+	private static final LinkedHashMap<TileKey,Tile<?>> tiles = new LinkedHashMap<TileKey, Tile<?>>(16, 0.75f, true);
+	private static long used = 0;
+	private static long budget = DEFAULT_BUDGET;
+
+	private static final ExecutorService prefetcher = Executors.newSingleThreadExecutor(r->{
+		Thread t = new Thread(r, "TileCache-prefetch");
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		return t;
+	});
+
+	private BiFunction<ReferenceSequence,GenomicRegion,T> loader;
+	private ToLongFunction<T> weigher;
+	private int minTileSize = DEFAULT_MIN_TILE_SIZE;
+	private int prefetch = DEFAULT_PREFETCH;
+	private ArrayList<TileKey> prefetching = new ArrayList<TileKey>();
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+
+	/**
+	 *
+	 * @param loader loads the data of a tile
+	 * @param weigher number of elements in a tile
+	 */
+	public TileCache(BiFunction<ReferenceSequence,GenomicRegion,T> loader, ToLongFunction<T> weigher) {
+		this.loader = loader;
+		this.weigher = weigher;
+	}
+
+	/**
+	 * Budget (in elements, see the weigher) shared by all tile caches; default is {@link #DEFAULT_BUDGET}.
+	 * @param budget
+	 */
+	public static void setBudget(long budget) {
+		synchronized (lock) {
+			TileCache.budget = budget;
+			evict();
+		}
+	}
+
+	public static long getBudget() {
+		synchronized (lock) {
+			return budget;
+		}
+	}
+
+	public static long getUsed() {
+		synchronized (lock) {
+			return used;
+		}
+	}
+
+	public TileCache<T> setMinTileSize(int minTileSize) {
+		this.minTileSize = minTileSize;
+		clear();
+		return this;
+	}
+
+	public int getMinTileSize() {
+		return minTileSize;
+	}
+
+	/**
+	 * Number of tiles to load in the background to either side of each query; 0 disables prefetching.
+	 * @param prefetch
+	 * @return
+	 */
+	public TileCache<T> setPrefetch(int prefetch) {
+		this.prefetch = prefetch;
+		return this;
+	}
+
+	public int getPrefetch() {
+		return prefetch;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int getLevel(GenomicRegion region) {
+		long len = region.getEnd()-region.getStart();
+		int re = 0;
+		while (re<30 && getTileSize(re)*2<len)
+			re++;
+		return re;
+	}
+
+	public long getTileSize(int level) {
+		return ((long)minTileSize)<<level;
+	}
+
+	/**
+	 * Gets the data of all tiles intersecting the bounding box of region (in ascending order); missing tiles (and those
+	 * queued for prefetching) are loaded in the calling thread; tiles that are currently prefetched are waited for.
+	 * @param reference
+	 * @param region
+	 * @return
+	 */
+	public ArrayList<T> get(ReferenceSequence reference, GenomicRegion region) {
+		int level = getLevel(region);
+		long size = getTileSize(level);
+		int first = (int) (region.getStart()/size);
+		int last = (int) (Math.max(region.getStart(),region.getEnd()-1)/size);
+
+		ArrayList<TileKey> visible = new ArrayList<TileKey>(last-first+1);
+		for (int t=first; t<=last; t++)
+			visible.add(new TileKey(this, reference, level, t));
+		ArrayList<TileKey> next = new ArrayList<TileKey>(2*prefetch);
+		for (int p=1; p<=prefetch; p++) {
+			if (first-p>=0)
+				next.add(new TileKey(this, reference, level, first-p));
+			if ((last+p)*size<Integer.MAX_VALUE)
+				next.add(new TileKey(this, reference, level, last+p));
+		}
+		
+		// the view has moved on, do not load the old neighbours anymore
+		synchronized (lock) {
+			for (TileKey key : prefetching)
+				if (!next.contains(key) && !visible.contains(key)) {
+					Tile<?> tile = tiles.get(key);
+					if (tile!=null && !tile.started && tile.task.cancel(false))
+						tiles.remove(key);
+				}
+			prefetching = next;
+		}
+		
+		ArrayList<T> re = new ArrayList<T>(visible.size());
+		for (TileKey key : visible)
+			re.add(obtain(key, false));
+
+		for (TileKey key : next)
+			obtain(key, true);
+		return re;
+	}
+
+	/**
+	 * Removes all tiles of this cache and cancels its pending background loads (e.g. if the underlying data have changed
+	 * or the cache is not used anymore)
+	 */
+	public void clear() {
+		synchronized (lock) {
+			for (Iterator<Entry<TileKey,Tile<?>>> it = tiles.entrySet().iterator(); it.hasNext(); ) {
+				Entry<TileKey,Tile<?>> e = it.next();
+				if (e.getKey().cache==this) {
+					e.getValue().task.cancel(false);
+					used-=e.getValue().weight;
+					it.remove();
+				}
+			}
+			prefetching = new ArrayList<TileKey>();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private T obtain(TileKey key, boolean background) {
+		Tile<T> tile;
+		boolean load = false;
+		synchronized (lock) {
+			tile = (Tile<T>) tiles.get(key);
+			if (tile==null) {
+				tile = new Tile<T>(new FutureTask<T>(()->loader.apply(key.reference, key.getRegion())));
+				tiles.put(key, tile);
+				load = true;
+			}
+		}
+
+		if (background) {
+			if (load) {
+				Tile<T> ftile = tile;
+				prefetcher.execute(()->load(key, ftile));
+			}
+			return null;
+		}
+
+		// a tile that is only queued for prefetching is loaded here (run is a no-op if it is already running or done)
+		if (load || !tile.task.isDone()) {
+			misses.incrementAndGet();
+			load(key, tile);
+		} else
+			hits.incrementAndGet();
+
+		try {
+			return tile.task.get();
+		} catch (CancellationException e) {
+			// cancelled by another query or clear in the meantime
+			return obtain(key, false);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Could not load tile "+key, e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for tile "+key, e);
+		}
+	}
+
+	private void load(TileKey key, Tile<T> tile) {
+		tile.started = true;
+		tile.task.run();
+		long weight = -1;
+		try {
+			weight = weigher.applyAsLong(tile.task.get());
+		} catch (ExecutionException | InterruptedException | CancellationException e) {
+			log.log(Level.FINE, "Could not load tile "+key, e);
+		}
+
+		synchronized (lock) {
+			if (tiles.get(key)==tile && !tile.weighed) {
+				if (weight<0)
+					tiles.remove(key);
+				else {
+					tile.weight = weight;
+					tile.weighed = true;
+					used+=weight;
+					evict();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Must hold the lock!
+	 */
+	private static void evict() {
+		for (Iterator<Tile<?>> it = tiles.values().iterator(); used>budget && it.hasNext(); ) {
+			Tile<?> t = it.next();
+			if (t.task.isDone()) {
+				used-=t.weight;
+				it.remove();
+			}
+		}
+	}
+
+	private static class Tile<T> {
+		private FutureTask<T> task;
+		private volatile boolean started = false;
+		private boolean weighed = false;
+		private long weight = 0;
+
+		public Tile(FutureTask<T> task) {
+			this.task = task;
+		}
+	}
+
+	private static class TileKey {
+		private TileCache<?> cache;
+		private ReferenceSequence reference;
+		private int level;
+		private int index;
+
+		public TileKey(TileCache<?> cache, ReferenceSequence reference, int level, int index) {
+			this.cache = cache;
+			this.reference = reference;
+			this.level = level;
+			this.index = index;
+		}
+
+		public GenomicRegion getRegion() {
+			long size = cache.getTileSize(level);
+			return new ArrayGenomicRegion((int)(index*size), (int)Math.min(Integer.MAX_VALUE, (index+1)*size));
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = System.identityHashCode(cache);
+			result = prime * result + reference.hashCode();
+			result = prime * result + level;
+			result = prime * result + index;
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof TileKey))
+				return false;
+			TileKey other = (TileKey) obj;
+			return cache==other.cache && level==other.level && index==other.index && reference.equals(other.reference);
+		}
+
+		@Override
+		public String toString() {
+			return reference+":"+getRegion().toRegionString()+" (level "+level+")";
+		}
+	}
+
+}
@@ -334,6 +334,19 @@ public class DiskGenomicNumericBuilder {
 	public void setReferenceSorted(boolean referenceSorted) {
 		this.referenceSorted = referenceSorted;
 	}
+	
+	private boolean interleaved = false;
+	
+	/**
+	 * If set, the values of all conditions are additionally stored interleaved per position (in addition to the
+	 * min/max/sum indices of each condition), such that reading all conditions of a position (or of a range of positions)
+	 * hits a single contiguous block in the file. Files are larger, and can only be read by {@link DiskGenomicNumericProvider}s
+	 * that know this layout!
+	 * @param interleaved
+	 */
+	public void setInterleaved(boolean interleaved) {
+		this.interleaved = interleaved;
+	}
 
 	private WriterInfo lastInfo = null;
 	
@@ -549,15 +562,17 @@ public class DiskGenomicNumericBuilder {
 			if (!sorted) read = sort(read);
 			if (coverageMode) read = cumsum(read);
 
+			char type;
 			if (dense)
-				writer.putAsciiChar(coverageMode?'W':'D');
+				type = coverageMode?'W':'D';
 			else
-				writer.putAsciiChar(coverageMode?'C':'S');
+				type = coverageMode?'C':'S';
+			writer.putAsciiChar(interleaved?Character.toLowerCase(type):type);
 			writer.putInt(dense?maxPos+1:size);
 			writer.putInt(numCond);
 			
 			long start = read.position();
-		
+			NumericArrayType interleavedType = null;
 			
 			for (int i=0; i<numCond; i++) {
 				NumericArray a = NumericArray.createMemory(dense?maxPos+1:size, NumericArrayType.fromType(cls));
@@ -597,6 +612,9 @@ public class DiskGenomicNumericBuilder {
 						a = a.convert(NumericArrayType.Integer);
 				}
 				
+				if (interleavedType==null || a.getType().getBytes()>interleavedType.getBytes())
+					interleavedType = a.getType();
+				
 				long indexBytes = 0;
 				long dataBytes = 0;
 				long before = writer.position();
@@ -607,10 +625,52 @@ public class DiskGenomicNumericBuilder {
 //				System.out.printf("%s\t%d\t%d\t%d\n",read.getPath(),size*Integer.BYTES,dataBytes,indexBytes);
 				
 			}
+			
+			if (interleaved) 
+				writeInterleaved(writer, read, start, dense, interleavedType);
+			
 			read.close();
 			new File(this.writer.getPath()).delete();
 		}
 		
+		/**
+		 * Writes the values of all conditions per position as a single {@link NumericArray} (element index*numCond+condition)
+		 * @param writer
+		 * @param read
+		 * @param start
+		 * @param dense
+		 * @param type
+		 * @throws IOException
+		 */
+		private void writeInterleaved(PageFileWriter writer, PageFile read, long start, boolean dense, NumericArrayType type) throws IOException {
+			NumericArray raw = NumericArray.createMemory(numCond, NumericArrayType.fromType(cls));
+			NumericArray conv = NumericArray.createMemory(numCond, type);
+			NumericArray zero = NumericArray.createMemory(numCond, type);
+			
+			int length = dense?maxPos+1:size;
+			writer.putByte(type.ordinal());
+			writer.putInt(length*numCond);
+			
+			read.position(start);
+			int next = 0;
+			for (int index = 0; index<size; index++) {
+				int p = read.getInt();
+				for (int i=0; i<numCond; i++)
+					raw.deserializeElement(i, read);
+				raw.copyRange(0, conv, 0, numCond);
+				
+				if (dense) {
+					// positions without value are 0
+					for (; next<p; next++)
+						for (int i=0; i<numCond; i++)
+							zero.serializeElement(i, writer);
+					next++;
+				}
+				for (int i=0; i<numCond; i++)
+					conv.serializeElement(i, writer);
+			}
+		}
+		
 		private int sortSize = 10_000_000;
 		private PageFile sort(PageFile f) throws IOException {
 			LinkedList<IntNumeric> lines = new LinkedList<IntNumeric>();
@@ -22,7 +22,6 @@ import java.io.IOException;
 import java.io.Writer;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.function.Consumer;
@@ -32,6 +31,7 @@ import gedi.core.data.numeric.GenomicNumericProvider;
 import gedi.core.data.numeric.GenomicNumericProvider.PositionNumericIterator;
 import gedi.core.reference.Chromosome;
 import gedi.core.reference.ReferenceSequence;
+import gedi.core.reference.ReferenceSequenceMap;
 import gedi.core.region.ArrayGenomicRegion;
 import gedi.core.region.GenomicRegion;
 import gedi.util.algorithm.rmq.DiskMinMaxSumIndex;
@@ -43,15 +43,22 @@ import gedi.util.datastructure.array.NumericArray;
 import gedi.util.datastructure.array.computed.ComputedIntegerArray;
 import gedi.util.datastructure.collections.intcollections.IntArrayList;
 import gedi.util.datastructure.tree.redblacktree.IntervalTree;
+import gedi.util.io.randomaccess.BinaryReader;
+import gedi.util.io.randomaccess.ConcurrentPageFile;
+import gedi.util.io.randomaccess.ConcurrentPageFileView;
 import gedi.util.io.randomaccess.PageFile;
 import gedi.util.io.randomaccess.PageFileView;
 import gedi.util.io.randomaccess.diskarray.IntDiskArray;
 
 public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoCloseable {
 
-	private HashMap<ReferenceSequence,IntegerArray> positions;
-	private HashMap<ReferenceSequence,DiskMinMaxSumIndex[]> rmqs;
-	private PageFile file;
+	private ReferenceSequenceMap<IntegerArray> positions;
+	private ReferenceSequenceMap<DiskMinMaxSumIndex[]> rmqs;
+	private ReferenceSequenceMap<NumericArray> interleaved;
+	private BinaryReader file;
+	private long fileSize;
+	private AutoCloseable source;
+	private ConcurrentPageFile concurrentFile;
 	private int rows = -1;
 	
 	private boolean coverageMode = false;
@@ -59,10 +66,34 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 	
 	
 	public DiskGenomicNumericProvider(String file) throws IOException {
-		positions = new HashMap<ReferenceSequence, IntegerArray>();
-		rmqs = new HashMap<ReferenceSequence, DiskMinMaxSumIndex[]>();
+		this(file,false);
+	}
+	
+	/**
+	 * If concurrent, the file is read by means of a (shared) {@link ConcurrentPageFile}, i.e. there is no state except for thread local
+	 * positions, and all methods can be called by many threads at the same time.
+	 * @param file
+	 * @param concurrent
+	 * @throws IOException
+	 */
+	public DiskGenomicNumericProvider(String file, boolean concurrent) throws IOException {
+		positions = new ReferenceSequenceMap<IntegerArray>();
+		rmqs = new ReferenceSequenceMap<DiskMinMaxSumIndex[]>();
+		interleaved = new ReferenceSequenceMap<NumericArray>();
+		
+		if (concurrent) {
+			concurrentFile = new ConcurrentPageFile(file);
+			concurrentFile.setShared(true);
+			this.file = new ConcurrentPageFileView(concurrentFile);
+			this.fileSize = concurrentFile.size();
+			this.source = concurrentFile;
+		} else {
+			PageFile pf = new PageFile(file);
+			this.file = pf;
+			this.fileSize = pf.size();
+			this.source = pf;
+		}
 		
-		this.file = new PageFile(file);
 		if (!this.file.getAsciiChars(DiskGenomicNumericBuilder.MAGIC.length()).equals(DiskGenomicNumericBuilder.MAGIC))
 			throw new RuntimeException("Not a valid file!");
 		
@@ -74,6 +105,8 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 			
 			this.file.position(pos);
 			char type = this.file.getAsciiChar();
+			boolean inter = Character.isLowerCase(type);
+			type = Character.toUpperCase(type);
 			if (type!='S' && type!='C' && type!='W' && type!='D') throw new RuntimeException("Not a valid file!");
 			coverageMode = type=='C' || type=='W';
 			dense = type=='W' || type=='D';
@@ -85,11 +118,12 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 			else if(rows!=numCond) throw new RuntimeException("Inconsistent number of conditions!");
 			
 			if (!dense) {
-				PageFileView view = new PageFileView(this.file, this.file.position(), this.file.position()+size*Integer.BYTES);
+				long end = this.file.position()+(long)size*Integer.BYTES;
+				BinaryReader view = view(this.file.position(), end);
 				DiskIntegerArray ida = new DiskIntegerArray();
 				ida.deserialize(view, size);
 				positions.put(chr, ida);
-				this.file.position(view.getEnd());
+				this.file.position(end);
 			} else {
 				positions.put(chr, new ComputedIntegerArray(n->n,size));
 			}
@@ -97,12 +131,16 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 			long rmqPos = this.file.position();
 			DiskMinMaxSumIndex[] ind = new DiskMinMaxSumIndex[numCond];
 			for (int j=0; j<numCond; j++) {
-				PageFileView pfv = new PageFileView(this.file,rmqPos,this.file.size());
+				BinaryReader pfv = view(rmqPos,fileSize);
 				ind[j] = new DiskMinMaxSumIndex(pfv);
-				rmqPos = pfv.position()+pfv.getStart();
+				rmqPos = pfv.position()+rmqPos;
 			}
 			rmqs.put(chr, ind);
 			
+			if (inter) {
+				interleaved.put(chr, NumericArray.readDisk(view(rmqPos,fileSize)));
+			}
+			
 			
 			this.file.position(cur);
 			
@@ -112,6 +150,16 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 		
 	}
 	
+	private BinaryReader view(long start, long end) {
+		if (concurrentFile!=null)
+			return new ConcurrentPageFileView(concurrentFile, start, end);
+		return new PageFileView((PageFile) file, start, end);
+	}
+	
+	public boolean isConcurrent() {
+		return concurrentFile!=null;
+	}
+	
 	@Override
 	public int getLength(String name) {
 		Chromosome reference = Chromosome.obtain(name);
@@ -129,6 +177,15 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 		return -dia.getInt(dia.length()-1);
 	}
 	
+	/**
+	 * Whether the values of all conditions are stored interleaved (see {@link DiskGenomicNumericBuilder#setInterleaved(boolean)}).
+	 * @param reference
+	 * @return
+	 */
+	public boolean isInterleaved(ReferenceSequence reference) {
+		return interleaved.containsKey(reference) || interleaved.containsKey(reference.toStrandIndependent());
+	}
+	
 	public Collection<ReferenceSequence> getRefereneSequences() {
 		return positions.keySet();
 	}
@@ -255,12 +312,9 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 			
 			@Override
 			public double[] getValues(double[] re) {
-				DiskMinMaxSumIndex[] r = rmqs.get(reference);
 				if (re==null || re.length!=getNumDataRows()) 
 					re = new double[getNumDataRows()];
-				for (int row=0; row<re.length; row++)
-					re[row]=getValue(row);
-				return re;
+				return getValuesAt(reference, idxRegion.map(p-1), re);
 			}
 			
 		};
@@ -268,7 +322,7 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 
 	@Override
 	public void close() throws Exception {
-		file.close();
+		source.close();
 	}
 
 	@Override
@@ -288,6 +342,8 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 		int idx = ind.binarySearch(pos);
 		idx = adaptIdx(idx);
 		if (idx<0 || idx>=ind.length()) return 0;
+		NumericArray inter = interleaved.get(reference);
+		if (inter!=null) return inter.getDouble(idx*rows+row);
 		return rmqs.get(reference)[row].getValue(idx);
 	}
 
@@ -310,9 +366,61 @@ public class DiskGenomicNumericProvider implements GenomicNumericProvider, AutoC
 			Arrays.fill(re,0);
 			return re;
 		}
-		DiskMinMaxSumIndex[] rm = rmqs.get(reference);
-		for (int i=0; i<rows; i++)
-			re[i] = rm[i].getValue(idx);
+		return getValuesAt(reference, idx, re);
+	}
+	
+	/**
+	 * Gets the values of all rows for each position in [start,end), i.e. re[p-start][row] is the same as {@link #getValue(ReferenceSequence, int, int)}
+	 * for p and row. This is much faster than querying each position for large ranges, in particular when the file is interleaved.
+	 * @param reference
+	 * @param start
+	 * @param end
+	 * @param re may be null
+	 * @return
+	 */
+	public double[][] getValues(ReferenceSequence reference, int start, int end, double[][] re) {
+		if (re==null || re.length!=end-start || (re.length>0 && re[0].length!=rows)) re = new double[end-start][rows];
+		
+		IntegerArray ind = positions.get(reference);
+		if (ind==null){
+			reference = reference.toStrandIndependent();
+			ind = positions.get(reference);
+		}
+		if (ind==null) {
+			for (double[] r : re)
+				Arrays.fill(r,Double.NaN);
+			return re;
+		}
+		
+		int idx = ind.binarySearch(start);
+		if (idx<0) idx = coverageMode?-idx-2:-idx-1;
+		for (int p=start; p<end; p++) {
+			if (coverageMode) {
+				// the last index with position <=p
+				while (idx+1<ind.length() && ind.getInt(idx+1)<=p) idx++;
+				if (idx<0) Arrays.fill(re[p-start],0);
+				else getValuesAt(reference, idx, re[p-start]);
+			} else {
+				// the first index with position >=p
+				while (idx<ind.length() && ind.getInt(idx)<p) idx++;
+				if (idx<ind.length() && ind.getInt(idx)==p) getValuesAt(reference, idx, re[p-start]);
+				else Arrays.fill(re[p-start],0);
+			}
+		}
+		return re;
+	}
+	
+	private double[] getValuesAt(ReferenceSequence reference, int idx, double[] re) {
+		NumericArray inter = interleaved.get(reference);
+		if (inter!=null) {
+			int off = idx*rows;
+			for (int i=0; i<rows; i++)
+				re[i] = inter.getDouble(off+i);
+		} else {
+			DiskMinMaxSumIndex[] rm = rmqs.get(reference);
+			for (int i=0; i<rows; i++)
+				re[i] = rm[i].getValue(idx);
+		}
 		return re;
 	}
 	
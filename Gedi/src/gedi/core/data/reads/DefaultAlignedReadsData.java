@@ -304,10 +304,10 @@ public class DefaultAlignedReadsData implements AlignedReadsData, BinarySerializ
 	static int pos(int mask) {
 		return mask & bytemask;
 	}
-	private static final int TYPE_MISMATCH = 0;
-	private static final int TYPE_INSERTION = 1;
-	private static final int TYPE_DELETION = 2;
-	private static final int TYPE_SOFTCLIP = 3;
+	static final int TYPE_MISMATCH = 0;
+	static final int TYPE_INSERTION = 1;
+	static final int TYPE_DELETION = 2;
+	static final int TYPE_SOFTCLIP = 3;
 	
 	static int type(short mask) {
 		int smask = mask & 0xFFFF;
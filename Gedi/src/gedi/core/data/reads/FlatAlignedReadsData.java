@@ -0,0 +1,254 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gedi.core.data.reads;
+
+import gedi.util.dynamic.DynamicObject;
+import gedi.util.io.randomaccess.BinaryReader;
+import gedi.util.io.randomaccess.serialization.BinarySerializable;
+import gedi.util.sequence.DnaSequence;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Read only {@link AlignedReadsData} with the same binary format as {@link DefaultAlignedReadsData}, but all data are stored in flat primitive
+ * arrays: counts (distinct major), variations (with an offset table per distinct sequence) and the bases of all variations in a single
+ * byte array (with an offset table per variation). The bases are converted to sequences only when accessed.
+ *
+ * {@link #deserialize(BinaryReader)} reuses the arrays of the previous record, i.e. a single object can be used for all records of a file
+ * (e.g. by setReuseData of CenteredDiskIntervalTreeStorage), and no objects are created per record.
+ *
+ * @author erhard
+ *
+ */
+public class FlatAlignedReadsData implements AlignedReadsData, BinarySerializable {
+
+	private int distinct;
+	private int conditions;
+	private int[] count = new int[0];
+	private int[] varStart = new int[1];
+	private short[] var = new short[0];
+	private int[] baseStart = new int[1];
+	private byte[] bases = new byte[0];
+	private int[] multiplicity = new int[0];
+	private int[] ids = new int[0];
+	private float[] weights = new float[0];
+	private boolean hasIds;
+	private boolean hasWeights;
+
+	private transient int hash = -1;
+
+	@Override
+	public void deserialize(BinaryReader in) throws IOException {
+		hash = -1;
+		distinct = in.getCInt();
+
+		DynamicObject gi = in.getContext().getGlobalInfo();
+		if (!gi.hasProperty(CONDITIONSATTRIBUTE))
+			conditions = in.getCInt();
+		else
+			conditions = gi.getEntry(CONDITIONSATTRIBUTE).asInt();
+
+		int n = distinct*conditions;
+		if (count.length<n) count = new int[n];
+		if (!gi.hasProperty(SPARSEATTRIBUTE) || gi.getEntry(SPARSEATTRIBUTE).asInt()==0) {
+			for (int i=0; i<n; i++)
+				count[i] = in.getCInt();
+		}
+		else {
+			Arrays.fill(count, 0, n, 0);
+			int co = in.getCInt();
+			for (int i=0; i<co; i++) {
+				int pos = in.getCInt();
+				count[pos] = in.getCInt();
+			}
+		}
+
+		if (varStart.length<distinct+1) varStart = new int[distinct+1];
+		int nv = 0;
+		int nb = 0;
+		for (int i=0; i<distinct; i++) {
+			varStart[i] = nv;
+			int v = in.getCInt();
+			if (var.length<nv+v) {
+				var = Arrays.copyOf(var, Math.max(nv+v, var.length*2));
+				baseStart = Arrays.copyOf(baseStart, var.length+1);
+			}
+			for (int j=0; j<v; j++) {
+				var[nv] = in.getCShort();
+				int l = in.getCInt();
+				if (bases.length<nb+l) bases = Arrays.copyOf(bases, Math.max(nb+l, bases.length*2));
+				in.get(bases, nb, l);
+				baseStart[nv++] = nb;
+				nb+=l;
+			}
+		}
+		varStart[distinct] = nv;
+		baseStart[nv] = nb;
+
+		if (multiplicity.length<distinct) multiplicity = new int[distinct];
+		for (int i=0; i<distinct; i++)
+			multiplicity[i] = in.getCInt();
+
+		hasIds = gi.getEntry(AlignedReadsData.HASIDATTRIBUTE).asInt()==1;
+		if (hasIds) {
+			if (ids.length<distinct) ids = new int[distinct];
+			for (int i=0; i<distinct; i++)
+				ids[i] = in.getCInt();
+		}
+
+		hasWeights = gi.getEntry(AlignedReadsData.HASWEIGHTATTRIBUTE).asInt()==1;
+		if (hasWeights) {
+			if (weights.length<distinct) weights = new float[distinct];
+			for (int i=0; i<distinct; i++)
+				weights[i] = in.getFloat();
+		}
+	}
+
+	private short var(int distinct, int index) {
+		return var[varStart[distinct]+index];
+	}
+
+	private CharSequence bases(int distinct, int index, int from, int to) {
+		int s = baseStart[varStart[distinct]+index];
+		char[] re = new char[Math.min(to, baseStart[varStart[distinct]+index+1]-s)-from];
+		for (int i=0; i<re.length; i++)
+			re[i] = (char) bases[s+from+i];
+		return new DnaSequence(re);
+	}
+
+	private CharSequence bases(int distinct, int index) {
+		return bases(distinct, index, 0, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean hasWeights() {
+		return hasWeights;
+	}
+
+	@Override
+	public float getWeight(int distinct) {
+		if (hasWeights)
+			return weights[distinct];
+
+		int m = getMultiplicity(distinct);
+		if (m==0) return 1;
+		return 1.0f/m;
+	}
+
+	@Override
+	public boolean hasId() {
+		return hasIds;
+	}
+
+	@Override
+	public int getId(int distinct) {
+		return hasIds?ids[distinct]:-1;
+	}
+
+	@Override
+	public int getDistinctSequences() {
+		return distinct;
+	}
+	@Override
+	public int getNumConditions() {
+		return conditions;
+	}
+	@Override
+	public int getCount(int distinct, int condition) {
+		return count[distinct*conditions+condition];
+	}
+	@Override
+	public int getVariationCount(int distinct) {
+		return varStart[distinct+1]-varStart[distinct];
+	}
+	@Override
+	public boolean isMismatch(int distinct, int index) {
+		return DefaultAlignedReadsData.type(var(distinct, index))==DefaultAlignedReadsData.TYPE_MISMATCH;
+	}
+	@Override
+	public int getMismatchPos(int distinct, int index) {
+		return DefaultAlignedReadsData.pos(var(distinct, index));
+	}
+	@Override
+	public CharSequence getMismatchGenomic(int distinct, int index) {
+		return bases(distinct, index, 0, 1);
+	}
+	@Override
+	public CharSequence getMismatchRead(int distinct, int index) {
+		return bases(distinct, index, 1, 2);
+	}
+	@Override
+	public boolean isInsertion(int distinct, int index) {
+		return DefaultAlignedReadsData.type(var(distinct, index))==DefaultAlignedReadsData.TYPE_INSERTION;
+	}
+	@Override
+	public int getInsertionPos(int distinct, int index) {
+		return DefaultAlignedReadsData.pos(var(distinct, index));
+	}
+	@Override
+	public CharSequence getInsertion(int distinct, int index) {
+		return bases(distinct, index);
+	}
+	@Override
+	public boolean isDeletion(int distinct, int index) {
+		return DefaultAlignedReadsData.type(var(distinct, index))==DefaultAlignedReadsData.TYPE_DELETION;
+	}
+	@Override
+	public int getDeletionPos(int distinct, int index) {
+		return DefaultAlignedReadsData.pos(var(distinct, index));
+	}
+	@Override
+	public CharSequence getDeletion(int distinct, int index) {
+		return bases(distinct, index);
+	}
+	@Override
+	public boolean isSoftclip(int distinct, int index) {
+		return DefaultAlignedReadsData.type(var(distinct, index))==DefaultAlignedReadsData.TYPE_SOFTCLIP;
+	}
+	@Override
+	public int getSoftclipPos(int distinct, int index) {
+		return DefaultAlignedReadsData.pos(var(distinct, index));
+	}
+	@Override
+	public CharSequence getSoftclip(int distinct, int index) {
+		return bases(distinct, index);
+	}
+
+	@Override
+	public int getMultiplicity(int distinct) {
+		return multiplicity[distinct];
+	}
+
+	@Override
+	public int hashCode() {
+		if (hash==-1) hash = hashCode2();
+		return hash;
+	}
+	@Override
+	public boolean equals(Object obj) {
+		return equals(obj,true,true);
+	}
+
+	@Override
+	public String toString() {
+		return toString2();
+	}
+
+}
@@ -20,9 +20,12 @@ package gedi.core.processing;
 
 import gedi.core.reference.ReferenceSequence;
 import gedi.core.region.MutableReferenceGenomicRegion;
+import gedi.core.sequence.PackedSequenceProvider.PackedSequence;
 import gedi.core.sequence.SequenceProvider;
 import gedi.util.io.text.LineOrientedFile;
 
+import java.io.Writer;
+
 public class SequenceExtractingProcessor implements GenomicRegionProcessor {
 
 	// TODO: once table framework is there, do not produce an output file but write into a table of the context! (a table output processor will then do the trick)
@@ -30,6 +33,8 @@ public class SequenceExtractingProcessor implements GenomicRegionProcessor {
 	private SequenceProvider sequence;
 	private LineOrientedFile out;
 	private boolean strandspecific;
+	private Writer writer;
+	private char[] buffer = new char[8192];
 	
 	
 	public SequenceExtractingProcessor(LineOrientedFile out, SequenceProvider sequence, boolean strandspecific) {
@@ -41,7 +46,7 @@ public class SequenceExtractingProcessor implements GenomicRegionProcessor {
 
 	@Override
 	public void begin(ProcessorContext context) throws Exception {
-		out.startWriting();
+		writer = out.startWriting();
 	}
 	
 	
@@ -52,7 +57,19 @@ public class SequenceExtractingProcessor implements GenomicRegionProcessor {
 		ReferenceSequence ref = region.getReference();
 		if (!strandspecific)
 			ref = ref.toStrandIndependent();
-		out.writef(">%s\n%s\n", ref+":"+region.getRegion(),seq);
+		out.writef(">%s\n", ref+":"+region.getRegion());
+		if (seq instanceof PackedSequence) {
+			// decode packed sequences chunk-wise instead of creating a String for the whole region
+			PackedSequence p = (PackedSequence) seq;
+			for (int i=0; i<p.length(); i+=buffer.length) {
+				int n = Math.min(buffer.length, p.length()-i);
+				p.getChars(i, i+n, buffer, 0);
+				writer.write(buffer, 0, n);
+			}
+		}
+		else
+			writer.append(seq);
+		writer.write('\n');
 	}
 
 	@Override
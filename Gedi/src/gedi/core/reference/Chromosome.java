@@ -20,22 +20,41 @@ package gedi.core.reference;
 
 import gedi.util.io.randomaccess.BinaryReader;
 import gedi.util.io.randomaccess.PageFileWriter;
+import gedi.util.orm.OrmResolvable;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
-public class Chromosome implements ReferenceSequence {
+/**
+ * Chromosomes are interned, i.e. there is a single object for each name and strand (names are normalized, i.e. chr1 and 1
+ * are the same chromosome), and each gets a dense integer id (see {@link #getId()}), such that per reference data can be
+ * looked up in arrays (e.g. by {@link ReferenceSequenceMap}).
+ *
+ * Interning is thread-safe; lookups of known names are lock-free and do not allocate (also for {@link #read(BinaryReader)}).
+ *
+ * @author erhard
+ *
+ */
+public class Chromosome implements ReferenceSequence, OrmResolvable {
 
-	private String name;
-	private Strand strand;
+	private final String name;
+	private final Strand strand;
+	private final transient int id;
 	
-	private Chromosome(String name, Strand strand) {
-		if (name.startsWith("chr")) name = name.substring(3);
-		if (name.equals("M")) name = "MT";
+	private transient Chromosome[] strands;
+	
+	private Chromosome(String name, Strand strand, int id) {
 		this.name = name;
 		this.strand = strand;
+		this.id = id;
 	}
 	
+	private static String normalize(String name) {
+		if (name.startsWith("chr")) name = name.substring(3);
+		if (name.equals("M")) name = "MT";
+		return name;
+	}
 	
 	public String getName() {
 		return name;
@@ -45,6 +64,14 @@ public class Chromosome implements ReferenceSequence {
 		return strand;
 	}
 	
+	/**
+	 * Dense id of this chromosome, i.e. 0&lt;=id&lt;{@link #getNumIds()}. Ids are assigned in the order chromosomes are obtained,
+	 * i.e. they are only valid in this JVM and must not be written to files.
+	 */
+	@Override
+	public int getId() {
+		return id;
+	}
 	
 
 	@Override
@@ -54,6 +81,7 @@ public class Chromosome implements ReferenceSequence {
 	
 	@Override
 	public boolean equals(Object obj) {
+		if (obj==this) return true;
 		if (!(obj instanceof Chromosome))
 			return false;
 		Chromosome chr = (Chromosome) obj;
@@ -68,11 +96,47 @@ public class Chromosome implements ReferenceSequence {
 	
 	public Chromosome getOppositeStrand() {
 		if (strand==Strand.Independent) return this;
-		if (strand==Strand.Plus) return obtain(name,Strand.Minus);
-		return obtain(name,Strand.Plus);
+		if (strand==Strand.Plus) return toStrand(Strand.Minus);
+		return toStrand(Strand.Plus);
 	}
 	
+	/**
+	 * The chromosomes with the same name are cached (racy, but they are interned anyway), so this does not hash the name.
+	 */
+	@Override
+	public Chromosome toStrand(Strand strand) {
+		if (strand==null || strand==this.strand) return this;
+		Chromosome[] a = strands;
+		if (a==null) strands = a = new Chromosome[STRANDS.length];
+		Chromosome re = a[strand.ordinal()];
+		if (re==null) a[strand.ordinal()] = re = obtain(name, strand);
+		return re;
+	}
 	
+	@Override
+	public Chromosome toStrand(boolean strand) {
+		return toStrand(strand?Strand.Plus:Strand.Minus);
+	}
+	
+	@Override
+	public Chromosome toStrandIndependent() {
+		return toStrand(Strand.Independent);
+	}
+	
+	@Override
+	public Chromosome toPlusStrand() {
+		return toStrand(Strand.Plus);
+	}
+	
+	@Override
+	public Chromosome toMinusStrand() {
+		return toStrand(Strand.Minus);
+	}
+	
+	@Override
+	public Chromosome toOppositeStrand() {
+		return getOppositeStrand();
+	}
 	
 	
 	/**
@@ -93,18 +157,67 @@ public class Chromosome implements ReferenceSequence {
 		return obtain(name,strand?Strand.Plus:Strand.Minus);
 	}
 	public static Chromosome obtain(String name, Strand strand) {
-		Chromosome re = cache[strand.ordinal()].get(name);
-		if (re==null) cache[strand.ordinal()].put(name, re = new Chromosome(name,strand));
+		Chromosome re = lookup(table, name, name.length(), name.hashCode(), strand);
+		if (re==null) re = intern(name, strand);
+		return re;
+	}
+	
+	/**
+	 * Same as {@link #obtain(String)}, but does not allocate if the chromosome is already known.
+	 * @param name
+	 * @return
+	 */
+	public static Chromosome obtain(CharSequence name) {
+		int l = name.length();
+		if (l>0 && name.charAt(l-1)=='+') return obtain(name, l-1, Strand.Plus);
+		if (l>0 && name.charAt(l-1)=='-') return obtain(name, l-1, Strand.Minus);
+		return obtain(name, l, Strand.Independent);
+	}
+	
+	/**
+	 * Same as {@link #obtain(String, Strand)}, but does not allocate if the chromosome is already known.
+	 * @param name
+	 * @param strand
+	 * @return
+	 */
+	public static Chromosome obtain(CharSequence name, Strand strand) {
+		return obtain(name, name.length(), strand);
+	}
+	
+	private static Chromosome obtain(CharSequence name, int end, Strand strand) {
+		int h = 0;
+		for (int i=0; i<end; i++)
+			h = 31*h+name.charAt(i);
+		Chromosome re = lookup(table, name, end, h, strand);
+		if (re==null) re = intern(name.subSequence(0, end).toString(), strand);
 		return re;
 	}
 	
+	/**
+	 * Gets the chromosome with the given id (see {@link #getId()}).
+	 * @param id
+	 * @return
+	 */
+	public static Chromosome get(int id) {
+		return byId[id];
+	}
+	
+	/**
+	 * All ids are smaller than this.
+	 * @return
+	 */
+	public static int getNumIds() {
+		return numIds;
+	}
+	
 	public static Chromosome read(BinaryReader file) throws IOException {
 		int l = file.getInt();
-		char[] name = new char[l];
+		StringBuilder name = readBuffer.get();
+		name.setLength(0);
 		for (int i=0; i<l; i++)
-			name[i] = file.getAsciiChar();
-		Strand s = Strand.values()[file.getInt()];
-		return obtain(String.valueOf(name),s);
+			name.append(file.getAsciiChar());
+		Strand s = STRANDS[file.getInt()];
+		return obtain(name,s);
 	}
 	public static void write(Chromosome chr, PageFileWriter file) throws IOException {
 		file.putInt(chr.getName().length());
@@ -114,13 +227,105 @@ public class Chromosome implements ReferenceSequence {
 	}
 	
 	
-	@SuppressWarnings("unchecked")
-	private final static HashMap<String,Chromosome>[] cache = new HashMap[Strand.values().length];
-	static {
-		for (int i=0; i<cache.length; i++)
-			cache[i] = new HashMap<String,Chromosome>();
+	private static final Strand[] STRANDS = Strand.values();
+	private static final ThreadLocal<StringBuilder> readBuffer = ThreadLocal.withInitial(StringBuilder::new);
+	
+	/**
+	 * Key of the intern table: the name as obtained (i.e. not necessarily normalized) and the strand of chr.
+	 */
+	private static final class Entry {
+		final String name;
+		final int hash;
+		final Chromosome chr;
+		Entry(String name, int hash, Chromosome chr) {
+			this.name = name;
+			this.hash = hash;
+			this.chr = chr;
+		}
+	}
+	
+	private static final Object lock = new Object();
+	// open addressing with linear probing; entries are never removed, the table is replaced when growing (all under lock)
+	private static volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<Entry>(256);
+	private static int entries = 0;
+	private static volatile Chromosome[] byId = new Chromosome[64];
+	private static volatile int numIds = 0;
+	
+	private static int hash(int nameHash, Strand strand) {
+		int h = nameHash*31+strand.ordinal();
+		return h^(h>>>16);
+	}
+	
+	private static Chromosome lookup(AtomicReferenceArray<Entry> t, CharSequence name, int length, int nameHash, Strand strand) {
+		int h = hash(nameHash, strand);
+		int mask = t.length()-1;
+		for (int i=h&mask; ; i=(i+1)&mask) {
+			Entry e = t.get(i);
+			if (e==null) return null;
+			if (e.hash==h && e.chr.strand==strand && equals(e.name, name, length)) return e.chr;
+		}
+	}
+	
+	private static boolean equals(String a, CharSequence b, int length) {
+		if (a.length()!=length) return false;
+		if (b instanceof String && b.length()==length) return a.equals(b);
+		for (int i=0; i<length; i++)
+			if (a.charAt(i)!=b.charAt(i))
+				return false;
+		return true;
+	}
+	
+	private static Chromosome intern(String name, Strand strand) {
+		synchronized (lock) {
+			Chromosome re = lookup(table, name, name.length(), name.hashCode(), strand);
+			if (re!=null) return re;
+			
+			String normalized = normalize(name);
+			re = lookup(table, normalized, normalized.length(), normalized.hashCode(), strand);
+			if (re==null) {
+				Chromosome[] ids = byId;
+				if (numIds==ids.length) byId = ids = Arrays.copyOf(ids, ids.length*2);
+				ids[numIds] = re = new Chromosome(normalized, strand, numIds);
+				numIds++;
+				put(normalized, re);
+			}
+			if (!normalized.equals(name))
+				put(name, re);
+			return re;
+		}
 	}
-	public static Chromosome UNMAPPED = new Chromosome("UNMAPPED",Strand.Independent);
+	
+	private static void put(String name, Chromosome chr) {
+		AtomicReferenceArray<Entry> t = table;
+		if ((entries+1)*2>t.length()) {
+			AtomicReferenceArray<Entry> n = new AtomicReferenceArray<Entry>(t.length()*2);
+			for (int i=0; i<t.length(); i++)
+				if (t.get(i)!=null)
+					insert(n, t.get(i));
+			table = t = n;
+		}
+		insert(t, new Entry(name, hash(name.hashCode(), chr.strand), chr));
+		entries++;
+	}
+	
+	private static void insert(AtomicReferenceArray<Entry> t, Entry e) {
+		int mask = t.length()-1;
+		int i = e.hash&mask;
+		while (t.get(i)!=null)
+			i = (i+1)&mask;
+		t.set(i, e);
+	}
+	
+	/**
+	 * Chromosomes read by {@link gedi.util.orm.OrmSerializer} or {@link gedi.util.orm.ClassTree} are replaced by the interned
+	 * instance (only name and strand are persisted, the id is only valid in this JVM).
+	 */
+	@Override
+	public Chromosome resolve() {
+		return obtain(name, strand);
+	}
+	
+	public static Chromosome UNMAPPED = obtain("UNMAPPED",Strand.Independent);
 	
 	
 	@Override
@@ -29,6 +29,16 @@ public interface ReferenceSequence extends Comparable<ReferenceSequence> {
 	String getName();
 	Strand getStrand();
 	
+	/**
+	 * Dense integer id of this reference (see {@link Chromosome#getId()}). Chromosome returns its id directly, this default
+	 * implementation has to look up the chromosome by name (i.e. it hashes the name on each call), so implementations that are
+	 * used as keys of a {@link ReferenceSequenceMap} should override it.
+	 * @return
+	 */
+	default int getId() {
+		return Chromosome.obtain(getName(),getStrand()).getId();
+	}
+	
 	/**
 	 * Strips the leading chr, if present; e.g. used by Ensembl
 	 * @return
@@ -0,0 +1,127 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.core.reference;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Map from reference sequences to values, which looks up values in an array indexed by {@link ReferenceSequence#getId()} (i.e.
+ * without hashing the name). Iteration is in insertion order (as for a {@link LinkedHashMap}).
+ *
+ * As for HashMap, modifications must be synchronized, but concurrent lookups are safe if there are no modifications.
+ *
+ * @author erhard
+ *
+ * @param <V>
+ */
+public class ReferenceSequenceMap<V> extends AbstractMap<ReferenceSequence,V> {
+
+	private static final Object NULL = new Object();
+
+	private LinkedHashMap<ReferenceSequence,V> map = new LinkedHashMap<ReferenceSequence, V>();
+	private Object[] byId = new Object[0];
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V get(Object key) {
+		if (!(key instanceof ReferenceSequence)) return null;
+		int id = ((ReferenceSequence)key).getId();
+		Object[] a = byId;
+		if (id>=a.length || a[id]==NULL) return null;
+		return (V) a[id];
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		if (!(key instanceof ReferenceSequence)) return false;
+		int id = ((ReferenceSequence)key).getId();
+		Object[] a = byId;
+		return id<a.length && a[id]!=null;
+	}
+
+	@Override
+	public V put(ReferenceSequence key, V value) {
+		int id = key.getId();
+		if (id>=byId.length) byId = Arrays.copyOf(byId, Math.max(id+1, Math.max(16, byId.length*2)));
+		byId[id] = value==null?NULL:value;
+		return map.put(key, value);
+	}
+
+	@Override
+	public V remove(Object key) {
+		if (!containsKey(key)) return null;
+		byId[((ReferenceSequence)key).getId()] = null;
+		return map.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(byId, null);
+		map.clear();
+	}
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public Set<Entry<ReferenceSequence, V>> entrySet() {
+		return new AbstractSet<Entry<ReferenceSequence,V>>() {
+			@Override
+			public int size() {
+				return map.size();
+			}
+			@Override
+			public Iterator<Entry<ReferenceSequence, V>> iterator() {
+				Iterator<Entry<ReferenceSequence, V>> it = map.entrySet().iterator();
+				return new Iterator<Entry<ReferenceSequence,V>>() {
+					private ReferenceSequence last;
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+					@Override
+					public Entry<ReferenceSequence, V> next() {
+						Entry<ReferenceSequence, V> e = it.next();
+						last = e.getKey();
+						return new SimpleEntry<ReferenceSequence, V>(e) {
+							@Override
+							public V setValue(V value) {
+								put(getKey(), value);
+								return super.setValue(value);
+							}
+						};
+					}
+					@Override
+					public void remove() {
+						it.remove();
+						byId[last.getId()] = null;
+					}
+				};
+			}
+		};
+	}
+
+}
@@ -25,6 +25,9 @@ import gedi.util.StringUtils;
 import gedi.util.datastructure.charsequence.MaskedCharSequence;
 import gedi.util.functions.EI;
 import gedi.util.mutable.MutableMonad;
+import gedi.util.nashorn.CompiledJSFunction;
+import gedi.util.nashorn.CompiledJSPredicate;
+import gedi.util.nashorn.JSExpressionCompiler;
 import gedi.util.nashorn.JSFunction;
 import gedi.util.nashorn.JSPredicate;
 import gedi.util.orm.Orm;
@@ -119,17 +122,23 @@ public interface GenomicRegionFeature<O> extends Consumer<Set<O>> {
 		});
 	};
 	
+	/**
+	 * Simple expressions (i.e. without ;) are compiled to java (see {@link JSExpressionCompiler}) for the class of this feature
+	 * right away; only if this is impossible, the condition is evaluated by nashorn.
+	 * @param js
+	 * @throws ScriptException
+	 */
 	default void addCondition(String js) throws ScriptException {
 		StringBuilder code = new StringBuilder();
 		code.append("function() {\n");
 		if (js.contains(";")) {
 			code.append(js);
 			code.append("}");
+			addCondition(new JSPredicate(true, code.toString()));
 		} else {
 			code.append("return "+js+";\n}");
+			addCondition(new CompiledJSPredicate(js, code.toString(), getClass()));
 		}
-		
-		addCondition(new JSPredicate(true, code.toString()));
 	};
 	
 	void addCondition(Predicate<GenomicRegionFeature<O>> condition);
@@ -193,17 +202,23 @@ public interface GenomicRegionFeature<O> extends Consumer<Set<O>> {
 		return re;
 	}
 	
+	/**
+	 * Simple expressions (i.e. without ;) are compiled to java (see {@link JSExpressionCompiler}) for the class of the first annotation
+	 * they are applied to (as it is not known before); only if this is impossible, they are evaluated by nashorn.
+	 * @param js
+	 * @throws ScriptException
+	 */
 	default void addPredicate(String js) throws ScriptException {
 		StringBuilder code = new StringBuilder();
 		code.append("function(f) {\n");
 		if (js.contains(";")) {
 			code.append(js);
 			code.append("}");
+			addPredicate(new JSPredicate(true, code.toString()));
 		} else {
 			code.append("return "+js+";\n}");
+			addPredicate(new CompiledJSPredicate(js, code.toString(), null));
 		}
-		
-		addPredicate(new JSPredicate(true, code.toString()));
 	}
 	default void addFunction(String js) throws ScriptException {
 		StringBuilder code = new StringBuilder();
@@ -211,11 +226,11 @@ public interface GenomicRegionFeature<O> extends Consumer<Set<O>> {
 		if (js.contains(";")) {
 			code.append(js);
 			code.append("}");
+			addFunction(new JSFunction(true, code.toString()));
 		} else {
 			code.append("return "+js+";\n}");
+			addFunction(new CompiledJSFunction(js, code.toString(), null));
 		}
-		
-		addFunction(new JSFunction(true, code.toString()));
 	}
 	
 	default void addField(String field) throws ScriptException {
@@ -28,14 +28,18 @@ import gedi.util.userInteraction.results.ResultProducer;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
@@ -160,21 +164,33 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 	
 	private boolean running = false;
 	
+	/**
+	 * Signals a runner to finish
+	 */
+	private static final ReferenceGenomicRegion[] END = new ReferenceGenomicRegion[0];
+	
+	/**
+	 * Each runner owns copies of all features (and their data sets) and processes whole blocks taken from the
+	 * shared queue, i.e. an idle runner always takes the next available block.
+	 * @author erhard
+	 *
+	 */
 	private static class Runner extends Thread{
 		private BitVector newSet;
 		private ArrayList<Set> data = new ArrayList<Set>();
 		private ArrayList<GenomicRegionFeature<?>> features = new ArrayList<GenomicRegionFeature<?>>();
 		private ArrayList<int[]> inputs;
-		private Throwable exception;
 		
-		private ReferenceGenomicRegion[] buffer = new ReferenceGenomicRegion[0];
-		private ReferenceGenomicRegion[] tasks;
-		private LinkedBlockingQueue<Runner> freeRunner;
+		private BlockingQueue<ReferenceGenomicRegion[]> blocks;
+		private CountDownLatch finished;
+		private AtomicReference<Throwable> exception;
 		private Benchmark benchmark;
 		
-		public Runner(int n, Benchmark benchmark, LinkedBlockingQueue<Runner> freeRunner, ArrayList<GenomicRegionFeature<?>> features, ArrayList<int[]> inputs) {
+		public Runner(int n, Benchmark benchmark, BlockingQueue<ReferenceGenomicRegion[]> blocks, CountDownLatch finished, AtomicReference<Throwable> exception, ArrayList<GenomicRegionFeature<?>> features, ArrayList<int[]> inputs) {
 			super("RunnerThread"+n);
-			this.freeRunner = freeRunner;
+			this.blocks = blocks;
+			this.finished = finished;
+			this.exception = exception;
 			this.inputs = inputs;
 			this.benchmark = benchmark;
 			setDaemon(true);
@@ -182,56 +198,37 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 				this.features.add(f.copy());
 				this.data.add(new HashSet());
 			}
+			this.newSet = new BitVector(features.size());
 		}
 		
 		@Override
 		public void run() {
+			boolean ended = false;
 			try {
 				for (GenomicRegionFeature<?> f : features)
 					f.begin();
 				
-				synchronized (this) {
-					while (!isInterrupted()) {
-						
-						try {
-							freeRunner.add(this);
-							wait();
-						} catch (InterruptedException e) {
-							break;
-						}
-						if (tasks == null) break;
-						
-							for (ReferenceGenomicRegion rgr : tasks) {
-								if (rgr==null) break;
-								process(benchmark,features, inputs, newSet, data, rgr);
-							}
-	
-							tasks = null;
-					}
+				ReferenceGenomicRegion[] block;
+				while ((block=blocks.take())!=END) {
+					for (ReferenceGenomicRegion rgr : block) 
+						process(benchmark,features, inputs, newSet, data, rgr);
 				}
-				
+				ended = true;
 				
 				for (GenomicRegionFeature<?> f : features)
 					f.end();
 			} catch (Throwable e) {
-				this.exception = e;
-				freeRunner.add(this);
+				exception.compareAndSet(null, e);
+				// keep consuming, such that the producer cannot block on a full queue
+				try {
+					while (!ended && blocks.take()!=END);
+				} catch (InterruptedException e1) {
+				}
+			} finally {
+				finished.countDown();
 			}
 		}
 		
-		public synchronized void shutdown() {
-			if (this.tasks!=null) throw new RuntimeException("Concurrency problem!");
-			notify();
-		}
-		
-		
-		public synchronized void setTasks(ArrayList<ReferenceGenomicRegion<?>> tasks) {
-			if (this.tasks!=null) throw new RuntimeException("Concurrency problem!");
-			this.buffer = this.tasks = tasks.toArray(this.buffer);
-			notify();
-		}
-
-		
 	}
 
 	private Runner[] runners;
@@ -243,6 +240,7 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 		lastIntermediate = System.currentTimeMillis();
 		running = true;
 		last = null;
+		newSet = new BitVector(features.size());
 		
 		if (threads==0) {
 			log.info("Executing program in single-thread mode.");
@@ -250,9 +248,18 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 				f.begin();
 		} else {
 			log.info("Executing program in multi-thread mode with "+threads+" threads");
+			blocks = new ArrayBlockingQueue<ReferenceGenomicRegion[]>(QUEUED_BLOCKS_PER_THREAD*threads);
+			finished = new CountDownLatch(threads);
+			exception.set(null);
+			blockSize = INITIAL_BLOCK_SIZE;
+			block = new ReferenceGenomicRegion[blockSize];
+			blockFill = 0;
+			submittedBlocks = 0;
+			producerWaiting = 0;
+			
 			runners = new Runner[threads];
 			for (int i=0; i<runners.length; i++) 
-				runners[i] = new Runner(i,benchmark==null?null:benchmark.sub(), freeRunner,features, inputs);
+				runners[i] = new Runner(i,benchmark==null?null:benchmark.sub(), blocks, finished, exception, features, inputs);
 			
 			runnerFeatures = new GenomicRegionFeature[features.size()][threads];
 			for (int i = 0; i < runnerFeatures.length; i++) 
@@ -314,33 +321,23 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 			produceResults();
 		} else {
 			
+			if (!running && exception.get()!=null) // runners already stopped after an exception
+				throw new RuntimeException("Exception occurred during processing!",exception.get());
 			try {
-				Runner runner = freeRunner.take();
-				runner.setTasks(block);
-				block.clear();
-				while (runner.tasks!=null)
-					Thread.yield();
-
+				if (blockFill>0)
+					submitBlock();
+				for (int i=0; i<runners.length; i++)
+					blocks.put(END);
+				finished.await();
 			} catch (InterruptedException e) {
 				throw new RuntimeException(e);
 			}
 			
-			for (int i=0; i<runners.length; i++) {
-				runners[i].shutdown();
-			}
-			
-			// wait until all threads die
-			int alives;
-			do {
-				alives = 0;
-				for (int i=0; i<runners.length; i++) {
-					if (runners[i].isAlive())
-						alives++;
-				}
-				Thread.yield();
-			} while (alives>0);
-			
 			running = false;
+			if (exception.get()!=null) throw new RuntimeException("Exception occurred during processing!",exception.get());
+			
+			log.fine(()->String.format("Processed %d blocks (final block size %d), waited %s for runners",
+					submittedBlocks,blockSize,StringUtils.getHumanReadableTimespanNano(producerWaiting)));
 			produceResults();
 		}
 	}
@@ -356,9 +353,58 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 		}
 	}
 	
-	private int blockSize = 1024;
-	private ArrayList<ReferenceGenomicRegion<?>> block = new ArrayList<ReferenceGenomicRegion<?>>();
-	private LinkedBlockingQueue<Runner> freeRunner = new LinkedBlockingQueue<Runner>();
+	private static final int MIN_BLOCK_SIZE = 64;
+	private static final int INITIAL_BLOCK_SIZE = 1024;
+	private static final int MAX_BLOCK_SIZE = 16384;
+	private static final int QUEUED_BLOCKS_PER_THREAD = 2;
+	
+	private int blockSize;
+	private ReferenceGenomicRegion[] block;
+	private int blockFill;
+	private BlockingQueue<ReferenceGenomicRegion[]> blocks;
+	private CountDownLatch finished;
+	private AtomicReference<Throwable> exception = new AtomicReference<Throwable>();
+	
+	private long submittedBlocks;
+	private long producerWaiting;
+	
+	/**
+	 * Hands the current block to the runners and adapts the block size: If the runners are idle (no block queued), 
+	 * smaller blocks distribute the work faster; if they cannot keep up (queue full), larger blocks reduce the overhead.
+	 * @throws InterruptedException
+	 */
+	private void submitBlock() throws InterruptedException {
+		if (exception.get()!=null) {
+			stopRunners();
+			throw new RuntimeException("Exception occurred during processing!",exception.get());
+		}
+		
+		if (blocks.isEmpty()) 
+			blockSize = Math.max(MIN_BLOCK_SIZE, blockSize>>1);
+		else if (blocks.remainingCapacity()==0)
+			blockSize = Math.min(MAX_BLOCK_SIZE, blockSize<<1);
+		
+		long start = System.nanoTime();
+		blocks.put(blockFill==block.length?block:Arrays.copyOf(block, blockFill));
+		producerWaiting+=System.nanoTime()-start;
+		submittedBlocks++;
+		
+		block = new ReferenceGenomicRegion[blockSize];
+		blockFill = 0;
+	}
+	
+	/**
+	 * After a runner failed: discards all queued blocks, lets all runners finish and waits for them.
+	 * @throws InterruptedException
+	 */
+	private void stopRunners() throws InterruptedException {
+		if (!running) return;
+		blocks.clear();
+		for (int i=0; i<runners.length; i++)
+			blocks.put(END);
+		finished.await();
+		running = false;
+	}
 	
 	private ReferenceGenomicRegion<D> last = null;
 	
@@ -384,19 +430,14 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 		if (threads==0) {
 			process(benchmark,features,inputs,newSet,data,rgr);
 		} else {
-			if (block.size()==blockSize) { 
+			block[blockFill++] = rgr.toImmutable();
+			if (blockFill==block.length) { 
 				try {
-//					long start = System.nanoTime();
-					Runner runner = freeRunner.take();
-					if (runner.exception!=null) throw new RuntimeException("Exception occurred during processing!",runner.exception);
-					runner.setTasks(block);
-					block.clear();
-
+					submitBlock();
 				} catch (InterruptedException e) {
 					throw new RuntimeException(e);
 				}
 			}
-			block.add(rgr.toImmutable());
 		}
 		
 	}
@@ -509,6 +550,7 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 			
 			long[][] duration = null;
 			for (Benchmark b : subs) {
+				if (b.duration==null) continue;
 				if (duration==null) duration = new long[b.duration.length][3];
 				for (int i=0;i<duration.length; i++)
 					ArrayUtils.add(duration[i], b.duration[i]);
@@ -520,6 +562,7 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 			
 			long[][] counter = null;
 			for (Benchmark b : subs) {
+				if (b.counter==null) continue;
 				if (counter==null) counter = new long[b.counter.length][2];
 				for (int i=0;i<counter.length; i++)
 					ArrayUtils.add(counter[i], b.counter[i]);
@@ -529,18 +572,34 @@ public class GenomicRegionFeatureProgram<D> implements Consumer<ReferenceGenomic
 		
 	}
 
-	public void printBenchmark() {
-		if (benchmark==null) return;
+	/**
+	 * Gets the benchmark metrics of each feature (summed over all threads), i.e. for each feature (in the order they have been added) 
+	 * the number of calls, the number of cached calls, and the total time (in ns) for setting its input, accepting and postprocessing.
+	 * Returns null if benchmarking is disabled or no region has been processed.
+	 * @return
+	 */
+	public long[][] getBenchmarkMetrics() {
+		if (benchmark==null) return null;
 		long[][] counter = benchmark.getCounter();
 		long[][] duration = benchmark.getDuration();
+		if (counter==null || duration==null) return null;
+		long[][] re = new long[features.size()][];
+		for (int i=0; i<re.length; i++)
+			re[i] = new long[] {counter[i][0],counter[i][1],duration[i][0],duration[i][1],duration[i][2]};
+		return re;
+	}
+	
+	public void printBenchmark() {
+		long[][] metrics = getBenchmarkMetrics();
+		if (metrics==null) return;
 		System.out.println("Id\tCalled/Cached\tsetInput\tAccept\tPostprocess\tTotal");
 		for (int i=0; i<features.size(); i++)
 			System.out.println(features.get(i).getId()+"\t"+
-					counter[i][0]+" / "+counter[i][1]+"\t"+
-					StringUtils.getHumanReadableTimespan(duration[i][0]/1000000L)+"\t"+
-					StringUtils.getHumanReadableTimespan(duration[i][1]/1000000L)+"\t"+
-					StringUtils.getHumanReadableTimespan(duration[i][2]/1000000L)+"\t"+
-					StringUtils.getHumanReadableTimespan((duration[i][0]+duration[i][1]+duration[i][2])/1000000L));
+					metrics[i][0]+" / "+metrics[i][1]+"\t"+
+					StringUtils.getHumanReadableTimespan(metrics[i][2]/1000000L)+"\t"+
+					StringUtils.getHumanReadableTimespan(metrics[i][3]/1000000L)+"\t"+
+					StringUtils.getHumanReadableTimespan(metrics[i][4]/1000000L)+"\t"+
+					StringUtils.getHumanReadableTimespan((metrics[i][2]+metrics[i][3]+metrics[i][4])/1000000L));
 	}
 	
 	public void setBenchmark(boolean benchmark) {
@@ -21,6 +21,7 @@ package gedi.core.region.intervalTree;
 import gedi.core.data.annotation.ReferenceSequenceLengthProvider;
 import gedi.core.reference.Chromosome;
 import gedi.core.reference.ReferenceSequence;
+import gedi.core.reference.ReferenceSequenceMap;
 import gedi.core.region.GenomicRegion;
 import gedi.core.region.GenomicRegionStorage;
 import gedi.core.region.MutableReferenceGenomicRegion;
@@ -28,7 +29,6 @@ import gedi.util.datastructure.tree.redblacktree.IntervalTree;
 import gedi.util.dynamic.DynamicObject;
 import gedi.util.functions.MappedSpliterator;
 
-import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.Spliterator;
@@ -38,7 +38,7 @@ import java.util.function.Supplier;
 
 public class MemoryIntervalTreeStorage<D> implements GenomicRegionStorage<D>, ReferenceSequenceLengthProvider {
 
-	private HashMap<ReferenceSequence, IntervalTree<GenomicRegion,D>> map = new HashMap<>();
+	private ReferenceSequenceMap<IntervalTree<GenomicRegion,D>> map = new ReferenceSequenceMap<>();
 	private DynamicObject meta;
 	private Class<D> type;
 	
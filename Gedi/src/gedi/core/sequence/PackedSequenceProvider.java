@@ -0,0 +1,380 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gedi.core.sequence;
+
+import gedi.core.region.GenomicRegion;
+import gedi.util.SequenceUtils;
+import gedi.util.StringUtils;
+import gedi.util.io.randomaccess.PageFile;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Serves sequences from a memory mapped file written by {@link PackedSequenceWriter}. Sequences of single part regions
+ * are returned as views ({@link PackedSequence}) directly on the mapped file, i.e. nothing is decoded until it is accessed.
+ *
+ * Safe for concurrent callers.
+ *
+ * @author erhard
+ *
+ */
+public class PackedSequenceProvider implements SequenceProvider, AutoCloseable {
+
+	private static final char[] BASES = {'A','C','G','T'};
+	private static final char[] MASKED_BASES = {'a','c','g','t'};
+
+	private String path;
+	private RandomAccessFile file;
+	private LinkedHashMap<String,PackedEntry> index = new LinkedHashMap<String, PackedEntry>();
+
+	public PackedSequenceProvider(String path) throws IOException {
+		this.path = path;
+
+		PageFile f = new PageFile(path);
+		for (int i=0; i<PackedSequenceWriter.MAGIC.length(); i++)
+			if (f.getAsciiChar()!=PackedSequenceWriter.MAGIC.charAt(i)) {
+				f.close();
+				throw new IOException(path+" is not a packed sequence file!");
+			}
+		f.position(f.getLong());
+		int n = f.getCInt();
+		PackedEntry[] entries = new PackedEntry[n];
+		for (int i=0; i<n; i++) {
+			String name = f.getString();
+			int length = f.getInt();
+			long offset = f.getLong();
+			entries[i] = new PackedEntry(name, length, offset, readRuns(f), readRuns(f));
+		}
+		f.close();
+
+		file = new RandomAccessFile(path, "r");
+		FileChannel channel = file.getChannel();
+		for (PackedEntry e : entries) {
+			e.data = channel.map(MapMode.READ_ONLY, e.offset, (e.length+3)/4);
+			index.put(e.name, e);
+		}
+	}
+
+	private static int[][] readRuns(PageFile f) throws IOException {
+		int n = f.getCInt();
+		int[][] re = new int[2][n];
+		for (int i=0; i<n; i++) {
+			re[0][i] = f.getInt();
+			re[1][i] = f.getInt();
+		}
+		return re;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	private PackedEntry getEntry(String name) {
+		PackedEntry re = index.get(name);
+		if (re==null && name.indexOf(' ')!=-1)
+			re = index.get(name.substring(0,name.indexOf(' ')));
+		if (re==null && index.containsKey("chr"+name))
+			re = index.get("chr"+name);
+		if (re==null && index.containsKey(StringUtils.removeHeader(name, "chr")))
+			re = index.get(StringUtils.removeHeader(name, "chr"));
+		return re;
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	@Override
+	public int getLength(String name) {
+		PackedEntry entry = getEntry(name);
+		if (entry==null) return -1;
+		return entry.length;
+	}
+
+	/**
+	 * Gets a view on the given part of the sequence; returns null if the sequence is unknown.
+	 * @param name
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public PackedSequence getPlusSequence(String name, int start, int end) {
+		PackedEntry entry = getEntry(name);
+		if (entry==null) return null;
+		if (start<0 || end>entry.length || start>end)
+			throw new IndexOutOfBoundsException(name+" sequence length: "+entry.length+" - "+start+"-"+end);
+		return new PackedSequence(entry, start, end);
+	}
+
+	@Override
+	public CharSequence getPlusSequence(String name, GenomicRegion region) {
+		PackedEntry entry = getEntry(name);
+		if (entry==null) return null;
+		if (region.getTotalLength()==0) return "";
+		if (region.getStart()<0 || region.getEnd()>entry.length)
+			throw new IndexOutOfBoundsException(name+" sequence length: "+entry.length+" - "+region.toRegionString());
+
+		PackedSequence seq = new PackedSequence(entry, 0, entry.length);
+		if (region.getNumParts()==1)
+			return seq.subSequence(region.getStart(), region.getEnd());
+		return SequenceUtils.extractSequence(region, seq);
+	}
+
+	@Override
+	public char getPlusSequence(String name, int pos) {
+		PackedEntry entry = getEntry(name);
+		if (entry==null) return '\0';
+		if (pos<0 || pos+1>entry.length) throw new IndexOutOfBoundsException();
+		return entry.charAt(pos);
+	}
+
+	/**
+	 * Gets the 2-bit code of the k-mer starting at pos (see {@link #getKmers(String, int, int, int, int[])}).
+	 * @param name
+	 * @param pos
+	 * @param k
+	 * @return
+	 */
+	public int getKmer(String name, int pos, int k) {
+		PackedSequence seq = getPlusSequence(name, pos, pos+k);
+		if (seq==null) throw new IllegalArgumentException("Unknown sequence: "+name);
+		return seq.getKmer(0, k);
+	}
+
+	/**
+	 * Computes the codes of all k-mers starting in start to end-k (inclusive) and puts them into re (which is created if null
+	 * or too small). The codes are identical to {@link gedi.util.sequence.KmerIteratorBuilder#hash(CharSequence)} for the
+	 * DNA alphabet (i.e. A=0,C=1,G=2,T=3, the first base in the highest bits), except that soft-masked bases are treated
+	 * as their upper case counterparts. k-mers containing an N are -1. k must be at most 15.
+	 * @param name
+	 * @param start
+	 * @param end
+	 * @param k
+	 * @param re
+	 * @return
+	 */
+	public int[] getKmers(String name, int start, int end, int k, int[] re) {
+		PackedSequence seq = getPlusSequence(name, start, end);
+		if (seq==null) throw new IllegalArgumentException("Unknown sequence: "+name);
+		return seq.getKmers(k, re);
+	}
+
+	@Override
+	public Set<String> getSequenceNames() {
+		return Collections.unmodifiableSet(index.keySet());
+	}
+
+	@Override
+	public String toString() {
+		return "PackedSequenceProvider [path="+path+"]";
+	}
+
+	private static class PackedEntry {
+		private String name;
+		private int length;
+		private long offset;
+		private ByteBuffer data;
+		private int[] nStart;
+		private int[] nEnd;
+		private int[] maskStart;
+		private int[] maskEnd;
+
+		public PackedEntry(String name, int length, long offset, int[][] nRuns, int[][] maskRuns) {
+			this.name = name;
+			this.length = length;
+			this.offset = offset;
+			this.nStart = nRuns[0];
+			this.nEnd = nRuns[1];
+			this.maskStart = maskRuns[0];
+			this.maskEnd = maskRuns[1];
+		}
+
+		private int code(int pos) {
+			return (data.get(pos>>2)>>(6-2*(pos&3)))&3;
+		}
+
+		private char charAt(int pos) {
+			boolean masked = inRun(maskStart, maskEnd, pos);
+			if (inRun(nStart, nEnd, pos)) return masked?'n':'N';
+			return masked?MASKED_BASES[code(pos)]:BASES[code(pos)];
+		}
+
+		/**
+		 * Index of the first run that ends after pos
+		 * @param end
+		 * @param pos
+		 * @return
+		 */
+		private static int firstRun(int[] end, int pos) {
+			int re = Arrays.binarySearch(end, pos);
+			return re<0?-re-1:re+1;
+		}
+
+		private static boolean inRun(int[] start, int[] end, int pos) {
+			int r = firstRun(end, pos);
+			return r<start.length && start[r]<=pos;
+		}
+
+		private void getChars(int from, int to, char[] dst, int dstBegin) {
+			for (int p=from; p<to; p++)
+				dst[dstBegin+p-from] = BASES[code(p)];
+			for (int r=firstRun(maskEnd, from); r<maskStart.length && maskStart[r]<to; r++)
+				for (int p=Math.max(from, maskStart[r]); p<Math.min(to, maskEnd[r]); p++)
+					dst[dstBegin+p-from] = MASKED_BASES[code(p)];
+			for (int r=firstRun(nEnd, from); r<nStart.length && nStart[r]<to; r++)
+				for (int p=Math.max(from, nStart[r]); p<Math.min(to, nEnd[r]); p++)
+					dst[dstBegin+p-from] = Character.isLowerCase(dst[dstBegin+p-from])?'n':'N';
+		}
+	}
+
+	/**
+	 * Zero-copy view on a part of a packed sequence; {@link #subSequence(int, int)} creates another view. {@link #equals(Object)}
+	 * and {@link #hashCode()} are consistent with {@link String} (but String.equals does not accept a view, so call
+	 * {@link #toString()} when comparing to Strings).
+	 * @author erhard
+	 *
+	 */
+	public static class PackedSequence implements CharSequence {
+		private PackedEntry entry;
+		private int start;
+		private int end;
+
+		private PackedSequence(PackedEntry entry, int start, int end) {
+			this.entry = entry;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public int length() {
+			return end-start;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index<0 || index>=length()) throw new IndexOutOfBoundsException(index+" length: "+length());
+			return entry.charAt(start+index);
+		}
+
+		@Override
+		public PackedSequence subSequence(int start, int end) {
+			if (start<0 || end>length() || start>end) throw new IndexOutOfBoundsException(start+"-"+end+" length: "+length());
+			return new PackedSequence(entry, this.start+start, this.start+end);
+		}
+
+		/**
+		 * Decodes the chars from srcBegin to srcEnd (relative to this view) into dst
+		 * @param srcBegin
+		 * @param srcEnd
+		 * @param dst
+		 * @param dstBegin
+		 */
+		public void getChars(int srcBegin, int srcEnd, char[] dst, int dstBegin) {
+			if (srcBegin<0 || srcEnd>length() || srcBegin>srcEnd) throw new IndexOutOfBoundsException(srcBegin+"-"+srcEnd+" length: "+length());
+			entry.getChars(start+srcBegin, start+srcEnd, dst, dstBegin);
+		}
+
+		/**
+		 * Gets the code of the k-mer starting at index (see {@link PackedSequenceProvider#getKmers(String, int, int, int, int[])}).
+		 * @param index
+		 * @param k
+		 * @return
+		 */
+		public int getKmer(int index, int k) {
+			if (k>15) throw new IllegalArgumentException("k must be at most 15!");
+			if (index<0 || index+k>length()) throw new IndexOutOfBoundsException(index+"+"+k+" length: "+length());
+			int from = start+index;
+			int r = PackedEntry.firstRun(entry.nEnd, from);
+			if (r<entry.nStart.length && entry.nStart[r]<from+k) return -1;
+			int re = 0;
+			for (int p=from; p<from+k; p++)
+				re = (re<<2)|entry.code(p);
+			return re;
+		}
+
+		/**
+		 * Computes the codes of all k-mers in this view (see {@link PackedSequenceProvider#getKmers(String, int, int, int, int[])}).
+		 * @param k
+		 * @param re
+		 * @return
+		 */
+		public int[] getKmers(int k, int[] re) {
+			if (k>15) throw new IllegalArgumentException("k must be at most 15!");
+			int n = Math.max(0, length()-k+1);
+			if (re==null || re.length<n) re = new int[n];
+			if (n==0) return re;
+			int mask = (1<<(2*k))-1;
+
+			int r = PackedEntry.firstRun(entry.nEnd, start);
+			int hash = 0;
+			int valid = 0; // number of bases since the last N
+			for (int p=start; p<start+n+k-1; p++) {
+				while (r<entry.nStart.length && entry.nEnd[r]<=p) r++;
+				if (r<entry.nStart.length && entry.nStart[r]<=p)
+					valid = 0;
+				else {
+					hash = ((hash<<2)&mask)|entry.code(p);
+					valid++;
+				}
+				int i = p-start-k+1;
+				if (i>=0)
+					re[i] = valid>=k?hash:-1;
+			}
+			return re;
+		}
+
+		@Override
+		public String toString() {
+			char[] re = new char[length()];
+			entry.getChars(start, end, re, 0);
+			return new String(re);
+		}
+
+		@Override
+		public int hashCode() {
+			int h = 0;
+			for (int i=start; i<end; i++)
+				h = 31*h+entry.charAt(i);
+			return h;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this==obj) return true;
+			if (!(obj instanceof CharSequence)) return false;
+			CharSequence o = (CharSequence) obj;
+			if (o.length()!=length()) return false;
+			if (o instanceof PackedSequence && ((PackedSequence)o).entry==entry && ((PackedSequence)o).start==start) return true;
+			for (int i=0; i<length(); i++)
+				if (charAt(i)!=o.charAt(i)) return false;
+			return true;
+		}
+
+	}
+
+}
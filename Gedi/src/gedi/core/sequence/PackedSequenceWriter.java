@@ -0,0 +1,177 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gedi.core.sequence;
+
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.util.datastructure.collections.intcollections.IntArrayList;
+import gedi.util.io.randomaccess.PageFileWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Writes genomic sequences in the 2-bit packed format read by {@link PackedSequenceProvider}.
+ *
+ * Layout: magic (4 bytes), offset of the index (long), the packed bases of all sequences (4 bases per byte, first base in the
+ * highest bits, A=0,C=1,G=2,T=3), and the index. For each sequence, the index contains its name, length, the offset of its
+ * packed bases and the runs of N and of lower case (soft-masked) bases as (start,end) pairs. All characters other than ACGT
+ * (in any case) are stored as N.
+ *
+ * @author erhard
+ *
+ */
+public class PackedSequenceWriter implements AutoCloseable {
+
+	public static final String MAGIC = "PSEQ";
+
+	private static final int CHUNK = 1<<20;
+
+	private PageFileWriter out;
+	private ArrayList<Entry> entries = new ArrayList<Entry>();
+	private HashSet<String> names = new HashSet<String>();
+
+	private byte[] buffer = new byte[CHUNK/4];
+
+	public PackedSequenceWriter(String path) throws IOException {
+		out = new PageFileWriter(path);
+		out.putAsciiChars(MAGIC);
+		out.putLong(0);
+	}
+
+	/**
+	 * Adds all sequences of the given provider (in the order of {@link SequenceProvider#getSequenceNames()}), reading chunks
+	 * of 1M bases at a time.
+	 * @param sequences
+	 * @return
+	 * @throws IOException
+	 */
+	public PackedSequenceWriter addAll(SequenceProvider sequences) throws IOException {
+		for (String name : sequences.getSequenceNames()) {
+			int len = sequences.getLength(name);
+			Entry e = begin(name, len);
+			for (int s=0; s<len; s+=CHUNK)
+				append(e, sequences.getPlusSequence(name, new ArrayGenomicRegion(s, Math.min(len, s+CHUNK))));
+			end(e);
+		}
+		return this;
+	}
+
+	public PackedSequenceWriter add(String name, CharSequence sequence) throws IOException {
+		Entry e = begin(name, sequence.length());
+		for (int s=0; s<sequence.length(); s+=CHUNK)
+			append(e, sequence.subSequence(s, Math.min(sequence.length(), s+CHUNK)));
+		end(e);
+		return this;
+	}
+
+	private Entry begin(String name, int length) throws IOException {
+		if (!names.add(name)) throw new IllegalArgumentException("Sequence "+name+" already added!");
+		Entry re = new Entry(name, length, out.position());
+		entries.add(re);
+		return re;
+	}
+
+	/**
+	 * Chunks must be a multiple of 4 long (except for the last)!
+	 * @param e
+	 * @param chunk
+	 * @throws IOException
+	 */
+	private void append(Entry e, CharSequence chunk) throws IOException {
+		int n = 0;
+		for (int i=0; i<chunk.length(); i+=4, n++) {
+			int b = 0;
+			for (int j=0; j<4; j++) {
+				int c = 0;
+				if (i+j<chunk.length()) {
+					char ch = chunk.charAt(i+j);
+					c = code(ch);
+					e.addRun(e.nRuns, e.pos, c<0);
+					e.addRun(e.maskRuns, e.pos, Character.isLowerCase(ch));
+					e.pos++;
+				}
+				b |= Math.max(c,0)<<(6-2*j);
+			}
+			buffer[n] = (byte)b;
+		}
+		out.put(buffer, 0, n);
+	}
+
+	private void end(Entry e) {
+		if (e.pos!=e.length) throw new RuntimeException("Sequence "+e.name+" has length "+e.pos+", expected "+e.length);
+	}
+
+	static int code(char c) {
+		switch (c) {
+		case 'A': case 'a': return 0;
+		case 'C': case 'c': return 1;
+		case 'G': case 'g': return 2;
+		case 'T': case 't': return 3;
+		}
+		return -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		long index = out.position();
+		out.putCInt(entries.size());
+		for (Entry e : entries) {
+			out.putString(e.name);
+			out.putInt(e.length);
+			out.putLong(e.offset);
+			writeRuns(e.nRuns);
+			writeRuns(e.maskRuns);
+		}
+		out.putLong(MAGIC.length(), index);
+		out.close();
+	}
+
+	private void writeRuns(IntArrayList runs) throws IOException {
+		out.putCInt(runs.size()/2);
+		for (int i=0; i<runs.size(); i++)
+			out.putInt(runs.getInt(i));
+	}
+
+	private static class Entry {
+		private String name;
+		private int length;
+		private long offset;
+		private int pos = 0;
+		private IntArrayList nRuns = new IntArrayList();
+		private IntArrayList maskRuns = new IntArrayList();
+
+		public Entry(String name, int length, long offset) {
+			this.name = name;
+			this.length = length;
+			this.offset = offset;
+		}
+
+		private void addRun(IntArrayList runs, int pos, boolean in) {
+			if (!in) return;
+			if (runs.size()>0 && runs.getLastInt()==pos)
+				runs.set(runs.size()-1, pos+1);
+			else {
+				runs.add(pos);
+				runs.add(pos+1);
+			}
+		}
+	}
+
+}
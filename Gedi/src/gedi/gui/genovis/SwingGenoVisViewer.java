@@ -250,6 +250,8 @@ public class SwingGenoVisViewer extends JPanel implements GenoVisViewer, Scrolla
 	}
 	
 	public void setPetriNet(PetriNet pn) {
+		if (dataManager!=null && dataManager.getDataPipeline()!=pn)
+			dataManager.dispose();
 		dataManager = new TracksDataManager(pn);
 
 		tracks.clear();
@@ -19,6 +19,7 @@
 package gedi.gui.genovis;
 
 import gedi.core.data.mapper.GenomicRegionDataMappingJob;
+import gedi.core.data.mapper.StorageSource;
 import gedi.core.reference.ReferenceSequence;
 import gedi.core.region.GenomicRegion;
 import gedi.gui.genovis.pixelMapping.PixelLocationMapping;
@@ -154,6 +155,20 @@ public class TracksDataManager {
 	public PetriNet getDataPipeline() {
 		return dataPipeline;
 	}
+	
+	/**
+	 * Cancels the running jobs and removes the cached tiles of all {@link StorageSource}s of the pipeline; must be called when
+	 * this manager (i.e. its pipeline) is replaced, as all tile caches share a global LRU list.
+	 */
+	public synchronized void dispose() {
+		for (Future<?> f : currentSchedulers)
+			f.cancel(true);
+		currentSchedulers.clear();
+		
+		for (Transition t : dataPipeline.getTransitions())
+			if (t.getJob() instanceof GenomicRegionDataMappingJob && ((GenomicRegionDataMappingJob<?,?>)t.getJob()).getMapper() instanceof StorageSource)
+				((StorageSource<?>)((GenomicRegionDataMappingJob<?,?>)t.getJob()).getMapper()).dispose();
+	}
 
 	@Override
 	public String toString() {
@@ -215,8 +215,11 @@ public class FileUtils {
 	}
 
 	
+	private static final ThreadLocal<StringBuilder> referenceBuffer = ThreadLocal.withInitial(StringBuilder::new);
 	public static Chromosome readReferenceSequence(BinaryReader in) throws IOException {
-		return Chromosome.obtain(in.getString());
+		StringBuilder name = referenceBuffer.get();
+		name.setLength(0);
+		return Chromosome.obtain(in.getString(name));
 	}
 	public static ArrayGenomicRegion readGenomicRegion(BinaryReader in) throws IOException {
 		int parts = in.getCInt();
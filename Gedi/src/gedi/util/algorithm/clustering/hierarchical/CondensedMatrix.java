@@ -0,0 +1,216 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.util.algorithm.clustering.hierarchical;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleBiFunction;
+
+/**
+ * Symmetric matrix without diagonal stored as its condensed upper triangle (row major, i.e. the entries (0,1),(0,2),...,(0,n-1),(1,2),...),
+ * which takes n(n-1)/2 values instead of n^2. The values are either stored in a double or float array, or in a memory mapped file
+ * (for matrices that do not fit into the heap).
+ *
+ * @author erhard
+ *
+ */
+public abstract class CondensedMatrix {
+
+	private static final int MAPPED_CHUNK_BITS = 27;
+
+	protected final int n;
+
+	protected CondensedMatrix(int n) {
+		this.n = n;
+	}
+
+	/**
+	 * Number of rows (and columns)
+	 * @return
+	 */
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * Index of (i,j) (i!=j) in the condensed upper triangle
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	public long index(int i, int j) {
+		if (i>j) {
+			int t = i;
+			i = j;
+			j = t;
+		}
+		return (long)i*n-(long)i*(i+1)/2+j-i-1;
+	}
+
+	public abstract double get(int i, int j);
+	public abstract void set(int i, int j, double value);
+
+	/**
+	 * Computes all values using the given number of threads (rows are distributed dynamically among the threads).
+	 * @param a
+	 * @param measure
+	 * @param threads
+	 * @return
+	 */
+	public <C> CondensedMatrix fill(C[] a, ToDoubleBiFunction<C,C> measure, int threads) {
+		if (a.length!=n) throw new IllegalArgumentException("Expected "+n+" objects, got "+a.length);
+		AtomicInteger nextRow = new AtomicInteger();
+		Callable<Void> worker = ()->{
+			for (int i=nextRow.getAndIncrement(); i<n; i=nextRow.getAndIncrement())
+				for (int j=i+1; j<n; j++)
+					set(i,j,measure.applyAsDouble(a[i], a[j]));
+			return null;
+		};
+		if (threads<=1)
+			try {
+				worker.call();
+			} catch (Exception e) {
+				throw new RuntimeException("Could not compute matrix!",e);
+			}
+		else {
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				ArrayList<Callable<Void>> workers = new ArrayList<Callable<Void>>();
+				for (int t=0; t<threads; t++)
+					workers.add(worker);
+				for (Future<Void> f : pool.invokeAll(workers))
+					f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while computing matrix!",e);
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Could not compute matrix!",e.getCause());
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return this;
+	}
+
+	private static int checkedLength(int n) {
+		long len = (long)n*(n-1)/2;
+		if (len>Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("Matrix too large for an array, use a memory mapped matrix!");
+		return (int) len;
+	}
+
+	public static CondensedMatrix doubles(int n) {
+		double[] a = new double[checkedLength(n)];
+		return new CondensedMatrix(n) {
+			@Override
+			public double get(int i, int j) {
+				return a[(int) index(i, j)];
+			}
+			@Override
+			public void set(int i, int j, double value) {
+				a[(int) index(i, j)] = value;
+			}
+		};
+	}
+
+	public static CondensedMatrix floats(int n) {
+		float[] a = new float[checkedLength(n)];
+		return new CondensedMatrix(n) {
+			@Override
+			public double get(int i, int j) {
+				return a[(int) index(i, j)];
+			}
+			@Override
+			public void set(int i, int j, double value) {
+				a[(int) index(i, j)] = (float) value;
+			}
+		};
+	}
+
+	/**
+	 * Creates (or overwrites) the given file and maps it into memory. The file is not deleted afterwards.
+	 * @param file
+	 * @param n
+	 * @param doubles store doubles or floats
+	 * @return
+	 * @throws IOException
+	 */
+	public static CondensedMatrix mapped(File file, int n, boolean doubles) throws IOException {
+		long len = (long)n*(n-1)/2;
+		int bytes = doubles?Double.BYTES:Float.BYTES;
+		long chunk = 1L<<MAPPED_CHUNK_BITS;
+		int chunks = (int) ((len+chunk-1)>>>MAPPED_CHUNK_BITS);
+
+		DoubleBuffer[] dbuff = doubles?new DoubleBuffer[chunks]:null;
+		FloatBuffer[] fbuff = doubles?null:new FloatBuffer[chunks];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(len*bytes);
+			FileChannel channel = raf.getChannel();
+			for (int c=0; c<chunks; c++) {
+				long from = c*chunk;
+				long size = Math.min(chunk, len-from)*bytes;
+				if (doubles)
+					dbuff[c] = channel.map(MapMode.READ_WRITE, from*bytes, size).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+				else
+					fbuff[c] = channel.map(MapMode.READ_WRITE, from*bytes, size).order(ByteOrder.nativeOrder()).asFloatBuffer();
+			}
+		}
+
+		int mask = (int) (chunk-1);
+		if (doubles)
+			return new CondensedMatrix(n) {
+				@Override
+				public double get(int i, int j) {
+					long ind = index(i, j);
+					return dbuff[(int) (ind>>>MAPPED_CHUNK_BITS)].get((int) ind&mask);
+				}
+				@Override
+				public void set(int i, int j, double value) {
+					long ind = index(i, j);
+					dbuff[(int) (ind>>>MAPPED_CHUNK_BITS)].put((int) ind&mask, value);
+				}
+			};
+		return new CondensedMatrix(n) {
+			@Override
+			public double get(int i, int j) {
+				long ind = index(i, j);
+				return fbuff[(int) (ind>>>MAPPED_CHUNK_BITS)].get((int) ind&mask);
+			}
+			@Override
+			public void set(int i, int j, double value) {
+				long ind = index(i, j);
+				fbuff[(int) (ind>>>MAPPED_CHUNK_BITS)].put((int) ind&mask, (float) value);
+			}
+		};
+	}
+
+}
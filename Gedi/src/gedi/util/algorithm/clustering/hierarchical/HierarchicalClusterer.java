@@ -19,6 +19,13 @@
 package gedi.util.algorithm.clustering.hierarchical;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ObjIntConsumer;
 
 import gedi.util.datastructure.collections.intcollections.IntArrayList;
 import gedi.util.functions.DistanceMeasure;
@@ -31,6 +38,10 @@ import gedi.util.functions.SimilarityMeasure;
  * Clustering in O(n^2) time and O(n^2) space
  * <p>
  * see Murtagh, F., "Complexities of hierarchic clustering algorithms: state of the art", Computational Statistics Quarterly, 1, 101-113, 1984.
+ * <p>
+ * The nearest neighbor chain algorithm can also run over a {@link CondensedMatrix} (half the space, float or memory mapped); single linkage
+ * then uses SLINK (Sibson, R., "SLINK: an optimally efficient algorithm for the single-link cluster method", The Computer Journal, 16, 30-34, 1973),
+ * which only needs one row of the matrix at a time.
  *  
  * @author erhard
  *
@@ -88,6 +99,11 @@ public class HierarchicalClusterer<C> {
 				return true;
 			}
 			
+			@Override
+			public double merge(double value1, double value2, int size1, int size2, MeasureType type) {
+				return type==MeasureType.Distance?Math.min(value1, value2):Math.max(value1, value2);
+			}
+			
 		},
 		CompleteLinkage {
 			@Override
@@ -136,6 +152,11 @@ public class HierarchicalClusterer<C> {
 			public boolean supportsIndices() {
 				return true;
 			}
+			
+			@Override
+			public double merge(double value1, double value2, int size1, int size2, MeasureType type) {
+				return type==MeasureType.Distance?Math.max(value1, value2):Math.min(value1, value2);
+			}
 		},
 		UPGMA {
 			@Override
@@ -161,6 +182,11 @@ public class HierarchicalClusterer<C> {
 						matrix[index1][i] = matrix[i][index1] =  w1*matrix[index1][i] + w2*matrix[index2][i];
 				
 			}
+			
+			@Override
+			public double merge(double value1, double value2, int size1, int size2, MeasureType type) {
+				return size1/(double)(size1+size2)*value1 + size2/(double)(size1+size2)*value2;
+			}
 		},
 		WPGMA {
 			@Override
@@ -182,6 +208,11 @@ public class HierarchicalClusterer<C> {
 						matrix[index1][i] = matrix[i][index1] =  .5f*matrix[index1][i] + .5f*matrix[index2][i];
 				
 			}
+			
+			@Override
+			public double merge(double value1, double value2, int size1, int size2, MeasureType type) {
+				return .5f*value1 + .5f*value2;
+			}
 		};
 		
 		
@@ -202,6 +233,17 @@ public class HierarchicalClusterer<C> {
 		public boolean supportsIndices() {
 			return false;
 		}
+		
+		/**
+		 * The value of the merged cluster to another cluster, given the values of the two merged clusters (of size size1 and size2).
+		 * @param value1
+		 * @param value2
+		 * @param size1
+		 * @param size2
+		 * @param type
+		 * @return
+		 */
+		public abstract double merge(double value1, double value2, int size1, int size2, MeasureType type);
 
 	}
 	
@@ -382,6 +424,257 @@ public class HierarchicalClusterer<C> {
 	}
 
 	
+	/**
+	 * Clusters using the given number of threads to compute the values of the measure. Single linkage uses SLINK and computes the
+	 * values on the fly (i.e. in O(n) space), all other modes compute a {@link CondensedMatrix} first.
+	 * @param a
+	 * @param measure
+	 * @param threads
+	 * @return
+	 */
+	public HierarchicalCluster<C> cluster(C[] a, Measure<C> measure, int threads) {
+		if (mode!=ClusteringMode.SingleLinkage)
+			return cluster(a, CondensedMatrix.doubles(a.length).fill(a, measure, threads), measure.type());
+
+		ExecutorService pool = threads>1?Executors.newFixedThreadPool(threads):null;
+		try {
+			return slink(a, a.length, (row,j)->computeRow(a, measure, j, row, pool, threads), measure.type());
+		} finally {
+			if (pool!=null) pool.shutdown();
+		}
+	}
+	
+	/**
+	 * Clusters the rows of the condensed matrix. Single linkage uses SLINK and does not alter the matrix, all other modes use the
+	 * nearest neighbor chain algorithm and alter the matrix!! a may be null (when C is Integer). Merge listeners get the pair of
+	 * objects responsible for each merge for single linkage, and -1 otherwise.
+	 * @param a
+	 * @param matrix
+	 * @param type
+	 * @return
+	 */
+	public HierarchicalCluster<C> cluster(C[] a, CondensedMatrix matrix, MeasureType type) {
+		if (mode==ClusteringMode.SingleLinkage)
+			return slink(a, matrix.size(), (row,j)->{
+				for (int i=0; i<j; i++)
+					row[i] = matrix.get(i, j);
+			}, type);
+		return nearestNeighborChain(a, matrix, type);
+	}
+	
+	private static final int PARALLEL_ROW = 1<<12;
+	
+	private static <C> void computeRow(C[] a, Measure<C> measure, int j, double[] row, ExecutorService pool, int threads) {
+		if (pool==null || j<PARALLEL_ROW) {
+			for (int i=0; i<j; i++)
+				row[i] = measure.applyAsDouble(a[i], a[j]);
+			return;
+		}
+		
+		ArrayList<Callable<Void>> parts = new ArrayList<Callable<Void>>(threads);
+		for (int t=0; t<threads; t++) {
+			int from = (int) ((long)j*t/threads);
+			int to = (int) ((long)j*(t+1)/threads);
+			parts.add(()->{
+				for (int i=from; i<to; i++)
+					row[i] = measure.applyAsDouble(a[i], a[j]);
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> f : pool.invokeAll(parts))
+				f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while computing distances!", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Could not compute distances!", e.getCause());
+		}
+	}
+	
+	/**
+	 * SLINK computes the pointer representation (pi,lambda) by adding one object after the other; rows must fill row[i] for i&lt;j with
+	 * the value of object i and j. For each lambda, the pair of objects having this value is tracked to report the merge indices.
+	 * @param a
+	 * @param n
+	 * @param rows
+	 * @param type
+	 * @return
+	 */
+	@SuppressWarnings("unchecked")
+	private HierarchicalCluster<C> slink(C[] a, int n, ObjIntConsumer<double[]> rows, MeasureType type) {
+		this.matrix = null;
+		this.mergeIndices = null;
+		this.clusteredIndices = null;
+		this.representative = 0;
+		if (n==0) return null;
+		
+		// similarities are negated, such that smaller is always better
+		double sign = type==MeasureType.Distance?1:-1;
+		int[] pi = new int[n];
+		double[] lambda = new double[n];
+		double[] m = new double[n];
+		int[] lw = new int[2*n];
+		int[] mw = new int[2*n];
+		
+		for (int j=0; j<n; j++) {
+			pi[j] = j;
+			lambda[j] = Double.POSITIVE_INFINITY;
+			rows.accept(m, j);
+			for (int i=0; i<j; i++) {
+				m[i]*=sign;
+				mw[2*i] = i;
+				mw[2*i+1] = j;
+			}
+			
+			for (int i=0; i<j; i++) {
+				int p = pi[i];
+				if (lambda[i]>=m[i]) {
+					if (lambda[i]<m[p]) {
+						m[p] = lambda[i];
+						mw[2*p] = lw[2*i];
+						mw[2*p+1] = lw[2*i+1];
+					}
+					lambda[i] = m[i];
+					lw[2*i] = mw[2*i];
+					lw[2*i+1] = mw[2*i+1];
+					pi[i] = j;
+				} 
+				else if (m[i]<m[p]) {
+					m[p] = m[i];
+					mw[2*p] = mw[2*i];
+					mw[2*p+1] = mw[2*i+1];
+				}
+			}
+			
+			for (int i=0; i<j; i++)
+				if (lambda[i]>=lambda[pi[i]])
+					pi[i] = j;
+		}
+		
+		// convert into the dendrogram: merge in the order of increasing lambda
+		Integer[] order = new Integer[n];
+		for (int i=0; i<n; i++) 
+			order[i] = i;
+		Arrays.sort(order, (x,y)->{
+			int re = Double.compare(lambda[x], lambda[y]);
+			return re!=0?re:Integer.compare(x, y);
+		});
+		
+		HierarchicalCluster<C>[] cluster = new HierarchicalCluster[n];
+		int[] parent = new int[n];
+		for (int i=0; i<n; i++) {
+			parent[i] = i;
+			cluster[i] = new HierarchicalCluster<C>(a==null?(C)new Integer(i):a[i]);
+			fireMergeEvent(cluster[i],-1,-1);
+		}
+		
+		for (int k=0; k<n-1; k++) {
+			int i = order[k];
+			int index1 = find(parent, i);
+			int index2 = find(parent, pi[i]);
+			int nindex1 = lw[2*i];
+			int nindex2 = lw[2*i+1];
+			if (find(parent, nindex1)!=index1) {
+				nindex1 = nindex2;
+				nindex2 = lw[2*i];
+			}
+			
+			cluster[index1] = new HierarchicalCluster<C>(cluster[index1],cluster[index2],sign*lambda[i]);
+			cluster[index2] = null;
+			parent[index2] = index1;
+			fireMergeEvent(cluster[index1],nindex1,nindex2);
+			representative = index1;
+		}
+		
+		this.clusteredIndices = new IntArrayList(n);
+		for (int i=0; i<n; i++)
+			clusteredIndices.add(i);
+		return cluster[representative];
+	}
+	
+	private static int find(int[] parent, int i) {
+		int r = i;
+		while (parent[r]!=r)
+			r = parent[r];
+		while (parent[i]!=r) {
+			int next = parent[i];
+			parent[i] = r;
+			i = next;
+		}
+		return r;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private HierarchicalCluster<C> nearestNeighborChain(C[] a, CondensedMatrix matrix, MeasureType type) {
+		this.matrix = null;
+		this.mergeIndices = null;
+		this.clusteredIndices = null;
+		this.representative = 0;
+		
+		final int N = matrix.size();
+		if (N==0) return null;
+		
+		double sign = type==MeasureType.Distance?1:-1;
+		int[] size = new int[N];
+		HierarchicalCluster<C>[] cluster = new HierarchicalCluster[N]; 
+		for (int i=0; i<N; i++) {
+			size[i] = 1;
+			cluster[i] = new HierarchicalCluster<C>(a==null?(C)new Integer(i):a[i]);
+			fireMergeEvent(cluster[i],-1,-1);
+		}
+		
+		IntArrayList chain = new IntArrayList(N);
+		chain.add(0);
+		for (int C=N; C>1; ) {
+			int last = chain.getLastInt();
+			int prev = chain.size()>=2?chain.getLastInt(1):-1;
+			
+			// find NN; on ties, the previous element of the chain is preferred (otherwise the chain may cycle)
+			int best = prev;
+			double val = prev==-1?Double.POSITIVE_INFINITY:sign*matrix.get(last, prev);
+			for (int i=0; i<N; i++) {
+				if (size[i]>0 && i!=last) {
+					double v = sign*matrix.get(last, i);
+					if (v<val || best==-1) {
+						val = v;
+						best = i;
+					}
+				}
+			}
+			
+			if (best!=prev) {
+				chain.add(best);
+				continue;
+			}
+			
+			int index2 = chain.removeLast();
+			int index1 = chain.removeLast();
+			for (int i=0; i<N; i++) 
+				if (size[i]>0 && i!=index1 && i!=index2)
+					matrix.set(index1, i, mode.merge(matrix.get(index1, i), matrix.get(index2, i), size[index1], size[index2], type));
+			
+			size[index1]+=size[index2];
+			size[index2] = 0;
+			cluster[index1] = new HierarchicalCluster<C>(cluster[index1],cluster[index2],sign*val);
+			cluster[index2] = null;
+			fireMergeEvent(cluster[index1],-1,-1);
+			
+			if (chain.isEmpty()) {
+				int arbi;
+				for (arbi=0;cluster[arbi]==null; arbi++);
+				chain.add(arbi);
+			}
+			C--;
+			representative = index1;
+		}
+		
+		this.clusteredIndices = new IntArrayList(N);
+		for (int i=0; i<N; i++)
+			clusteredIndices.add(i);
+		return cluster[representative];
+	}
+	
 	private ArrayList<MergeListener<C>> listeners = new ArrayList<MergeListener<C>>(); 
 	private void fireMergeEvent(HierarchicalCluster<C> newCluster, int index1, int index2) {
 		for (MergeListener<C> l : listeners)
@@ -0,0 +1,492 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.util.datastructure.collections;
+
+import gedi.app.extension.ExtensionContext;
+import gedi.util.ArrayUtils;
+import gedi.util.functions.EI;
+import gedi.util.functions.ExtendedIterator;
+import gedi.util.io.randomaccess.BinaryReader;
+import gedi.util.io.randomaccess.BinaryWriter;
+import gedi.util.io.randomaccess.BufferBinaryReaderWriter;
+import gedi.util.io.randomaccess.PageFile;
+import gedi.util.io.randomaccess.PageFileView;
+import gedi.util.io.randomaccess.PageFileWriter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * External sorting: Elements are collected in memory; whenever the memory capacity is reached, they are sorted and written as a run
+ * to a temp file by a background thread, while new elements are collected. Runs are written in blocks that are LZ4 compressed
+ * (see {@link #setCompress(boolean)}) and read through a buffered sequential view. If there are more runs than
+ * {@link #setMaxFanIn(int)} when iterating, the oldest runs are merged into larger runs first (in as many passes as necessary).
+ * 
+ * While a run is written, the next one is collected in a second buffer, i.e. up to twice the memory capacity of elements are held
+ * in memory at the same time.
+ * 
+ * Subclasses only define how elements are serialized.
+ * 
+ * Not thread-safe!
+ * @author erhard
+ *
+ * @param <T>
+ */
+public abstract class AbstractSortingCollection<T> implements Collection<T>, Closeable {
+
+	private static final int BLOCK_SIZE = 64*1024;
+	
+	private int memoryCapacity;
+	private ArrayList<T> mem;
+	private ArrayList<T> spare;
+	private Comparator<? super T> comp;
+	private int size;
+	
+	private boolean compress = true;
+	private int maxFanIn = 64;
+	
+	private ExecutorService spiller;
+	private Future<?> spilling;
+	private PageFileWriter buf = null;
+	private ArrayList<Run> runs = new ArrayList<Run>();
+	private ArrayList<PageFileWriter> files = new ArrayList<PageFileWriter>();
+	private RunWriter writer = new RunWriter();
+	private boolean writing = false;
+	private boolean reading = false;
+	
+	private ExtensionContext context;
+	
+	/**
+	 * 
+	 * @param comp
+	 * @param memoryCapacity number of elements per run; as the next run is collected while the last one is written, up to twice as
+	 * many elements are kept in memory
+	 */
+	public AbstractSortingCollection(Comparator<? super T> comp, int memoryCapacity) {
+		this.comp = comp;
+		this.memoryCapacity = memoryCapacity;
+		mem = new ArrayList<T>(memoryCapacity);
+	}
+	
+	protected abstract Class<T> getType();
+	protected abstract void serialize(BinaryWriter out, T e) throws IOException;
+	protected abstract T deserialize(BinaryReader in) throws IOException;
+	
+	/**
+	 * Called (by the background thread) before the first element is serialized.
+	 * @throws IOException
+	 */
+	protected void beginSerialize() throws IOException {
+	}
+	
+	/**
+	 * Called before the first element is deserialized.
+	 * @throws IOException
+	 */
+	protected void beginDeserialize() throws IOException {
+	}
+	
+	/**
+	 * The context of all writers and readers of the runs
+	 * @return
+	 */
+	protected ExtensionContext getContext() {
+		if (context==null) context = new ExtensionContext();
+		return context;
+	}
+	
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+	
+	/**
+	 * Maximal number of runs that are merged at once
+	 * @param maxFanIn
+	 */
+	public void setMaxFanIn(int maxFanIn) {
+		if (maxFanIn<2) throw new IllegalArgumentException("Fan-in must be at least 2!");
+		this.maxFanIn = maxFanIn;
+	}
+	
+	public boolean add(T e) {
+		size++;
+		if (mem.size()>=memoryCapacity) 
+			spillToDisk();
+		mem.add(e);
+		return true;
+	}
+
+	
+	public ExtendedIterator<T> iterator() {
+		if (runs.isEmpty() && spilling==null) {
+			mem.sort(comp);
+			return EI.wrap(mem);
+		}
+		
+		spillToDisk();
+		awaitSpill();
+		if (spiller!=null) {
+			spiller.shutdown();
+			spiller = null;
+		}
+		
+		try {
+			if (!reading) {
+				beginDeserialize();
+				reading = true;
+			}
+			while (runs.size()>maxFanIn)
+				mergeRuns(maxFanIn);
+			return merge(runs);
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot iterate temp file!",e);
+		}
+	}
+	
+	
+	@Override
+	public void close() throws IOException {
+		if (spiller!=null) {
+			try {
+				awaitSpill();
+			} finally {
+				spiller.shutdown();
+				spiller = null;
+			}
+		}
+		for (PageFileWriter f : files) {
+			f.close();
+			new File(f.getPath()).delete();
+		}
+		files.clear();
+		runs.clear();
+		buf = null;
+		mem.clear();
+	}
+	
+	private void spillToDisk() {
+		if (mem.isEmpty()) return;
+		
+		awaitSpill();
+		if (spiller==null)
+			spiller = Executors.newSingleThreadExecutor(r->{
+				Thread t = new Thread(r, "SortingCollection");
+				t.setDaemon(true);
+				return t;
+			});
+		
+		ArrayList<T> full = mem;
+		mem = spare==null?new ArrayList<T>(memoryCapacity):spare;
+		spare = full;
+		spilling = spiller.submit(()->writeRun(full));
+	}
+	
+	private void awaitSpill() {
+		if (spilling==null) return;
+		try {
+			spilling.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while writing run!",e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Cannot write run!",e.getCause());
+		} finally {
+			spilling = null;
+		}
+	}
+	
+	private void writeRun(ArrayList<T> list) {
+		list.sort(comp);
+		try {
+			if (buf==null) 
+				buf = createRunFile();
+			if (!writing) {
+				beginSerialize();
+				writing = true;
+			}
+			
+			long start = buf.position();
+			writer.begin(buf);
+			for (T e : list)
+				writer.write(e);
+			writer.end();
+			runs.add(new Run(buf, start, buf.position()));
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot write entry !",e);
+		}
+		list.clear();
+	}
+	
+	/**
+	 * Merges the first n runs (i.e. the oldest) into a new run
+	 * @param n
+	 * @throws IOException
+	 */
+	private void mergeRuns(int n) throws IOException {
+		List<Run> group = runs.subList(0, n);
+		PageFileWriter out = createRunFile();
+		writer.begin(out);
+		ExtendedIterator<T> it = merge(group);
+		while (it.hasNext())
+			writer.write(it.next());
+		writer.end();
+		
+		group.clear();
+		runs.add(new Run(out, 0, out.position()));
+		out.close();
+		
+		// remove files that are not used anymore
+		for (int i=0; i<files.size(); i++) {
+			PageFileWriter f = files.get(i);
+			if (f!=buf && !runs.stream().anyMatch(r->r.file==f)) {
+				f.close();
+				new File(f.getPath()).delete();
+				files.remove(i--);
+			}
+		}
+	}
+	
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private ExtendedIterator<T> merge(List<Run> runs) throws IOException {
+		IdentityHashMap<PageFileWriter,PageFile> readers = new IdentityHashMap<PageFileWriter, PageFile>();
+		ExtendedIterator<T>[] iter = new ExtendedIterator[runs.size()];
+		for (int i=0; i<iter.length; i++) {
+			Run r = runs.get(i);
+			PageFile f = readers.get(r.file);
+			if (f==null) {
+				readers.put(r.file, f = r.file.read(false));
+				f.setUnmap(false);
+			}
+			iter[i] = new RunIterator(f.view(r.start, r.end));
+		}
+		return EI.merge(comp, iter).endAction(()->{
+			for (PageFile f : readers.values())
+				try {
+					f.close();
+				} catch (IOException e) {} 
+		});
+	}
+	
+	private PageFileWriter createRunFile() throws IOException {
+		PageFileWriter re = new PageFileWriter(Files.createTempFile("sortingcollection", ".tmp").toString());
+		new File(re.getPath()).deleteOnExit();
+		files.add(re);
+		return re;
+	}
+	
+	private BufferBinaryReaderWriter createBlock(int size) {
+		return new BufferBinaryReaderWriter(size) {
+			@Override
+			public ExtensionContext getContext() {
+				return AbstractSortingCollection.this.getContext();
+			}
+		};
+	}
+	
+	private static class Run {
+		private PageFileWriter file;
+		private long start;
+		private long end;
+		public Run(PageFileWriter file, long start, long end) {
+			this.file = file;
+			this.start = start;
+			this.end = end;
+		}
+	}
+	
+	/**
+	 * Block: length (cint), stored length (cint; uncompressed iff equal to length), data 
+	 * 
+	 * @author erhard
+	 *
+	 */
+	private class RunWriter {
+		private BufferBinaryReaderWriter block = createBlock(BLOCK_SIZE+BLOCK_SIZE/2);
+		private byte[] cbuffer = new byte[0];
+		private PageFileWriter out;
+		
+		public void begin(PageFileWriter out) {
+			this.out = out;
+			block.getBuffer().clear();
+		}
+		
+		public void write(T e) throws IOException {
+			serialize(block, e);
+			if (block.position()>=BLOCK_SIZE)
+				flush();
+		}
+		
+		public void end() throws IOException {
+			if (block.position()>0)
+				flush();
+			out = null;
+		}
+		
+		private void flush() throws IOException {
+			ByteBuffer b = block.getBuffer();
+			int len = b.position();
+			out.putCInt(len);
+			int clen = len;
+			if (compress) {
+				int max = ArrayUtils.getSaveCompressedSize(len);
+				if (cbuffer.length<max) cbuffer = new byte[max];
+				clen = ArrayUtils.compress(b.array(), 0, len, cbuffer, 0);
+			}
+			if (clen>0 && clen<len) {
+				out.putCInt(clen);
+				out.put(cbuffer, 0, clen);
+			} else {
+				out.putCInt(len);
+				out.put(b.array(), 0, len);
+			}
+			b.clear();
+		}
+	}
+	
+	private class RunIterator implements ExtendedIterator<T> {
+		private PageFileView in;
+		private BufferBinaryReaderWriter block = createBlock(BLOCK_SIZE+BLOCK_SIZE/2);
+		private byte[] cbuffer = new byte[0];
+		
+		public RunIterator(PageFileView in) {
+			this.in = in;
+			block.getBuffer().limit(0);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return block.getBuffer().hasRemaining() || !in.eof();
+		}
+
+		@Override
+		public T next() {
+			try {
+				if (!block.getBuffer().hasRemaining())
+					readBlock();
+				return deserialize(block);
+			} catch (IOException e) {
+				throw new RuntimeException("Could not deserialize object!",e);
+			}
+		}
+		
+		private void readBlock() throws IOException {
+			int len = in.getCInt();
+			int clen = in.getCInt();
+			if (block.getBuffer().capacity()<len)
+				block = createBlock(len);
+			
+			ByteBuffer b = block.getBuffer();
+			if (clen==len)
+				in.get(b.array(), 0, len);
+			else {
+				if (cbuffer.length<clen) cbuffer = new byte[clen];
+				in.get(cbuffer, 0, clen);
+				ArrayUtils.decompress(cbuffer, 0, b.array(), 0, len);
+			}
+			b.clear();
+			b.limit(len);
+		}
+	}
+	
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+
+	@Override
+	public boolean isEmpty() {
+		return size==0;
+	}
+
+
+	@Override
+	public boolean contains(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+
+	@Override
+	public Object[] toArray() {
+		return iterator().toArray(getType());
+	}
+
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <E> E[] toArray(E[] a) {
+		return (E[]) iterator().toArray((T[]) a);
+	}
+
+
+	@Override
+	public boolean remove(Object o) {
+		throw new UnsupportedOperationException();
+	}
+
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+
+	@Override
+	public boolean addAll(Collection<? extends T> c) {
+		for (T t : c) add(t);
+		return true;
+	}
+
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+
+	@Override
+	public boolean retainAll(Collection<?> c) {
+		throw new UnsupportedOperationException();
+	}
+
+
+	@Override
+	public void clear() {
+		try {
+			close();
+		} catch (IOException e) {
+			throw new RuntimeException("Could not clear!",e);
+		}
+	}
+	
+	
+}
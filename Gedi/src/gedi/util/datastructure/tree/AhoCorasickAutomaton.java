@@ -0,0 +1,202 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gedi.util.datastructure.tree;
+
+import gedi.util.datastructure.collections.intcollections.IntArrayList;
+import gedi.util.datastructure.tree.Trie.AhoCorasickResult;
+import gedi.util.datastructure.tree.Trie.Node;
+import gedi.util.functions.EI;
+import gedi.util.functions.ExtendedIterator;
+import gedi.util.mutable.MutablePair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Immutable Aho-Corasick automaton compiled from a {@link Trie} (see {@link Trie#compileAhoCorasick()}). Nodes are numbered in
+ * breadth first order, the characters of the keys are mapped to a dense alphabet and the complete transition function
+ * (i.e. goto and failure links resolved) is stored in a single int array with one row per node. Thus, each character of the text costs
+ * a single array lookup. Output links (the next node with a value on the failure path) are stored in an int array as well.
+ *
+ * The automaton does not change, so it can be used by several threads concurrently (see {@link #scan(Iterator, Function, int)}).
+ *
+ * Memory is number of nodes times size of the alphabet ints.
+ *
+ * @author erhard
+ *
+ * @param <T>
+ */
+public class AhoCorasickAutomaton<T> {
+
+	private static final int SCAN_BLOCKSIZE = 16;
+
+	private int[] alphabet;
+	private int sigma;
+	private int[] delta;
+	private int[] depth;
+	private int[] match;
+	private int[] nextMatch;
+	private Object[] values;
+
+
+	AhoCorasickAutomaton(Node root, Object nullValue) {
+		// breadth first numbering; children of a node get consecutive ids
+		ArrayList<Node> nodes = new ArrayList<Node>();
+		IntArrayList firstChild = new IntArrayList();
+		nodes.add(root);
+		char maxChar = 0;
+		for (int i=0; i<nodes.size(); i++) {
+			firstChild.add(nodes.size());
+			for (Node ch=nodes.get(i).child; ch!=null; ch=ch.sibling) {
+				nodes.add(ch);
+				maxChar = (char) Math.max(maxChar, ch.c);
+			}
+		}
+		firstChild.add(nodes.size());
+
+		alphabet = new int[maxChar+1];
+		Arrays.fill(alphabet, -1);
+		for (int i=1; i<nodes.size(); i++)
+			if (alphabet[nodes.get(i).c]==-1)
+				alphabet[nodes.get(i).c] = sigma++;
+
+		if ((long)nodes.size()*sigma>Integer.MAX_VALUE)
+			throw new RuntimeException("Trie too large for Aho-Corasick automaton: "+nodes.size()+" nodes, "+sigma+" characters!");
+
+		delta = new int[nodes.size()*sigma];
+		depth = new int[nodes.size()];
+		match = new int[nodes.size()];
+		nextMatch = new int[nodes.size()];
+		values = new Object[nodes.size()];
+		int[] failure = new int[nodes.size()];
+
+		match[0] = -1;
+		nextMatch[0] = -1;
+		for (int v=0; v<nodes.size(); v++) {
+			// the row of the failure node is complete, as it is before v in bfs order
+			if (v>0)
+				System.arraycopy(delta, failure[v]*sigma, delta, v*sigma, sigma);
+			for (int u=firstChild.getInt(v); u<firstChild.getInt(v+1); u++) {
+				int a = alphabet[nodes.get(u).c];
+				failure[u] = v==0?0:delta[failure[v]*sigma+a];
+				depth[u] = depth[v]+1;
+				delta[v*sigma+a] = u;
+			}
+
+			if (v>0) {
+				Object val = nodes.get(v).value;
+				values[v] = val==nullValue?null:val;
+				nextMatch[v] = match[failure[v]];
+				match[v] = val!=null?v:nextMatch[v];
+			}
+		}
+	}
+
+	public int getNumNodes() {
+		return depth.length;
+	}
+
+	public int getAlphabetSize() {
+		return sigma;
+	}
+
+	private int transition(int q, char c) {
+		int a = c<alphabet.length?alphabet[c]:-1;
+		return a<0?0:delta[q*sigma+a];
+	}
+
+	/**
+	 * Calls the action for each occurrence of a key in text (ordered by end position, and then by decreasing length)
+	 * @param text
+	 * @param reUse if true, the same result object is given to action for all occurrences
+	 * @param action
+	 */
+	@SuppressWarnings("unchecked")
+	public void match(CharSequence text, boolean reUse, Consumer<AhoCorasickResult<T>> action) {
+		AhoCorasickResult<T> re = new AhoCorasickResult<T>();
+		int q = 0;
+		for (int i=0; i<text.length(); i++) {
+			q = transition(q, text.charAt(i));
+			for (int m=match[q]; m>=0; m=nextMatch[m]) {
+				re.end = i+1;
+				re.start = i+1-depth[m];
+				re.object = (T) values[m];
+				action.accept(reUse?re:new AhoCorasickResult<T>(re));
+			}
+		}
+	}
+
+	public ArrayList<AhoCorasickResult<T>> match(CharSequence text) {
+		ArrayList<AhoCorasickResult<T>> re = new ArrayList<AhoCorasickResult<T>>();
+		match(text, false, re::add);
+		return re;
+	}
+
+	public ExtendedIterator<AhoCorasickResult<T>> iterate(CharSequence text, boolean reUse) {
+		AhoCorasickResult<T> re = new AhoCorasickResult<T>();
+		return new ExtendedIterator<AhoCorasickResult<T>>() {
+			int q = 0;
+			int index = 0;
+			int m = -1;
+
+			@Override
+			public boolean hasNext() {
+				lookAhead();
+				return m>=0;
+			}
+
+			@SuppressWarnings("unchecked")
+			@Override
+			public AhoCorasickResult<T> next() {
+				lookAhead();
+				if (m<0) throw new NoSuchElementException();
+				re.end = index;
+				re.start = index-depth[m];
+				re.object = (T) values[m];
+				m = nextMatch[m];
+				return reUse?re:new AhoCorasickResult<T>(re);
+			}
+
+			private void lookAhead() {
+				for (; m<0 && index<text.length(); index++) {
+					q = transition(q, text.charAt(index));
+					m = match[q];
+				}
+			}
+		};
+	}
+
+	/**
+	 * Matches the texts of all items using the given number of threads (0 means in the calling thread). The items are returned
+	 * together with all occurrences in their text (not necessarily in the original order, but always in the calling thread).
+	 * The input iterator must not reuse its objects!
+	 * @param items
+	 * @param text
+	 * @param threads
+	 * @return
+	 */
+	public <I> ExtendedIterator<MutablePair<I,ArrayList<AhoCorasickResult<T>>>> scan(Iterator<I> items, Function<? super I,? extends CharSequence> text, int threads) {
+		return EI.wrap(items).parallelized(threads, SCAN_BLOCKSIZE, ei->ei.map(item->new MutablePair<I,ArrayList<AhoCorasickResult<T>>>(item,match(text.apply(item)))));
+	}
+
+}
@@ -26,11 +26,8 @@ import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
@@ -100,7 +97,7 @@ public class Trie<T> implements Map<String,T> {
 	
 	@Override
 	public T put(String key, T value) {
-		suffixLinks = null;
+		automaton = null;
 		Node n = root;
 		int i = 0;
 		for (Node t = n; t!=null && i<key.length(); ) {
@@ -126,7 +123,7 @@ public class Trie<T> implements Map<String,T> {
 	
 	@Override
 	public void clear() {
-		suffixLinks = null;
+		automaton = null;
 		root.clear();
 	}
 
@@ -335,7 +332,7 @@ public class Trie<T> implements Map<String,T> {
 				}
 				
 				size--;
-				suffixLinks = null;
+				automaton = null;
 				return re;
 			}
 				
@@ -694,57 +691,21 @@ public class Trie<T> implements Map<String,T> {
 	
 	// Aho Corasick stuff
 	
-	private transient HashMap<Node,Node> suffixLinks;
-	private transient HashMap<Node,Integer> nodeLevel;
-	private transient HashMap<Node,LinkedList<Node>> additionalResults;
-	private void prepareAhoCorasick() {
-		if (suffixLinks!=null) return;
-		suffixLinks = new HashMap<Node, Node>();
-		nodeLevel = new HashMap<Trie.Node, Integer>();
-		additionalResults = new HashMap<Node, LinkedList<Node>>();
-		LinkedList<Node> q  = new LinkedList<Node>();
-		nodeLevel.put(root, 0);
-		for (Node ch=root.child; ch!=null; ch=ch.sibling) {
-			suffixLinks.put(ch, root);
-			q.add(ch);
-			nodeLevel.put(ch, 1);
-		}
-		while (!q.isEmpty()) {
-			Node r = q.removeFirst();
-			int rlevel = nodeLevel.get(r);
-			for (Node ch=r.child; ch!=null; ch=ch.sibling) {
-				nodeLevel.put(ch, rlevel+1);
-				q.add(ch);
-				Node v = acFailure(r);
-				while (acGoto(v, ch.c)==null)
-					v = acFailure(v);
-				suffixLinks.put(ch, acGoto(v, ch.c));
-				LinkedList<Node> ar = additionalResults.get(ch);
-				if (ar==null) additionalResults.put(ch, ar=new LinkedList<Node>());
-				acOut(acFailure(ch), ar);
-			}	
-		}
-		Iterator<Node> it2 = additionalResults.keySet().iterator();
-		while (it2.hasNext()) 
-			if (additionalResults.get(it2.next()).size()==0)
-				it2.remove();
-	}
-	
-	private Node acGoto(Node q, char a) {
-		Node re = q.findChild(a);
-		if (re==null && q==root) return root;
-		return re;
-	}
+	private transient AhoCorasickAutomaton<T> automaton;
 	
-	private Node acFailure(Node q) {
-		if (q==root) return root;
-		return suffixLinks.get(q);
+	/**
+	 * Compiles this trie into an immutable Aho-Corasick automaton (later changes of the trie are not reflected in the automaton).
+	 * @return
+	 */
+	public AhoCorasickAutomaton<T> compileAhoCorasick() {
+		return new AhoCorasickAutomaton<T>(root, nullValue);
 	}
 	
-	private void acOut(Node q, List<Node> l) {
-		if (q.value!=null) l.add(q);
-		if (additionalResults.containsKey(q))
-			l.addAll(additionalResults.get(q));
+	private AhoCorasickAutomaton<T> prepareAhoCorasick() {
+		AhoCorasickAutomaton<T> re = automaton;
+		if (re==null) 
+			automaton = re = compileAhoCorasick();
+		return re;
 	}
 	
 	
@@ -763,39 +724,7 @@ public class Trie<T> implements Map<String,T> {
 		return iterateAhoCorasick(text, false);
 	}
 	public ExtendedIterator<AhoCorasickResult<T>> iterateAhoCorasick(final String text, final boolean reUse) {
-		prepareAhoCorasick();
-		final AhoCorasickResult<T> re = new AhoCorasickResult<T>();
-		return new ExtendedIterator<AhoCorasickResult<T>>() {
-			Node q = root;
-			int index = 0;
-			LinkedList<Node> values = new LinkedList<Node>(); 
-
-			@Override
-			public boolean hasNext() {
-				lookAhead();
-				return !values.isEmpty();
-			}
-
-			@Override
-			public AhoCorasickResult<T> next() {
-				lookAhead();
-				Node n = values.removeFirst();
-				re.end = index;
-				re.start = index-nodeLevel.get(n);
-				re.object = (T)n.value;
-				return reUse?re:new AhoCorasickResult<T>(re);
-			}
-			
-			private void lookAhead() {
-				for (; values.size()==0 && index<text.length(); index++) {
-					while (acGoto(q, text.charAt(index))==null)
-						q = acFailure(q);
-					q = acGoto(q, text.charAt(index));
-					acOut(q, values);
-				}
-			}
-			
-		};
+		return prepareAhoCorasick().iterate(text, reUse);
 	}
 	
 	
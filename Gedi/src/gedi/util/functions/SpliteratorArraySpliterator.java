@@ -65,12 +65,17 @@ public class SpliteratorArraySpliterator<D> implements Spliterator<D> {
 		return start<end;
 	}
 
+	/**
+	 * Splits off the first half of the remaining spliterators; if only a single one is left, it is asked to split itself.
+	 */
 	@Override
 	public Spliterator<D> trySplit() {
-		if (start+1==end) return null;
+		if (start>=end) return null;
+		if (start+1==end) return getSpliterator(start).trySplit();
 		int p = (start+end)/2;
-		end = p;
-		return new SpliteratorArraySpliterator<D>(s,a, p, end);
+		SpliteratorArraySpliterator<D> prefix = new SpliteratorArraySpliterator<D>(s,a, start, p);
+		start = p;
+		return prefix;
 	}
 
 	@Override
@@ -83,12 +88,12 @@ public class SpliteratorArraySpliterator<D> implements Spliterator<D> {
 
 	@Override
 	public int characteristics() {
-		if (a.length==0) return 0;
-		return getSpliterator(0).characteristics();
+		if (start>=end) return 0;
+		return getSpliterator(start).characteristics();
 	}
 	
 	public Comparator<? super D> getComparator() {
-        return getSpliterator(0).getComparator();
+        return getSpliterator(start).getComparator();
     }
 	
 	private Spliterator<D> getSpliterator(int index) {
@@ -38,6 +38,7 @@ import java.util.function.Supplier;
 public class ConcurrentPageFile implements BinaryReader, LineReader, AutoCloseable {
 
 	static final long PAGE_OVERLAP = Long.BYTES;
+	public static final long DEFAULT_PAGE_SIZE = Integer.MAX_VALUE - PAGE_OVERLAP;
 	
 	private RandomAccessFile file;
 	final FileChannel channel;
@@ -50,7 +51,10 @@ public class ConcurrentPageFile implements BinaryReader, LineReader, AutoCloseab
 	
 	private ByteBuffer[] buffers;
 	
-	static long pageSize = Integer.MAX_VALUE - PAGE_OVERLAP;
+	private volatile ByteBuffer[] shared;
+	private ThreadLocal<SharedDuplicates> sharedDuplicates = new ThreadLocal<SharedDuplicates>();
+	
+	final long pageSize;
 
 	private ByteBuffer mem;
 
@@ -72,6 +76,17 @@ public class ConcurrentPageFile implements BinaryReader, LineReader, AutoCloseab
 	 * @throws IOException
 	 */
 	public ConcurrentPageFile(PageFileWriter writerToReadFrom) throws IOException  {
+		this(writerToReadFrom,DEFAULT_PAGE_SIZE);
+	}
+	
+	/**
+	 * From its start to its max length!
+	 * @param writerToReadFrom
+	 * @param pageSize the size of the mapped pages (at most {@link #DEFAULT_PAGE_SIZE}, as a page is a single ByteBuffer)
+	 * @throws IOException
+	 */
+	public ConcurrentPageFile(PageFileWriter writerToReadFrom, long pageSize) throws IOException  {
+		this.pageSize = checkPageSize(pageSize);
 		this.path = writerToReadFrom.getPath();
 		file = new RandomAccessFile(path, "r");
 		this.channel = file.getChannel();
@@ -92,6 +107,17 @@ public class ConcurrentPageFile implements BinaryReader, LineReader, AutoCloseab
 	
 	
 	public ConcurrentPageFile(String path) throws IOException  {
+		this(path,DEFAULT_PAGE_SIZE);
+	}
+	
+	/**
+	 * 
+	 * @param path
+	 * @param pageSize the size of the mapped pages (at most {@link #DEFAULT_PAGE_SIZE}, as a page is a single ByteBuffer)
+	 * @throws IOException
+	 */
+	public ConcurrentPageFile(String path, long pageSize) throws IOException  {
+		this.pageSize = checkPageSize(pageSize);
 		this.path = path;
 		file = new RandomAccessFile(path, "r");
 		this.channel = file.getChannel();
@@ -119,6 +145,16 @@ public class ConcurrentPageFile implements BinaryReader, LineReader, AutoCloseab
 //	}
 	
 	
+	private static long checkPageSize(long pageSize) {
+		if (pageSize<=0 || pageSize>DEFAULT_PAGE_SIZE) 
+			throw new IllegalArgumentException("Page size must be in (0,"+DEFAULT_PAGE_SIZE+"]: "+pageSize);
+		return pageSize;
+	}
+	
+	public long getPageSize() {
+		return pageSize;
+	}
+	
 	public boolean isUnmap() {
 		return unmap;
 	}
@@ -132,6 +168,45 @@ public class ConcurrentPageFile implements BinaryReader, LineReader, AutoCloseab
 		this.unmap = unmap;
 	}
 	
+	public boolean isShared() {
+		return shared!=null;
+	}
+	
+	/**
+	 * If set, all pages are mapped once and shared read-only by all threads, i.e. no locks are acquired and nothing is unmapped 
+	 * until this file is closed. Only the position within a page is kept per thread (for bulk reads). Use this when many threads
+	 * read from the same file and the address space is large enough to hold the whole file.
+	 * 
+	 * @param shared
+	 * @throws IOException
+	 */
+	public synchronized void setShared(boolean shared) throws IOException {
+		if (shared==isShared()) return;
+		if (!shared) {
+			this.shared = null;
+			for (int i=0; i<buffers.length; i++) {
+				locks[i].lock();
+				working[i].N--;
+				locks[i].unlock();
+			}
+			return;
+		}
+		ByteBuffer[] re = new ByteBuffer[buffers.length];
+		for (int i=0; i<re.length; i++) {
+			locks[i].lock();
+			re[i] = buffers[i];
+			if (re[i]==null) {
+				long offset = pageSize * i;
+				re[i] = channel.map(MapMode.READ_ONLY,offset,Math.min(size-offset,pageSize+PAGE_OVERLAP));
+			}
+			// make sure that it is never unmapped by getBuffer
+			buffers[i] = re[i];
+			working[i].N++;
+			locks[i].unlock();
+		}
+		this.shared = re;
+	}
+	
 	public String getPath() {
 		return path;
 	}
@@ -204,6 +279,7 @@ public class ConcurrentPageFile implements BinaryReader, LineReader, AutoCloseab
 	}
 	
 	public void close() throws IOException {
+		shared = null;
 		for (int i=0; i<buffers.length; i++) {
 			if (buffers[i]!=null) {
 				WeakReference<MappedByteBuffer> r = new WeakReference<MappedByteBuffer>((MappedByteBuffer) buffers[i]);
@@ -222,9 +298,10 @@ public class ConcurrentPageFile implements BinaryReader, LineReader, AutoCloseab
 		int boffset = getOffset(pos);
 		
 		for (int index=sindex; index<=eindex; index++) {
-			ByteBuffer buffer = getBuffer(index);
+			// the position is changed, so this must not be the buffer used by all threads
+			ByteBuffer buffer = getLocalBuffer(index);
 			buffer.position(boffset);
-			int l = Math.min(length, (int)(ConcurrentPageFile.pageSize-boffset));// (int)(buffer.remaining()-PAGE_OVERLAP-offset));
+			int l = Math.min(length, (int)(pageSize-boffset));// (int)(buffer.remaining()-PAGE_OVERLAP-offset));
 			buffer.get(dst, offset, l);
 			length-=l;
 			offset+=l;
@@ -473,8 +550,40 @@ public class ConcurrentPageFile implements BinaryReader, LineReader, AutoCloseab
 		return (int) ((pos) / (long) pageSize);
 	}
 
+	/**
+	 * Gets a buffer for the given page that may only be used by the calling thread (i.e. its position may be changed)
+	 * @param index
+	 * @return
+	 * @throws IOException
+	 */
+	ByteBuffer getLocalBuffer(int index) throws IOException {
+		ByteBuffer[] s = shared;
+		if (s==null) 
+			return getBuffer(index).duplicate();
+		
+		// duplicates of a previous shared mapping may already be unmapped
+		SharedDuplicates dup = sharedDuplicates.get();
+		if (dup==null || dup.of!=s) 
+			sharedDuplicates.set(dup = new SharedDuplicates(s));
+		if (dup.buffers[index]==null)
+			dup.buffers[index] = s[index].duplicate();
+		return dup.buffers[index];
+	}
+	
+	private static class SharedDuplicates {
+		ByteBuffer[] of;
+		ByteBuffer[] buffers;
+		public SharedDuplicates(ByteBuffer[] of) {
+			this.of = of;
+			this.buffers = new ByteBuffer[of.length];
+		}
+	}
+	
 	ByteBuffer getBuffer(int index)
 			throws IOException {
+		ByteBuffer[] s = shared;
+		if (s!=null) return s[index];
+		
 //		if(buffers[index]==null) {
 //			long offset = pageSize * index;
 //			buffers[index] = channel.map(MapMode.READ_ONLY,offset,Math.min(size-offset,pageSize+PAGE_OVERLAP));
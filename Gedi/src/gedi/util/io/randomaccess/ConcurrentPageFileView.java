@@ -104,13 +104,27 @@ public class ConcurrentPageFileView implements BinaryReader, LineReader {
 		int eindex = getIndex(pos+length-1);
 		int boffset = getOffset(pos);
 
+		if (file.isShared()) {
+			// each thread has its own duplicates of the shared pages
+			for (int index=sindex; index<=eindex; index++) {
+				ByteBuffer buffer = file.getLocalBuffer(index);
+				buffer.position(boffset);
+				int l = Math.min(length, (int)(file.pageSize-boffset));
+				buffer.get(dst, offset, l);
+				length-=l;
+				offset+=l;
+				boffset=0;
+			}
+			return this;
+		}
+		
 		synchronized (this) {
 			// this must be synchronized, as the position may be overwritten!
 			for (int index=sindex; index<=eindex; index++) {
 				ByteBuffer buffer = file.getBuffer(index);
 				buffer.position(boffset);
 	//			int l = Math.min(length, buffer.capacity()-offset);
-				int l = Math.min(length, (int)(ConcurrentPageFile.pageSize-boffset));// (int)(buffer.remaining()-PAGE_OVERLAP-offset));
+				int l = Math.min(length, (int)(file.pageSize-boffset));// (int)(buffer.remaining()-PAGE_OVERLAP-offset));
 				buffer.get(dst, offset, l);
 				length-=l;
 				offset+=l;
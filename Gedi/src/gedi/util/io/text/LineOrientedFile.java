@@ -25,6 +25,7 @@ import gedi.util.FunctorUtils.MergeIterator;
 import gedi.util.ReflectionUtils;
 import gedi.util.io.Directory;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
@@ -63,6 +64,7 @@ public class LineOrientedFile extends File {
 	private Boolean gzipped;
 	private Boolean bzipped2;
 	protected boolean autoFlush = false;
+	private int threads = 0;
 	
 	public LineOrientedFile(Directory dir, String name) {
 		super(dir,name);
@@ -147,6 +149,19 @@ public class LineOrientedFile extends File {
 		return autoFlush;
 	}
 	
+	/**
+	 * If threads>0, lines are read ahead on a background thread, gzip files are decompressed by {@link ParallelGzipInputStream} and
+	 * written by {@link ParallelGzipOutputStream} (i.e. as BGZF) using the given number of threads.
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	public int getThreads() {
+		return threads;
+	}
+	
 	public void startAppending() throws IOException {
 		startWriting(true);
 	}
@@ -285,7 +300,9 @@ public class LineOrientedFile extends File {
 		if (isPipe())
 			forbiddenLineIterator = true;
 		
-		LineIterator re = new LineIterator(createReader(),commentPrefixes);
+		LineIterator re = threads>0
+				?new LineIterator(new ReadAheadLineReader(new BufferedReader(createReader())),commentPrefixes)
+				:new LineIterator(createReader(),commentPrefixes);
 		firstLineRead(re.getFirstLine());
 		return re;
 	}
@@ -304,7 +321,9 @@ public class LineOrientedFile extends File {
 	 * @throws IOException
 	 */
 	public InputStreamReader createReader() throws IOException {
-		if (isGZIP())
+		if (isGZIP() && threads>0)
+			return new InputStreamReader(new ParallelGzipInputStream(createInputStream(),threads));
+		else if (isGZIP())
 			return new InputStreamReader(new GZIPInputStream(createInputStream()));
 		else if (isBZIP2())
 			try {
@@ -335,7 +354,9 @@ public class LineOrientedFile extends File {
 		isBZIP2();
 		
 		OutputStream st = createOutputStream(append);
-		if (isGZIP())
+		if (isGZIP() && threads>0)
+			st = new ParallelGzipOutputStream(st,threads);
+		else if (isGZIP())
 			st = new GZIPOutputStream(st);
 		if (isBZIP2())
 			st = new BZip2CompressorOutputStream(st);
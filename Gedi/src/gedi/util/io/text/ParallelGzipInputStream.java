@@ -0,0 +1,251 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.util.io.text;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses gzip data on background threads. Members that contain their compressed length in the header (i.e. BGZF blocks,
+ * as written by {@link ParallelGzipOutputStream}, bgzip or samtools) are inflated in parallel by a pool of threads. For other members
+ * the boundaries are not known before inflating, so the rest of the stream is decompressed sequentially by a single background thread.
+ *
+ * The decompressed blocks are handed over in order through a bounded queue.
+ *
+ * @author erhard
+ *
+ */
+public class ParallelGzipInputStream extends InputStream {
+
+	private static final int CHUNK = 1<<16;
+	private static final byte[] END = new byte[0];
+
+	private PushbackInputStream in;
+	private ExecutorService pool;
+	private ArrayBlockingQueue<Future<byte[]>> queue;
+	private Thread reader;
+	private volatile boolean closed = false;
+
+	private byte[] buf = new byte[0];
+	private int pos = 0;
+	private boolean eof = false;
+
+	public ParallelGzipInputStream(InputStream in, int threads) {
+		this.in = new PushbackInputStream(in, 12+0xFFFF);
+		this.queue = new ArrayBlockingQueue<Future<byte[]>>(Math.max(1, threads)*4);
+		// idle threads time out, such that an abandoned stream does not keep its pool alive
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(1, threads), Math.max(1, threads), 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), r->{
+			Thread t = new Thread(r, "ParallelGzipInputStream");
+			t.setDaemon(true);
+			return t;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		this.pool = executor;
+		this.reader = new Thread(this::readMembers, "ParallelGzipInputStream reader");
+		this.reader.setDaemon(true);
+		this.reader.start();
+	}
+
+	private void readMembers() {
+		try {
+			byte[] header = new byte[12];
+			for (;;) {
+				int n = readFully(header, 0, 12, true);
+				if (n==0) break;
+				if (n<10 || (header[0]&0xFF)!=(GZIPInputStream.GZIP_MAGIC & 0xFF) || (header[1]&0xFF)!=(GZIPInputStream.GZIP_MAGIC >> 8))
+					throw new IOException("Not in gzip format!");
+
+				int bsize = -1;
+				byte[] extra = null;
+				if (n==12 && (header[3]&4)!=0) {
+					int xlen = (header[10]&0xFF) | (header[11]&0xFF)<<8;
+					extra = new byte[xlen];
+					readFully(extra, 0, xlen, false);
+					bsize = getBlockSize(extra);
+				}
+
+				if (bsize<0) {
+					// no BGZF block: inflate the rest sequentially
+					if (extra!=null) in.unread(extra);
+					in.unread(header, 0, n);
+					inflateSequentially();
+					break;
+				}
+
+				byte[] block = new byte[bsize+1];
+				System.arraycopy(header, 0, block, 0, 12);
+				System.arraycopy(extra, 0, block, 12, extra.length);
+				readFully(block, 12+extra.length, block.length-12-extra.length, false);
+				int dataStart = 12+extra.length;
+				queue.put(pool.submit(()->inflateBlock(block, dataStart)));
+			}
+			queue.put(CompletableFuture.completedFuture(END));
+		} catch (InterruptedException e) {
+			// closed
+		} catch (Throwable e) {
+			CompletableFuture<byte[]> f = new CompletableFuture<byte[]>();
+			f.completeExceptionally(e);
+			try {
+				if (!closed) queue.put(f);
+			} catch (InterruptedException e1) {
+			}
+		} finally {
+			// no more blocks are submitted; the ones already queued are still inflated
+			pool.shutdown();
+		}
+	}
+
+	private void inflateSequentially() throws IOException, InterruptedException {
+		GZIPInputStream gz = new GZIPInputStream(in, CHUNK);
+		for (;;) {
+			byte[] chunk = new byte[CHUNK];
+			int n = 0;
+			while (n<chunk.length) {
+				int r = gz.read(chunk, n, chunk.length-n);
+				if (r<0) break;
+				n+=r;
+			}
+			if (n==0) break;
+			queue.put(CompletableFuture.completedFuture(n==chunk.length?chunk:Arrays.copyOf(chunk, n)));
+		}
+	}
+
+	private static int getBlockSize(byte[] extra) {
+		for (int i=0; i+4<=extra.length; ) {
+			int slen = (extra[i+2]&0xFF) | (extra[i+3]&0xFF)<<8;
+			if (extra[i]=='B' && extra[i+1]=='C' && slen==2 && i+6<=extra.length)
+				return (extra[i+4]&0xFF) | (extra[i+5]&0xFF)<<8;
+			i+=4+slen;
+		}
+		return -1;
+	}
+
+	private static byte[] inflateBlock(byte[] block, int dataStart) throws IOException {
+		int t = block.length-8;
+		int crc = (block[t]&0xFF) | (block[t+1]&0xFF)<<8 | (block[t+2]&0xFF)<<16 | (block[t+3]&0xFF)<<24;
+		int isize = (block[t+4]&0xFF) | (block[t+5]&0xFF)<<8 | (block[t+6]&0xFF)<<16 | (block[t+7]&0xFF)<<24;
+		byte[] re = new byte[isize];
+		Inflater inf = new Inflater(true);
+		try {
+			inf.setInput(block, dataStart, t-dataStart);
+			int n = 0;
+			while (n<isize && !inf.finished()) {
+				int r = inf.inflate(re, n, isize-n);
+				if (r==0 && (inf.needsInput() || inf.needsDictionary())) break;
+				n+=r;
+			}
+			if (n!=isize)
+				throw new IOException("Corrupt gzip block: expected "+isize+" bytes, got "+n);
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt gzip block!",e);
+		} finally {
+			inf.end();
+		}
+		CRC32 c = new CRC32();
+		c.update(re);
+		if ((int)c.getValue()!=crc)
+			throw new IOException("Corrupt gzip block: CRC mismatch!");
+		return re;
+	}
+
+	/**
+	 * Returns the number of bytes read; if eofOk, 0 is returned at the end of the stream (otherwise an exception is thrown)
+	 */
+	private int readFully(byte[] b, int off, int len, boolean eofOk) throws IOException {
+		int n = 0;
+		while (n<len) {
+			int r = in.read(b, off+n, len-n);
+			if (r<0) {
+				if (eofOk && n<len) return n;
+				throw new EOFException("Unexpected end of gzip stream!");
+			}
+			n+=r;
+		}
+		return n;
+	}
+
+	private boolean fill() throws IOException {
+		while (!eof && pos>=buf.length) {
+			try {
+				buf = queue.take().get();
+				pos = 0;
+				if (buf==END)
+					eof = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while decompressing!",e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw new IOException(e.getCause().getMessage(), e.getCause());
+				throw new IOException("Could not decompress!", e.getCause());
+			}
+		}
+		return !eof;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (closed) throw new IOException("Stream closed!");
+		if (!fill()) return -1;
+		return buf[pos++]&0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (closed) throw new IOException("Stream closed!");
+		if (len==0) return 0;
+		if (!fill()) return -1;
+		int n = Math.min(len, buf.length-pos);
+		System.arraycopy(buf, pos, b, off, n);
+		pos+=n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return closed?0:buf.length-pos;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			reader.interrupt();
+			pool.shutdownNow();
+			queue.clear();
+			in.close();
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.util.io.text;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses data on several threads into BGZF blocks, i.e. independent gzip members of at most 64kb that contain their compressed
+ * size in the header. The output can be read by any gzip reader (e.g. {@link java.util.zip.GZIPInputStream}), and can be inflated in
+ * parallel by {@link ParallelGzipInputStream}.
+ *
+ * Blocks are compressed by a pool of threads and written in order by the calling thread; at most 4 blocks per thread are pending.
+ *
+ * @author erhard
+ *
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	/**
+	 * Uncompressed size of a block (as used by bgzip); the compressed block is guaranteed to fit into 64kb
+	 */
+	public static final int BLOCK_SIZE = 0xFF00;
+	private static final int HEADER_SIZE = 18;
+	private static final int MAX_BLOCK = 1<<16;
+	private static final byte[] EOF_BLOCK = {
+		31, (byte)139, 8, 4, 0, 0, 0, 0, 0, (byte)255, 6, 0, 66, 67, 2, 0, 27, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+	};
+
+	private OutputStream out;
+	private int level;
+	private ExecutorService pool;
+	private int maxPending;
+	private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	private byte[] buf = new byte[BLOCK_SIZE];
+	private int n = 0;
+	private boolean closed = false;
+
+	public ParallelGzipOutputStream(OutputStream out, int threads) {
+		this(out, threads, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	public ParallelGzipOutputStream(OutputStream out, int threads, int level) {
+		this.out = out;
+		this.level = level;
+		this.maxPending = Math.max(1, threads)*4;
+		this.pool = Executors.newFixedThreadPool(Math.max(1, threads), r->{
+			Thread t = new Thread(r, "ParallelGzipOutputStream");
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (closed) throw new IOException("Stream closed!");
+		buf[n++] = (byte) b;
+		if (n==buf.length)
+			submit();
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) throw new IOException("Stream closed!");
+		while (len>0) {
+			int l = Math.min(len, buf.length-n);
+			System.arraycopy(b, off, buf, n, l);
+			n+=l;
+			off+=l;
+			len-=l;
+			if (n==buf.length)
+				submit();
+		}
+	}
+
+	private void submit() throws IOException {
+		if (n==0) return;
+		byte[] data = buf;
+		int len = n;
+		pending.add(pool.submit(()->compressBlock(data, len, level)));
+		buf = new byte[BLOCK_SIZE];
+		n = 0;
+		while (pending.size()>maxPending)
+			writePending();
+	}
+
+	private void writePending() throws IOException {
+		try {
+			out.write(pending.removeFirst().get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing!",e);
+		} catch (ExecutionException e) {
+			throw new IOException("Could not compress!", e.getCause());
+		}
+	}
+
+	private static byte[] compressBlock(byte[] data, int len, int level) {
+		byte[] re = new byte[MAX_BLOCK];
+		Deflater def = new Deflater(level, true);
+		int size;
+		try {
+			def.setInput(data, 0, len);
+			def.finish();
+			size = def.deflate(re, HEADER_SIZE, MAX_BLOCK-HEADER_SIZE-8);
+			if (!def.finished())
+				throw new RuntimeException("Compressed block does not fit into "+MAX_BLOCK+" bytes!");
+		} finally {
+			def.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, len);
+
+		System.arraycopy(EOF_BLOCK, 0, re, 0, HEADER_SIZE);
+		int bsize = HEADER_SIZE+size+8-1;
+		re[16] = (byte) bsize;
+		re[17] = (byte) (bsize>>>8);
+		putInt(re, HEADER_SIZE+size, (int) crc.getValue());
+		putInt(re, HEADER_SIZE+size+4, len);
+		return Arrays.copyOf(re, HEADER_SIZE+size+8);
+	}
+
+	private static void putInt(byte[] b, int off, int v) {
+		b[off] = (byte) v;
+		b[off+1] = (byte) (v>>>8);
+		b[off+2] = (byte) (v>>>16);
+		b[off+3] = (byte) (v>>>24);
+	}
+
+	/**
+	 * Compresses the current (partial) block and writes all pending blocks
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (closed) return;
+		submit();
+		while (!pending.isEmpty())
+			writePending();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			try {
+				flush();
+				out.write(EOF_BLOCK);
+			} finally {
+				closed = true;
+				pool.shutdownNow();
+				out.close();
+			}
+		}
+	}
+
+}
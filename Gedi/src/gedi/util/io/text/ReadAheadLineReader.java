@@ -0,0 +1,128 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.util.io.text;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads lines on a background thread and hands them over in batches through a bounded queue, i.e. reading (and decompressing)
+ * overlaps with parsing in the consuming thread.
+ *
+ * @author erhard
+ *
+ */
+public class ReadAheadLineReader implements LineReader {
+
+	private static final int BATCH_LINES = 1024;
+	private static final int BATCH_CHARS = 1<<18;
+	private static final String[] END = new String[0];
+
+	private BufferedReader br;
+	private ArrayBlockingQueue<String[]> queue;
+	private Thread thread;
+	private volatile boolean closed = false;
+	private volatile Throwable error;
+
+	private String[] batch = new String[0];
+	private int index = 0;
+
+	public ReadAheadLineReader(BufferedReader br) {
+		this(br, 16);
+	}
+
+	/**
+	 *
+	 * @param br
+	 * @param batches maximal number of batches read ahead
+	 */
+	public ReadAheadLineReader(BufferedReader br, int batches) {
+		this.br = br;
+		this.queue = new ArrayBlockingQueue<String[]>(batches);
+		this.thread = new Thread(this::readBatches, "ReadAheadLineReader");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	private void readBatches() {
+		try {
+			String[] b = new String[BATCH_LINES];
+			int n = 0;
+			int chars = 0;
+			String line;
+			while ((line = br.readLine())!=null) {
+				b[n++] = line;
+				chars+=line.length();
+				if (n==b.length || chars>=BATCH_CHARS) {
+					queue.put(n==b.length?b:Arrays.copyOf(b, n));
+					b = new String[BATCH_LINES];
+					n = 0;
+					chars = 0;
+				}
+			}
+			if (n>0)
+				queue.put(Arrays.copyOf(b, n));
+			queue.put(END);
+		} catch (InterruptedException e) {
+			// closed
+		} catch (Throwable e) {
+			if (!closed) {
+				error = e;
+				try {
+					queue.put(END);
+				} catch (InterruptedException e1) {
+				}
+			}
+		}
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		if (closed) return null;
+		if (index>=batch.length) {
+			if (batch==END) return null;
+			try {
+				batch = queue.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while reading lines!",e);
+			}
+			index = 0;
+			if (batch==END) {
+				if (error!=null)
+					throw new IOException("Could not read lines!", error);
+				return null;
+			}
+		}
+		return batch[index++];
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			thread.interrupt();
+			queue.clear();
+			br.close();
+		}
+	}
+
+}
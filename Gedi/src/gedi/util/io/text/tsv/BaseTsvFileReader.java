@@ -22,6 +22,7 @@ import gedi.core.region.intervalTree.MemoryIntervalTreeStorage;
 import gedi.util.ArrayUtils;
 import gedi.util.StringUtils;
 import gedi.util.io.text.HeaderLine;
+import gedi.util.io.text.LineOrientedFile;
 import gedi.util.io.text.LineWriter;
 import gedi.util.parsing.Parser;
 
@@ -35,11 +36,25 @@ public abstract class BaseTsvFileReader<D> {
 
 	protected BiFunction<HeaderLine,String[],String> lineChecker;
 	protected Class<D> type;
+	protected int threads = 0;
 	
 
 	public BaseTsvFileReader(Class<D> type) {
 		this.type = type;
 	}
+	
+	/**
+	 * If threads>0, lines are read ahead on background threads (see {@link LineOrientedFile#setThreads(int)}); these are only
+	 * stopped when the file has been read completely, so this should not be used if reading may be stopped early.
+	 * @param threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	public int getThreads() {
+		return threads;
+	}
 
 	public MemoryIntervalTreeStorage<D> readIntoMemoryTakeFirst() throws IOException {
 		return readIntoMemoryTakeFirst((LineWriter)null);
@@ -157,6 +157,7 @@ public class GenomicExonsTsvFileReader<D> extends BaseTsvFileReader<D> {
 	public <C> MemoryIntervalTreeStorage<C> readIntoMemory(MemoryIntervalTreeStorage<C> re, BiFunction<C, D, C> combiner) throws IOException {
 		
 		LineOrientedFile file = new LineOrientedFile(path);
+		file.setThreads(threads);
 		ExtendedIterator<String> it = file.lineIterator("#");
 		if (progress!=null)
 			it = it.progress(progress, -1, s->"Reading "+path);
@@ -345,7 +345,9 @@ public class GenomicTsvFileReader<D>  extends BaseTsvFileReader<D>{
 	}
 
 	protected Iterator<String> createIterator() throws IOException {
-		return new LineOrientedFile(path).lineIterator();
+		LineOrientedFile file = new LineOrientedFile(path);
+		file.setThreads(threads);
+		return file.lineIterator();
 	}
 
 	
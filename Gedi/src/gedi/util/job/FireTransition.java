@@ -30,6 +30,8 @@ public class FireTransition implements Callable<FireTransition> {
 	private ExecutionContext context;
 	
 	private Object result;
+	private long created = System.nanoTime();
+	private long queueTime;
 	private long time;
 	private Consumer<FireTransition> callback;
 
@@ -50,6 +52,7 @@ public class FireTransition implements Callable<FireTransition> {
 	public FireTransition call() throws Exception {
 		try {
 			long start = System.nanoTime();
+			queueTime = start-created;
 			if (!isValidExecution()) return this;
 			MutableTuple in = context.createInput(transition);
 			result = transition.getJob().execute(context, in);
@@ -67,6 +70,18 @@ public class FireTransition implements Callable<FireTransition> {
 		return time;
 	}
 	
+	/**
+	 * Time in ns between creation of this object (i.e. when it is submitted) and the start of its execution.
+	 * @return
+	 */
+	public long getQueueTime() {
+		return queueTime;
+	}
+	
+	public Transition getTransition() {
+		return transition;
+	}
+	
 	public Object getResult() {
 		return result;
 	}
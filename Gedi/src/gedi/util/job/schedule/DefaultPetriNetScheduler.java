@@ -34,6 +34,8 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,6 +43,11 @@ public class DefaultPetriNetScheduler implements PetriNetScheduler {
 
 	private static final Logger log = Logger.getLogger( PetriNetScheduler.class.getName() );
 	
+	/**
+	 * Interval in ms the scheduler thread checks whether the execution has been cancelled (i.e. another execution has been started)
+	 */
+	private static final long CANCEL_CHECK_INTERVAL = 100;
+	
 	protected ExecutionContext context;
 	protected ExecutorService threadpool;
 	protected Runnable finishAction;
@@ -100,20 +107,9 @@ public class DefaultPetriNetScheduler implements PetriNetScheduler {
 			for (PetriNetListener l : listeners)
 				l.petriNetExecutionStarted(event);
 			
-			// to protect ready and running!
-			Object lock = new Object();
-			
 			long start = System.nanoTime();
 			
-			MutableLong total = new MutableLong();
-			
-			HashSet<Transition> ready = new HashSet<Transition>();
-			for (Place p : context.getPetrNet().getSources())
-				addReadyConsumers(p, ready);
-			ArrayList<Transition> iter = new ArrayList<Transition>();
-			
-			HashSet<Transition> runnings = new HashSet<Transition>();
-			HashSet<Future<FireTransition>> futures = new HashSet<Future<FireTransition>>();
+			Execution exec = new Execution(eid, uid, event);
 			if (Thread.interrupted() || context.getExecutionId()!=eid) {
 				if (logging) log.log(Level.FINE,()->"Canceled execution "+uid);
 				for (PetriNetListener l : listeners)
@@ -135,49 +131,31 @@ public class DefaultPetriNetScheduler implements PetriNetScheduler {
 				});
 			}
 			
-			while (!runnings.isEmpty() || !ready.isEmpty()) {
+			synchronized (exec) {
+				for (Place p : context.getPetrNet().getSources())
+					exec.submitReadyConsumers(p);
+			}
+			
+			// transitions are submitted from the completion callbacks, here we only wait until all are done (or the execution is cancelled)
+			while (!exec.isDone()) {
+				boolean interrupted = false;
+				try {
+					exec.completed.poll(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
 				
-				if (Thread.interrupted() || context.getExecutionId()!=eid) {
-					for (Future<FireTransition> f : futures)
-						f.cancel(true);
+				if (interrupted || Thread.interrupted() || context.getExecutionId()!=eid) {
+					exec.cancel();
 					if (logging) log.log(Level.FINE,()->"Canceled execution "+uid);
 					for (PetriNetListener l : listeners)
 						l.petriNetExecutionCancelled(event);
 					return;
 				}
-				iter.clear();
-				synchronized (lock) {
-					iter.addAll(ready);
-					ready.clear();
-				}
-				
-				for (Transition n : iter) {
-					if (logging) log.log(Level.FINER,()->"Submitting "+n+" (id="+uid+") "+context);
-					synchronized (lock) {
-						futures.add(threadpool.submit(new FireTransition(n, eid, context, ft->{
-							if (ft.getException()!=null) {
-								StringWriter exmsg = new StringWriter();
-								ft.getException().printStackTrace(new PrintWriter(exmsg));
-								boolean interrupted = GeneralUtils.isCause(ft.getException(),InterruptedException.class);
-								log.log(interrupted?Level.FINE:Level.SEVERE,"Exception in "+n+" (id="+uid+"):"+exmsg.toString());
-							} else if (ft.isValidExecution()) {
-								context.putToken(n.getOutput(), ft.getResult());
-								if (logging) log.log(Level.FINER,()->"Finished "+n+" (id="+uid+") after "+ft.getTime()+"ns");
-								total.N+=ft.getTime();
-								synchronized (lock) {
-									addReadyConsumers(n.getOutput(), ready);
-									runnings.remove(n);
-								}
-							}
-						})));
-						runnings.add(n);
-					}
-				}
 			}
 			
-			
 			if (logging) log.log(Level.FINE,()->String.format("Finished executing Petri net (id="+uid+") in %s, total time in transitions: %s",
-					StringUtils.getHumanReadableTimespanNano(System.nanoTime()-start),StringUtils.getHumanReadableTimespanNano(total.N)));
+					StringUtils.getHumanReadableTimespanNano(System.nanoTime()-start),StringUtils.getHumanReadableTimespanNano(exec.total.N)));
 			
 			for (PetriNetListener l : listeners)
 				l.petriNetExecutionFinished(event);
@@ -194,12 +172,83 @@ public class DefaultPetriNetScheduler implements PetriNetScheduler {
 		}
 	}
 
-	private void addReadyConsumers(Place p, HashSet<Transition> ready) {
-		for (Transition t : p.getConsumers())
-			if (!ready.contains(t) && context.isReady(t))
-				ready.add(t);
-	}
+	/**
+	 * The state of a single execution; all fields except completed are guarded by this object.
+	 * @author erhard
+	 *
+	 */
+	private class Execution {
+		private int eid;
+		private String uid;
+		private PetriNetEvent event;
+		
+		private HashSet<Transition> submitted = new HashSet<Transition>();
+		private HashSet<Future<FireTransition>> futures = new HashSet<Future<FireTransition>>();
+		private int running = 0;
+		private MutableLong total = new MutableLong();
+		
+		/**
+		 * Signals the scheduler thread that a transition has finished
+		 */
+		private LinkedBlockingQueue<FireTransition> completed = new LinkedBlockingQueue<FireTransition>();
+		
+		public Execution(int eid, String uid, PetriNetEvent event) {
+			this.eid = eid;
+			this.uid = uid;
+			this.event = event;
+		}
 
+		public synchronized boolean isDone() {
+			return running==0;
+		}
+		
+		public synchronized void cancel() {
+			for (Future<FireTransition> f : futures)
+				f.cancel(true);
+		}
+		
+		/**
+		 * Must hold the lock of this!
+		 * @param p
+		 */
+		private void submitReadyConsumers(Place p) {
+			for (Transition t : p.getConsumers())
+				if (!submitted.contains(t) && context.isReady(t)) {
+					submitted.add(t);
+					submit(t);
+				}
+		}
+		
+		private void submit(Transition n) {
+			if (logging) log.log(Level.FINER,()->"Submitting "+n+" (id="+uid+") "+context);
+			running++;
+			futures.add(threadpool.submit(new FireTransition(n, eid, context, this::finished)));
+		}
+		
+		private void finished(FireTransition ft) {
+			Transition n = ft.getTransition();
+			if (ft.getException()!=null) {
+				// the execution will not finish, but can be cancelled
+				StringWriter exmsg = new StringWriter();
+				ft.getException().printStackTrace(new PrintWriter(exmsg));
+				boolean interrupted = GeneralUtils.isCause(ft.getException(),InterruptedException.class);
+				log.log(interrupted?Level.FINE:Level.SEVERE,"Exception in "+n+" (id="+uid+"):"+exmsg.toString());
+			} else if (ft.isValidExecution()) {
+				if (logging) log.log(Level.FINER,()->"Finished "+n+" (id="+uid+") after "+ft.getTime()+"ns");
+				synchronized (this) {
+					context.putToken(n.getOutput(), ft.getResult());
+					total.N+=ft.getTime();
+					submitReadyConsumers(n.getOutput());
+				}
+				for (PetriNetListener l : listeners)
+					l.transitionExecuted(event, n, ft.getQueueTime(), ft.getTime());
+				synchronized (this) {
+					running--;
+				}
+				completed.offer(ft);
+			}
+		}
+	}
 
 	@Override
 	public ExecutionContext getExecutionContext() {
@@ -18,6 +18,8 @@
 
 package gedi.util.job.schedule;
 
+import gedi.util.job.Transition;
+
 public interface PetriNetListener {
 
 
@@ -25,6 +27,15 @@ public interface PetriNetListener {
 	void petriNetExecutionFinished(PetriNetEvent event);
 	void petriNetExecutionCancelled(PetriNetEvent event);
 	
+	/**
+	 * Called from the thread that executed the transition, after its output token has been put.
+	 * @param event
+	 * @param transition
+	 * @param queueTime time in ns between submission and start of the execution
+	 * @param executionTime time in ns of the execution
+	 */
+	default void transitionExecuted(PetriNetEvent event, Transition transition, long queueTime, long executionTime) {}
+	
 	
 	
 }
@@ -20,8 +20,14 @@ package gedi.util.math.stat.inference;
 
 import gedi.util.ArrayUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.function.ToDoubleFunction;
 
@@ -39,135 +45,334 @@ import java.util.function.ToDoubleFunction;
  * 
  * The parameters \pi_i are inferred (the proportion of object i from the total expression)
  * 
+ * The equivalence classes are compiled into a compressed sparse row layout in the constructor (i.e. the objects of class e are
+ * index[offset[e]..offset[e+1]-1]), such that the iterations only work on primitive arrays. For large problems, the E step is
+ * distributed over blocks of equivalence classes. The EM iterations are accelerated by SQUAREM (Varadhan and Roland,
+ * Scandinavian Journal of Statistics 35, 335–353 (2008)).
+ *
  * @author erhard
  *
  */
 public class EquivalenceClassCountEM<O> {
 
-	private O[][] E;
-	
-	private HashMap<O,Integer> o2Index;
+	/**
+	 * Minimal number of entries per block for the parallel E step
+	 */
+	private static final int MIN_BLOCK_ENTRIES = 1<<15;
+
+	private static ExecutorService sharedPool;
+
+	private O[] objects;
+	private int[] offset;
+	private int[] index;
+
 	private double N;
 	private double[] alpha;
 	private double[] l;
-	
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean accelerate = true;
+	private double llTolerance = 1E-12;
+	private ExecutorService executor;
+
+	@SuppressWarnings("unchecked")
 	public EquivalenceClassCountEM(O[][] E,
 			double[] alpha, ToDoubleFunction<O> l) {
-		this.E = E;
-		
-		o2Index = new HashMap<O, Integer>();
-		for (O[] e : E) 
-			for (O o : e)
-				o2Index.computeIfAbsent(o, x->o2Index.size());
-		this.alpha = alpha;
-		this.l = new double[o2Index.size()];
-		
-		for (O o : o2Index.keySet()) {
-			int ind = o2Index.get(o);
-			this.l[ind] = l.applyAsDouble(o);
+
+		HashMap<O,Integer> o2Index = new HashMap<O, Integer>();
+		ArrayList<O> objects = new ArrayList<O>();
+		int nnz = 0;
+		for (O[] e : E)
+			nnz+=e.length;
+
+		offset = new int[E.length+1];
+		index = new int[nnz];
+		nnz = 0;
+		for (int ei=0; ei<E.length; ei++) {
+			for (O o : E[ei]) {
+				Integer ind = o2Index.get(o);
+				if (ind==null) {
+					o2Index.put(o, ind = objects.size());
+					objects.add(o);
+				}
+				index[nnz++] = ind;
+			}
+			offset[ei+1] = nnz;
 		}
+		this.objects = (O[]) objects.toArray();
+
+		this.l = new double[this.objects.length];
+		for (int i=0; i<this.objects.length; i++)
+			this.l[i] = l.applyAsDouble(this.objects[i]);
+
+		setAlpha(alpha);
+	}
+
+	/**
+	 * Replaces the expression values of the equivalence classes (e.g. to infer the proportions for another condition
+	 * without compiling the classes again).
+	 * @param alpha
+	 * @return
+	 */
+	public EquivalenceClassCountEM<O> setAlpha(double[] alpha) {
+		if (alpha.length!=offset.length-1) throw new IllegalArgumentException("Expected "+(offset.length-1)+" values, got "+alpha.length);
+		this.alpha = alpha;
 		N = ArrayUtils.sum(alpha);
+		return this;
 	}
 
-	
+	/**
+	 * Number of threads for the E step; problems with less than {@link #MIN_BLOCK_ENTRIES} entries per thread use less threads.
+	 * @param threads
+	 * @return
+	 */
+	public EquivalenceClassCountEM<O> setThreads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Executor for the parallel E step; if not set, a pool shared by all instances is used. The executor is not shut down
+	 * by this class.
+	 * @param executor
+	 * @return
+	 */
+	public EquivalenceClassCountEM<O> setExecutor(ExecutorService executor) {
+		this.executor = executor;
+		return this;
+	}
+
+	/**
+	 * Use SQUAREM steps (default) or plain EM iterations
+	 * @param accelerate
+	 * @return
+	 */
+	public EquivalenceClassCountEM<O> setAccelerate(boolean accelerate) {
+		this.accelerate = accelerate;
+		return this;
+	}
+
+	/**
+	 * The iterations stop, if the log likelihood changes by less than this (relative to the log likelihood) or if no expected
+	 * count changes by more than 0.01 in an iteration
+	 * @param llTolerance
+	 * @return
+	 */
+	public EquivalenceClassCountEM<O> setLogLikelihoodTolerance(double llTolerance) {
+		this.llTolerance = llTolerance;
+		return this;
+	}
+
+	/**
+	 * Infers the proportions and returns the log likelihood at the returned proportions. Miniter and maxiter count EM steps
+	 * (i.e. a SQUAREM step counts as three).
+	 * @param miniter
+	 * @param maxiter
+	 * @param proportionSetter
+	 * @return
+	 */
 	public double compute(int miniter, int maxiter, BiConsumer<O,Double> proportionSetter) {
-		
-		double[] w = new double[l.length];
+
+		EStep estep = new EStep();
 		double[] pi = new double[l.length];
-		double[] oldPi = new double[l.length];
-		double oldll  = Double.NEGATIVE_INFINITY;
-		
+		double[] pi1 = new double[l.length];
+		double[] pi2 = new double[l.length];
+		double[] pi3 = new double[l.length];
+		double[] r = new double[l.length];
+		double[] v = new double[l.length];
+
 		Arrays.fill(pi,1.0/pi.length);
-//		System.out.println(o2Index);
-		for (int it=0; it<maxiter; it++) {
-			
-			// e step
-			Arrays.fill(w, 0);
-			for (int ei=0; ei<E.length; ei++) {
-				double tot = 0;
-				for (O o : E[ei]) {
-					int ind = o2Index.get(o);
-					tot+=pi[ind]/l[ind];
+		double ll = estep.apply(pi, pi1);
+
+		int it = 1;
+		while (it<maxiter) {
+			double oldll = ll;
+			boolean finished = converged(pi, pi1);
+
+			if (!accelerate || it+2>maxiter) {
+				// plain EM step
+				double[] tmp = pi;
+				pi = pi1;
+				pi1 = tmp;
+				ll = estep.apply(pi, pi1);
+				it++;
+			}
+			else {
+				// pi1 = F(pi), pi2 = F(pi1), pi3 = extrapolation
+				estep.apply(pi1, pi2);
+				double rr = 0;
+				double vv = 0;
+				for (int i=0; i<pi.length; i++) {
+					r[i] = pi1[i]-pi[i];
+					v[i] = pi2[i]-pi1[i]-r[i];
+					rr+=r[i]*r[i];
+					vv+=v[i]*v[i];
+				}
+				double step = vv==0?-1:Math.min(-1,-Math.sqrt(rr/vv));
+				// step halving towards -1 (i.e. pi2) until the extrapolation is feasible
+				while (!extrapolate(pi, r, v, step, pi3))
+					step = step>-1.5?-1:(step-1)/2;
+
+				// stabilization: only accept the extrapolation if it does not decrease the likelihood
+				double ll3 = estep.apply(pi3, pi1);
+				it+=3;
+				if (ll3>=oldll) {
+					double[] tmp = pi;
+					pi = pi3;
+					pi3 = tmp;
+					ll = ll3;
+				} else {
+					double[] tmp = pi;
+					pi = pi2;
+					pi2 = tmp;
+					ll = estep.apply(pi, pi1);
+					it++;
 				}
-				for (O o : E[ei]) {
-					int ind = o2Index.get(o);
-					w[ind]+=tot==0?0:pi[ind]/l[ind]/tot*alpha[ei];
+			}
+
+			if (it>miniter && (finished || Math.abs(ll-oldll)<=llTolerance*Math.abs(oldll)))
+				break;
+		}
+
+		for (int i=0; i<objects.length; i++)
+			proportionSetter.accept(objects[i],pi[i]);
+
+		return ll;
+	}
+
+	private static synchronized ExecutorService getSharedPool() {
+		if (sharedPool==null)
+			sharedPool = Executors.newCachedThreadPool(r->{
+				Thread t = new Thread(r, "EquivalenceClassCountEM");
+				t.setDaemon(true);
+				return t;
+			});
+		return sharedPool;
+	}
+
+	private boolean converged(double[] pi, double[] next) {
+		for(int i=0; i<pi.length; i++)
+			if (next[i]*N>0.01 && Math.abs(next[i]*N-pi[i]*N)>0.01)
+				return false;
+		return true;
+	}
+
+	private boolean extrapolate(double[] pi, double[] r, double[] v, double step, double[] re) {
+		if (step==-1) {
+			// this is F(F(pi))
+			for (int i=0; i<pi.length; i++)
+				re[i] = pi[i]+2*r[i]+v[i];
+			return true;
+		}
+		for (int i=0; i<pi.length; i++) {
+			re[i] = pi[i]-2*step*r[i]+step*step*v[i];
+			if (re[i]<0) return false;
+		}
+		ArrayUtils.normalize(re);
+		return true;
+	}
+
+	/**
+	 * Computes the EM update next=F(pi) and returns the log likelihood of pi.
+	 *
+	 * @author erhard
+	 *
+	 */
+	private class EStep {
+		private double[] ratio = new double[l.length];
+		private double[] w = new double[l.length];
+
+		private ArrayList<Block> blocks;
+		private ExecutorService pool;
+
+		public EStep() {
+			int nblocks = Math.max(1, Math.min(threads, index.length/MIN_BLOCK_ENTRIES));
+			if (nblocks>1) {
+				blocks = new ArrayList<Block>(nblocks);
+				int start = 0;
+				for (int b=0; b<nblocks; b++) {
+					int end = start;
+					long until = (long)index.length*(b+1)/nblocks;
+					while (end<offset.length-1 && (offset[end]<until || b==nblocks-1))
+						end++;
+					blocks.add(new Block(start, end));
+					start = end;
 				}
+				pool = executor!=null?executor:getSharedPool();
 			}
-//			System.out.println("Iteration "+it+" w="+StringUtils.toString(w));
-				
-			// m step
-			double[] tmp = oldPi;
-			oldPi = pi;
-			pi = tmp;
-			
+		}
+
+		public double apply(double[] pi, double[] next) {
 			for (int i=0; i<pi.length; i++)
-				pi[i] = w[i]/N;
-			ArrayUtils.normalize(pi);
-			
-			
-//			System.out.println("Iteration "+it+" pi="+StringUtils.toString(pi));
-//			
-//			double ll = 0;
-//			for (int ei=0; ei<E.length; ei++) {
-//				double sum = 0;
-//				for (O o : E[ei]) {
-//					int ind = o2Index.get(o);
-//					sum+=pi[ind]/l[ind];
-//				}
-//				ll+=alpha[ei]*Math.log(sum);
-//			}
-//			System.out.println(it+": "+ll);
-			
-			if (it>miniter) {
-				
-				
-//				double ll = 0;
-//				for (int ei=0; ei<w.length; ei++) {
-//					double sum = 0;
-//					for (O o : E[ei]) {
-//						int ind = o2Index.get(o);
-//						sum+=pi[ind]/l[ind];
-//					}
-//					ll+=alpha[ei]*Math.log(sum);
-//				}
-//				System.out.println(it+": "+ll);
-//				if (ll-oldll<Math.log(1.001)) 
-//					break;
-//				oldll = ll;
-				
-				// check for convergence
-				boolean finished = true;
-				for(int i=0; i<pi.length; i++) {
-					if (pi[i]*N>0.01) {
-						if (Math.abs(pi[i]*N-oldPi[i]*N)>0.01) {
-							finished = false;
-							break;
-						}
-					}
+				ratio[i] = pi[i]/l[i];
+
+			double ll = 0;
+			if (blocks==null)
+				ll = accumulate(0, offset.length-1, w);
+			else {
+				try {
+					for (Future<Double> f : pool.invokeAll(blocks))
+						ll+=f.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException("Interrupted during E step!", e);
+				} catch (ExecutionException e) {
+					throw new RuntimeException("Could not compute E step!", e.getCause());
 				}
-				if (finished) break;
+				Arrays.fill(w, 0);
+				for (Block b : blocks)
+					for (int i=0; i<w.length; i++)
+						w[i]+=b.w[i];
+			}
+
+			// m step; without any counts, the proportions stay where they are
+			if (N==0) {
+				System.arraycopy(pi, 0, next, 0, pi.length);
+				return ll;
 			}
-			
-			
+			for (int i=0; i<next.length; i++)
+				next[i] = w[i]/N;
+			ArrayUtils.normalize(next);
+			return ll;
 		}
-		
-		for (O o : o2Index.keySet())
-			proportionSetter.accept(o,pi[o2Index.get(o)]);
-		
-		double ll = 0;
-		for (int ei=0; ei<E.length; ei++) {
-			double sum = 0;
-			for (O o : E[ei]) {
-				int ind = o2Index.get(o);
-				sum+=pi[ind]/l[ind];
+
+		private double accumulate(int from, int to, double[] w) {
+			Arrays.fill(w, 0);
+			double ll = 0;
+			for (int ei=from; ei<to; ei++) {
+				// classes without counts neither contribute to the likelihood (0*log 0=0) nor to the expected counts
+				if (alpha[ei]==0) continue;
+				int s = offset[ei];
+				int e = offset[ei+1];
+				double tot = 0;
+				for (int j=s; j<e; j++)
+					tot+=ratio[index[j]];
+				if (tot==0) {
+					ll = Double.NEGATIVE_INFINITY;
+					continue;
+				}
+				ll+=alpha[ei]*Math.log(tot);
+				double f = alpha[ei]/tot;
+				for (int j=s; j<e; j++)
+					w[index[j]]+=ratio[index[j]]*f;
+			}
+			return ll;
+		}
+
+		private class Block implements Callable<Double> {
+			private int from;
+			private int to;
+			private double[] w = new double[l.length];
+			public Block(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+			@Override
+			public Double call() {
+				return accumulate(from, to, w);
 			}
-			ll+=alpha[ei]*Math.log(sum);
 		}
-		
-		return ll;
 	}
-	
-	
-	
+
+
 }
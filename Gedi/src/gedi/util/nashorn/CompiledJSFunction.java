@@ -0,0 +1,85 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.util.nashorn;
+
+import gedi.util.mutable.MutableTuple;
+
+import java.util.function.Function;
+
+import javax.script.ScriptException;
+
+/**
+ * Function for a javascript expression evaluated with the argument as this; the expression is compiled to a java class
+ * by {@link JSExpressionCompiler} for each class of arguments, and only if this is impossible, the given function code
+ * is evaluated by nashorn (as by {@link JSFunction}, i.e. {@link MutableTuple}s are always given to nashorn as arguments).
+ *
+ * @author erhard
+ *
+ * @param <I>
+ * @param <O>
+ */
+public class CompiledJSFunction<I,O> implements Function<I,O> {
+
+	private String code;
+	private JSExpressionCompiler compiler;
+	private volatile JSFunction<I,O> fallback;
+
+	/**
+	 * If thisClass is given, the expression is compiled immediately (otherwise for the first argument).
+	 * @param expression
+	 * @param code the complete javascript function equivalent to expression
+	 * @param thisClass
+	 * @throws ScriptException
+	 */
+	public CompiledJSFunction(String expression, String code, Class<?> thisClass) throws ScriptException {
+		this.code = code;
+		compiler = JSExpressionCompiler.parse(expression, false);
+		// nashorn reports syntax errors right away
+		if (compiler==null || thisClass!=null && compiler.get(thisClass)==null)
+			fallback = new JSFunction<I,O>(true, code);
+	}
+
+	public boolean isCompiled(Class<?> thisClass) {
+		return compiler!=null && compiler.get(thisClass)!=null;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public O apply(I t) {
+		JSCompiledExpression e = compiler!=null && t!=null && !(t instanceof MutableTuple)?compiler.get(t.getClass()):null;
+		if (e!=null)
+			return (O) e.apply(t);
+		return getFallback().apply(t);
+	}
+
+	private JSFunction<I,O> getFallback() {
+		if (fallback==null) {
+			synchronized (this) {
+				if (fallback==null)
+					try {
+						fallback = new JSFunction<I,O>(true, code);
+					} catch (ScriptException e) {
+						throw new RuntimeException("Could not evaluate "+code, e);
+					}
+			}
+		}
+		return fallback;
+	}
+
+}
@@ -0,0 +1,81 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.util.nashorn;
+
+import java.util.function.Predicate;
+
+import javax.script.ScriptException;
+
+/**
+ * Predicate for a javascript expression evaluated with the tested object as this; the expression is compiled to a java class
+ * by {@link JSExpressionCompiler} for each class of tested objects, and only if this is impossible, the given function code
+ * is evaluated by nashorn (as by {@link JSPredicate}).
+ *
+ * @author erhard
+ *
+ * @param <T>
+ */
+public class CompiledJSPredicate<T> implements Predicate<T> {
+
+	private String code;
+	private JSExpressionCompiler compiler;
+	private volatile JSPredicate<T> fallback;
+
+	/**
+	 * If thisClass is given, the expression is compiled immediately (otherwise for the first tested object).
+	 * @param expression
+	 * @param code the complete javascript function equivalent to expression
+	 * @param thisClass
+	 * @throws ScriptException
+	 */
+	public CompiledJSPredicate(String expression, String code, Class<?> thisClass) throws ScriptException {
+		this.code = code;
+		compiler = JSExpressionCompiler.parse(expression, true);
+		// nashorn reports syntax errors right away
+		if (compiler==null || thisClass!=null && compiler.get(thisClass)==null)
+			fallback = new JSPredicate<T>(true, code);
+	}
+
+	public boolean isCompiled(Class<?> thisClass) {
+		return compiler!=null && compiler.get(thisClass)!=null;
+	}
+
+	@Override
+	public boolean test(T t) {
+		JSCompiledExpression e = compiler!=null && t!=null?compiler.get(t.getClass()):null;
+		if (e!=null)
+			return e.test(t);
+		return getFallback().test(t);
+	}
+
+	private JSPredicate<T> getFallback() {
+		if (fallback==null) {
+			synchronized (this) {
+				if (fallback==null)
+					try {
+						fallback = new JSPredicate<T>(true, code);
+					} catch (ScriptException e) {
+						throw new RuntimeException("Could not evaluate "+code, e);
+					}
+			}
+		}
+		return fallback;
+	}
+
+}
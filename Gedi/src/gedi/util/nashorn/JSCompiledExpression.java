@@ -0,0 +1,133 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.util.nashorn;
+
+/**
+ * Base class of the expressions compiled by {@link JSExpressionCompiler}. The static helpers implement the javascript conversions
+ * for values whose type is not known at compile time (i.e. the boxed results of java methods).
+ *
+ * Public only because the generated classes live in their own class loader!
+ *
+ * @author erhard
+ *
+ */
+public abstract class JSCompiledExpression {
+
+	/**
+	 * Evaluates the expression with thiz as javascript this.
+	 * @param thiz
+	 * @return
+	 */
+	public abstract Object apply(Object thiz);
+
+	public boolean test(Object thiz) {
+		return truthy(apply(thiz));
+	}
+
+	public static double toNumber(Object o) {
+		if (o==null) return 0;
+		if (o instanceof Number) return ((Number)o).doubleValue();
+		if (o instanceof Boolean) return ((Boolean)o)?1:0;
+		if (o instanceof CharSequence) {
+			String s = o.toString().trim();
+			if (s.length()==0) return 0;
+			try {
+				return Double.parseDouble(s);
+			} catch (NumberFormatException e) {
+				return Double.NaN;
+			}
+		}
+		return Double.NaN;
+	}
+
+	public static String toStr(double d) {
+		if (d==(long)d && Math.abs(d)<1E21)
+			return Long.toString((long)d);
+		return Double.toString(d);
+	}
+
+	public static String toStr(Object o) {
+		if (o instanceof Number) return toStr(((Number)o).doubleValue());
+		return String.valueOf(o);
+	}
+
+	public static boolean truthy(double d) {
+		return d!=0 && !Double.isNaN(d);
+	}
+
+	public static boolean truthy(Object o) {
+		if (o==null) return false;
+		if (o instanceof Boolean) return (Boolean)o;
+		if (o instanceof Number) return truthy(((Number)o).doubleValue());
+		if (o instanceof CharSequence) return ((CharSequence)o).length()>0;
+		return true;
+	}
+
+	/**
+	 * Javascript == (or === if strict); java objects other than numbers, booleans and strings are compared by identity.
+	 * @param a
+	 * @param b
+	 * @param strict
+	 * @return
+	 */
+	public static boolean equal(Object a, Object b, boolean strict) {
+		if (a==null || b==null) return a==b;
+		if (a instanceof Number && b instanceof Number) return ((Number)a).doubleValue()==((Number)b).doubleValue();
+		if (a instanceof CharSequence && b instanceof CharSequence) return a.toString().equals(b.toString());
+		if (a instanceof Boolean && b instanceof Boolean) return a.equals(b);
+		if (strict || !isPrimitive(a) && !isPrimitive(b)) return a==b;
+		if (!isPrimitive(a)) return a.toString().equals(b.toString());
+		if (!isPrimitive(b)) return b.toString().equals(a.toString());
+		return toNumber(a)==toNumber(b);
+	}
+
+	private static boolean isPrimitive(Object o) {
+		return o instanceof Number || o instanceof CharSequence || o instanceof Boolean;
+	}
+
+	/**
+	 * Javascript String.charAt (i.e. the empty string if out of bounds)
+	 * @param s
+	 * @param index
+	 * @return
+	 */
+	public static String charAt(String s, double index) {
+		if (!(index>=0 && index<s.length())) return "";
+		return String.valueOf(s.charAt((int)index));
+	}
+
+	/**
+	 * Javascript String.substring (i.e. indices are clamped and swapped if necessary)
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return
+	 */
+	public static String substring(String s, double start, double end) {
+		int a = clamp(start, s.length());
+		int b = clamp(end, s.length());
+		return s.substring(Math.min(a, b), Math.max(a, b));
+	}
+
+	private static int clamp(double index, int length) {
+		if (Double.isNaN(index) || index<0) return 0;
+		return (int)Math.min(index, length);
+	}
+
+}
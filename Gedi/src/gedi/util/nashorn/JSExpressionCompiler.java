@@ -0,0 +1,819 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.util.nashorn;
+
+import gedi.util.orm.CompilerTool;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compiles simple javascript expressions (as used for the conditions, predicates and functions of GenomicRegionFeatures)
+ * into java classes. Supported are number, string and boolean literals, null, this, property access (public fields, bean getters and
+ * map entries), method calls, indexing of arrays, lists and strings, the Math functions, the arithmetic, comparison, equality and logical
+ * operators and ?:. The types are resolved by reflection for the class of this, i.e. an expression is compiled once for each class
+ * it is evaluated on (see {@link #get(Class)}).
+ *
+ * Everything else (statements, variables, overloaded methods that have to be resolved at runtime, ...) is not supported. Then
+ * {@link #parse(String, boolean)} or {@link #get(Class)} return null and the expression has to be evaluated by nashorn
+ * (which {@link CompiledJSPredicate} and {@link CompiledJSFunction} do).
+ *
+ * @author erhard
+ *
+ */
+public class JSExpressionCompiler {
+
+	private static final Logger log = Logger.getLogger( JSExpressionCompiler.class.getName() );
+
+	private static final AtomicInteger counter = new AtomicInteger();
+	private static final ConcurrentHashMap<String,JSExpressionCompiler> compilers = new ConcurrentHashMap<String, JSExpressionCompiler>();
+
+	private static final String[] OPERATORS = {"===","!==","==","!=","<=",">=","&&","||","<",">","+","-","*","/","%","!","?",":","(",")","[","]",".",","};
+
+	private String expression;
+	private boolean predicate;
+	private Node root;
+	/**
+	 * Empty for classes the expression cannot be compiled for (such that this is not tried again)
+	 */
+	private ConcurrentHashMap<Class<?>,Optional<JSCompiledExpression>> cache = new ConcurrentHashMap<Class<?>, Optional<JSCompiledExpression>>();
+
+	private JSExpressionCompiler(String expression, boolean predicate, Node root) {
+		this.expression = expression;
+		this.predicate = predicate;
+		this.root = root;
+	}
+
+	/**
+	 * Parses the expression; returns null if it is not in the supported subset (or not valid javascript at all). Compilers
+	 * are shared, i.e. an expression is compiled only once for each class, even if it is used by several features.
+	 * @param expression
+	 * @param predicate if the expression must evaluate to a boolean
+	 * @return
+	 */
+	public static JSExpressionCompiler parse(String expression, boolean predicate) {
+		String key = (predicate?"p":"f")+expression;
+		JSExpressionCompiler re = compilers.get(key);
+		if (re==null) {
+			re = create(expression, predicate);
+			if (re!=null) {
+				JSExpressionCompiler present = compilers.putIfAbsent(key, re);
+				if (present!=null) re = present;
+			}
+		}
+		return re;
+	}
+
+	private static JSExpressionCompiler create(String expression, boolean predicate) {
+		try {
+			Parser p = new Parser(expression);
+			Node root = p.parseTernary();
+			if (p.pos<p.tokens.size())
+				throw new Unsupported("Unexpected "+p.tokens.get(p.pos).text);
+			return new JSExpressionCompiler(expression, predicate, root);
+		} catch (Unsupported e) {
+			log.log(Level.FINE, "Cannot compile "+expression+": "+e.getMessage());
+			return null;
+		}
+	}
+
+	public String getExpression() {
+		return expression;
+	}
+
+	/**
+	 * Gets the expression compiled for the given class of this, generated and compiled at the first call. Returns null if it cannot be
+	 * compiled (e.g. if a property does not exist or there is no java compiler available).
+	 * @param thisClass
+	 * @return
+	 */
+	public JSCompiledExpression get(Class<?> thisClass) {
+		Optional<JSCompiledExpression> re = cache.get(thisClass);
+		// computeIfAbsent locks even if present
+		if (re==null) re = cache.computeIfAbsent(thisClass, this::create);
+		return re.orElse(null);
+	}
+
+	private Optional<JSCompiledExpression> create(Class<?> thisClass) {
+		String name = JSCompiledExpression.class.getPackage().getName()+".generated.Expression"+counter.incrementAndGet();
+		String source;
+		try {
+			source = generateSource(name, thisClass);
+		} catch (Unsupported e) {
+			log.log(Level.FINE, "Cannot compile "+expression+" for "+thisClass.getName()+": "+e.getMessage());
+			return Optional.empty();
+		}
+		try {
+			return Optional.of((JSCompiledExpression) CompilerTool.compileSource(name, source).newInstance());
+		} catch (Throwable e) {
+			log.log(Level.WARNING, "Could not compile "+expression+" for "+thisClass.getName()+", using nashorn!", e);
+			return Optional.empty();
+		}
+	}
+
+	private String generateSource(String name, Class<?> thisClass) throws Unsupported {
+		Code code = root.gen(thisClass);
+		if (predicate && code.type!=boolean.class)
+			throw new Unsupported("Not a boolean expression");
+
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(name.substring(0, name.lastIndexOf('.'))).append(";\n\n");
+		sb.append("public class ").append(name.substring(name.lastIndexOf('.')+1)).append(" extends ").append(JSCompiledExpression.class.getName()).append(" {\n\n");
+		if (code.type==boolean.class) {
+			sb.append("\tpublic boolean test(java.lang.Object thiz) {\n");
+			sb.append("\t\treturn ").append(code.java).append(";\n");
+			sb.append("\t}\n\n");
+			sb.append("\tpublic java.lang.Object apply(java.lang.Object thiz) {\n");
+			sb.append("\t\treturn java.lang.Boolean.valueOf(test(thiz));\n");
+			sb.append("\t}\n\n");
+		}
+		else {
+			sb.append("\tpublic java.lang.Object apply(java.lang.Object thiz) {\n");
+			sb.append("\t\treturn ").append(box(code)).append(";\n");
+			sb.append("\t}\n\n");
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+
+	private static class Unsupported extends Exception {
+		private static final long serialVersionUID = 8261657684473197624L;
+
+		public Unsupported(String message) {
+			super(message, null, false, false);
+		}
+	}
+
+	/**
+	 * A piece of java code and its type; numbers are always double, null has type Void. Numbers are boxed as nashorn does,
+	 * i.e. values of java methods and integral literals keep their type, the results of operators are Doubles.
+	 */
+	private static class Code {
+		String java;
+		Class<?> type;
+		Class<?> boxed = Double.class;
+		public Code(String java, Class<?> type) {
+			this.java = java;
+			this.type = type;
+		}
+		public Code(String java, Class<?> type, Class<?> boxed) {
+			this(java, type);
+			this.boxed = boxed;
+		}
+	}
+
+	private interface Node {
+		Code gen(Class<?> thisClass) throws Unsupported;
+	}
+
+	private static final int NUMBER = 0;
+	private static final int STRING = 1;
+	private static final int IDENTIFIER = 2;
+	private static final int OPERATOR = 3;
+
+	private static class Token {
+		int type;
+		String text;
+		public Token(int type, String text) {
+			this.type = type;
+			this.text = text;
+		}
+	}
+
+	private static class Parser {
+		private ArrayList<Token> tokens = new ArrayList<Token>();
+		private int pos = 0;
+
+		public Parser(String s) throws Unsupported {
+			int i = 0;
+			while (i<s.length()) {
+				char c = s.charAt(i);
+				if (Character.isWhitespace(c))
+					i++;
+				else if (Character.isDigit(c) || c=='.' && i+1<s.length() && Character.isDigit(s.charAt(i+1))) {
+					int st = i;
+					while (i<s.length() && Character.isDigit(s.charAt(i))) i++;
+					if (i<s.length() && s.charAt(i)=='.') {
+						i++;
+						while (i<s.length() && Character.isDigit(s.charAt(i))) i++;
+					}
+					if (i<s.length() && (s.charAt(i)=='e' || s.charAt(i)=='E')) {
+						i++;
+						if (i<s.length() && (s.charAt(i)=='+' || s.charAt(i)=='-')) i++;
+						if (i==s.length() || !Character.isDigit(s.charAt(i))) throw new Unsupported("Illegal number");
+						while (i<s.length() && Character.isDigit(s.charAt(i))) i++;
+					}
+					if (i<s.length() && Character.isJavaIdentifierPart(s.charAt(i))) throw new Unsupported("Illegal number");
+					tokens.add(new Token(NUMBER, s.substring(st, i)));
+				}
+				else if (c=='"' || c=='\'') {
+					StringBuilder sb = new StringBuilder();
+					for (i++; i<s.length() && s.charAt(i)!=c; i++) {
+						char d = s.charAt(i);
+						if (d=='\\') {
+							if (++i==s.length()) break;
+							switch (s.charAt(i)) {
+							case 'n': sb.append('\n'); break;
+							case 't': sb.append('\t'); break;
+							case 'r': sb.append('\r'); break;
+							case '\\': case '\'': case '"': sb.append(s.charAt(i)); break;
+							default: throw new Unsupported("Escape sequence \\"+s.charAt(i));
+							}
+						}
+						else
+							sb.append(d);
+					}
+					if (i==s.length()) throw new Unsupported("Unterminated string");
+					i++;
+					tokens.add(new Token(STRING, sb.toString()));
+				}
+				else if (Character.isJavaIdentifierStart(c)) {
+					int st = i;
+					while (i<s.length() && Character.isJavaIdentifierPart(s.charAt(i))) i++;
+					tokens.add(new Token(IDENTIFIER, s.substring(st, i)));
+				}
+				else {
+					String op = null;
+					for (String o : OPERATORS)
+						if (s.startsWith(o, i)) {
+							op = o;
+							break;
+						}
+					// assignments and bit operators
+					if (op==null || (op.equals("<") || op.equals(">")) && s.startsWith(op, i+1) || op.length()==1 && "<>!".contains(op) && s.startsWith("==", i+1))
+						throw new Unsupported("Operator at "+s.substring(i));
+					tokens.add(new Token(OPERATOR, op));
+					i+=op.length();
+				}
+			}
+		}
+
+		private boolean is(String op) {
+			return pos<tokens.size() && tokens.get(pos).type==OPERATOR && tokens.get(pos).text.equals(op);
+		}
+
+		private boolean accept(String op) {
+			if (!is(op)) return false;
+			pos++;
+			return true;
+		}
+
+		private void expect(String op) throws Unsupported {
+			if (!accept(op)) throw new Unsupported("Expected "+op);
+		}
+
+		private Token next() throws Unsupported {
+			if (pos==tokens.size()) throw new Unsupported("Unexpected end");
+			return tokens.get(pos++);
+		}
+
+		Node parseTernary() throws Unsupported {
+			Node c = parseOr();
+			if (!accept("?")) return c;
+			Node a = parseTernary();
+			expect(":");
+			Node b = parseTernary();
+			return t->conditional(c.gen(t), a.gen(t), b.gen(t));
+		}
+
+		private Node parseOr() throws Unsupported {
+			Node re = parseAnd();
+			while (accept("||")) {
+				Node l = re;
+				Node r = parseAnd();
+				re = t->logical("||", l.gen(t), r.gen(t));
+			}
+			return re;
+		}
+
+		private Node parseAnd() throws Unsupported {
+			Node re = parseEquality();
+			while (accept("&&")) {
+				Node l = re;
+				Node r = parseEquality();
+				re = t->logical("&&", l.gen(t), r.gen(t));
+			}
+			return re;
+		}
+
+		private Node parseEquality() throws Unsupported {
+			Node re = parseRelational();
+			for (;;) {
+				String op = is("==")||is("!=")||is("===")||is("!==")?next().text:null;
+				if (op==null) return re;
+				Node l = re;
+				Node r = parseRelational();
+				re = t->equality(op, l.gen(t), r.gen(t));
+			}
+		}
+
+		private Node parseRelational() throws Unsupported {
+			Node re = parseAdditive();
+			for (;;) {
+				String op = is("<")||is("<=")||is(">")||is(">=")?next().text:null;
+				if (op==null) return re;
+				Node l = re;
+				Node r = parseAdditive();
+				re = t->relational(op, l.gen(t), r.gen(t));
+			}
+		}
+
+		private Node parseAdditive() throws Unsupported {
+			Node re = parseMultiplicative();
+			for (;;) {
+				String op = is("+")||is("-")?next().text:null;
+				if (op==null) return re;
+				Node l = re;
+				Node r = parseMultiplicative();
+				re = t->arithmetic(op, l.gen(t), r.gen(t));
+			}
+		}
+
+		private Node parseMultiplicative() throws Unsupported {
+			Node re = parseUnary();
+			for (;;) {
+				String op = is("*")||is("/")||is("%")?next().text:null;
+				if (op==null) return re;
+				Node l = re;
+				Node r = parseUnary();
+				re = t->arithmetic(op, l.gen(t), r.gen(t));
+			}
+		}
+
+		private Node parseUnary() throws Unsupported {
+			if (is("!") || is("-") || is("+")) {
+				String op = next().text;
+				Node a = parseUnary();
+				return t->unary(op, a.gen(t));
+			}
+			return parsePostfix();
+		}
+
+		private Node parsePostfix() throws Unsupported {
+			Token first = pos<tokens.size()?tokens.get(pos):null;
+			boolean math = first!=null && first.type==IDENTIFIER && first.text.equals("Math");
+			Node re = math?null:parsePrimary();
+			if (math) {
+				pos++;
+				if (!is(".")) throw new Unsupported("Math is not a value");
+			}
+
+			for (;;) {
+				if (accept(".")) {
+					Token name = next();
+					if (name.type!=IDENTIFIER) throw new Unsupported("Expected property name");
+					Node target = re;
+					if (accept("(")) {
+						ArrayList<Node> args = new ArrayList<Node>();
+						if (!accept(")")) {
+							do {
+								args.add(parseTernary());
+							} while (accept(","));
+							expect(")");
+						}
+						if (target==null)
+							re = t->math(name.text, gen(args, t));
+						else
+							re = t->call(target.gen(t), name.text, gen(args, t));
+					}
+					else if (target==null)
+						re = t->mathConstant(name.text);
+					else
+						re = t->property(target.gen(t), name.text);
+				}
+				else if (re!=null && accept("[")) {
+					Node target = re;
+					Node index = parseTernary();
+					expect("]");
+					re = t->index(target.gen(t), index.gen(t));
+				}
+				else if (re==null)
+					throw new Unsupported("Math is not a value");
+				else
+					return re;
+			}
+		}
+
+		private static Code[] gen(List<Node> nodes, Class<?> thisClass) throws Unsupported {
+			Code[] re = new Code[nodes.size()];
+			for (int i=0; i<re.length; i++)
+				re[i] = nodes.get(i).gen(thisClass);
+			return re;
+		}
+
+		private Node parsePrimary() throws Unsupported {
+			Token tok = next();
+			if (tok.type==NUMBER) {
+				double d = Double.parseDouble(tok.text);
+				Code c = new Code(Double.toString(d), double.class, d==(int)d?Integer.class:Double.class);
+				return t->c;
+			}
+			if (tok.type==STRING) {
+				Code c = new Code(literal(tok.text), String.class);
+				return t->c;
+			}
+			if (tok.type==OPERATOR && tok.text.equals("(")) {
+				Node re = parseTernary();
+				expect(")");
+				return re;
+			}
+			if (tok.type==IDENTIFIER) {
+				switch (tok.text) {
+				case "true": case "false":
+					Code c = new Code(tok.text, boolean.class);
+					return t->c;
+				case "null":
+					Code n = new Code("null", Void.class);
+					return t->n;
+				case "this":
+					return t->new Code(isAccessible(t)?"(("+t.getCanonicalName()+")thiz)":"thiz", t);
+				}
+			}
+			throw new Unsupported("Unexpected "+tok.text);
+		}
+	}
+
+	private static String literal(String s) {
+		StringBuilder sb = new StringBuilder();
+		sb.append('"');
+		for (int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			if (c=='"' || c=='\\') sb.append('\\').append(c);
+			else if (c<32 || c>126) sb.append(String.format("\\u%04x", (int)c));
+			else sb.append(c);
+		}
+		sb.append('"');
+		return sb.toString();
+	}
+
+	private static boolean isPrimitive(Class<?> type) {
+		return type==double.class || type==boolean.class || type==Void.class;
+	}
+
+	private static boolean isNumber(Class<?> type) {
+		return type==double.class || Number.class.isAssignableFrom(type);
+	}
+
+	private static boolean isString(Class<?> type) {
+		return CharSequence.class.isAssignableFrom(type);
+	}
+
+	private static String num(Code c) throws Unsupported {
+		if (c.type==double.class) return c.java;
+		if (c.type==boolean.class) return "(("+c.java+")?1.0:0.0)";
+		if (c.type==Void.class) return "0.0";
+		if (c.type==Object.class || c.type==Boolean.class || isNumber(c.type) || isString(c.type))
+			return "toNumber("+c.java+")";
+		throw new Unsupported("Cannot convert "+c.type.getName()+" to number");
+	}
+
+	private static String bool(Code c) {
+		if (c.type==boolean.class) return c.java;
+		if (c.type==Void.class) return "false";
+		return "truthy("+c.java+")";
+	}
+
+	private static String str(Code c) {
+		if (c.type==Void.class) return "\"null\"";
+		if (c.type==String.class) return "java.lang.String.valueOf("+c.java+")";
+		return "toStr("+c.java+")";
+	}
+
+	private static String box(Code c) {
+		if (c.type==double.class) {
+			if (c.boxed==Integer.class) return "java.lang.Integer.valueOf((int)"+c.java+")";
+			if (c.boxed==Long.class) return "java.lang.Long.valueOf((long)"+c.java+")";
+			return "java.lang.Double.valueOf("+c.java+")";
+		}
+		if (c.type==boolean.class) return "java.lang.Boolean.valueOf("+c.java+")";
+		return c.java;
+	}
+
+	private static Code conditional(Code c, Code a, Code b) {
+		Class<?> type;
+		if (a.type==b.type && a.boxed==b.boxed && (isPrimitive(a.type) || isAccessible(a.type))) type = a.type;
+		else if (a.type==Void.class && !isPrimitive(b.type) && isAccessible(b.type)) type = b.type;
+		else if (b.type==Void.class && !isPrimitive(a.type) && isAccessible(a.type)) type = a.type;
+		else return new Code("("+bool(c)+"?(java.lang.Object)"+box(a)+":(java.lang.Object)"+box(b)+")", Object.class);
+		if (type==Void.class)
+			return new Code("null", Void.class);
+		if (isPrimitive(type))
+			return new Code("("+bool(c)+"?"+a.java+":"+b.java+")", type, a.boxed);
+		String cast = "("+type.getCanonicalName()+")";
+		return new Code("("+bool(c)+"?"+cast+a.java+":"+cast+b.java+")", type);
+	}
+
+	private static Code logical(String op, Code a, Code b) throws Unsupported {
+		// javascript returns one of the operands, which is only equivalent to java for booleans
+		if (a.type!=boolean.class || b.type!=boolean.class)
+			throw new Unsupported(op+" on non-boolean operands");
+		return new Code("("+a.java+op+b.java+")", boolean.class);
+	}
+
+	private static Code equality(String op, Code a, Code b) throws Unsupported {
+		boolean strict = op.length()==3;
+		String not = op.startsWith("!")?"!":"";
+		if (a.type==b.type && (a.type==double.class || a.type==boolean.class))
+			return new Code("("+a.java+op.substring(0, 2)+b.java+")", boolean.class);
+		if (a.type==Void.class && b.type==Void.class)
+			return new Code(not.length()==0?"true":"false", boolean.class);
+		if (a.type==Void.class || b.type==Void.class) {
+			Code o = a.type==Void.class?b:a;
+			if (isPrimitive(o.type))
+				return new Code(not.length()==0?"false":"true", boolean.class);
+			return new Code("("+o.java+(not.length()==0?"==":"!=")+"null)", boolean.class);
+		}
+		if (isPrimitive(a.type) && isPrimitive(b.type)) {
+			if (strict)
+				return new Code(not.length()==0?"false":"true", boolean.class);
+			return new Code("("+num(a)+op.substring(0, 2)+num(b)+")", boolean.class);
+		}
+		return new Code("("+not+"equal("+box(a)+","+box(b)+","+strict+"))", boolean.class);
+	}
+
+	private static Code relational(String op, Code a, Code b) throws Unsupported {
+		if (isString(a.type) && isString(b.type))
+			return new Code("("+str(a)+".compareTo("+str(b)+")"+op+"0)", boolean.class);
+		return new Code("("+num(a)+op+num(b)+")", boolean.class);
+	}
+
+	private static Code arithmetic(String op, Code a, Code b) throws Unsupported {
+		if (op.equals("+")) {
+			if (a.type==Object.class || b.type==Object.class)
+				throw new Unsupported("Cannot decide between addition and concatenation");
+			if (isString(a.type) || isString(b.type))
+				return new Code("("+str(a)+"+"+str(b)+")", String.class);
+			if (!isPrimitive(a.type) && !isNumber(a.type) || !isPrimitive(b.type) && !isNumber(b.type))
+				throw new Unsupported("Addition of objects");
+		}
+		return new Code("("+num(a)+op+num(b)+")", double.class);
+	}
+
+	private static Code unary(String op, Code a) throws Unsupported {
+		if (op.equals("!"))
+			return new Code("(!"+bool(a)+")", boolean.class);
+		return new Code("("+op+num(a)+")", double.class);
+	}
+
+	/**
+	 * Math is java.lang.Math in javascript code executed by {@link JS} (simple class names are resolved), i.e. round returns a long
+	 * and min and max take exactly two arguments.
+	 */
+	private static Code mathConstant(String name) throws Unsupported {
+		switch (name) {
+		case "PI": return new Code("java.lang.Math.PI", double.class);
+		case "E": return new Code("java.lang.Math.E", double.class);
+		}
+		throw new Unsupported("Math."+name);
+	}
+
+	private static Code math(String name, Code[] args) throws Unsupported {
+		int arity;
+		switch (name) {
+		case "abs": case "floor": case "ceil": case "round": case "sqrt": case "cbrt": case "exp": case "log": case "log10":
+		case "sin": case "cos": case "tan": case "asin": case "acos": case "atan": case "signum":
+			arity = 1; break;
+		case "pow": case "atan2": case "min": case "max": case "hypot":
+			arity = 2; break;
+		default:
+			throw new Unsupported("Math."+name);
+		}
+		if (args.length!=arity) throw new Unsupported("Math."+name+" with "+args.length+" arguments");
+		StringBuilder sb = new StringBuilder();
+		sb.append("java.lang.Math.").append(name).append("(");
+		for (int i=0; i<args.length; i++)
+			sb.append(i>0?",":"").append(num(args[i]));
+		sb.append(")");
+		if (name.equals("round"))
+			return result(sb.toString(), long.class);
+		Code re = result(sb.toString(), double.class);
+		// the int overloads are used by nashorn, if all arguments are ints
+		if (name.equals("abs") || name.equals("min") || name.equals("max")) {
+			re.boxed = Integer.class;
+			for (Code a : args)
+				if (a.type!=double.class || a.boxed!=Integer.class)
+					re.boxed = Double.class;
+		}
+		return re;
+	}
+
+	private static Code property(Code target, String name) throws Unsupported {
+		if (isPrimitive(target.type))
+			throw new Unsupported("Property "+name+" of "+target.type.getSimpleName());
+		if (target.type.isArray() && name.equals("length") && isAccessible(target.type))
+			return new Code("((double)(("+target.type.getCanonicalName()+")"+target.java+").length)", double.class, Integer.class);
+		if (target.type==String.class) {
+			if (!name.equals("length")) throw new Unsupported("Property "+name+" of a string");
+			return new Code("((double)"+target.java+".length())", double.class, Integer.class);
+		}
+		if (Map.class.isAssignableFrom(target.type))
+			return new Code("((java.util.Map)"+target.java+").get("+literal(name)+")", Object.class);
+
+		for (Class<?> c : hierarchy(target.type)) {
+			try {
+				Field f = c.getField(name);
+				if (!Modifier.isStatic(f.getModifiers()))
+					return result("(("+c.getCanonicalName()+")"+target.java+")."+name, f.getType());
+			} catch (NoSuchFieldException e) {
+			}
+			String cap = Character.toUpperCase(name.charAt(0))+name.substring(1);
+			Method m = getMethod(c, "get"+cap);
+			if (m==null) {
+				m = getMethod(c, "is"+cap);
+				if (m!=null && m.getReturnType()!=boolean.class) m = null;
+			}
+			if (m!=null)
+				return invoke(c, m, target, new String[0]);
+		}
+		throw new Unsupported("Property "+name+" of "+target.type.getName());
+	}
+
+	private static Method getMethod(Class<?> c, String name) {
+		try {
+			Method m = c.getMethod(name);
+			return Modifier.isStatic(m.getModifiers())?null:m;
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	private static Code index(Code target, Code index) throws Unsupported {
+		String i = "(int)"+num(index);
+		if (target.type.isArray() && isAccessible(target.type))
+			return result("(("+target.type.getCanonicalName()+")"+target.java+")["+i+"]", target.type.getComponentType());
+		if (List.class.isAssignableFrom(target.type))
+			return new Code("((java.util.List)"+target.java+").get("+i+")", Object.class);
+		if (target.type==String.class)
+			return new Code("charAt("+target.java+","+num(index)+")", String.class);
+		throw new Unsupported("Index of "+target.type.getName());
+	}
+
+	private static Code call(Code target, String name, Code[] args) throws Unsupported {
+		if (isPrimitive(target.type))
+			throw new Unsupported("Method "+name+" of "+target.type.getSimpleName());
+		if (target.type==String.class)
+			return stringMethod(target, name, args);
+
+		for (Class<?> c : hierarchy(target.type)) {
+			Method found = null;
+			String[] conv = null;
+			for (Method m : c.getMethods()) {
+				if (!m.getName().equals(name) || m.getParameterCount()!=args.length || m.isBridge() || Modifier.isStatic(m.getModifiers()))
+					continue;
+				String[] mconv = convert(args, m.getParameterTypes());
+				if (mconv==null) continue;
+				if (found!=null && !java.util.Arrays.equals(found.getParameterTypes(), m.getParameterTypes()))
+					throw new Unsupported("Ambiguous method "+name+" of "+target.type.getName());
+				found = m;
+				conv = mconv;
+			}
+			if (found!=null)
+				return invoke(c, found, target, conv);
+		}
+		throw new Unsupported("Method "+name+" of "+target.type.getName());
+	}
+
+	private static Code invoke(Class<?> c, Method m, Code target, String[] args) throws Unsupported {
+		for (Class<?> e : m.getExceptionTypes())
+			if (!RuntimeException.class.isAssignableFrom(e) && !Error.class.isAssignableFrom(e))
+				throw new Unsupported("Method "+m.getName()+" throws "+e.getName());
+		StringBuilder sb = new StringBuilder();
+		sb.append("((").append(c.getCanonicalName()).append(")").append(target.java).append(").").append(m.getName()).append("(");
+		for (int i=0; i<args.length; i++)
+			sb.append(i>0?",":"").append(args[i]);
+		sb.append(")");
+		return result(sb.toString(), m.getReturnType());
+	}
+
+	private static Code stringMethod(Code target, String name, Code[] args) throws Unsupported {
+		String s = target.java;
+		switch (name+"/"+args.length) {
+		case "toUpperCase/0": case "toLowerCase/0": case "trim/0":
+			return new Code(s+"."+name+"()", String.class);
+		case "indexOf/1": case "lastIndexOf/1":
+			return new Code("((double)"+s+"."+name+"("+str(args[0])+"))", double.class, Integer.class);
+		case "charAt/1":
+			return new Code("charAt("+s+","+num(args[0])+")", String.class);
+		case "substring/1":
+			return new Code("substring("+s+","+num(args[0])+","+s+".length())", String.class);
+		case "substring/2":
+			return new Code("substring("+s+","+num(args[0])+","+num(args[1])+")", String.class);
+		}
+		throw new Unsupported("String method "+name);
+	}
+
+	/**
+	 * Converts the arguments to the parameter types; returns null if a parameter is not applicable.
+	 */
+	private static String[] convert(Code[] args, Class<?>[] params) throws Unsupported {
+		String[] re = new String[args.length];
+		for (int i=0; i<re.length; i++) {
+			Code a = args[i];
+			Class<?> p = params[i];
+			if (p==double.class || p==float.class || p==long.class || p==int.class || p==short.class || p==byte.class) {
+				if (!isNumber(a.type)) return null;
+				re[i] = p==double.class?num(a):"(("+p.getName()+")"+num(a)+")";
+			}
+			else if (p==boolean.class) {
+				if (a.type!=boolean.class && a.type!=Boolean.class) return null;
+				re[i] = bool(a);
+			}
+			else if (p.isPrimitive())
+				return null;
+			else if (a.type==Void.class) {
+				if (!isAccessible(p)) return null;
+				re[i] = "("+p.getCanonicalName()+")null";
+			}
+			else if (a.type==double.class) {
+				if (p==Object.class || p==Number.class) re[i] = box(a);
+				else if (p==Double.class) re[i] = "java.lang.Double.valueOf("+a.java+")";
+				else if (p==Integer.class) re[i] = "java.lang.Integer.valueOf((int)"+a.java+")";
+				else return null;
+			}
+			else if (a.type==boolean.class) {
+				if (p!=Object.class && p!=Boolean.class) return null;
+				re[i] = box(a);
+			}
+			else if (p.isAssignableFrom(a.type) || a.type.isAssignableFrom(p)) {
+				if (!isAccessible(p)) return null;
+				re[i] = "(("+p.getCanonicalName()+")"+a.java+")";
+			}
+			else
+				return null;
+		}
+		return re;
+	}
+
+	private static Code result(String java, Class<?> type) throws Unsupported {
+		if (type==void.class || type==char.class)
+			throw new Unsupported("Result type "+type.getName());
+		if (type==boolean.class)
+			return new Code(java, boolean.class);
+		if (type==long.class)
+			return new Code("((double)"+java+")", double.class, Long.class);
+		if (type==int.class || type==short.class || type==byte.class)
+			return new Code("((double)"+java+")", double.class, Integer.class);
+		if (type.isPrimitive())
+			return new Code("((double)"+java+")", double.class);
+		return new Code(java, type);
+	}
+
+	/**
+	 * All accessible classes and interfaces of type (breadth first, starting with type itself), i.e. the classes the generated code
+	 * can cast to.
+	 */
+	private static ArrayList<Class<?>> hierarchy(Class<?> type) {
+		ArrayList<Class<?>> re = new ArrayList<Class<?>>();
+		LinkedList<Class<?>> queue = new LinkedList<Class<?>>();
+		queue.add(type);
+		ArrayList<Class<?>> seen = new ArrayList<Class<?>>();
+		while (!queue.isEmpty()) {
+			Class<?> c = queue.removeFirst();
+			if (seen.contains(c)) continue;
+			seen.add(c);
+			if (isAccessible(c)) re.add(c);
+			if (c.getSuperclass()!=null) queue.add(c.getSuperclass());
+			for (Class<?> i : c.getInterfaces())
+				queue.add(i);
+		}
+		return re;
+	}
+
+	private static boolean isAccessible(Class<?> c) {
+		if (c.isArray()) return isAccessible(c.getComponentType());
+		if (c.isPrimitive()) return true;
+		if (c.getCanonicalName()==null) return false;
+		for (Class<?> d=c; d!=null; d=d.getDeclaringClass())
+			if (!Modifier.isPublic(d.getModifiers()))
+				return false;
+		return true;
+	}
+
+}
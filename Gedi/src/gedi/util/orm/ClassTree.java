@@ -243,6 +243,8 @@ public class ClassTree<T> implements BinarySerializable {
 			if (end[i]-start[i]==0)
 				unsafe.putObject(re, start[i], children[i].fromBuffer(buffer, offset));
 		}
+		if (re instanceof OrmResolvable)
+			re = (T) ((OrmResolvable)re).resolve();
 		return re;
 		
 	}
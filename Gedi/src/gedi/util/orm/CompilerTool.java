@@ -42,6 +42,7 @@ import java.nio.charset.Charset;
 import java.security.SecureClassLoader;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.function.BiFunction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -90,6 +91,21 @@ public class CompilerTool {
     }
 
     public static Class<?> compileClass(String packageAndClassName, String extendsFrom, String implementsFrom, final String classBody) {
+    	return compile(packageAndClassName, (packageName,className)->getCompleteSourceCode(packageName, className, extendsFrom, implementsFrom, classBody));
+    }
+    
+    /**
+     * Compiles the given complete source code; in contrast to {@link #compileClass(String, String, String, String)}, simple class
+     * names are not resolved, i.e. all classes outside of java.lang must be fully qualified.
+     * @param packageAndClassName
+     * @param source
+     * @return
+     */
+    public static Class<?> compileSource(String packageAndClassName, final String source) {
+    	return compile(packageAndClassName, (packageName,className)->source);
+    }
+    
+    private static Class<?> compile(String packageAndClassName, BiFunction<String,String,String> source) {
         ClassLoader classLoader = new ClassLoader(CompilerTool.class.getClassLoader()) {
 
             @Override
@@ -103,7 +119,7 @@ public class CompilerTool {
                 } else {
                     className = name;
                 }
-                String s = getCompleteSourceCode(packageName, className, extendsFrom, implementsFrom, classBody);
+                String s = source.apply(packageName, className);
                 Class<?> classInstance;
 				if (JAVA_COMPILER != null) {
                     classInstance = javaxToolsJavac(packageName, className, s);
@@ -0,0 +1,194 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gedi.util.orm;
+
+import gedi.util.io.randomaccess.BinaryReader;
+import gedi.util.io.randomaccess.BinaryWriter;
+import gedi.util.orm.Orm.OrmInfo;
+import gedi.util.orm.special.SpecialSerializerExtensionPoint;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import sun.misc.Unsafe;
+
+/**
+ * Serializer for the fields of a single ORM class, generated at runtime (see {@link #get(Class)}). Primitive fields and primitive
+ * arrays (except boolean[]) are read and written by straight-line code at fixed offsets, all other fields are delegated
+ * to {@link OrmSerializer#serializeField(BinaryWriter, Object, Field, long)}. The binary format is identical to the one
+ * of {@link OrmSerializer}.
+ *
+ * Public only because the generated classes live in their own class loader!
+ *
+ * @author erhard
+ *
+ */
+@SuppressWarnings("rawtypes")
+public abstract class OrmClassSerializer {
+
+	private static final Logger log = Logger.getLogger( OrmClassSerializer.class.getName() );
+
+	private static final Unsafe unsafe = Orm.getUnsafe();
+
+	/**
+	 * Empty for classes without a generated serializer (such that the failed compilation is not repeated)
+	 */
+	private static final ConcurrentHashMap<Class,Optional<OrmClassSerializer>> cache = new ConcurrentHashMap<Class, Optional<OrmClassSerializer>>();
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	protected Field[] fields;
+
+	public abstract void serialize(OrmSerializer parent, BinaryWriter writer, Object o) throws IOException;
+	public abstract void deserialize(OrmSerializer parent, BinaryReader reader, Object o) throws IOException;
+
+	/**
+	 * Gets the serializer for the given class, generated and compiled at the first call. Returns null if it cannot be compiled
+	 * (e.g. if there is no java compiler available).
+	 * @param cls
+	 * @return
+	 */
+	public static OrmClassSerializer get(Class<?> cls) {
+		return cache.computeIfAbsent(cls, OrmClassSerializer::create).orElse(null);
+	}
+
+	private static Optional<OrmClassSerializer> create(Class<?> cls) {
+		String name = OrmClassSerializer.class.getPackage().getName()+".generated."+cls.getSimpleName().replaceAll("[^A-Za-z0-9_]", "_")+"Serializer"+counter.incrementAndGet();
+		try {
+			OrmClassSerializer re = (OrmClassSerializer) CompilerTool.compileSource(name, generateSource(name, cls)).newInstance();
+			re.fields = Orm.getInfo(cls).getFields();
+			return Optional.of(re);
+		} catch (Throwable e) {
+			log.log(Level.WARNING, "Could not generate serializer for "+cls.getName()+", using reflection!", e);
+			return Optional.empty();
+		}
+	}
+
+	static String generateSource(String packageAndClassName, Class<?> cls) {
+		OrmInfo info = Orm.getInfo(cls);
+		Field[] fields = info.getFields();
+		long[] offset = info.getPointerOffsets();
+		SpecialSerializerExtensionPoint extPoint = SpecialSerializerExtensionPoint.getInstance();
+
+		String base = OrmClassSerializer.class.getName();
+		String parent = OrmSerializer.class.getName();
+		String writer = BinaryWriter.class.getName();
+		String reader = BinaryReader.class.getName();
+
+		StringBuilder ser = new StringBuilder();
+		StringBuilder deser = new StringBuilder();
+		for (int i=0; i<fields.length; i++) {
+			Class<?> type = fields[i].getType();
+			String off = offset[i]+"L";
+			if (type.isPrimitive() && type!=boolean.class) {
+				String n = primitiveName(type);
+				ser.append("\t\twriter.put").append(n).append("(get").append(n).append("(o,").append(off).append("));\n");
+				deser.append("\t\tput").append(n).append("(o,").append(off).append(",");
+				if (type==byte.class) deser.append("(byte)");
+				deser.append("reader.get").append(n).append("());\n");
+			}
+			else if (type.isArray() && type.getComponentType().isPrimitive() && type!=boolean[].class && !extPoint.contains(type)) {
+				String t = type.getComponentType().getName();
+				ser.append("\t\t{ ").append(t).append("[] a = (").append(t).append("[]) getObject(o,").append(off).append(");\n");
+				ser.append("\t\tif (a==null) writer.putCInt(0);\n");
+				ser.append("\t\telse { writer.putCInt(a.length+1); parent.putArray(writer,a); } }\n");
+				deser.append("\t\t{ int len = reader.getCInt();\n");
+				deser.append("\t\tif (len==0) putObject(o,").append(off).append(",null);\n");
+				deser.append("\t\telse { ").append(t).append("[] a = new ").append(t).append("[len-1]; parent.getArray(reader,a); putObject(o,").append(off).append(",a); } }\n");
+			}
+			else {
+				ser.append("\t\tparent.serializeField(writer,o,fields[").append(i).append("],").append(off).append(");\n");
+				deser.append("\t\tparent.deserializeField(reader,o,fields[").append(i).append("],").append(off).append(");\n");
+			}
+		}
+
+		int dot = packageAndClassName.lastIndexOf('.');
+		StringBuilder sb = new StringBuilder();
+		sb.append("package ").append(packageAndClassName.substring(0, dot)).append(";\n");
+		sb.append("public class ").append(packageAndClassName.substring(dot+1)).append(" extends ").append(base).append(" {\n");
+		sb.append("\tpublic void serialize(").append(parent).append(" parent, ").append(writer).append(" writer, java.lang.Object o) throws java.io.IOException {\n");
+		sb.append(ser);
+		sb.append("\t}\n");
+		sb.append("\tpublic void deserialize(").append(parent).append(" parent, ").append(reader).append(" reader, java.lang.Object o) throws java.io.IOException {\n");
+		sb.append(deser);
+		sb.append("\t}\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private static String primitiveName(Class<?> type) {
+		String n = type.getName();
+		return Character.toUpperCase(n.charAt(0))+n.substring(1);
+	}
+
+	protected static byte getByte(Object o, long offset) {
+		return unsafe.getByte(o, offset);
+	}
+	protected static short getShort(Object o, long offset) {
+		return unsafe.getShort(o, offset);
+	}
+	protected static int getInt(Object o, long offset) {
+		return unsafe.getInt(o, offset);
+	}
+	protected static long getLong(Object o, long offset) {
+		return unsafe.getLong(o, offset);
+	}
+	protected static char getChar(Object o, long offset) {
+		return unsafe.getChar(o, offset);
+	}
+	protected static float getFloat(Object o, long offset) {
+		return unsafe.getFloat(o, offset);
+	}
+	protected static double getDouble(Object o, long offset) {
+		return unsafe.getDouble(o, offset);
+	}
+	protected static Object getObject(Object o, long offset) {
+		return unsafe.getObject(o, offset);
+	}
+
+	protected static void putByte(Object o, long offset, byte v) {
+		unsafe.putByte(o, offset, v);
+	}
+	protected static void putShort(Object o, long offset, short v) {
+		unsafe.putShort(o, offset, v);
+	}
+	protected static void putInt(Object o, long offset, int v) {
+		unsafe.putInt(o, offset, v);
+	}
+	protected static void putLong(Object o, long offset, long v) {
+		unsafe.putLong(o, offset, v);
+	}
+	protected static void putChar(Object o, long offset, char v) {
+		unsafe.putChar(o, offset, v);
+	}
+	protected static void putFloat(Object o, long offset, float v) {
+		unsafe.putFloat(o, offset, v);
+	}
+	protected static void putDouble(Object o, long offset, double v) {
+		unsafe.putDouble(o, offset, v);
+	}
+	protected static void putObject(Object o, long offset, Object v) {
+		unsafe.putObject(o, offset, v);
+	}
+
+}
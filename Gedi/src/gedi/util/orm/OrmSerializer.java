@@ -28,6 +28,13 @@ import gedi.util.orm.special.SpecialSerializerExtensionPoint;
 import java.io.IOException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.IdentityHashMap;
@@ -60,6 +67,7 @@ public class OrmSerializer {
 
 	private boolean cacheObjects = false;
 	private boolean useBinarySerializable = false;
+	private boolean generated = false;
 	
 	private SpecialSerializerExtensionPoint extPoint = SpecialSerializerExtensionPoint.getInstance();
 	
@@ -76,6 +84,22 @@ public class OrmSerializer {
 	}
 
 	
+	/**
+	 * If set, objects are (de-)serialized by a generated class (see {@link OrmClassSerializer}) per type, which is compiled
+	 * at its first use. This pays off when many objects of the same types are serialized. Falls back to reflection if
+	 * the class cannot be compiled. The binary format does not change.
+	 * @param generated
+	 * @return
+	 */
+	public OrmSerializer setGenerated(boolean generated) {
+		this.generated = generated;
+		return this;
+	}
+	
+	public boolean isGenerated() {
+		return generated;
+	}
+	
 	public OrmSerializer addClasses(Class... classes) {
 		for (Class cls : classes)
 			obtainClassId(cls);
@@ -200,38 +224,31 @@ public class OrmSerializer {
 				} else if (o.getClass()==byte[].class) {
 					byte[] a = (byte[]) o;
 					writer.putCInt(a.length);
-					for (int i=0; i<a.length; i++)
-						writer.putByte(a[i]);
+					putArray(writer, a);
 				} else if (o.getClass()==short[].class) {
 					short[] a = (short[]) o;
 					writer.putCInt(a.length);
-					for (int i=0; i<a.length; i++)
-						writer.putShort(a[i]);
+					putArray(writer, a);
 				} else if (o.getClass()==int[].class) {
 					int[] a = (int[]) o;
 					writer.putCInt(a.length);
-					for (int i=0; i<a.length; i++)
-						writer.putInt(a[i]);
+					putArray(writer, a);
 				} else if (o.getClass()==long[].class) {
 					long[] a = (long[]) o;
 					writer.putCInt(a.length);
-					for (int i=0; i<a.length; i++)
-						writer.putLong(a[i]);
+					putArray(writer, a);
 				} else if (o.getClass()==char[].class) {
 					char[] a = (char[]) o;
 					writer.putCInt(a.length);
-					for (int i=0; i<a.length; i++)
-						writer.putChar(a[i]);
+					putArray(writer, a);
 				} else if (o.getClass()==float[].class) {
 					float[] a = (float[]) o;
 					writer.putCInt(a.length);
-					for (int i=0; i<a.length; i++)
-						writer.putFloat(a[i]);
+					putArray(writer, a);
 				} else if (o.getClass()==double[].class) {
 					double[] a = (double[]) o;
 					writer.putCInt(a.length);
-					for (int i=0; i<a.length; i++)
-						writer.putDouble(a[i]);
+					putArray(writer, a);
 				}else {
 					int l = Array.getLength(o);
 					writer.putCInt(l);
@@ -245,145 +262,112 @@ public class OrmSerializer {
 				writer.putCInt(a.ordinal());
 			}
 			else {
-				Unsafe unsafe = Orm.getUnsafe();
-				OrmInfo info = Orm.getInfo(o.getClass());
-				Field[] fields = info.getFields();
-				long[] offset = info.getPointerOffsets();
-				for (int fieldIndex=0; fieldIndex<fields.length; fieldIndex++) {
-					if (fields[fieldIndex].getType().isPrimitive()) {
-						if (fields[fieldIndex].getType()==boolean.class) 
-							writer.putByte(unsafe.getBoolean(o, offset[fieldIndex])?1:0);
-						else if (fields[fieldIndex].getType()==byte.class) 
-							writer.putByte(unsafe.getByte(o, offset[fieldIndex]));
-						else if (fields[fieldIndex].getType()==short.class) 
-							writer.putShort(unsafe.getShort(o, offset[fieldIndex]));
-						else if (fields[fieldIndex].getType()==int.class) 
-							writer.putInt(unsafe.getInt(o, offset[fieldIndex]));
-						else if (fields[fieldIndex].getType()==long.class) 
-							writer.putLong(unsafe.getLong(o, offset[fieldIndex]));
-						else if (fields[fieldIndex].getType()==char.class) 
-							writer.putChar(unsafe.getChar(o, offset[fieldIndex]));
-						else if (fields[fieldIndex].getType()==float.class) 
-							writer.putFloat(unsafe.getFloat(o, offset[fieldIndex]));
-						else if (fields[fieldIndex].getType()==double.class) 
-							writer.putDouble(unsafe.getDouble(o, offset[fieldIndex]));
-						else throw new RuntimeException();
-					}
-					else if (extPoint.contains(fields[fieldIndex].getType())) {
-						extPoint.<Object>get(fields[fieldIndex].getType()).serialize(this,writer, unsafe.getObject(o, offset[fieldIndex]));
-					}
-					else if (fields[fieldIndex].getType().isArray()) {
-						if (fields[fieldIndex].getType()==boolean[].class) {
-							boolean[] a = (boolean[]) unsafe.getObject(o, offset[fieldIndex]);
-							if (a==null) {
-								writer.putCInt(0);
-							} else {
-								int[] p = pack(a);
-								writer.putCInt(a.length+1);
-								for (int i=0; i<p.length; i++)
-									writer.putByte(p[i]);
-							}
-						} else if (fields[fieldIndex].getType()==byte[].class) {
-							byte[] a = (byte[]) unsafe.getObject(o, offset[fieldIndex]);
-							if (a==null) {
-								writer.putCInt(0);
-							} else {
-								writer.putCInt(a.length+1);
-								for (int i=0; i<a.length; i++)
-									writer.putByte(a[i]);
-							}
-						} else if (fields[fieldIndex].getType()==short[].class) {
-							short[] a = (short[]) unsafe.getObject(o, offset[fieldIndex]);
-							if (a==null) {
-								writer.putCInt(0);
-							} else {
-								writer.putCInt(a.length+1);
-								for (int i=0; i<a.length; i++)
-									writer.putShort(a[i]);
-							}
-						} else if (fields[fieldIndex].getType()==int[].class) {
-							int[] a = (int[]) unsafe.getObject(o, offset[fieldIndex]);
-							if (a==null) {
-								writer.putCInt(0);
-							} else {
-								writer.putCInt(a.length+1);
-								for (int i=0; i<a.length; i++)
-									writer.putInt(a[i]);
-							}
-						} else if (fields[fieldIndex].getType()==long[].class) {
-							long[] a = (long[]) unsafe.getObject(o, offset[fieldIndex]);
-							if (a==null) {
-								writer.putCInt(0);
-							} else {
-								writer.putCInt(a.length+1);
-								for (int i=0; i<a.length; i++)
-									writer.putLong(a[i]);
-							}
-						} else if (fields[fieldIndex].getType()==char[].class) {
-							char[] a = (char[]) unsafe.getObject(o, offset[fieldIndex]);
-							if (a==null) {
-								writer.putCInt(0);
-							} else {
-								writer.putCInt(a.length+1);
-								for (int i=0; i<a.length; i++)
-									writer.putChar(a[i]);
-							}
-						} else if (fields[fieldIndex].getType()==float[].class) {
-							float[] a = (float[]) unsafe.getObject(o, offset[fieldIndex]);
-							if (a==null) {
-								writer.putCInt(0);
-							} else {
-								writer.putCInt(a.length+1);
-								for (int i=0; i<a.length; i++)
-									writer.putFloat(a[i]);
-							}
-						} else if (fields[fieldIndex].getType()==double[].class) {
-							double[] a = (double[]) unsafe.getObject(o, offset[fieldIndex]);
-							if (a==null) {
-								writer.putCInt(0);
-							} else {
-								writer.putCInt(a.length+1);
-								for (int i=0; i<a.length; i++)
-									writer.putDouble(a[i]);
-							}
-						} else {
-							Object a = unsafe.getObject(o, offset[fieldIndex]);
-							if (a==null) {
-								writer.putCInt(0);
-							} else if (getObjectId(a)!=null) {
-								writer.putCInt(1);
-								writer.putCInt(getObjectId(a));
-							} else {
-								writer.putCInt(2);
-								
-								int aoid = 0;
-								if (cacheObjects) aoid = indexObject(a,true);
-								writer.putCInt(aoid);
-								
-								int l = Array.getLength(a);
-								writer.putCInt(l);
-								for (int i=0; i<l; i++) {
-									serialize(writer,Array.get(a, i));
-								}
-							}
-						}
-					} else if (fields[fieldIndex].getType().isEnum()) {
-						Enum a = (Enum) unsafe.getObject(o, offset[fieldIndex]);
-						if (a==null) {
-							writer.putCInt(0);
-						} else {
-							writer.putCInt(a.ordinal()+1);
-						}
-					} else {
-						Object a = unsafe.getObject(o, offset[fieldIndex]);
-						serialize(writer, a);
-					}
+				OrmClassSerializer gen = generated?OrmClassSerializer.get(o.getClass()):null;
+				if (gen!=null) 
+					gen.serialize(this, writer, o);
+				else {
+					OrmInfo info = Orm.getInfo(o.getClass());
+					Field[] fields = info.getFields();
+					long[] offset = info.getPointerOffsets();
+					for (int fieldIndex=0; fieldIndex<fields.length; fieldIndex++) 
+						serializeField(writer, o, fields[fieldIndex], offset[fieldIndex]);
 				}
 			}
 				
 		}
 			
 	}
+	
+	/**
+	 * Writes a single field of o (at the given offset); used by the generated serializers for all fields that are not handled by themselves.
+	 * @param writer
+	 * @param o
+	 * @param field
+	 * @param offset
+	 * @throws IOException
+	 */
+	public void serializeField(BinaryWriter writer, Object o, Field field, long offset) throws IOException {
+		Unsafe unsafe = Orm.getUnsafe();
+		Class<?> type = field.getType();
+		if (type.isPrimitive()) {
+			if (type==boolean.class) 
+				writer.putByte(unsafe.getBoolean(o, offset)?1:0);
+			else if (type==byte.class) 
+				writer.putByte(unsafe.getByte(o, offset));
+			else if (type==short.class) 
+				writer.putShort(unsafe.getShort(o, offset));
+			else if (type==int.class) 
+				writer.putInt(unsafe.getInt(o, offset));
+			else if (type==long.class) 
+				writer.putLong(unsafe.getLong(o, offset));
+			else if (type==char.class) 
+				writer.putChar(unsafe.getChar(o, offset));
+			else if (type==float.class) 
+				writer.putFloat(unsafe.getFloat(o, offset));
+			else if (type==double.class) 
+				writer.putDouble(unsafe.getDouble(o, offset));
+			else throw new RuntimeException();
+		}
+		else if (extPoint.contains(type)) {
+			extPoint.<Object>get(type).serialize(this,writer, unsafe.getObject(o, offset));
+		}
+		else if (type.isArray()) {
+			Object a = unsafe.getObject(o, offset);
+			if (type==boolean[].class) {
+				if (a==null) {
+					writer.putCInt(0);
+				} else {
+					int[] p = pack((boolean[]) a);
+					writer.putCInt(((boolean[]) a).length+1);
+					for (int i=0; i<p.length; i++)
+						writer.putByte(p[i]);
+				}
+			} else if (type.getComponentType().isPrimitive()) {
+				if (a==null) {
+					writer.putCInt(0);
+				} else {
+					writer.putCInt(Array.getLength(a)+1);
+					if (type==byte[].class) putArray(writer, (byte[]) a);
+					else if (type==short[].class) putArray(writer, (short[]) a);
+					else if (type==int[].class) putArray(writer, (int[]) a);
+					else if (type==long[].class) putArray(writer, (long[]) a);
+					else if (type==char[].class) putArray(writer, (char[]) a);
+					else if (type==float[].class) putArray(writer, (float[]) a);
+					else if (type==double[].class) putArray(writer, (double[]) a);
+					else throw new RuntimeException();
+				}
+			} else {
+				if (a==null) {
+					writer.putCInt(0);
+				} else if (getObjectId(a)!=null) {
+					writer.putCInt(1);
+					writer.putCInt(getObjectId(a));
+				} else {
+					writer.putCInt(2);
+					
+					int aoid = 0;
+					if (cacheObjects) aoid = indexObject(a,true);
+					writer.putCInt(aoid);
+					
+					int l = Array.getLength(a);
+					writer.putCInt(l);
+					for (int i=0; i<l; i++) {
+						serialize(writer,Array.get(a, i));
+					}
+				}
+			}
+		} else if (type.isEnum()) {
+			Enum a = (Enum) unsafe.getObject(o, offset);
+			if (a==null) {
+				writer.putCInt(0);
+			} else {
+				writer.putCInt(a.ordinal()+1);
+			}
+		} else {
+			Object a = unsafe.getObject(o, offset);
+			serialize(writer, a);
+		}
+	}
 
 	
 	
@@ -468,39 +452,32 @@ public class OrmSerializer {
 			boolean[] a = unpack(alen, p);
 			re = (T) a;
 		} else if (cls==byte[].class) {
-			int len = reader.getCInt();
-			byte[] a = new byte[len];
-			for (int i=0; i<len; i++) a[i] = (byte) reader.getByte();
+			byte[] a = new byte[reader.getCInt()];
+			getArray(reader, a);
 			re = (T) a;
 		} else if (cls==short[].class) {
-			int len = reader.getCInt();
-			short[] a = new short[len];
-			for (int i=0; i<len; i++) a[i] = reader.getShort();
+			short[] a = new short[reader.getCInt()];
+			getArray(reader, a);
 			re = (T) a;
 		} else if (cls==int[].class) {
-			int len = reader.getCInt();
-			int[] a = new int[len];
-			for (int i=0; i<len; i++) a[i] = reader.getInt();
+			int[] a = new int[reader.getCInt()];
+			getArray(reader, a);
 			re = (T) a;
 		} else if (cls==long[].class) {
-			int len = reader.getCInt();
-			long[] a = new long[len];
-			for (int i=0; i<len; i++) a[i] = reader.getLong();
+			long[] a = new long[reader.getCInt()];
+			getArray(reader, a);
 			re = (T) a;
 		} else if (cls==char[].class) {
-			int len = reader.getCInt();
-			char[] a = new char[len];
-			for (int i=0; i<len; i++) a[i] = reader.getChar();
+			char[] a = new char[reader.getCInt()];
+			getArray(reader, a);
 			re = (T) a;
 		} else if (cls==float[].class) {
-			int len = reader.getCInt();
-			float[] a = new float[len];
-			for (int i=0; i<len; i++) a[i] = reader.getFloat();
+			float[] a = new float[reader.getCInt()];
+			getArray(reader, a);
 			re = (T) a;
 		} else if (cls==double[].class) {
-			int len = reader.getCInt();
-			double[] a = new double[len];
-			for (int i=0; i<len; i++) a[i] = reader.getDouble();
+			double[] a = new double[reader.getCInt()];
+			getArray(reader, a);
 			re = (T) a;
 		} else if (cls.isEnum()) {
 			int ordinal = reader.getCInt();
@@ -524,6 +501,10 @@ public class OrmSerializer {
 				throw new IOException("Object cache inconsistent for "+cls);
 			cached = true;
 			deserialize(reader,re);
+			if (re instanceof OrmResolvable) {
+				re = (T) ((OrmResolvable)re).resolve();
+				if (cacheObjects) replaceIndexObject(re, oid);
+			}
 		}
 		
 		if (!cached){
@@ -546,145 +527,269 @@ public class OrmSerializer {
 			((BinarySerializable)re).deserialize(reader);
 		}
 		else {
-			Unsafe unsafe = Orm.getUnsafe();
-			OrmInfo info = Orm.getInfo(re.getClass());
-			Field[] fields = info.getFields();
-			long[] offset = info.getPointerOffsets();
-			for (int fieldIndex=0; fieldIndex<fields.length; fieldIndex++) {
-				if (fields[fieldIndex].getType()==boolean.class) 
-					unsafe.putBoolean(re, offset[fieldIndex], reader.getByte()!=0);
-				else if (fields[fieldIndex].getType()==byte.class) 
-					unsafe.putByte(re, offset[fieldIndex], (byte)reader.getByte());
-				else if (fields[fieldIndex].getType()==short.class) 
-					unsafe.putShort(re, offset[fieldIndex], reader.getShort());
-				else if (fields[fieldIndex].getType()==int.class) 
-					unsafe.putInt(re, offset[fieldIndex], reader.getInt());
-				else if (fields[fieldIndex].getType()==long.class) 
-					unsafe.putLong(re, offset[fieldIndex], reader.getLong());
-				else if (fields[fieldIndex].getType()==char.class) 
-					unsafe.putChar(re, offset[fieldIndex], reader.getChar());
-				else if (fields[fieldIndex].getType()==float.class) 
-					unsafe.putFloat(re, offset[fieldIndex], reader.getFloat());
-				else if (fields[fieldIndex].getType()==double.class) 
-					unsafe.putDouble(re, offset[fieldIndex], reader.getDouble());
-				else if (extPoint.contains(fields[fieldIndex].getType())) 
-					unsafe.putObject(re, offset[fieldIndex], extPoint.<Object>get(fields[fieldIndex].getType()).deserialize(this,reader));
-				else if (fields[fieldIndex].getType()==boolean[].class) {
-					int alen = reader.getCInt();
-					if (alen==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else {
-						alen--;
-						int plen = alen/8+((alen%8==0)?0:1);
-						int[] p = new int[plen];
-						for (int i=0; i<plen; i++) p[i] = reader.getByte();
-						boolean[] a = unpack(alen, p);
-						unsafe.putObject(re, offset[fieldIndex],a);
-					}
-				} else if (fields[fieldIndex].getType()==byte[].class) {
-					int len = reader.getCInt();
-					if (len==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else {
-						len--;
-						byte[] a = new byte[len];
-						for (int i=0; i<len; i++) a[i] = (byte) reader.getByte();
-						unsafe.putObject(re, offset[fieldIndex],a);
-					}
-				} else if (fields[fieldIndex].getType()==short[].class) {
-					int len = reader.getCInt();
-					if (len==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else {
-						len--;
-						short[] a = new short[len];
-						for (int i=0; i<len; i++) a[i] = reader.getShort();
-						unsafe.putObject(re, offset[fieldIndex],a);
-					}
-				} else if (fields[fieldIndex].getType()==int[].class) {
-					int len = reader.getCInt();
-					if (len==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else {
-						len--;
-						int[] a = new int[len];
-						for (int i=0; i<len; i++) a[i] = reader.getInt();
-						unsafe.putObject(re, offset[fieldIndex],a);
-					}
-				} else if (fields[fieldIndex].getType()==long[].class) {
-					int len = reader.getCInt();
-					if (len==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else {
-						len--;
-						long[] a = new long[len];
-						for (int i=0; i<len; i++) a[i] = reader.getLong();
-						unsafe.putObject(re, offset[fieldIndex],a);
-					}
-				} else if (fields[fieldIndex].getType()==char[].class) {
-					int len = reader.getCInt();
-					if (len==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else {
-						len--;
-						char[] a = new char[len];
-						for (int i=0; i<len; i++) a[i] = reader.getChar();
-						unsafe.putObject(re, offset[fieldIndex],a);
-					}
-				} else if (fields[fieldIndex].getType()==float[].class) {
-					int len = reader.getCInt();
-					if (len==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else {
-						len--;
-						float[] a = new float[len];
-						for (int i=0; i<len; i++) a[i] = reader.getFloat();
-						unsafe.putObject(re, offset[fieldIndex],a);
-					}
-				} else if (fields[fieldIndex].getType()==double[].class) {
-					int len = reader.getCInt();
-					if (len==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else {
-						len--;
-						double[] a = new double[len];
-						for (int i=0; i<len; i++) a[i] = reader.getDouble();
-						unsafe.putObject(re, offset[fieldIndex],a);
-					}
-				} else if (fields[fieldIndex].getType().isEnum()) {
-					int ordinal = reader.getCInt();
-					if (ordinal==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else {
-						ordinal--;
-						Object v = fields[fieldIndex].getType().getEnumConstants()[ordinal];
-						unsafe.putObject(re, offset[fieldIndex], v);
-					}
-				} else if (fields[fieldIndex].getType().isArray()) {
-					int ty = reader.getCInt();
-					if (ty==0) {
-						unsafe.putObject(re, offset[fieldIndex],null);
-					} else if (ty==1) {
-						int oid = reader.getCInt();
-						if (oid==0) throw new RuntimeException("Object cache inconsistent!");
-						Object o = getObject(oid);
-						unsafe.putObject(re, offset[fieldIndex],o);
-								
-					} else {
-						int aoid = reader.getCInt();
-						int len = reader.getCInt();
-						Object a = Array.newInstance(fields[fieldIndex].getType().getComponentType(), len);
-						if (cacheObjects && indexObject(a, true)!=aoid) throw new RuntimeException("Object cache inconsistent!");
+			OrmClassSerializer gen = generated?OrmClassSerializer.get(re.getClass()):null;
+			if (gen!=null) 
+				gen.deserialize(this, reader, re);
+			else {
+				OrmInfo info = Orm.getInfo(re.getClass());
+				Field[] fields = info.getFields();
+				long[] offset = info.getPointerOffsets();
+				for (int fieldIndex=0; fieldIndex<fields.length; fieldIndex++) 
+					deserializeField(reader, re, fields[fieldIndex], offset[fieldIndex]);
+			}
+		}
+	}
+	
+	/**
+	 * Reads a single field of re (at the given offset); used by the generated serializers for all fields that are not handled by themselves.
+	 * @param reader
+	 * @param re
+	 * @param field
+	 * @param offset
+	 * @throws IOException
+	 */
+	public void deserializeField(BinaryReader reader, Object re, Field field, long offset) throws IOException {
+		Unsafe unsafe = Orm.getUnsafe();
+		Class<?> type = field.getType();
+		if (type==boolean.class) 
+			unsafe.putBoolean(re, offset, reader.getByte()!=0);
+		else if (type==byte.class) 
+			unsafe.putByte(re, offset, (byte)reader.getByte());
+		else if (type==short.class) 
+			unsafe.putShort(re, offset, reader.getShort());
+		else if (type==int.class) 
+			unsafe.putInt(re, offset, reader.getInt());
+		else if (type==long.class) 
+			unsafe.putLong(re, offset, reader.getLong());
+		else if (type==char.class) 
+			unsafe.putChar(re, offset, reader.getChar());
+		else if (type==float.class) 
+			unsafe.putFloat(re, offset, reader.getFloat());
+		else if (type==double.class) 
+			unsafe.putDouble(re, offset, reader.getDouble());
+		else if (extPoint.contains(type)) 
+			unsafe.putObject(re, offset, extPoint.<Object>get(type).deserialize(this,reader));
+		else if (type==boolean[].class) {
+			int alen = reader.getCInt();
+			if (alen==0) {
+				unsafe.putObject(re, offset,null);
+			} else {
+				alen--;
+				int plen = alen/8+((alen%8==0)?0:1);
+				int[] p = new int[plen];
+				for (int i=0; i<plen; i++) p[i] = reader.getByte();
+				boolean[] a = unpack(alen, p);
+				unsafe.putObject(re, offset,a);
+			}
+		} else if (type.isArray() && type.getComponentType().isPrimitive()) {
+			int len = reader.getCInt();
+			if (len==0) {
+				unsafe.putObject(re, offset,null);
+			} else {
+				Object a = Array.newInstance(type.getComponentType(), len-1);
+				if (type==byte[].class) getArray(reader, (byte[]) a);
+				else if (type==short[].class) getArray(reader, (short[]) a);
+				else if (type==int[].class) getArray(reader, (int[]) a);
+				else if (type==long[].class) getArray(reader, (long[]) a);
+				else if (type==char[].class) getArray(reader, (char[]) a);
+				else if (type==float[].class) getArray(reader, (float[]) a);
+				else if (type==double[].class) getArray(reader, (double[]) a);
+				else throw new RuntimeException();
+				unsafe.putObject(re, offset,a);
+			}
+		} else if (type.isEnum()) {
+			int ordinal = reader.getCInt();
+			if (ordinal==0) {
+				unsafe.putObject(re, offset,null);
+			} else {
+				ordinal--;
+				Object v = type.getEnumConstants()[ordinal];
+				unsafe.putObject(re, offset, v);
+			}
+		} else if (type.isArray()) {
+			int ty = reader.getCInt();
+			if (ty==0) {
+				unsafe.putObject(re, offset,null);
+			} else if (ty==1) {
+				int oid = reader.getCInt();
+				if (oid==0) throw new RuntimeException("Object cache inconsistent!");
+				Object o = getObject(oid);
+				unsafe.putObject(re, offset,o);
 						
-						for (int i=0; i<len; i++) 
-							Array.set(a, i, deserialize(reader));
-						unsafe.putObject(re, offset[fieldIndex], a);
-					}
-				} else {
-					Object a = deserialize(reader);
-					unsafe.putObject(re, offset[fieldIndex], a);
-				}
+			} else {
+				int aoid = reader.getCInt();
+				int len = reader.getCInt();
+				Object a = Array.newInstance(type.getComponentType(), len);
+				if (cacheObjects && indexObject(a, true)!=aoid) throw new RuntimeException("Object cache inconsistent!");
+				
+				for (int i=0; i<len; i++) 
+					Array.set(a, i, deserialize(reader));
+				unsafe.putObject(re, offset, a);
 			}
+		} else {
+			Object a = deserialize(reader);
+			unsafe.putObject(re, offset, a);
+		}
+	}
+	
+	
+	private static final int BULK_SIZE = 8192;
+	private byte[] bulk;
+	
+	private ByteBuffer bulk() {
+		if (bulk==null) bulk = new byte[BULK_SIZE];
+		return ByteBuffer.wrap(bulk);
+	}
+	
+	/**
+	 * Writes all elements (without length) in big endian, i.e. as the respective put methods would do.
+	 * @param writer
+	 * @param a
+	 * @throws IOException
+	 */
+	public void putArray(BinaryWriter writer, byte[] a) throws IOException {
+		writer.put(a, 0, a.length);
+	}
+	
+	public void putArray(BinaryWriter writer, short[] a) throws IOException {
+		ShortBuffer buf = bulk().asShortBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			buf.clear();
+			buf.put(a, i, n);
+			writer.put(bulk, 0, n*Short.BYTES);
+			i+=n;
+		}
+	}
+	
+	public void putArray(BinaryWriter writer, int[] a) throws IOException {
+		IntBuffer buf = bulk().asIntBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			buf.clear();
+			buf.put(a, i, n);
+			writer.put(bulk, 0, n*Integer.BYTES);
+			i+=n;
+		}
+	}
+	
+	public void putArray(BinaryWriter writer, long[] a) throws IOException {
+		LongBuffer buf = bulk().asLongBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			buf.clear();
+			buf.put(a, i, n);
+			writer.put(bulk, 0, n*Long.BYTES);
+			i+=n;
+		}
+	}
+	
+	public void putArray(BinaryWriter writer, char[] a) throws IOException {
+		CharBuffer buf = bulk().asCharBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			buf.clear();
+			buf.put(a, i, n);
+			writer.put(bulk, 0, n*Character.BYTES);
+			i+=n;
+		}
+	}
+	
+	public void putArray(BinaryWriter writer, float[] a) throws IOException {
+		FloatBuffer buf = bulk().asFloatBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			buf.clear();
+			buf.put(a, i, n);
+			writer.put(bulk, 0, n*Float.BYTES);
+			i+=n;
+		}
+	}
+	
+	public void putArray(BinaryWriter writer, double[] a) throws IOException {
+		DoubleBuffer buf = bulk().asDoubleBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			buf.clear();
+			buf.put(a, i, n);
+			writer.put(bulk, 0, n*Double.BYTES);
+			i+=n;
+		}
+	}
+	
+	/**
+	 * Reads a.length elements into a, as written by the respective putArray method.
+	 * @param reader
+	 * @param a
+	 * @throws IOException
+	 */
+	public void getArray(BinaryReader reader, byte[] a) throws IOException {
+		reader.get(a, 0, a.length);
+	}
+	
+	public void getArray(BinaryReader reader, short[] a) throws IOException {
+		ShortBuffer buf = bulk().asShortBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			reader.get(bulk, 0, n*Short.BYTES);
+			buf.clear();
+			buf.get(a, i, n);
+			i+=n;
+		}
+	}
+	
+	public void getArray(BinaryReader reader, int[] a) throws IOException {
+		IntBuffer buf = bulk().asIntBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			reader.get(bulk, 0, n*Integer.BYTES);
+			buf.clear();
+			buf.get(a, i, n);
+			i+=n;
+		}
+	}
+	
+	public void getArray(BinaryReader reader, long[] a) throws IOException {
+		LongBuffer buf = bulk().asLongBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			reader.get(bulk, 0, n*Long.BYTES);
+			buf.clear();
+			buf.get(a, i, n);
+			i+=n;
+		}
+	}
+	
+	public void getArray(BinaryReader reader, char[] a) throws IOException {
+		CharBuffer buf = bulk().asCharBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			reader.get(bulk, 0, n*Character.BYTES);
+			buf.clear();
+			buf.get(a, i, n);
+			i+=n;
+		}
+	}
+	
+	public void getArray(BinaryReader reader, float[] a) throws IOException {
+		FloatBuffer buf = bulk().asFloatBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			reader.get(bulk, 0, n*Float.BYTES);
+			buf.clear();
+			buf.get(a, i, n);
+			i+=n;
+		}
+	}
+	
+	public void getArray(BinaryReader reader, double[] a) throws IOException {
+		DoubleBuffer buf = bulk().asDoubleBuffer();
+		for (int i=0; i<a.length; ) {
+			int n = Math.min(a.length-i, buf.capacity());
+			reader.get(bulk, 0, n*Double.BYTES);
+			buf.clear();
+			buf.get(a, i, n);
+			i+=n;
 		}
 	}
 	
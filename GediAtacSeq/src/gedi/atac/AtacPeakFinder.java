@@ -38,6 +38,7 @@ import gedi.core.data.numeric.GenomicNumericProvider;
 import gedi.core.data.reads.AlignedReadsData;
 import gedi.core.data.reads.ContrastMapping;
 import gedi.core.data.reads.DefaultAlignedReadsData;
+import gedi.core.data.reads.FlatAlignedReadsData;
 import gedi.core.data.reads.ReadCountMode;
 import gedi.core.processing.CombinedGenomicRegionProcessor;
 import gedi.core.processing.FillStorageProcessor;
@@ -147,6 +148,9 @@ public class AtacPeakFinder {
 		if (i+2!=args.length) throw new UsageException("Input and/or output not given!");
 		
 		CenteredDiskIntervalTreeStorage<AlignedReadsData> storage = new CenteredDiskIntervalTreeStorage<AlignedReadsData>(args[i++]);
+		// peak calling and quantification only sum up counts
+		storage.setSupplier(FlatAlignedReadsData::new);
+		storage.setReuseData(true);
 		
 		
 		TreeSet<ReferenceSequence> chromosomes = new TreeSet<ReferenceSequence>();
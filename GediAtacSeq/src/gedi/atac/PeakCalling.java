@@ -20,6 +20,8 @@ package gedi.atac;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.NavigableMap;
@@ -44,7 +46,6 @@ import gedi.util.datastructure.tree.redblacktree.Interval;
 import gedi.util.datastructure.tree.redblacktree.IntervalTree;
 import gedi.util.datastructure.tree.redblacktree.IntervalTree.GroupIterator;
 import gedi.util.datastructure.tree.redblacktree.SimpleInterval;
-import gedi.util.genomic.Coverage;
 import gedi.util.io.text.LineOrientedFile;
 import gedi.util.math.stat.kernel.GaussianKernel;
 import gedi.util.math.stat.kernel.PreparedIntKernel;
@@ -97,64 +98,48 @@ public class PeakCalling {
 		progress.setDescription("Computing coverage for reference "+ref);
 		
 		int[] stat = new int[3];
-		Coverage cut = new Coverage(260_000_000);
+		IntArrayList cutPos = new IntArrayList();
+		IntArrayList cutCount = new IntArrayList();
 		storage.iterateMutableReferenceGenomicRegions(ref.toStrandIndependent()).forEachRemaining(rgr->{
-			cut.add(rgr.getRegion().getStart()+4, rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight));	
-			cut.add(rgr.getRegion().getStop()-4, rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight));
-			stat[0]+=rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight);
+			stat[0]+=addCuts(rgr.getRegion(), rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight), cutPos, cutCount);
 		});
 		storage.iterateMutableReferenceGenomicRegions(ref.toPlusStrand()).forEachRemaining(rgr->{
-			cut.add(rgr.getRegion().getStart()+4, rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight));	
-			cut.add(rgr.getRegion().getStop()-4, rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight));
-			stat[1]+=rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight);
+			stat[1]+=addCuts(rgr.getRegion(), rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight), cutPos, cutCount);
 		});
 		storage.iterateMutableReferenceGenomicRegions(ref.toMinusStrand()).forEachRemaining(rgr->{
-			cut.add(rgr.getRegion().getStart()+4, rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight));	
-			cut.add(rgr.getRegion().getStop()-4, rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight));
-			stat[2]+=rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight);
+			stat[2]+=addCuts(rgr.getRegion(), rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight), cutPos, cutCount);
 		});
 		
-		double[] dens = cut.getCoverageAsDouble();
-		
-		new GaussianKernel(bandwidth ).prepare().processInPlace(dens, 0, dens.length);
-		cut.clear();
+		SparseDensity dens = new SparseDensity(cutPos.toIntArray(), cutCount.toIntArray(), new GaussianKernel(bandwidth).prepare());
 		progress.setDescriptionf("Reads (Strand independent/Plus strand/Minus Strand): %d/%d/%d",stat[0],stat[1],stat[2]);
 		progress.finish();
 		
-//		DiskGenomicNumericBuilder d  = new DiskGenomicNumericBuilder("dens.rmq");
-//		for (int i=0; i<dens.length; i++)
-//			d.addValue(ref, i, dens[i]);
-//		d.build(false, true);
-		
-
-		double median = new Median().evaluate(dens);
+		double median = dens.median();
 		double cutoff = median*peakFactor;
 		double cutoff2 = median*factor;
 
-//		System.out.println("cutoff: "+cutoff);
-//		System.out.println("cutoff2: "+cutoff2);
-//		System.out.println("bandwidth: "+bandwidth);
-		
-		
 		progress.init();
 		progress.setDescription("Calling peaks for reference "+ref);
 		
-
-		
+		// each run is surrounded by zeros, i.e. peaks cannot extend over the end of a run
 		int n = 0;
-		for (int i=0; i<dens.length; i++) {
-			if (dens[i]>cutoff) {
-				
-				// find left border of peak
-				int start;
-				for (start=i-1; start>=0 && dens[start]>cutoff2; start--);
-				start++;
-				
-				// find right border of peak
-				for (; i<dens.length && dens[i]>cutoff2; i++);
-				
-				re.add(new ImmutableReferenceGenomicRegion<ScoreAnnotation>(ref, new ArrayGenomicRegion(start,i),new ScoreAnnotation(ArrayUtils.max(dens, start, i)/median)));
-				n++;
+		for (int r=0; r<dens.runs.size(); r++) {
+			int offset = dens.runStart.getInt(r);
+			double[] run = dens.runs.get(r);
+			for (int i=0; i<run.length; i++) {
+				if (run[i]>cutoff) {
+					
+					// find left border of peak
+					int start;
+					for (start=i-1; start>=0 && run[start]>cutoff2; start--);
+					start++;
+					
+					// find right border of peak
+					for (; i<run.length && run[i]>cutoff2; i++);
+					
+					re.add(new ImmutableReferenceGenomicRegion<ScoreAnnotation>(ref, new ArrayGenomicRegion(offset+start,offset+i),new ScoreAnnotation(ArrayUtils.max(run, start, i)/median)));
+					n++;
+				}
 			}
 		}
 		
@@ -271,6 +256,110 @@ public class PeakCalling {
 	
 	
 
+	/**
+	 * Adds both Tn5 cut sites of a fragment (shifted by 4bp into the fragment)
+	 * @param region
+	 * @param count
+	 * @param cutPos
+	 * @param cutCount
+	 * @return count
+	 */
+	private static int addCuts(GenomicRegion region, int count, IntArrayList cutPos, IntArrayList cutCount) {
+		cutPos.add(region.getStart()+4);
+		cutCount.add(count);
+		cutPos.add(region.getStop()-4);
+		cutCount.add(count);
+		return count;
+	}
+	
+	/**
+	 * The kernel smoothed cut site coverage of a chromosome (of length last cut site + 2). Only the runs of positions within
+	 * the kernel width around cut sites are materialized (all other values are 0), i.e. time and memory are proportional
+	 * to the number of cut sites instead of the chromosome length. The values are the same (including summation order) as 
+	 * the direct convolution of the dense coverage.
+	 * 
+	 * @author erhard
+	 *
+	 */
+	private static class SparseDensity {
+		private int length;
+		private IntArrayList runStart = new IntArrayList();
+		private ArrayList<double[]> runs = new ArrayList<double[]>();
+		
+		public SparseDensity(int[] pos, int[] count, PreparedIntKernel kernel) {
+			int h = (int)kernel.halfSize();
+			double[] weights = new double[2*h+1];
+			for (int i=0; i<weights.length; i++)
+				weights[i] = kernel.applyAsDouble(i-h);
+			
+			ArrayUtils.parallelSort(pos, count);
+			int n = 0;
+			double[] c = new double[pos.length];
+			for (int i=0; i<pos.length; i++) {
+				if (pos[i]<0) continue;
+				if (n>0 && pos[n-1]==pos[i]) 
+					c[n-1]+=count[i];
+				else {
+					pos[n] = pos[i];
+					c[n++] = count[i];
+				}
+			}
+			length = n==0?0:pos[n-1]+2;
+			
+			for (int k=0; k<n; ) {
+				int e = k+1;
+				while (e<n && pos[e]-h<=pos[e-1]+h+1) e++;
+				int start = Math.max(0, pos[k]-h);
+				int end = Math.min(length, pos[e-1]+h+1);
+				
+				double[] run = new double[end-start];
+				for (int j=k; j<e; j++)
+					for (int q=Math.max(start, pos[j]-h); q<Math.min(end, pos[j]+h+1); q++)
+						run[q-start]+=weights[pos[j]-q+h]*c[j];
+				runStart.add(start);
+				runs.add(run);
+				k = e;
+			}
+		}
+		
+		/**
+		 * The median over all positions (as computed by commons math {@link Median}, i.e. interpolated between the order statistics).
+		 * @return
+		 */
+		public double median() {
+			if (length==0) return Double.NaN;
+			
+			int support = 0;
+			for (double[] run : runs)
+				support+=run.length;
+			double[] sorted = new double[support];
+			support = 0;
+			for (double[] run : runs) {
+				System.arraycopy(run, 0, sorted, support, run.length);
+				support+=run.length;
+			}
+			Arrays.sort(sorted);
+			int zeros = length-support;
+			
+			double pos = 0.5*(length+1);
+			if (length==1 || pos<1) return orderStatistic(sorted, zeros, 0);
+			if (pos>=length) return orderStatistic(sorted, zeros, length-1);
+			
+			int intPos = (int) Math.floor(pos);
+			double dif = pos-intPos;
+			double lower = orderStatistic(sorted, zeros, intPos-1);
+			double upper = orderStatistic(sorted, zeros, intPos);
+			return lower + dif * (upper - lower);
+		}
+		
+		/**
+		 * All values are non-negative, i.e. the zeros come first
+		 */
+		private static double orderStatistic(double[] sorted, int zeros, int k) {
+			return k<zeros?0:sorted[k-zeros];
+		}
+	}
+	
 	private static double computeAverageInBackground(long[] c, GenomicRegion bg,
 			int p, int halfWin) {
 
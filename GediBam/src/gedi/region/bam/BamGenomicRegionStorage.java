@@ -74,6 +74,7 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 	private Strandness[] strandness = null;
 	private String[] fileNames;
 	private SamReader[] files;
+	private SamReaderPool readers;
 	private int[] cumNumCond; // number of conditions stored XR tag in files <=i
 
 	private ContrastMapping mapping;
@@ -104,11 +105,16 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 		name = merge.getName();
 
 		
+		this.readers = createPool();
 		this.files = new SamReader[fileNames.length];
 		this.cumNumCond = new int[fileNames.length];
 		Arrays.fill(cumNumCond, 1);
 		for (int i=0; i<files.length; i++) {
-			files[i]=obtainReader(i);
+			try {
+				files[i]=createReader(fileNames[i]);
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot read bam file!",e);
+			}
 			for (String co : files[i].getFileHeader().getComments()) {
 				if (co.startsWith("XR-count:"))
 					throw new RuntimeException("XR not allowed when using merging!");
@@ -135,6 +141,7 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 	}
 	public BamGenomicRegionStorage(String... fileNames) throws IOException {
 		this.fileNames = fileNames;
+		this.readers = createPool();
 		this.files = new SamReader[fileNames.length];
 		this.cumNumCond = new int[fileNames.length];
 		Arrays.fill(cumNumCond, 1);
@@ -184,6 +191,24 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 		return mapping;
 	}
 	
+	/**
+	 * The pool of readers used for queries (the readers in {@link #files} are only used for header information).
+	 * @return
+	 */
+	public SamReaderPool getReaderPool() {
+		return readers;
+	}
+	
+	private SamReaderPool createPool() {
+		return new SamReaderPool(fileNames.length, file->{
+			try {
+				return createReader(fileNames[file]);
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot read bam file!",e);
+			}
+		});
+	}
+	
 	private SamReader createReader(String name) throws IOException {
 		
 		if (name.startsWith("http://") || name.startsWith("https://")) {
@@ -197,9 +222,15 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 				fos.close();
 			}
 			
-			return SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(SamInputResource.of(new URL(name)).index(new File(indexName)));
+			return readerFactory().open(SamInputResource.of(new URL(name)).index(new File(indexName)));
 		}
-		return SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(new File(name));
+		return readerFactory().open(new File(name));
+	}
+	
+	private static SamReaderFactory readerFactory() {
+		return SamReaderFactory.makeDefault()
+				.validationStringency(ValidationStringency.SILENT)
+				.enable(SamReaderFactory.Option.CACHE_FILE_BASED_INDEXES);
 	}
 
 	@Override
@@ -346,6 +377,7 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 
 
 	public void close() {
+		readers.close();
 		for (SamReader s : files)
 			try {
 				s.close();
@@ -354,11 +386,24 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 	}
 
 
+	/**
+	 * The returned spliterator is {@link AutoCloseable}; it gives its readers back to the pool when it is exhausted, if it is
+	 * not consumed completely, it has to be closed (in particular if {@link SamReaderPool#setMaxOpenPerFile(int)} is used).
+	 * @param ref
+	 * @return
+	 */
 	public Spliterator<GenomicRegion> iterateGenomicRegions(ReferenceSequence ref) {
 		return new BufferingGenomicRegionSpliterator(ref);
 //		return convert?new ConvertedGenomicRegionSpliterator(ref):new GenomicRegionSpliterator(ref);
 	}
 
+	/**
+	 * See {@link #iterateGenomicRegions(ReferenceSequence)}
+	 * @param ref
+	 * @param start
+	 * @param end
+	 * @return
+	 */
 	public Spliterator<GenomicRegion> iterateGenomicRegions(ReferenceSequence ref, int start, int end) {
 		return new BufferingGenomicRegionSpliterator(ref, start, end);
 //		return convert?new ConvertedGenomicRegionSpliterator(ref, start, end):new GenomicRegionSpliterator(ref, start, end);
@@ -433,60 +478,12 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 //		return re;
 //	}
 	
-//	LinkedBlockingQueue<SamReader>[] readers;
-	
 	private SamReader obtainReader(int file) {
-//		if (readers==null) readers = new LinkedBlockingQueue[fileNames.length];
-//		if (readers[file]==null) readers[file] = new LinkedBlockingQueue<SamReader>();
-//		
-//		LinkedBlockingQueue<SamReader> ll = readers[file];
-//
-//		SamReader re = ll.poll();
-		SamReader re = null;
-//		for (;!ll.isEmpty(); re = ll.poll())
-//			if (!ll.isEmpty()) {
-//				re.close();
-//				System.out.println("closed reader for "+fileNames[file]);
-//			}
-		
-		if (re==null) {
-//			System.out.println("Creating new reader for "+fileNames[file]);
-			try {
-				re = createReader(fileNames[file]);
-			} catch (IOException e) {
-				throw new RuntimeException("Cannot read bam file!",e);
-			}
-//			if (false) {
-//				try {
-//					Object reader = ReflectionUtils.get(re, "mReader");
-//					MemoryBAMFileIndex mIndex = new MemoryBAMFileIndex(ReflectionUtils.get(reader, "mIndexFile"), re.getFileHeader().getSequenceDictionary(), true);
-//					ReflectionUtils.set(reader, "mIndex", mIndex);
-//				} catch (Exception e) {
-//					throw new RuntimeException("Cannot load index!",e);
-//				}
-//			}
-//			re.enableIndexCaching(true);
-		}
-		
-//		System.out.println("Reusing reader for "+fileNames[file]);
-			
-		return re;
+		return readers.obtain(file);
 	}
 	
 	private void returnReader(int file, SamReader sf) {
-//		if (readers==null) readers = new LinkedBlockingQueue[fileNames.length];
-//		if (readers[file]==null) readers[file] = new LinkedBlockingQueue<SamReader>();
-//		try {
-////			System.out.println("Returning reader for "+fileNames[file]);
-//			readers[file].put(sf);
-//		} catch (InterruptedException e) {
-//			throw new RuntimeException(e);
-//		}
-		try {
-			sf.close();
-		} catch (IOException e) {
-		}
-//		sf.close();
+		readers.release(file, sf);
 	}
 
 	public boolean contains(ReferenceSequence ref, GenomicRegion region) {
@@ -862,7 +859,7 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 		
 	}
 	
-	private class BufferingGenomicRegionSpliterator implements Spliterator<GenomicRegion> {
+	private class BufferingGenomicRegionSpliterator implements Spliterator<GenomicRegion>, AutoCloseable {
 
 		private static final int START_ESTIMATE = 10;
 
@@ -935,6 +932,30 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 			return defIterator;
 		}
 
+		/**
+		 * Closes the iterators and gives the readers back to the pool; may be called several times.
+		 */
+		private void releaseReaders() {
+			for (int i=0; i<files.length; i++) {
+				if (raw[i]!=null) raw[i].close();
+				if (files[i]!=null) returnReader(i,files[i]);
+				raw[i] = null;
+				files[i] = null;
+			}
+		}
+		
+		/**
+		 * Stops the iteration (e.g. if it is not consumed completely) and gives the readers back to the pool.
+		 */
+		@Override
+		public void close() {
+			done = true;
+			defIterator = null;
+			queue.clear();
+			mateBuffer.clear();
+			releaseReaders();
+		}
+		
 		@Override
 		public Comparator<? super GenomicRegion> getComparator() {
 			return (GenomicRegion a, GenomicRegion b) -> a.compareTo(b);
@@ -979,12 +1000,9 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 					}
 					done = true;
 				}
-				for (int i=0; i<files.length; i++) {
-					returnReader(i,files[i]);
-					raw[i].close();
-	//				files[i].close();
-				}
+				releaseReaders();
 			} catch (htsjdk.samtools.util.RuntimeIOException e) {
+				close();
 				return false;
 			}
 			
@@ -1032,11 +1050,7 @@ public class BamGenomicRegionStorage implements GenomicRegionStorage<AlignedRead
 					}
 					map.clear();
 				}
-				for (int i=0; i<files.length; i++) {
-					returnReader(i,files[i]);
-					raw[i].close();
-//					files[i].close();
-				}
+				releaseReaders();
 
 				mateBuffer.clear();
 				if (!queue.isEmpty()) {
@@ -0,0 +1,292 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gedi.region.bam;
+
+import htsjdk.samtools.SamReader;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Pool of {@link SamReader}s, one queue per file. Readers are handed out to a single caller at a time and
+ * kept open (including their cached index) when returned, as long as there are at most maxIdlePerFile idle readers
+ * for that file. Readers that have been idle for longer than the idle timeout are closed whenever the pool of its
+ * file is accessed.
+ * 
+ * The number of open readers (idle or in use) per file is unbounded by default; if maxOpenPerFile is set,
+ * {@link #obtain(int)} blocks until another reader of this file is released. Then, readers must always be released
+ * (i.e. all iterators closed), otherwise callers may wait forever.
+ *
+ * Safe for concurrent callers.
+ *
+ * @author erhard
+ *
+ */
+public class SamReaderPool implements AutoCloseable {
+
+	public static final int DEFAULT_MAX_IDLE_PER_FILE = 8;
+	public static final long DEFAULT_IDLE_TIMEOUT = 60_000;
+
+	private IntFunction<SamReader> creator;
+	private ConcurrentLinkedDeque<PooledReader>[] idle;
+	private AtomicInteger[] idleCount;
+	private AtomicInteger[] openCount;
+	private Object[] locks;
+
+	private int maxIdlePerFile = DEFAULT_MAX_IDLE_PER_FILE;
+	private volatile int maxOpenPerFile = 0;
+	private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private AtomicLong evictions = new AtomicLong();
+
+	private volatile boolean closed = false;
+
+	/**
+	 *
+	 * @param numFiles
+	 * @param creator creates a new reader for the given file index
+	 */
+	public SamReaderPool(int numFiles, IntFunction<SamReader> creator) {
+		this.creator = creator;
+		this.idle = newDequeArray(numFiles);
+		this.idleCount = new AtomicInteger[numFiles];
+		this.openCount = new AtomicInteger[numFiles];
+		this.locks = new Object[numFiles];
+		for (int i=0; i<numFiles; i++) {
+			idle[i] = new ConcurrentLinkedDeque<PooledReader>();
+			idleCount[i] = new AtomicInteger();
+			openCount[i] = new AtomicInteger();
+			locks[i] = new Object();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ConcurrentLinkedDeque<PooledReader>[] newDequeArray(int n) {
+		return (ConcurrentLinkedDeque<PooledReader>[]) new ConcurrentLinkedDeque<?>[n];
+	}
+
+	/**
+	 * Maximal number of readers kept open per file while not in use; 0 disables pooling.
+	 * @param maxIdlePerFile
+	 * @return
+	 */
+	public SamReaderPool setMaxIdlePerFile(int maxIdlePerFile) {
+		this.maxIdlePerFile = maxIdlePerFile;
+		return this;
+	}
+
+	public int getMaxIdlePerFile() {
+		return maxIdlePerFile;
+	}
+
+	/**
+	 * Maximal number of open readers (idle or in use) per file; {@link #obtain(int)} blocks if there are that many and
+	 * none of them is idle. 0 (the default) means unbounded.
+	 * @param maxOpenPerFile
+	 * @return
+	 */
+	public SamReaderPool setMaxOpenPerFile(int maxOpenPerFile) {
+		this.maxOpenPerFile = maxOpenPerFile;
+		for (Object lock : locks)
+			synchronized (lock) {
+				lock.notifyAll();
+			}
+		return this;
+	}
+
+	public int getMaxOpenPerFile() {
+		return maxOpenPerFile;
+	}
+
+	/**
+	 * Idle readers are closed after this many milliseconds
+	 * @param idleTimeout
+	 * @return
+	 */
+	public SamReaderPool setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+		return this;
+	}
+
+	public long getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * Hands out an idle reader or creates a new one; blocks if the maximal number of open readers is reached.
+	 * @param file
+	 * @return
+	 */
+	public SamReader obtain(int file) {
+		evictIdle(file);
+		SamReader re = pollIdle(file);
+		if (re!=null) return re;
+
+		if (maxOpenPerFile<=0)
+			openCount[file].incrementAndGet();
+		else {
+			synchronized (locks[file]) {
+				while ((re = pollIdle(file))==null && maxOpenPerFile>0 && openCount[file].get()>=maxOpenPerFile) {
+					try {
+						locks[file].wait();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new RuntimeException("Interrupted while waiting for a reader!", e);
+					}
+				}
+				if (re!=null) return re;
+				openCount[file].incrementAndGet();
+			}
+		}
+
+		misses.incrementAndGet();
+		try {
+			return creator.apply(file);
+		} catch (RuntimeException e) {
+			closed(file);
+			throw e;
+		}
+	}
+
+	private SamReader pollIdle(int file) {
+		PooledReader p = idle[file].pollFirst();
+		if (p==null) return null;
+		idleCount[file].decrementAndGet();
+		hits.incrementAndGet();
+		return p.reader;
+	}
+
+	/**
+	 * Gives back a reader obtained by {@link #obtain(int)}; all iterators of the reader must have been closed before!
+	 * @param file
+	 * @param reader
+	 */
+	public void release(int file, SamReader reader) {
+		if (!closed && idleCount[file].incrementAndGet()<=maxIdlePerFile) {
+			idle[file].offerFirst(new PooledReader(reader));
+			// close() might have drained the queue in the meantime
+			if (closed) drain(file);
+			else if (maxOpenPerFile>0)
+				synchronized (locks[file]) {
+					locks[file].notifyAll();
+				}
+		} else {
+			idleCount[file].decrementAndGet();
+			closeReader(file, reader);
+		}
+		evictIdle(file);
+	}
+
+	/**
+	 * Closes all readers of all files that have been idle for longer than the idle timeout.
+	 */
+	public void evictIdle() {
+		for (int i=0; i<idle.length; i++)
+			evictIdle(i);
+	}
+
+	private void evictIdle(int file) {
+		long limit = System.currentTimeMillis()-idleTimeout;
+		// least recently used readers are at the end
+		PooledReader p;
+		while ((p=idle[file].peekLast())!=null && p.lastUsed<limit) {
+			if (idle[file].removeLastOccurrence(p)) {
+				idleCount[file].decrementAndGet();
+				evictions.incrementAndGet();
+				closeReader(file, p.reader);
+			}
+		}
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public int getIdle(int file) {
+		return Math.max(0,idleCount[file].get());
+	}
+
+	/**
+	 * Number of readers of this file that are currently open (idle or in use)
+	 * @param file
+	 * @return
+	 */
+	public int getOpen(int file) {
+		return openCount[file].get();
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		for (int i=0; i<idle.length; i++)
+			drain(i);
+	}
+
+	private void drain(int file) {
+		PooledReader p;
+		while ((p=idle[file].pollFirst())!=null) {
+			idleCount[file].decrementAndGet();
+			closeReader(file, p.reader);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "SamReaderPool [hits="+hits+", misses="+misses+", evictions="+evictions+"]";
+	}
+
+	private void closeReader(int file, SamReader reader) {
+		try {
+			reader.close();
+		} catch (IOException e) {
+		}
+		closed(file);
+	}
+
+	private void closed(int file) {
+		openCount[file].decrementAndGet();
+		if (maxOpenPerFile>0)
+			synchronized (locks[file]) {
+				locks[file].notifyAll();
+			}
+	}
+
+	private static class PooledReader {
+		private SamReader reader;
+		private long lastUsed = System.currentTimeMillis();
+
+		public PooledReader(SamReader reader) {
+			this.reader = reader;
+		}
+	}
+
+}
@@ -47,6 +47,8 @@ public class MergeCIT {
 		
 		boolean progress = false;
 		boolean clear = false;
+		int threads = 1;
+		long memory = -1;
 		HashSet<String> skip = new HashSet<>(); 
 		String out = null;
 		
@@ -57,6 +59,10 @@ public class MergeCIT {
 				clear = true;
 			else if (args[i].equals("-s"))
 				EI.split(args[++i], ',').toCollection(skip);
+			else if (args[i].equals("-t"))
+				threads = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-m"))
+				memory = Long.parseLong(args[++i])<<20;
 			else {
 				out = args[i++];
 				args = Arrays.copyOfRange(args, i, args.length);
@@ -90,6 +96,8 @@ public class MergeCIT {
 		ParallellIterator<ImmutableReferenceGenomicRegion<? extends AlignedReadsData>> pit = (ParallellIterator<ImmutableReferenceGenomicRegion<? extends AlignedReadsData>>) FunctorUtils.parallellIterator((Iterator[])iterators, FunctorUtils.naturalComparator(), ImmutableReferenceGenomicRegion.class);
 		
 		CenteredDiskIntervalTreeStorage<DefaultAlignedReadsData> outCit = new CenteredDiskIntervalTreeStorage<DefaultAlignedReadsData>(out, DefaultAlignedReadsData.class);
+		outCit.setBuildThreads(threads);
+		outCit.setMemoryBudget(memory);
 		outCit.fill(pit.map(merger::merge).iff(progress, ei->ei.progress(new ConsoleProgress(System.err),-1,e->e.toLocationString())));
 		if (!meta.isNull())
 			outCit.setMetaData(meta);
@@ -104,7 +112,7 @@ public class MergeCIT {
 	}
 
 	private static void usage() {
-		System.out.println("MergeCIT [-c] [-p] [-s skip1,skip2,...] <output> <file1> <file2> ... \n\n -c removes the input files after successful merging\n -p shows progress\n -s skip chromosomes");
+		System.out.println("MergeCIT [-c] [-p] [-s skip1,skip2,...] [-t threads] [-m memory] <output> <file1> <file2> ... \n\n -c removes the input files after successful merging\n -p shows progress\n -s skip chromosomes\n -t number of threads to build the trees of the chromosomes\n -m memory budget in MB for the tree builders");
 	}
 	
 }
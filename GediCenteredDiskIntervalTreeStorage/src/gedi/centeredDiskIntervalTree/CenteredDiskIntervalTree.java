@@ -23,6 +23,7 @@ import gedi.core.region.ArrayGenomicRegion;
 import gedi.core.region.GenomicRegion;
 import gedi.core.region.MutableReferenceGenomicRegion;
 import gedi.util.FileUtils;
+import gedi.util.datastructure.collections.longcollections.LongArrayList;
 import gedi.util.io.randomaccess.ConcurrentPageFile;
 import gedi.util.io.randomaccess.ConcurrentPageFileView;
 
@@ -30,9 +31,9 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Set;
 import java.util.Spliterator;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.function.Supplier;
 
 /**
@@ -65,7 +66,7 @@ public class CenteredDiskIntervalTree<D> {
 
 	private ConcurrentPageFileView all;
 	private ConcurrentPageFileView nodes;
-	private ConcurrentPageFileView lists;
+	ConcurrentPageFileView lists;
 	private ConcurrentPageFileView data;
 	
 	
@@ -78,6 +79,10 @@ public class CenteredDiskIntervalTree<D> {
 	private ConcurrentPageFile parent;
 	private long origEnd;
 	
+	private boolean primitiveQueries = true;
+	private boolean reuseData = false;
+	private ThreadLocal<CenteredDiskIntervalTreeQuery> query = ThreadLocal.withInitial(()->new CenteredDiskIntervalTreeQuery(this));
+	
 	public CenteredDiskIntervalTree(Supplier<D> supplier, ConcurrentPageFile parent, long start, long end) throws IOException {
 		this.supplier = supplier;
 		this.parent = parent;
@@ -104,7 +109,7 @@ public class CenteredDiskIntervalTree<D> {
 		this.supplier = supplier;
 	}
 	
-	private void readHeader() {
+	void readHeader() {
 		if (nodes==null){
 			
 			synchronized (this) {
@@ -176,53 +181,124 @@ public class CenteredDiskIntervalTree<D> {
 //	}
 	
 
+	/**
+	 * Sequentially iterates over the data part. The spliterator can be split at record boundaries (taken from the node lists), 
+	 * each split has its own cursor and can be consumed by another thread.
+	 * @param ref
+	 * @return
+	 */
 	public Spliterator<MutableReferenceGenomicRegion<D>> spliterator(ReferenceSequence ref) {
 //		return iterateIntersectingRegions(ref, new ArrayGenomicRegion(0,Integer.MAX_VALUE));
-		try {
-			readHeader();
-			ConcurrentPageFileView file = new ConcurrentPageFileView(data);
-			
-			return new Spliterator<MutableReferenceGenomicRegion<D>>() {
-				MutableReferenceGenomicRegion<D> mrgr = new MutableReferenceGenomicRegion<D>();
-				@Override
-				public boolean tryAdvance(Consumer<? super MutableReferenceGenomicRegion<D>> action) {
-					try {
-						if (file.eof()) return false;
-						
-//						int parts = file.getInt();
-//						long offset = file.getStart()+file.position();
-						GenomicRegion re = getRegion(file);//new PageGenomicRegion(new PageFile(file.getPath(), offset, offset+parts*2*Integer.BYTES));
-						D d = supplier.get();
-						FileUtils.deserialize(d,file);// dummy to advance
-						
-						action.accept(mrgr.set(ref, re, d));
-						return true;
-						
-					} catch (IOException e) {
-						throw new RuntimeException("Cannot read entry!",e);
-					}
-				}
-	
-				@Override
-				public Spliterator<MutableReferenceGenomicRegion<D>> trySplit() {
-					return null;
-				}
+		readHeader();
+		return new DataSpliterator(ref, 0, data.size(), true);
+	}
 	
-				@Override
-				public long estimateSize() {
-					readHeader();
-					return count;
-				}
+	/**
+	 * Minimal number of bytes of the data part in a split
+	 */
+	private static final long MIN_SPLIT_BYTES = 1<<16;
+	
+	/**
+	 * Finds the start of a record in the data part close to the middle of [from,to) by a binary search over the nodes (as data is usually
+	 * written in genomic order). Any pointer in a node list is the start of a record, so the result is always valid.
+	 * @param from
+	 * @param to
+	 * @return the split point or -1 if there is none
+	 * @throws IOException
+	 */
+	private long findSplitPoint(long from, long to) throws IOException {
+		if (to-from<2*MIN_SPLIT_BYTES) return -1;
+		
+		long mid = (from+to)>>>1;
+		long best = -1;
+		
+		long low = 0;
+		long high = nodes.size()/SIZE - 1;
+		while (low <= high) {
+			long k = (low + high) >>> 1;
+			lists.position(nodes.getLong(k*SIZE+Integer.BYTES));
+			lists.getCInt(); // length of list, always >0
+			lists.getCInt(); // stop position
+			long ptr = lists.getCLong();
+			
+			if (ptr>=from+MIN_SPLIT_BYTES && ptr<=to-MIN_SPLIT_BYTES && (best==-1 || Math.abs(ptr-mid)<Math.abs(best-mid)))
+				best = ptr;
+			
+			if (ptr<mid)
+				low = k + 1;
+			else if (ptr>mid)
+				high = k - 1;
+			else
+				break;
+		}
+		return best;
+	}
 	
-				@Override
-				public int characteristics() {
-					return DISTINCT|NONNULL|ORDERED|IMMUTABLE|SIZED;
-				}
+	private class DataSpliterator implements Spliterator<MutableReferenceGenomicRegion<D>> {
+		private ReferenceSequence ref;
+		private long from;
+		private long to;
+		private boolean root;
+		private ConcurrentPageFileView file;
+		private MutableReferenceGenomicRegion<D> mrgr = new MutableReferenceGenomicRegion<D>();
+		private D d;
+		
+		public DataSpliterator(ReferenceSequence ref, long from, long to, boolean root) {
+			this.ref = ref;
+			this.root = root;
+			setRange(from, to);
+		}
+		
+		private void setRange(long from, long to) {
+			this.from = from;
+			this.to = to;
+			file = new ConcurrentPageFileView(parent, data.getStart()+from, data.getStart()+to);
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super MutableReferenceGenomicRegion<D>> action) {
+			try {
+				if (file.eof()) return false;
 				
-			};
-		} catch (IOException e) {
-			throw new RuntimeException("Cannot read file!",e);
+				GenomicRegion re = getRegion(file);
+				D d = reuseData?(this.d==null?this.d=supplier.get():this.d):supplier.get();
+				FileUtils.deserialize(d,file);
+				
+				action.accept(mrgr.set(ref, re, d));
+				return true;
+				
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot read entry!",e);
+			}
 		}
+
+		@Override
+		public Spliterator<MutableReferenceGenomicRegion<D>> trySplit() {
+			try {
+				long pos = from+file.position();
+				long split = findSplitPoint(pos, to);
+				if (split==-1) return null;
+				
+				DataSpliterator prefix = new DataSpliterator(ref, pos, split, false);
+				setRange(split, to);
+				root = false;
+				return prefix;
+			} catch (IOException e) {
+				throw new RuntimeException("Cannot split!",e);
+			}
+		}
+
+		@Override
+		public long estimateSize() {
+			if (root) return count;
+			return (long) Math.ceil(count*(double)(to-from-file.position())/data.size());
+		}
+
+		@Override
+		public int characteristics() {
+			return DISTINCT|NONNULL|ORDERED|IMMUTABLE|(root?SIZED:0);
+		}
+		
 	}
 
 	protected GenomicRegion getRegion(ConcurrentPageFileView file) throws IOException {
@@ -242,11 +318,10 @@ public class CenteredDiskIntervalTree<D> {
 	
 	public <C extends Collection<GenomicRegion>> C getIntersectingRegions(int start, int stop, C re) throws IOException {
 		
-		HashSet<Long> data = new HashSet<Long>();
-		findAllOffsets(start, stop, data);
+		LongArrayList data = findIntersectingOffsets(start, stop);
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			re.add(reg);
 		}
@@ -255,12 +330,11 @@ public class CenteredDiskIntervalTree<D> {
 	}
 	
 	public <C extends Map<GenomicRegion,D>> C getIntersectingRegions(int start, int stop, C re) throws IOException {
-		HashSet<Long> data = new HashSet<Long>();
-		findAllOffsets(start, stop, data);
+		LongArrayList data = findIntersectingOffsets(start, stop);
 		
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			D d = supplier.get();
 			FileUtils.deserialize(d,this.data);
@@ -272,12 +346,10 @@ public class CenteredDiskIntervalTree<D> {
 	}
 	
 	public <C extends Collection<GenomicRegion>> C getIntersectingRegions(GenomicRegion region, C re) throws IOException {
-		HashSet<Long> data = new HashSet<Long>();
-		for (int i=0; i<region.getNumParts(); i++) 
-			findAllOffsets(region.getStart(i), region.getStop(i), data);
+		LongArrayList data = findIntersectingOffsets(region);
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			re.add(reg);
 		}
@@ -286,13 +358,11 @@ public class CenteredDiskIntervalTree<D> {
 	
 	public <C extends Map<GenomicRegion,D>> C getIntersectingRegions(GenomicRegion region, C re) throws IOException {
 		
-		HashSet<Long> data = new HashSet<Long>();
-		for (int i=0; i<region.getNumParts(); i++) 
-			findAllOffsets(region.getStart(i), region.getStop(i), data);
+		LongArrayList data = findIntersectingOffsets(region);
 		
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			D d = supplier.get();
 			
@@ -308,61 +378,159 @@ public class CenteredDiskIntervalTree<D> {
 	public Spliterator<MutableReferenceGenomicRegion<D>> iterateIntersectingRegions(ReferenceSequence reference, GenomicRegion region) {
 		readHeader();
 		
-		HashSet<Long> data = new HashSet<Long>();
+		long[] offs;
 		try {
-			for (int i=0; i<region.getNumParts(); i++) 
-				findAllOffsets(region.getStart(i), region.getStop(i), data);
+			// copy, the buffer of the query engine is reused by the next query
+			offs = findIntersectingOffsets(region).toLongArray();
 		} catch (IOException e) {
 			throw new RuntimeException("Could not find intersecting regions!",e);
 		}
-		long[] offs = new long[data.size()];
-		int index = 0;
-		for (Long l : data) {
-			offs[index++] = l;
-		}
 		
-		return new Spliterator<MutableReferenceGenomicRegion<D>>() {
-			MutableReferenceGenomicRegion<D> re = new MutableReferenceGenomicRegion<D>();
-			int index;
-			@Override
-			public boolean tryAdvance(
-					Consumer<? super MutableReferenceGenomicRegion<D>> action) {
-				if (index>=offs.length) {
-					return false;
-				}
-				
-				try {
-					CenteredDiskIntervalTree.this.data.position(offs[index++]);
-					GenomicRegion reg = getRegion(CenteredDiskIntervalTree.this.data);
-					D d = supplier.get();
-					FileUtils.deserialize(d,CenteredDiskIntervalTree.this.data);
-					
-					action.accept(re.set(reference, reg, d));
-					return true;
-				} catch (IOException e) {
-					throw new RuntimeException("Could not find intersecting regions!",e);
-				}
+		return new OffsetSpliterator(reference, offs, 0, offs.length);
+	}
+	
+	/**
+	 * Iterates over the records at the given offsets; splits are by offset ranges and have their own cursor.
+	 * @author erhard
+	 *
+	 */
+	private class OffsetSpliterator implements Spliterator<MutableReferenceGenomicRegion<D>> {
+		private ReferenceSequence reference;
+		private long[] offs;
+		private int index;
+		private int fence;
+		private ConcurrentPageFileView file = new ConcurrentPageFileView(parent, data.getStart(), data.getEnd());
+		private MutableReferenceGenomicRegion<D> re = new MutableReferenceGenomicRegion<D>();
+		private D d;
+		
+		public OffsetSpliterator(ReferenceSequence reference, long[] offs, int index, int fence) {
+			this.reference = reference;
+			this.offs = offs;
+			this.index = index;
+			this.fence = fence;
+		}
+
+		@Override
+		public boolean tryAdvance(
+				Consumer<? super MutableReferenceGenomicRegion<D>> action) {
+			if (index>=fence) {
+				return false;
+			}
+			
+			try {
+				file.position(offs[index++]);
+				GenomicRegion reg = getRegion(file);
+				D d = reuseData?(this.d==null?this.d=supplier.get():this.d):supplier.get();
+				FileUtils.deserialize(d,file);
 				
+				action.accept(re.set(reference, reg, d));
+				return true;
+			} catch (IOException e) {
+				throw new RuntimeException("Could not find intersecting regions!",e);
 			}
+			
+		}
 
-			@Override
-			public Spliterator<MutableReferenceGenomicRegion<D>> trySplit() {
-				return null;
-			}
+		@Override
+		public Spliterator<MutableReferenceGenomicRegion<D>> trySplit() {
+			if (fence-index<2) return null;
+			int mid = (index+fence)>>>1;
+			OffsetSpliterator prefix = new OffsetSpliterator(reference, offs, index, mid);
+			index = mid;
+			return prefix;
+		}
 
-			@Override
-			public long estimateSize() {
-				return data.size();
-			}
+		@Override
+		public long estimateSize() {
+			return fence-index;
+		}
 
-			@Override
-			public int characteristics() {
-				return CONCURRENT|DISTINCT|IMMUTABLE|NONNULL|ORDERED|SIZED|SORTED;
-			}
-			
-		};
+		@Override
+		public int characteristics() {
+			return DISTINCT|IMMUTABLE|NONNULL|ORDERED|SIZED|SUBSIZED;
+		}
+		
+	}
+	
+	/**
+	 * If true (default), offsets are collected by a thread-local {@link CenteredDiskIntervalTreeQuery} into primitive buffers, 
+	 * otherwise into hash sets of boxed longs (the original implementation, kept for benchmarking).
+	 * @param primitiveQueries
+	 */
+	public void setPrimitiveQueries(boolean primitiveQueries) {
+		this.primitiveQueries = primitiveQueries;
+	}
+	
+	public boolean isPrimitiveQueries() {
+		return primitiveQueries;
+	}
+	
+	/**
+	 * If true, the spliterators over mutable regions deserialize all records into a single data object (per spliterator). Only use this, if
+	 * the data objects are not kept by the consumer (e.g. when only counts are summed up).
+	 * @param reuseData
+	 */
+	public void setReuseData(boolean reuseData) {
+		this.reuseData = reuseData;
+	}
+	
+	public boolean isReuseData() {
+		return reuseData;
+	}
+	
+	/**
+	 * Gets the query engine of the current thread.
+	 * @return
+	 */
+	public CenteredDiskIntervalTreeQuery getQuery() {
+		return query.get();
+	}
+	
+	private LongArrayList findIntersectingOffsets(int start, int stop) throws IOException {
+		if (primitiveQueries)
+			return query.get().intersecting(start, stop);
+		
+		HashSet<Long> data = new HashSet<Long>();
+		findAllOffsets(start, stop, data);
+		return toSortedList(data);
+	}
+	
+	private LongArrayList findIntersectingOffsets(GenomicRegion region) throws IOException {
+		if (primitiveQueries)
+			return query.get().intersecting(region);
+		
+		HashSet<Long> data = new HashSet<Long>();
+		for (int i=0; i<region.getNumParts(); i++) 
+			findAllOffsets(region.getStart(i), region.getStop(i), data);
+		return toSortedList(data);
 	}
 	
+	private LongArrayList findContainedOffsets(int start, int stop) throws IOException {
+		if (primitiveQueries)
+			return query.get().containedCandidates(start, stop);
+		
+		HashSet<Long> data = new HashSet<Long>();
+		findAllOffsetsContained(start, stop, data);
+		return toSortedList(data);
+	}
+	
+	private LongArrayList findContainedOffsets(GenomicRegion region) throws IOException {
+		if (primitiveQueries)
+			return query.get().containedCandidates(region);
+		
+		HashSet<Long> data = new HashSet<Long>();
+		for (int i=0; i<region.getNumParts(); i++) 
+			findAllOffsetsContained(region.getStart(i), region.getStop(i), data);
+		return toSortedList(data);
+	}
+	
+	private static LongArrayList toSortedList(HashSet<Long> data) {
+		LongArrayList re = new LongArrayList(data.size());
+		for (Long l : data)
+			re.add(l.longValue());
+		re.sort();
+		return re;
+	}
 	
 	private void findAllOffsets(int start, int stop, HashSet<Long> data) throws IOException {
 		readHeader();
@@ -371,7 +539,7 @@ public class CenteredDiskIntervalTree<D> {
 		HashSet<Long> right = new HashSet<Long>();
 		HashSet<Long> all = new HashSet<Long>();
 		
-		computeNodeCreateTransient(start, stop,left,right,all);
+		computeNodeCreateTransient(start, stop,left::add,right::add,all::add);
 		
 		
 		CenteredDiskIntervalTreeNode node = new CenteredDiskIntervalTreeNode();
@@ -411,11 +579,10 @@ public class CenteredDiskIntervalTree<D> {
 	
 	public <C extends Collection<GenomicRegion>> C getContainedConsistentRegions(int start, int stop, C re) throws IOException {
 		
-		HashSet<Long> data = new HashSet<Long>();
-		findAllOffsetsContained(start, stop, data);
+		LongArrayList data = findContainedOffsets(start, stop);
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			if (reg.getNumParts()==1 && reg.getStart()>=start && reg.getStop()<=stop)
 				re.add(reg);
@@ -426,12 +593,11 @@ public class CenteredDiskIntervalTree<D> {
 	
 	public <C extends Map<GenomicRegion,D>> C getContainedConsistentRegions(int start, int stop, C re) throws IOException {
 		
-		HashSet<Long> data = new HashSet<Long>();
-		findAllOffsetsContained(start, stop, data);
+		LongArrayList data = findContainedOffsets(start, stop);
 		
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			if (reg.getNumParts()==1 && reg.getStart()>=start && reg.getStop()<=stop){
 				D d = supplier.get();
@@ -444,12 +610,10 @@ public class CenteredDiskIntervalTree<D> {
 	}
 	
 	public <C extends Collection<GenomicRegion>> C getContainedConsistentRegions(GenomicRegion region, C re) throws IOException {
-		HashSet<Long> data = new HashSet<Long>();
-		for (int i=0; i<region.getNumParts(); i++) 
-			findAllOffsetsContained(region.getStart(i), region.getStop(i), data);
+		LongArrayList data = findContainedOffsets(region);
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			if (region.containsUnspliced(reg))
 				re.add(reg);
@@ -460,13 +624,11 @@ public class CenteredDiskIntervalTree<D> {
 	
 	public <C extends Map<GenomicRegion,D>> C getContainedConsistentRegions(GenomicRegion region, C re) throws IOException {
 		
-		HashSet<Long> data = new HashSet<Long>();
-		for (int i=0; i<region.getNumParts(); i++) 
-			findAllOffsetsContained(region.getStart(i), region.getStop(i), data);
+		LongArrayList data = findContainedOffsets(region);
 		
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			if (region.containsUnspliced(reg)) {
 				D d = supplier.get();
@@ -479,12 +641,10 @@ public class CenteredDiskIntervalTree<D> {
 	}
 	
 	public boolean contains(GenomicRegion region) throws IOException {
-		HashSet<Long> data = new HashSet<Long>();
-		for (int i=0; i<region.getNumParts(); i++) 
-			findAllOffsetsContained(region.getStart(i), region.getStop(i), data);
+		LongArrayList data = findContainedOffsets(region);
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			if (region.equals(reg)) return true;
 		}
@@ -494,12 +654,10 @@ public class CenteredDiskIntervalTree<D> {
 
 	
 	public D getData(GenomicRegion region) throws IOException {
-		HashSet<Long> data = new HashSet<Long>();
-		for (int i=0; i<region.getNumParts(); i++) 
-			findAllOffsetsContained(region.getStart(i), region.getStop(i), data);
+		LongArrayList data = findContainedOffsets(region);
 		
-		for (Long l : data) {
-			this.data.position(l);
+		for (int i=0; i<data.size(); i++) {
+			this.data.position(data.getLong(i));
 			GenomicRegion reg = getRegion(this.data);
 			if (region.equals(reg)) {
 				D d = supplier.get();
@@ -514,8 +672,9 @@ public class CenteredDiskIntervalTree<D> {
 
 	
 	private void findAllOffsetsContained(int start, int stop, HashSet<Long> data) throws IOException {
+		readHeader();
 		HashSet<Long> all = new HashSet<Long>();
-		getAllPtr(start,stop,all);
+		getAllPtr(start,stop,all::add);
 
 		
 		CenteredDiskIntervalTreeNode node = new CenteredDiskIntervalTreeNode();
@@ -533,7 +692,7 @@ public class CenteredDiskIntervalTree<D> {
 	}
 	
 	
-	private int computeNodeCreateTransient(int l, int u, Set<Long> left, Set<Long> right, Set<Long> all) throws IOException {
+	int computeNodeCreateTransient(int l, int u, LongConsumer left, LongConsumer right, LongConsumer all) throws IOException {
 		
 		int node = max/2;
 		int step;
@@ -576,7 +735,7 @@ public class CenteredDiskIntervalTree<D> {
 	}
 
 	private final static int SIZE = 12;
-	private void getAllPtr(int l, int u, Set<Long> all) throws IOException {
+	void getAllPtr(int l, int u, LongConsumer all) throws IOException {
 		long low = 0;
         long high = nodes.size()/SIZE - 1;
         while (low <= high) {
@@ -600,11 +759,11 @@ public class CenteredDiskIntervalTree<D> {
         	int n = nodes.getInt();
         	if (n>u) return;
         	long lo = nodes.getLong();
-        	all.add(lo);
+        	all.accept(lo);
         }
 	}
 
-	private void getPtr(int node, Set<Long> set) throws IOException {
+	private void getPtr(int node, LongConsumer set) throws IOException {
 		
 		long low = 0;
         long high = nodes.size()/SIZE - 1;
@@ -620,7 +779,7 @@ public class CenteredDiskIntervalTree<D> {
                 high = mid - 1;
             else {
                 long ptr = nodes.getLong(mid*SIZE+Integer.BYTES); // key found
-                set.add(ptr);
+                set.accept(ptr);
                 return;
             }
         }
@@ -46,6 +46,12 @@ public class CenteredDiskIntervalTreeBuilder<D> {
 	private ArrayList<String> tmps = new ArrayList<String>();
 	
 	private int count;
+	private long inMemoryParts;
+	
+	/**
+	 * Rough number of heap bytes per region part held in memory (two nodes and their list entries)
+	 */
+	public static final long BYTES_PER_PART = 80;
 	
 	public CenteredDiskIntervalTreeBuilder(boolean appendData, String magic, String prefix, String tmpFolder) {
 		nodes = new HashMap<Integer, MutablePair<ArrayList<CenteredDiskIntervalTreeNode>, ArrayList<CenteredDiskIntervalTreeNode>>>();
@@ -72,9 +78,18 @@ public class CenteredDiskIntervalTreeBuilder<D> {
 			list.Item2.add(n2);
 			
 		}
+		inMemoryParts+=region.getNumParts();
 		count++;
 	}
 	
+	/**
+	 * Estimates the number of heap bytes of the nodes that have not been written by {@link #toDisk()} yet.
+	 * @return
+	 */
+	public long estimateMemory() {
+		return inMemoryParts*BYTES_PER_PART;
+	}
+	
 	public void toDisk() throws IOException {
 		String fn = File.createTempFile(prefix+".DISK", ".data", new File(tmpFolder)).getPath();
 		tmps.add(fn);
@@ -90,6 +105,7 @@ public class CenteredDiskIntervalTreeBuilder<D> {
 		}
 		tmp.close();
 		nodes.clear();
+		inMemoryParts = 0;
 	}
 	
 	public void fromDisk() throws IOException {
@@ -200,9 +216,7 @@ public class CenteredDiskIntervalTreeBuilder<D> {
 		
 		long listBegin = out.position();
 		PageFile lists = tmpLists.read(true);
-		while (!lists.eof()) {
-			out.put(lists.get());
-		}
+		copy(lists,out);
 		lists.close();
 //		System.err.println("deleting "+lists.getPath());
 		new File (lists.getPath()).delete();
@@ -216,6 +230,21 @@ public class CenteredDiskIntervalTreeBuilder<D> {
 	}
 	
 	
+	/**
+	 * Copies the remaining bytes of in to out in chunks.
+	 * @param in
+	 * @param out
+	 * @throws IOException
+	 */
+	static void copy(PageFile in, PageFileWriter out) throws IOException {
+		byte[] buf = new byte[1<<20];
+		while (!in.eof()) {
+			int n = (int) Math.min(buf.length, in.size()-in.position());
+			in.get(buf, 0, n);
+			out.put(buf, 0, n);
+		}
+	}
+	
 	private CenteredDiskIntervalTreeBuilder<D> buildOld(PageFileWriter out) throws IOException {
 		
 		long start = out.position();
@@ -0,0 +1,177 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gedi.centeredDiskIntervalTree;
+
+import gedi.core.region.GenomicRegion;
+import gedi.util.datastructure.collections.longcollections.LongArrayList;
+
+import java.io.IOException;
+import java.util.function.LongConsumer;
+
+/**
+ * Query engine for a {@link CenteredDiskIntervalTree} that collects node and record offsets into reusable primitive buffers
+ * instead of boxed hash sets. Offsets are sorted and made unique in place, such that records are read in file order.
+ *
+ * An instance is not thread-safe; {@link CenteredDiskIntervalTree} keeps one per thread. The buffer returned by {@link #finish()}
+ * is reused by the next query!
+ *
+ * @author erhard
+ *
+ */
+public class CenteredDiskIntervalTreeQuery {
+
+	private CenteredDiskIntervalTree<?> tree;
+
+	private LongArrayList left = new LongArrayList();
+	private LongArrayList right = new LongArrayList();
+	private LongArrayList all = new LongArrayList();
+	private LongArrayList offsets = new LongArrayList();
+
+	private LongConsumer leftSink = left::add;
+	private LongConsumer rightSink = right::add;
+	private LongConsumer allSink = all::add;
+
+	private CenteredDiskIntervalTreeNode node = new CenteredDiskIntervalTreeNode();
+
+	public CenteredDiskIntervalTreeQuery(CenteredDiskIntervalTree<?> tree) {
+		this.tree = tree;
+	}
+
+	/**
+	 * Starts a new query, i.e. clears the offset buffer.
+	 * @return
+	 */
+	public CenteredDiskIntervalTreeQuery begin() {
+		offsets.clear();
+		return this;
+	}
+
+	/**
+	 * Sorts the collected offsets and removes duplicates.
+	 * @return the offsets of all records in the data part (only valid until the next query in this thread)
+	 */
+	public LongArrayList finish() {
+		sortUnique(offsets);
+		return offsets;
+	}
+
+	/**
+	 * Adds the offsets of all regions intersecting [start,stop]
+	 * @param start
+	 * @param stop
+	 * @return
+	 * @throws IOException
+	 */
+	public CenteredDiskIntervalTreeQuery addIntersecting(int start, int stop) throws IOException {
+		tree.readHeader();
+
+		left.clear();
+		right.clear();
+		all.clear();
+		tree.computeNodeCreateTransient(start, stop, leftSink, rightSink, allSink);
+		sortUnique(left);
+		sortUnique(right);
+		sortUnique(all);
+
+		addAll(all);
+
+		for (int l=0; l<left.size(); l++) {
+			tree.lists.position(left.getLong(l));
+			int len = tree.lists.getCInt();
+			for (int i=0; i<len; i++) {
+				node.deserialize(tree.lists);
+				if (node.getNode()<start) break;
+				offsets.add(node.getPtr());
+				node.deserialize(tree.lists);
+			}
+		}
+
+		for (int r=0; r<right.size(); r++) {
+			tree.lists.position(right.getLong(r));
+			int len = tree.lists.getCInt();
+			for (int i=0; i<len; i++) {
+				node.deserialize(tree.lists);
+				node.deserialize(tree.lists);
+				if (node.getNode()>stop) break;
+				offsets.add(node.getPtr());
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Adds the offsets of all regions having their center node within [start,stop], i.e. a superset of all contained regions.
+	 * @param start
+	 * @param stop
+	 * @return
+	 * @throws IOException
+	 */
+	public CenteredDiskIntervalTreeQuery addContainedCandidates(int start, int stop) throws IOException {
+		tree.readHeader();
+
+		all.clear();
+		tree.getAllPtr(start, stop, allSink);
+		sortUnique(all);
+
+		addAll(all);
+		return this;
+	}
+
+	public LongArrayList intersecting(int start, int stop) throws IOException {
+		return begin().addIntersecting(start, stop).finish();
+	}
+
+	public LongArrayList intersecting(GenomicRegion region) throws IOException {
+		begin();
+		for (int i=0; i<region.getNumParts(); i++)
+			addIntersecting(region.getStart(i), region.getStop(i));
+		return finish();
+	}
+
+	public LongArrayList containedCandidates(int start, int stop) throws IOException {
+		return begin().addContainedCandidates(start, stop).finish();
+	}
+
+	public LongArrayList containedCandidates(GenomicRegion region) throws IOException {
+		begin();
+		for (int i=0; i<region.getNumParts(); i++)
+			addContainedCandidates(region.getStart(i), region.getStop(i));
+		return finish();
+	}
+
+	private void addAll(LongArrayList nodeLists) throws IOException {
+		for (int l=0; l<nodeLists.size(); l++) {
+			tree.lists.position(nodeLists.getLong(l));
+			int len = tree.lists.getCInt();
+			for (int i=0; i<len; i++) {
+				node.deserialize(tree.lists);
+				offsets.add(node.getPtr());
+				node.deserialize(tree.lists);
+			}
+		}
+	}
+
+	private static void sortUnique(LongArrayList list) {
+		if (list.size()>1) {
+			list.sort();
+			list.unique();
+		}
+	}
+
+}
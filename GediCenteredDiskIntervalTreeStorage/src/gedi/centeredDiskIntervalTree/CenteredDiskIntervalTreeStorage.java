@@ -22,6 +22,7 @@ package gedi.centeredDiskIntervalTree;
 import gedi.app.extension.GlobalInfoProvider;
 import gedi.core.reference.Chromosome;
 import gedi.core.reference.ReferenceSequence;
+import gedi.core.reference.ReferenceSequenceMap;
 import gedi.core.region.GenomicRegion;
 import gedi.core.region.GenomicRegionStorage;
 import gedi.core.region.MutableReferenceGenomicRegion;
@@ -36,16 +37,22 @@ import gedi.util.userInteraction.progress.ConsoleProgress;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.Spliterator;
 import java.util.Spliterators;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -65,7 +72,7 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 	
 	private ConcurrentPageFile file;
 	
-	private LinkedHashMap<ReferenceSequence,CenteredDiskIntervalTree<D>> pages;
+	private ReferenceSequenceMap<CenteredDiskIntervalTree<D>> pages;
 	private DynamicObject meta;
 	private String extendedJson;
 	
@@ -115,7 +122,7 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 	
 	private void readHeader() throws IOException {
 		this.file = new ConcurrentPageFile(path);
-		pages = new LinkedHashMap<ReferenceSequence, CenteredDiskIntervalTree<D>>();
+		pages = new ReferenceSequenceMap<CenteredDiskIntervalTree<D>>();
 		file.position(0);
 		String mag = file.getAsciiChars(5);
 		if (!mag.equals(MAGIC) && !mag.equals(EXT_MAGIC)) 
@@ -153,12 +160,15 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 				file.getContext().setGlobalInfo(DynamicObject.parseJson(extendedJson));
 		}
 		
-		for (CenteredDiskIntervalTree<D> tree : pages.values())
+		for (CenteredDiskIntervalTree<D> tree : pages.values()) {
 			tree.setSupplier(getSupplier());
+			tree.setReuseData(reuseData);
+		}
 	}
 
 	private Supplier<D> supplier;
 	private Class<D> dataClass;
+	private boolean reuseData = false;
 	
 	
 	@Override
@@ -195,6 +205,9 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 	
 	public void setSupplier(Supplier<D> supplier) {
 		this.supplier = supplier;
+		if (pages!=null)
+			for (CenteredDiskIntervalTree<D> tree : pages.values())
+				tree.setSupplier(supplier);
 	}
 	
 	public Supplier<D> getSupplier() {
@@ -213,6 +226,32 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 		file.close();
 	}
 	
+	/**
+	 * Switches between the primitive query engine (default) and the original hash set based offset collection for all references.
+	 * @param primitiveQueries
+	 */
+	public void setPrimitiveQueries(boolean primitiveQueries) {
+		for (CenteredDiskIntervalTree<D> tree : pages.values())
+			tree.setPrimitiveQueries(primitiveQueries);
+	}
+	
+	/**
+	 * If true, iterating over mutable regions deserializes all records into a single data object (per spliterator), e.g. a
+	 * {@link gedi.core.data.reads.FlatAlignedReadsData} given by {@link #setSupplier(Supplier)}. Only use this, if the data objects are not kept 
+	 * (e.g. by {@link MutableReferenceGenomicRegion#toImmutable()}).
+	 * @param reuseData
+	 */
+	public void setReuseData(boolean reuseData) {
+		this.reuseData = reuseData;
+		if (pages!=null)
+			for (CenteredDiskIntervalTree<D> tree : pages.values())
+				tree.setReuseData(reuseData);
+	}
+	
+	public boolean isReuseData() {
+		return reuseData;
+	}
+	
 	private boolean forceUnsortedFilling = false;
 	public void setForceUnsortedFilling(boolean forceUnsortedFilling) {
 		this.forceUnsortedFilling = forceUnsortedFilling;
@@ -266,6 +305,35 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 		readHeader();
 	}
 	
+	private int buildThreads = 1;
+	private long memoryBudget = -1;
+	
+	/**
+	 * Sets the number of threads used by {@link #fill(Iterator)} to build the trees of the references. If more than one, each tree is 
+	 * built into its own temporary segment, and the segments are concatenated afterwards.
+	 * @param buildThreads
+	 */
+	public void setBuildThreads(int buildThreads) {
+		this.buildThreads = buildThreads;
+	}
+	
+	public int getBuildThreads() {
+		return buildThreads;
+	}
+	
+	/**
+	 * Sets the number of heap bytes the tree builders may occupy in {@link #fill(Iterator)}; if exceeded, the largest builder is written to disk.
+	 * If negative (default), the builder of a reference is written to disk once the next reference starts (if it has more than 1000 entries).
+	 * @param memoryBudget
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+	
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+	
 	@Override
 	public void fill(Iterator<? extends ReferenceGenomicRegion<D>> it)  {
 		if (file!=null) throw new RuntimeException("File "+file+" already exists!");
@@ -274,7 +342,7 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 		
 		try {
 		
-			HashMap<ReferenceSequence,InternalCenteredDiskIntervalTreeBuilder<D>> references = new HashMap<ReferenceSequence,InternalCenteredDiskIntervalTreeBuilder<D>>(); // reference -> builder
+			ReferenceSequenceMap<InternalCenteredDiskIntervalTreeBuilder<D>> references = new ReferenceSequenceMap<InternalCenteredDiskIntervalTreeBuilder<D>>(); // reference -> builder
 			
 //			System.out.println("Building cit");
 			int re=0;
@@ -291,14 +359,18 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 						globalInfo = DynamicObject.getEmpty();
 				}
 				
-				if (rgr.getReference().equals(last)) count++;
-				else if (last!=null) {
-					if (count>1000) {
-//						System.out.println("Writing temp file for "+last);
-						references.get(last).toDisk();
+				if (memoryBudget<0) {
+					if (rgr.getReference().equals(last)) count++;
+					else if (last!=null) {
+						if (count>1000) {
+	//						System.out.println("Writing temp file for "+last);
+							references.get(last).toDisk();
+						}
+						count=0;
 					}
-					count=0;
 				}
+				else if (++count%MEMORY_CHECK_INTERVAL==0) 
+					spillToBudget(references);
 				
 				last = rgr.getReference();
 				
@@ -313,36 +385,14 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 			ReferenceSequence[] refs = references.keySet().toArray(new ReferenceSequence[0]);
 			Arrays.sort(refs);
 			
-			PageFileWriter out = new PageFileWriter(path);
-			out.putAsciiChars(EXT_MAGIC);
-			out.putInt(refs.length);
-			for (int i=0; i<refs.length; i++) {
-				Chromosome.write(Chromosome.obtain(refs[i].getName(),refs[i].getStrand()),out);
-				out.putLong(0);
-				out.putLong(0);// placeholder
-			}
-			out.putString(dataClass.getName()); // new!
 			if (globalInfo==null)
 				globalInfo = DynamicObject.getEmpty();
-			out.putString(globalInfo.toJson()); // newnew!
 			
-			long[] offset = new long[refs.length+1];
-			for (int i=0; i<refs.length; i++) {
-				System.out.println("Output "+refs[i]);
-				offset[i] = out.position();
-				InternalCenteredDiskIntervalTreeBuilder<D> builder = references.get(refs[i]);
-				builder.build(out);
-//				System.out.println("Finished "+refs[i]+" @"+out.position());
-			}
-			offset[refs.length] = out.position();
+			if (buildThreads>1 && refs.length>1) 
+				buildParallel(refs, references, globalInfo);
+			else
+				buildSequential(refs, references, globalInfo);
 			
-			out.position(EXT_MAGIC.length()+Integer.BYTES);
-			for (int i=0; i<refs.length; i++) {
-				Chromosome.write(Chromosome.obtain(refs[i].getName(),refs[i].getStrand()),out);
-				out.putLong(offset[i]);
-				out.putLong(offset[i+1]);
-			}
-			out.close();
 //			System.out.println("Finished!");
 			file = new ConcurrentPageFile(path);
 			readHeader();
@@ -352,6 +402,114 @@ public class CenteredDiskIntervalTreeStorage<D>  implements GenomicRegionStorage
 		}
 	}
 	
+	private static final int MEMORY_CHECK_INTERVAL = 1<<16;
+	
+	private void spillToBudget(ReferenceSequenceMap<InternalCenteredDiskIntervalTreeBuilder<D>> references) throws IOException {
+		long total = 0;
+		for (InternalCenteredDiskIntervalTreeBuilder<D> b : references.values())
+			total+=b.estimateMemory();
+		
+		while (total>memoryBudget) {
+			InternalCenteredDiskIntervalTreeBuilder<D> largest = null;
+			for (InternalCenteredDiskIntervalTreeBuilder<D> b : references.values())
+				if (largest==null || b.estimateMemory()>largest.estimateMemory())
+					largest = b;
+			if (largest==null || largest.estimateMemory()==0) return;
+			total-=largest.estimateMemory();
+			largest.toDisk();
+		}
+	}
+	
+	private long writeHeader(PageFileWriter out, ReferenceSequence[] refs, long[] offset, DynamicObject globalInfo) throws IOException {
+		out.position(0);
+		out.putAsciiChars(EXT_MAGIC);
+		out.putInt(refs.length);
+		for (int i=0; i<refs.length; i++) {
+			Chromosome.write(Chromosome.obtain(refs[i].getName(),refs[i].getStrand()),out);
+			out.putLong(offset==null?0:offset[i]);
+			out.putLong(offset==null?0:offset[i+1]);// placeholder
+		}
+		out.putString(dataClass.getName()); // new!
+		out.putString(globalInfo.toJson()); // newnew!
+		return out.position();
+	}
+	
+	private void buildSequential(ReferenceSequence[] refs, ReferenceSequenceMap<InternalCenteredDiskIntervalTreeBuilder<D>> references, DynamicObject globalInfo) throws IOException {
+		PageFileWriter out = new PageFileWriter(path);
+		writeHeader(out, refs, null, globalInfo);
+		
+		long[] offset = new long[refs.length+1];
+		for (int i=0; i<refs.length; i++) {
+			System.out.println("Output "+refs[i]);
+			offset[i] = out.position();
+			InternalCenteredDiskIntervalTreeBuilder<D> builder = references.get(refs[i]);
+			builder.build(out);
+//			System.out.println("Finished "+refs[i]+" @"+out.position());
+		}
+		offset[refs.length] = out.position();
+		
+		long end = out.position();
+		writeHeader(out, refs, offset, globalInfo);
+		out.position(end);
+		out.close();
+	}
+	
+	/**
+	 * Builds each tree into its own temporary file using {@link #buildThreads} threads, and appends them to the header by channel transfers
+	 * (all offsets within a tree are relative to its start). 
+	 */
+	private void buildParallel(ReferenceSequence[] refs, ReferenceSequenceMap<InternalCenteredDiskIntervalTreeBuilder<D>> references, DynamicObject globalInfo) throws IOException {
+		File folder = new File(path).getAbsoluteFile().getParentFile();
+		File[] segments = new File[refs.length];
+		
+		ExecutorService pool = Executors.newFixedThreadPool(Math.min(buildThreads, refs.length));
+		try {
+			ArrayList<Future<File>> futures = new ArrayList<Future<File>>();
+			for (int i=0; i<refs.length; i++) {
+				InternalCenteredDiskIntervalTreeBuilder<D> builder = references.get(refs[i]);
+				futures.add(pool.submit(()->{
+					File segment = File.createTempFile(new File(path).getName(), ".segment", folder);
+					segment.deleteOnExit();
+					PageFileWriter out = new PageFileWriter(segment.getPath());
+					builder.build(out);
+					out.close();
+					return segment;
+				}));
+			}
+			for (int i=0; i<refs.length; i++)
+				segments[i] = futures.get(i).get();
+		} catch (InterruptedException | ExecutionException e) {
+			for (File f : segments)
+				if (f!=null) f.delete();
+			throw new IOException("Could not build trees!",e);
+		} finally {
+			pool.shutdownNow();
+		}
+		
+		// the header has the same size with or without offsets
+		PageFileWriter out = new PageFileWriter(path);
+		long headerSize = writeHeader(out, refs, null, globalInfo);
+		long[] offset = new long[refs.length+1];
+		offset[0] = headerSize;
+		for (int i=0; i<refs.length; i++)
+			offset[i+1] = offset[i]+segments[i].length();
+		writeHeader(out, refs, offset, globalInfo);
+		out.close();
+		
+		try (FileChannel dest = new RandomAccessFile(path, "rw").getChannel()) {
+			dest.position(headerSize);
+			for (File segment : segments) {
+				try (FileChannel src = new RandomAccessFile(segment, "r").getChannel()) {
+					long pos = 0;
+					long size = src.size();
+					while (pos<size)
+						pos += src.transferTo(pos, size-pos, dest);
+				}
+				segment.delete();
+			}
+		}
+	}
+	
 	@Override
 	public <O> void fill(GenomicRegionStorage<O> storage, Function<MutableReferenceGenomicRegion<O>,MutableReferenceGenomicRegion<D>> mapper)  {
 		if (file!=null) throw new RuntimeException("File "+file+" already exists!");
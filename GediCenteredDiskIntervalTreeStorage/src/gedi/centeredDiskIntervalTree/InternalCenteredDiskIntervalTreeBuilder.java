@@ -72,9 +72,7 @@ public class InternalCenteredDiskIntervalTreeBuilder<D> extends CenteredDiskInte
 		super.build(out);
 		
 		PageFile datain = new PageFile(this.data);
-		while (!datain.eof()) {
-			out.put(datain.get());
-		}
+		copy(datain,out);
 		
 		datain.close();
 //		System.err.println("deleting "+data.getPath());
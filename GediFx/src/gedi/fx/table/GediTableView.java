@@ -47,6 +47,7 @@ import java.util.logging.Level;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import javafx.beans.binding.Bindings;
 import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.event.Event;
@@ -96,6 +97,7 @@ public class GediTableView<T> extends DialogInsidePane {
 
 
 	private TableView<T> tableView;
+	private Label totalCount;
 
 	public GediTableView(gedi.core.data.table.TableView<T> view) {
 		setView(view);
@@ -194,10 +196,9 @@ public class GediTableView<T> extends DialogInsidePane {
 			}
 		});
 
-		Label totalCount = new Label(" / "+getView().nopage().size());
+		// the total is counted in the background by the items of the table (see updateView)
+		totalCount = new Label(" / ?");
 		viewProperty().addListener((e,o,n)-> {
-			if (n==null) totalCount.setText(" / ?");
-			else totalCount.setText(" / "+n.nopage().size());
 			fromTo.setText(getView().getPageFrom()+"-"+getView().getPageTo());
 			fromTo.setPrefColumnCount(fromTo.getText().length());
 		});
@@ -248,7 +249,6 @@ public class GediTableView<T> extends DialogInsidePane {
 						sb.append(" DESC");
 				}
 			createView(getView().orderBy(sb.toString()));
-			updateView();
 			se.consume();
 		});
 
@@ -265,6 +265,12 @@ public class GediTableView<T> extends DialogInsidePane {
 	}
 
 
+	/**
+	 * Rows are loaded lazily in pages of this size; the most recently viewed pages are kept
+	 */
+	private static final int PAGE_SIZE = 500;
+	private static final int CACHED_PAGES = 20;
+	
 	private Class<T> dataClass = null;
 	private void updateView() {
 
@@ -284,8 +290,11 @@ public class GediTableView<T> extends DialogInsidePane {
 			dataClass = cls;
 		}
 
-		tableView.getItems().clear();
-		tableView.getItems().addAll(getView().iterate().toList());
+		if (tableView.getItems() instanceof PagedTableItems)
+			((PagedTableItems<T>) tableView.getItems()).dispose();
+		PagedTableItems<T> items = new PagedTableItems<T>(getView(), PAGE_SIZE, CACHED_PAGES);
+		totalCount.textProperty().bind(Bindings.createStringBinding(()->items.getTotal()<0?" / ?":" / "+items.getTotal(), items.totalProperty()));
+		tableView.setItems(items);
 	}
 
 
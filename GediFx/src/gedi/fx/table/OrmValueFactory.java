@@ -48,6 +48,8 @@ public class OrmValueFactory<T> implements Callback<CellDataFeatures<T, Object>,
 
 			@Override
 			public Object getValue() {
+				// rows that are not loaded yet (see PagedTableItems)
+				if (param.getValue()==null) return null;
 				return Orm.getField(param.getValue(), column);
 			}
 			
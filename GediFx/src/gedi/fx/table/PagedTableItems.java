@@ -0,0 +1,179 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.fx.table;
+
+import gedi.core.data.table.TableView;
+import gedi.core.data.table.Tables;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyLongProperty;
+import javafx.beans.property.ReadOnlyLongWrapper;
+import javafx.collections.ObservableListBase;
+
+/**
+ * Read only item list for a {@link javafx.scene.control.TableView} that loads the rows of a {@link TableView} lazily. Rows are fetched in
+ * pages (by limit/offset queries of the view, i.e. filter and order are evaluated by the database) on a background thread, and the
+ * most recently used pages are cached. Rows that are not loaded yet are null; when their page arrives, a replace change is fired
+ * on the FX thread, such that the visible cells are updated.
+ *
+ * The number of rows is also determined in the background, so the list is empty until the count query returned. The same holds for
+ * the {@link #totalProperty() total} number of rows of a paged view.
+ *
+ * All lists share a pool of daemon threads, i.e. a list that is not used anymore does not need to be disposed.
+ *
+ * Must only be accessed from the FX thread.
+ *
+ * @author erhard
+ *
+ * @param <T>
+ */
+public class PagedTableItems<T> extends ObservableListBase<T> {
+
+	private TableView<T> view;
+	private long offset;
+	private int pageSize;
+	private int size = 0;
+
+	private LinkedHashMap<Integer,List<T>> cache;
+	private HashSet<Integer> loading = new HashSet<Integer>();
+	private volatile boolean disposed = false;
+	private ReadOnlyLongWrapper total = new ReadOnlyLongWrapper(this, "total", -1);
+
+	private static final ExecutorService loader = Executors.newCachedThreadPool(r->{
+		Thread t = new Thread(r, "PagedTableItems");
+		t.setDaemon(true);
+		return t;
+	});
+
+	public PagedTableItems(TableView<T> view, int pageSize, int cachedPages) {
+		this.view = view;
+		this.offset = view.isPage()?view.getPageFrom():0;
+		this.pageSize = pageSize;
+		this.cache = new LinkedHashMap<Integer,List<T>>(16,0.75f,true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer,List<T>> eldest) {
+				return size()>cachedPages;
+			}
+		};
+
+		loader.execute(()->{
+			long n = view.size();
+			Platform.runLater(()->setSize((int) Math.min(Integer.MAX_VALUE, n)));
+			if (disposed) return;
+			long t = view.isPage()?view.nopage().size():n;
+			Platform.runLater(()->total.set(t));
+		});
+	}
+
+	/**
+	 * The number of rows of the view without paging; -1 until it is known.
+	 * @return
+	 */
+	public ReadOnlyLongProperty totalProperty() {
+		return total.getReadOnlyProperty();
+	}
+
+	public long getTotal() {
+		return total.get();
+	}
+
+	private void setSize(int n) {
+		if (disposed || n<=0) return;
+		beginChange();
+		size = n;
+		nextAdd(0, n);
+		endChange();
+	}
+
+	@Override
+	public T get(int index) {
+		if (index<0 || index>=size) throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+		int page = index/pageSize;
+		List<T> rows = cache.get(page);
+		if (rows==null) {
+			request(page);
+			return null;
+		}
+		int i = index-page*pageSize;
+		return i<rows.size()?rows.get(i):null;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns whether the row is loaded (i.e. {@link #get(int)} does not return null for this index)
+	 * @param index
+	 * @return
+	 */
+	public boolean isLoaded(int index) {
+		return cache.containsKey(index/pageSize);
+	}
+
+	private void request(int page) {
+		if (disposed || !loading.add(page)) return;
+		long from = offset+(long)page*pageSize;
+		long to = Math.min(offset+size, from+pageSize);
+		loader.execute(()->{
+			if (disposed) return;
+			List<T> rows;
+			try {
+				rows = view.page(from, to, pageSize).iterate().toList();
+			} catch (RuntimeException e) {
+				Tables.log.log(Level.SEVERE, "Could not load rows "+from+"-"+to, e);
+				rows = Collections.emptyList();
+			}
+			List<T> loaded = rows;
+			Platform.runLater(()->pageLoaded(page, loaded));
+		});
+	}
+
+	private void pageLoaded(int page, List<T> rows) {
+		loading.remove(page);
+		if (disposed) return;
+		cache.put(page, rows);
+
+		int from = page*pageSize;
+		int to = Math.min(size, from+pageSize);
+		if (from>=to) return;
+		beginChange();
+		nextReplace(from, to, Collections.nCopies(to-from, (T)null));
+		endChange();
+	}
+
+	/**
+	 * Stops loading; the list must not be used anymore afterwards.
+	 */
+	public void dispose() {
+		disposed = true;
+		cache.clear();
+	}
+
+}
@@ -20,8 +20,6 @@ package gedi.oml.remote.Pipeline;
 
 import gedi.remote.Protocol;
 import io.netty.channel.ChannelPipeline;
-import io.netty.handler.codec.compression.ZlibCodecFactory;
-import io.netty.handler.codec.compression.ZlibWrapper;
 
 public class TrackProtocol implements Protocol {
 
@@ -34,8 +32,7 @@ public class TrackProtocol implements Protocol {
 
 	@Override
 	public void setCodecs(ChannelPipeline pipeline) {
-		pipeline.addLast(ZlibCodecFactory.newZlibEncoder(ZlibWrapper.GZIP));
-		pipeline.addLast(ZlibCodecFactory.newZlibDecoder(ZlibWrapper.GZIP));
+		addLz4Codecs(pipeline);
 		addDefaultCodecs(pipeline);
 	}
 
@@ -106,6 +106,8 @@ public class TracksServer extends ChannelInboundHandlerAdapter {
 					// pipeline oml
 					Pipeline pipeline = new OmlNodeExecutor().execute(new OmlReader().parse((String)msg));
 					log.log(Level.INFO, pipeline.getPetriNet().getTransitions().size()+" transitions found!");
+					if (dataManager!=null)
+						dataManager.dispose();
 					dataManager = new TracksDataManager(pipeline.getPetriNet());
 					for (Sender sender : pipeline.getObjects(Sender.class)) {
 						sender.setChannelHandlerContext(ctx);
@@ -25,8 +25,11 @@ import gedi.core.region.ImmutableReferenceGenomicRegion;
 import gedi.core.region.MutableReferenceGenomicRegion;
 import gedi.util.FileUtils;
 import gedi.util.StringUtils;
+import gedi.util.datastructure.tree.AhoCorasickAutomaton;
 import gedi.util.datastructure.tree.Trie;
+import gedi.util.datastructure.tree.Trie.AhoCorasickResult;
 import gedi.util.functions.EI;
+import gedi.util.functions.ExtendedIterator;
 import gedi.util.io.text.HeaderLine;
 import gedi.util.io.text.LineOrientedFile;
 import gedi.util.io.text.fasta.DefaultFastaHeaderParser;
@@ -34,13 +37,13 @@ import gedi.util.io.text.fasta.FastaEntry;
 import gedi.util.io.text.fasta.FastaFile;
 import gedi.util.io.text.fasta.FastaHeaderParser;
 import gedi.util.mutable.MutableMonad;
+import gedi.util.mutable.MutablePair;
 import gedi.util.parsing.ReferenceGenomicRegionParser;
 import gedi.util.userInteraction.progress.ConsoleProgress;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
-import java.util.Iterator;
 
 public class FindPeptides {
 
@@ -76,23 +79,26 @@ public class FindPeptides {
 		pro.init();
 		FastaHeaderParser parser = new DefaultFastaHeaderParser(' ');
 		
+		AhoCorasickAutomaton<HitList> automaton = peptides.compileAhoCorasick();
+		int threads = Runtime.getRuntime().availableProcessors();
+		
 		for (int i=off; i<args.length; i++) {
 			
-			
-			Iterator<FastaEntry> it = new FastaFile(args[i]).entryIterator(true);
-			while (it.hasNext()) {
-				FastaEntry fe = it.next();
+			String file = FileUtils.getNameWithoutExtension(args[i]);
+			// I and L cannot be distinguished; the converted sequence is computed once per entry
+			ExtendedIterator<MutablePair<FastaEntry,String>> entries = new FastaFile(args[i]).entryIterator(false).map(fe->new MutablePair<FastaEntry,String>(fe,fe.getSequence().replace('I', 'L')));
+			automaton.scan(entries, p->p.Item2, threads).forEachRemaining(hits->{
+				FastaEntry fe = hits.Item1.Item1;
+				String seq = hits.Item1.Item2;
 				
-				pro.setDescriptionf("Searching for hits in %s - %s",FileUtils.getNameWithoutExtension(args[i]),parser.getId(fe.getHeader()));
+				pro.setDescriptionf("Searching for hits in %s - %s",file,parser.getId(fe.getHeader()));
 					
 				String loc = findLoc(fe, parser, rparser);
 				MutableReferenceGenomicRegion refe = rparser.apply(loc);
 				
-				String seq = fe.getSequence().replace('I', 'L');
-				
 				boolean isFirstToM = fe.getHeader().substring(1).startsWith("RPm");
 				
-				peptides.iterateAhoCorasick(seq, true).forEachRemaining(res->{
+				for (AhoCorasickResult<HitList> res : hits.Item2) {
 					int start = res.getStart();
 					int end = start+res.getLength();
 					
@@ -126,11 +132,9 @@ public class FindPeptides {
 						res.getValue().add(new ImmutableReferenceGenomicRegion<String>(ref, reg, type));
 					
 					pro.incrementProgress();
-				});
-				
-				
-			}
+				}
 				
+			});
 				
 			
 		}
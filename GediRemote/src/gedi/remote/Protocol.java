@@ -21,6 +21,8 @@ package gedi.remote;
 import gedi.remote.codec.AsciiEncoder;
 import gedi.remote.codec.DefaultDecoder;
 import gedi.remote.codec.BinaryEncoder;
+import gedi.remote.codec.Lz4Decoder;
+import gedi.remote.codec.Lz4Encoder;
 import gedi.remote.codec.NumberEncoder;
 import io.netty.channel.ChannelPipeline;
 
@@ -38,4 +40,14 @@ public interface Protocol {
 		pipeline.addLast(new DefaultDecoder());
 	}
 	
+	/**
+	 * Compresses each message by LZ4; must be added before the default codecs. The codecs are not negotiated, i.e. both
+	 * ends of a connection have to use them.
+	 * @param pipeline
+	 */
+	default void addLz4Codecs(ChannelPipeline pipeline) {
+		pipeline.addLast(new Lz4Encoder());
+		pipeline.addLast(new Lz4Decoder());
+	}
+	
 }
@@ -18,22 +18,21 @@
 
 package gedi.remote.codec;
 
+import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import gedi.util.FileUtils;
-import gedi.util.io.randomaccess.BufferBinaryReaderWriter;
 import gedi.util.io.randomaccess.serialization.BinarySerializable;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 
 /**
- * Encoded as follows:
- * int (total size in bytes)
- * int (length of classname)
- * byte[] (classname)
- * buffer data
+ * Serializes directly into the (pooled) output buffer. The first message of a class sends the class name (and thereby
+ * defines the next class id for this connection, see {@link DefaultDecoder}), all further messages of this class only its id.
+ * 
+ * Frame: size (int), class name length (int) and class name or -id-1 (int), payload
+ * 
  * @author erhard
  *
  */
@@ -42,6 +41,8 @@ public class BinaryEncoder extends MessageToByteEncoder<BinarySerializable> {
 	
 	private static final Logger log = Logger.getLogger( BinaryEncoder.class.getName() );
 
+	private HashMap<Class<?>,Integer> classIds = new HashMap<Class<?>, Integer>();
+	private ByteBufBinaryWriter writer = new ByteBufBinaryWriter();
 	
 	public BinaryEncoder() {
 		super(BinarySerializable.class);
@@ -51,13 +52,25 @@ public class BinaryEncoder extends MessageToByteEncoder<BinarySerializable> {
 	protected void encode(ChannelHandlerContext ctx, BinarySerializable msg,
 			ByteBuf out) throws Exception {
 		
-		BufferBinaryReaderWriter buff = new BufferBinaryReaderWriter(msg);
-		String n = msg.getClass().getName();
-		out.writeInt(Integer.BYTES+n.length()+buff.getBuffer().limit());
-		out.writeInt(n.length());
-		for (int i=0; i<n.length(); i++)
-			out.writeByte(n.charAt(i));
-		out.writeBytes(buff.getBuffer());
+		int start = out.writerIndex();
+		out.writeInt(0);
+		
+		// the id of a new class is only registered once the message has been serialized, as the peer does not know the class otherwise
+		Integer id = classIds.get(msg.getClass());
+		boolean newClass = id==null;
+		if (newClass) {
+			id = classIds.size();
+			String n = msg.getClass().getName();
+			out.writeInt(n.length());
+			for (int i=0; i<n.length(); i++)
+				out.writeByte(n.charAt(i));
+		} else 
+			out.writeInt(-id-1);
+		
+		msg.serialize(writer.set(out));
+		out.setInt(start, out.writerIndex()-start-Integer.BYTES);
+		if (newClass)
+			classIds.put(msg.getClass(), id);
 	}
 	
 	
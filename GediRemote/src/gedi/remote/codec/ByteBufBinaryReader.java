@@ -0,0 +1,201 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.remote.codec;
+
+import gedi.app.extension.ExtensionContext;
+import gedi.util.io.randomaccess.BinaryReader;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Reads directly from a netty {@link ByteBuf} (e.g. a slice of the received data); positions are relative to the reader index
+ * of the buffer when it was set.
+ * 
+ * @author erhard
+ *
+ */
+public class ByteBufBinaryReader implements BinaryReader {
+
+	private ByteBuf buffer;
+	private int offset;
+	private ExtensionContext context;
+	
+	public ByteBufBinaryReader() {
+	}
+	
+	public ByteBufBinaryReader(ByteBuf buffer) {
+		set(buffer);
+	}
+	
+	public ByteBufBinaryReader set(ByteBuf buffer) {
+		this.buffer = buffer;
+		this.offset = buffer.readerIndex();
+		return this;
+	}
+	
+	public ByteBuf getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public ExtensionContext getContext() {
+		if (context==null) context = new ExtensionContext();
+		return context;
+	}
+
+	@Override
+	public long position() {
+		return buffer.readerIndex()-offset;
+	}
+
+	@Override
+	public long position(long position) {
+		buffer.readerIndex((int) (offset+position));
+		return position;
+	}
+
+	@Override
+	public short getShort() {
+		return buffer.readShort();
+	}
+
+	@Override
+	public long getLong() {
+		return buffer.readLong();
+	}
+
+	@Override
+	public int getInt() {
+		return buffer.readInt();
+	}
+
+	@Override
+	public float getFloat() {
+		return buffer.readFloat();
+	}
+
+	@Override
+	public double getDouble() {
+		return buffer.readDouble();
+	}
+
+	@Override
+	public String getString() {
+		return getString(new StringBuilder()).toString();
+	}
+
+	@Override
+	public StringBuilder getString(StringBuilder re) {
+		int l = getInt();
+		for (int i=0; i<l; i++)
+			re.append(getAsciiChar());
+		return re;
+	}
+
+	@Override
+	public char getAsciiChar() {
+		return (char) buffer.readUnsignedByte();
+	}
+
+	@Override
+	public char getChar() {
+		return buffer.readChar();
+	}
+
+	@Override
+	public int getByte() {
+		return buffer.readUnsignedByte();
+	}
+
+	@Override
+	public byte get() {
+		return buffer.readByte();
+	}
+
+	@Override
+	public ByteBufBinaryReader get(byte[] dst, int offset, int length) {
+		buffer.readBytes(dst, offset, length);
+		return this;
+	}
+
+	@Override
+	public short getShort(long position) {
+		return buffer.getShort((int) (offset+position));
+	}
+
+	@Override
+	public long getLong(long position) {
+		return buffer.getLong((int) (offset+position));
+	}
+
+	@Override
+	public int getInt(long position) {
+		return buffer.getInt((int) (offset+position));
+	}
+
+	@Override
+	public float getFloat(long position) {
+		return buffer.getFloat((int) (offset+position));
+	}
+
+	@Override
+	public double getDouble(long position) {
+		return buffer.getDouble((int) (offset+position));
+	}
+
+	@Override
+	public String getString(long position) {
+		return getString(position,new StringBuilder()).toString();
+	}
+
+	@Override
+	public StringBuilder getString(long position, StringBuilder re) {
+		int l = getInt(position);
+		position+=Integer.BYTES;
+		for (int i=0; i<l; i++)
+			re.append(getAsciiChar(position+i));
+		return re;
+	}
+
+	@Override
+	public char getAsciiChar(long position) {
+		return (char) buffer.getUnsignedByte((int) (offset+position));
+	}
+
+	@Override
+	public char getChar(long position) {
+		return buffer.getChar((int) (offset+position));
+	}
+
+	@Override
+	public int getByte(long position) {
+		return buffer.getUnsignedByte((int) (offset+position));
+	}
+
+	@Override
+	public byte get(long position) {
+		return buffer.getByte((int) (offset+position));
+	}
+
+	@Override
+	public ByteBufBinaryReader get(long position, byte[] dst, int offset, int length) {
+		buffer.getBytes((int) (this.offset+position), dst, offset, length);
+		return this;
+	}
+
+}
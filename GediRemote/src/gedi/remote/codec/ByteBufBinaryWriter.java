@@ -0,0 +1,243 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.remote.codec;
+
+import gedi.app.extension.ExtensionContext;
+import gedi.util.io.randomaccess.BinaryWriter;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Writes directly into a netty {@link ByteBuf} (which grows as needed); positions are relative to the writer index
+ * of the buffer when it was set.
+ * 
+ * @author erhard
+ *
+ */
+public class ByteBufBinaryWriter implements BinaryWriter {
+
+	private ByteBuf buffer;
+	private int offset;
+	private ExtensionContext context;
+	
+	public ByteBufBinaryWriter() {
+	}
+	
+	public ByteBufBinaryWriter(ByteBuf buffer) {
+		set(buffer);
+	}
+	
+	public ByteBufBinaryWriter set(ByteBuf buffer) {
+		this.buffer = buffer;
+		this.offset = buffer.writerIndex();
+		return this;
+	}
+	
+	public ByteBuf getBuffer() {
+		return buffer;
+	}
+
+	@Override
+	public ExtensionContext getContext() {
+		if (context==null) context = new ExtensionContext();
+		return context;
+	}
+	
+	private int index(long position, int len) {
+		int index = (int) (offset+position);
+		if (index+len>buffer.writerIndex())
+			buffer.ensureWritable(index+len-buffer.writerIndex());
+		return index;
+	}
+
+	@Override
+	public long position() {
+		return buffer.writerIndex()-offset;
+	}
+
+	@Override
+	public long position(long position) {
+		buffer.writerIndex(index(position, 0));
+		return position;
+	}
+
+	@Override
+	public BinaryWriter putShort(short data) {
+		buffer.writeShort(data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putLong(long data) {
+		buffer.writeLong(data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putInt(int data) {
+		buffer.writeInt(data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putFloat(float data) {
+		buffer.writeFloat(data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putDouble(double data) {
+		buffer.writeDouble(data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putString(CharSequence line) {
+		buffer.writeInt(line.length());
+		return putAsciiChars(line);
+	}
+
+	@Override
+	public BinaryWriter putAsciiChars(CharSequence data) {
+		buffer.ensureWritable(data.length());
+		for (int i=0; i<data.length(); i++)
+			buffer.writeByte(data.charAt(i));
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putChars(CharSequence data) {
+		buffer.ensureWritable(data.length()*Character.BYTES);
+		for (int i=0; i<data.length(); i++)
+			buffer.writeChar(data.charAt(i));
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putAsciiChar(char data) {
+		buffer.writeByte(data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putChar(char data) {
+		buffer.writeChar(data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putByte(int data) {
+		buffer.writeByte(data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter put(byte data) {
+		buffer.writeByte(data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter put(byte[] dst, int offset, int length) {
+		buffer.writeBytes(dst, offset, length);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putShort(long position, short data) {
+		buffer.setShort(index(position, Short.BYTES), data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putLong(long position, long data) {
+		buffer.setLong(index(position, Long.BYTES), data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putInt(long position, int data) {
+		buffer.setInt(index(position, Integer.BYTES), data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putFloat(long position, float data) {
+		buffer.setFloat(index(position, Float.BYTES), data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putDouble(long position, double data) {
+		buffer.setDouble(index(position, Double.BYTES), data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putString(long position, CharSequence line) {
+		putInt(position, line.length());
+		return putAsciiChars(position+Integer.BYTES, line);
+	}
+
+	@Override
+	public BinaryWriter putAsciiChars(long position, CharSequence data) {
+		int index = index(position, data.length());
+		for (int i=0; i<data.length(); i++)
+			buffer.setByte(index+i, data.charAt(i));
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putChars(long position, CharSequence data) {
+		int index = index(position, data.length()*Character.BYTES);
+		for (int i=0; i<data.length(); i++)
+			buffer.setChar(index+i*Character.BYTES, data.charAt(i));
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putAsciiChar(long position, char data) {
+		buffer.setByte(index(position, 1), data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putChar(long position, char data) {
+		buffer.setChar(index(position, Character.BYTES), data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter putByte(long position, int data) {
+		buffer.setByte(index(position, 1), data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter put(long position, byte data) {
+		buffer.setByte(index(position, 1), data);
+		return this;
+	}
+
+	@Override
+	public BinaryWriter put(long position, byte[] dst, int offset, int length) {
+		buffer.setBytes(index(position, length), dst, offset, length);
+		return this;
+	}
+
+}
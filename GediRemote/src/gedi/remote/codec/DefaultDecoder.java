@@ -18,18 +18,17 @@
 
 package gedi.remote.codec;
 
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import gedi.app.classpath.ClassPathCache;
-import gedi.util.FileUtils;
-import gedi.util.io.randomaccess.BufferBinaryReaderWriter;
 import gedi.util.io.randomaccess.serialization.BinarySerializable;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
-import io.netty.handler.codec.MessageToByteEncoder;
 
 
 /**
@@ -42,6 +41,12 @@ public class DefaultDecoder extends ByteToMessageDecoder {
 	
 	private static final Logger log = Logger.getLogger( DefaultDecoder.class.getName() );
 
+	/**
+	 * Class ids of this connection (in the order of their first occurrence, see {@link BinaryEncoder}); null for classes that cannot be instantiated
+	 */
+	private ArrayList<Constructor<? extends BinarySerializable>> classes = new ArrayList<Constructor<? extends BinarySerializable>>();
+	private ByteBufBinaryReader reader = new ByteBufBinaryReader();
+	
 	@Override
 	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
 			throws Exception {
@@ -64,7 +69,20 @@ public class DefaultDecoder extends ByteToMessageDecoder {
 		}
 		
 		// everything has arrived, decode
-		char[] classname = new char[in.readInt()];
+		int header = in.readInt();
+		if (header<0) {
+			int id = -header-1;
+			if (id>=classes.size() || classes.get(id)==null) {
+				log.log(Level.SEVERE, "Unknown class id "+id+" received, closing channel!");
+				in.skipBytes(size-Integer.BYTES);
+				ctx.close();
+				return;
+			}
+			decode(classes.get(id), in.readSlice(size-Integer.BYTES), out);
+			return;
+		}
+		
+		char[] classname = new char[header];
 		for (int i=0; i<classname.length; i++)
 			classname[i] = (char) (in.readByte() & 255);
 		
@@ -101,22 +119,31 @@ public class DefaultDecoder extends ByteToMessageDecoder {
 			
 		} else {
 			
-			if (!ClassPathCache.getInstance().existsClass(clsName)) {
-				in.resetReaderIndex();
-				return;
+			// the class defines the next id in any case, otherwise all further ids of this connection would be shifted
+			Constructor<? extends BinarySerializable> cons = null;
+			try {
+				if (ClassPathCache.getInstance().existsClass(clsName)) {
+					cons = Class.forName(clsName).asSubclass(BinarySerializable.class).getDeclaredConstructor();
+					cons.setAccessible(true);
+				}
+			} catch (Exception e) {
+				log.log(Level.SEVERE, "Cannot instantiate "+clsName+"!", e);
+				cons = null;
 			}
+			classes.add(cons);
 			
-			Class<?> cls = Class.forName(clsName);
-			BinarySerializable re = (BinarySerializable) cls.newInstance();
-			
-			BufferBinaryReaderWriter buff = new BufferBinaryReaderWriter(size-Integer.BYTES-classname.length);
-			in.readBytes(buff.getBuffer());
-			buff.getBuffer().flip();
-			
-			re.deserialize(buff);
-			
-			out.add(re);
+			ByteBuf payload = in.readSlice(size-Integer.BYTES-classname.length);
+			if (cons==null) 
+				log.log(Level.SEVERE, "Unknown class "+clsName+" received, message is skipped!");
+			else
+				decode(cons, payload, out);
 		}
 	}
 	
+	private void decode(Constructor<? extends BinarySerializable> cons, ByteBuf payload, List<Object> out) throws Exception {
+		BinarySerializable re = cons.newInstance();
+		re.deserialize(reader.set(payload));
+		out.add(re);
+	}
+	
 }
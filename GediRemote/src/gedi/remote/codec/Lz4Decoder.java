@@ -0,0 +1,80 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.remote.codec;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Decodes the frames of the {@link Lz4Encoder}
+ * 
+ * @author erhard
+ *
+ */
+public class Lz4Decoder extends ByteToMessageDecoder {
+
+	private static final Logger log = Logger.getLogger( Lz4Decoder.class.getName() );
+
+	private LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+	
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+			throws Exception {
+		log.log(Level.SEVERE, "Lz4Decoder caught exception!", cause);
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in,
+			List<Object> out) throws Exception {
+		
+		if (in.readableBytes()<2*Integer.BYTES)
+			return;
+		
+		in.markReaderIndex();
+		int clen = in.readInt();
+		int len = in.readInt();
+		
+		if (in.readableBytes()<clen) {
+			in.resetReaderIndex();
+			return;
+		}
+		
+		if (clen==len) {
+			out.add(in.readSlice(len).retain());
+			return;
+		}
+		
+		ByteBuf re = ctx.alloc().buffer(len);
+		ByteBuffer src = in.nioBuffer(in.readerIndex(), clen);
+		ByteBuffer dest = re.nioBuffer(0, len);
+		decompressor.decompress(src, src.position(), dest, dest.position(), len);
+		re.writerIndex(len);
+		in.skipBytes(clen);
+		out.add(re);
+	}
+	
+}
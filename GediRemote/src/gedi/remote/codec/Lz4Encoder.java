@@ -0,0 +1,81 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gedi.remote.codec;
+
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+/**
+ * Compresses each written buffer (i.e. each message of the encoders) into its own LZ4 block, such that nothing is
+ * held back until the next flush (as opposed to netty's Lz4FrameEncoder). Small or incompressible messages are sent as they are.
+ * 
+ * Frame: stored length (int), original length (int), data (stored uncompressed iff both lengths are equal)
+ * 
+ * @author erhard
+ *
+ */
+public class Lz4Encoder extends MessageToByteEncoder<ByteBuf> {
+
+	private static final Logger log = Logger.getLogger( Lz4Encoder.class.getName() );
+
+	private static final int MIN_COMPRESS = 256;
+	
+	private LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+	
+	public Lz4Encoder() {
+		super(ByteBuf.class);
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, ByteBuf msg,
+			ByteBuf out) throws Exception {
+		int len = msg.readableBytes();
+		if (len>=MIN_COMPRESS) {
+			int max = compressor.maxCompressedLength(len);
+			out.ensureWritable(2*Integer.BYTES+max);
+			int start = out.writerIndex();
+			ByteBuffer src = msg.nioBuffer(msg.readerIndex(), len);
+			ByteBuffer dest = out.nioBuffer(start+2*Integer.BYTES, max);
+			int clen = compressor.compress(src, src.position(), len, dest, dest.position(), max);
+			if (clen<len) {
+				out.writeInt(clen);
+				out.writeInt(len);
+				out.writerIndex(out.writerIndex()+clen);
+				return;
+			}
+		}
+		out.writeInt(len);
+		out.writeInt(len);
+		out.writeBytes(msg, msg.readerIndex(), len);
+	}
+	
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+			throws Exception {
+		log.log(Level.SEVERE, "Lz4Encoder caught exception!", cause);
+	}
+	
+}
@@ -30,7 +30,6 @@ import gedi.riboseq.utils.RiboUtils;
 import gedi.util.ArrayUtils;
 import gedi.util.datastructure.collections.doublecollections.DoubleArrayList;
 import gedi.util.datastructure.collections.intcollections.IntArrayList;
-import gedi.util.mutable.MutableDouble;
 
 import java.util.Arrays;
 import java.util.Collection;
@@ -38,28 +37,57 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Locale;
+import java.util.Map.Entry;
 import java.util.Set;
 
 
 
 /**
- * sparse reads x codons matrix, each entry can hold two doubles
+ * sparse reads x codons matrix, each entry can hold three doubles
  * slot 0 contains normalized probabilities (such that the sum over all reads for one codon is 1)
- * also contains a vector of observed count per read 
- * and a vector for the codon activities (initially all 1) 
+ * also contains a vector of observed count per read
+ * and a vector for the codon activities (initially all 1)
+ *
+ * Reads and codons are numbered in the order they are added. When all reads are added ({@link #finishReads()}), the
+ * entries are compiled into compressed sparse row format sorted by codon (i.e. the entries of codon c are
+ * codonPtr[c]..codonPtr[c+1]-1, and each slot is a single array over all entries) and compressed sparse column format
+ * (i.e. the entries of read r are readEntry[readPtr[r]..readPtr[r+1]-1]).
+ *
  * @author erhard
  *
  */
 public class ReadsXCodonMatrix {
 
-	
-	private HashMap<Codon,HashMap<Read,double[]>> M = new HashMap<Codon, HashMap<Read,double[]>>();
-	private HashMap<Read,HashMap<Codon,double[]>> I = new HashMap<Read, HashMap<Codon,double[]>>();
+
+	// only used while adding reads
 	private HashMap<Read,Read> readProto = new HashMap<Read,Read>();
-	private HashMap<Codon,Codon> codonProto = new HashMap<Codon,Codon>();
-	
+	private IntArrayList addedRead = new IntArrayList();
+	private IntArrayList addedCodon = new IntArrayList();
+	private DoubleArrayList addedProb = new DoubleArrayList();
+
+	// the index of each codon; its iteration order is the same as for the codon map used before
+	private HashMap<Codon,Integer> codonIndex = new HashMap<Codon,Integer>();
+	private Codon[] codons;
+
+	private GenomicRegion[] readRegion;
+	private boolean[] readLeadingMismatch;
+	private double[] readTotalCount;
+	private double[][] readCount;
+
+	private int[] codonPtr;
+	private int[] entryCodon;
+	private int[] entryRead;
+	private int[] readPtr;
+	private int[] readEntry;
+	private double[][] slots;
+
+	// for marking codons
+	private int[] mark;
+	private int markStamp = 0;
+	private double[] ntotal;
+
 	private double total = 0;
-	
+
 	// lm,len,vector of positions
 	private int[][][] probableCodonPositionsPerLength;
 	private double[][][] probableCodonPositionProbabilitiesPerLength;
@@ -129,26 +157,35 @@ public class ReadsXCodonMatrix {
 	
 	@Override
 	public String toString() {
+		compile();
 		StringBuilder sb = new StringBuilder();
-		Codon[] cod = codonProto.keySet().toArray(new Codon[0]);
+		Codon[] cod = codonIndex.keySet().toArray(new Codon[0]);
 		Arrays.sort(cod);
 		for (Codon c : cod) {
 			sb.append(c.toRegionString()+":");
-			Read[] rea = M.get(c).keySet().toArray(new Read[0]);
-			Arrays.sort(rea);
-			for (Read r : rea) {
-				sb.append(" ").append(r.region.toRegionString()).append("->").append(String.format(Locale.US, "%.2f|%.1f",M.get(c).get(r)[0],M.get(c).get(r)[1]));
+			int ci = codonIndex.get(c);
+			Integer[] ent = new Integer[codonPtr[ci+1]-codonPtr[ci]];
+			for (int i=0; i<ent.length; i++)
+				ent[i] = codonPtr[ci]+i;
+			Arrays.sort(ent, (a,b)->{
+				int re = readRegion[entryRead[a]].compareTo(readRegion[entryRead[b]]);
+				if (re==0) re = Boolean.compare(readLeadingMismatch[entryRead[a]], readLeadingMismatch[entryRead[b]]);
+				return re;
+			});
+			for (int e : ent) {
+				sb.append(" ").append(readRegion[entryRead[e]].toRegionString()).append("->").append(String.format(Locale.US, "%.2f|%.1f",slots[0][e],slots[1][e]));
 			}
 			sb.append("\n");
 		}
 		return sb.toString();
 	}
-	
+
 	
 	boolean plusStrand;
 	
 	public void addRead(ReferenceGenomicRegion<AlignedReadsData> rgr) {
-		
+		if (readProto==null) throw new IllegalStateException("Cannot add reads after finishReads()!");
+
 		if (!model.isValidReadLength(rgr.getRegion().getTotalLength())) return;
 		
 		plusStrand = rgr.getReference().getStrand()==Strand.Plus;
@@ -161,10 +198,11 @@ public class ReadsXCodonMatrix {
 				continue;
 			
 			Read r = readProto.get(pr);
-			if (r==null) { 
+			if (r==null) {
+				pr.index = readProto.size();
 				readProto.put(pr, pr);
 				r=pr;
-				
+
 				int lm = r.leadingMismatch?1:0;
 				int l = r.region.getTotalLength();
 				int[] pos = probableCodonPositionsPerLength[lm][l];
@@ -174,11 +212,11 @@ public class ReadsXCodonMatrix {
 					ArrayGenomicRegion cp = plusStrand?
 							new ArrayGenomicRegion(pos[i],pos[i]+3)
 							:new ArrayGenomicRegion(r.region.getTotalLength()-pos[i]-3,r.region.getTotalLength()-pos[i]);
-					Codon c = codonProto.computeIfAbsent(new Codon(r.region.map(cp),1), a->a);
+					int c = codonIndex.computeIfAbsent(new Codon(r.region.map(cp),1), a->codonIndex.size());
 
-					double[] s = {probs[i],0,0};
-					M.computeIfAbsent(c, a->new HashMap<Read, double[]>()).put(r,s);
-					I.computeIfAbsent(r, a->new HashMap<Codon, double[]>()).put(c,s);
+					addedRead.add(r.index);
+					addedCodon.add(c);
+					addedProb.add(probs[i]);
 				}
 				
 			}
@@ -209,9 +247,10 @@ public class ReadsXCodonMatrix {
 	}
 
 	/**
-	 * Normalize first slot for each codon
+	 * Compiles the sparse matrix; no reads can be added afterwards
 	 */
 	public void finishReads() {
+		compile();
 //		for (Codon c : codonProto.keySet()) {
 //			codonLL.put(c, new MutableDouble(Double.NaN));
 //		}
@@ -223,94 +262,164 @@ public class ReadsXCodonMatrix {
 //			for (double[] s : M.get(c).values())
 //				s[0]/=sum;
 //		}
-		
+
 	}
-	
+
+	private void compile() {
+		if (readProto==null) return;
+
+		int nr = readProto.size();
+		readRegion = new GenomicRegion[nr];
+		readLeadingMismatch = new boolean[nr];
+		readTotalCount = new double[nr];
+		readCount = new double[nr][];
+		for (Read r : readProto.keySet()) {
+			readRegion[r.index] = r.region;
+			readLeadingMismatch[r.index] = r.leadingMismatch;
+			readTotalCount[r.index] = r.totalCount;
+			readCount[r.index] = r.count;
+		}
+		readProto = null;
+
+		codons = new Codon[codonIndex.size()];
+		for (Entry<Codon,Integer> e : codonIndex.entrySet())
+			codons[e.getValue()] = e.getKey();
+
+		int nnz = addedRead.size();
+		codonPtr = new int[codons.length+1];
+		for (int i=0; i<nnz; i++)
+			codonPtr[addedCodon.getInt(i)+1]++;
+		for (int c=0; c<codons.length; c++)
+			codonPtr[c+1]+=codonPtr[c];
+
+		entryCodon = new int[nnz];
+		entryRead = new int[nnz];
+		slots = new double[3][nnz];
+		int[] fill = Arrays.copyOf(codonPtr, codons.length);
+		for (int i=0; i<nnz; i++) {
+			int e = fill[addedCodon.getInt(i)]++;
+			entryCodon[e] = addedCodon.getInt(i);
+			entryRead[e] = addedRead.getInt(i);
+			slots[0][e] = addedProb.getDouble(i);
+		}
+		addedRead = addedCodon = null;
+		addedProb = null;
+
+		buildReadIndex();
+	}
+
+	private void buildReadIndex() {
+		int nr = readTotalCount.length;
+		readPtr = new int[nr+1];
+		for (int e=0; e<entryRead.length; e++)
+			readPtr[entryRead[e]+1]++;
+		for (int r=0; r<nr; r++)
+			readPtr[r+1]+=readPtr[r];
+		readEntry = new int[entryRead.length];
+		int[] fill = Arrays.copyOf(readPtr, nr);
+		for (int e=0; e<entryRead.length; e++)
+			readEntry[fill[entryRead[e]]++] = e;
+
+		mark = new int[codons.length];
+		ntotal = new double[codons.length];
+		markStamp = 0;
+	}
+
+	private int nextMark() {
+		if (++markStamp==Integer.MAX_VALUE) {
+			Arrays.fill(mark, 0);
+			markStamp = 1;
+		}
+		return markStamp;
+	}
+
 	/**
-	 * Checks whether all reads have the same number of conditions (and returns this number); returns -1 otherwise;
+	 * Checks whether all reads have the same number of conditions(and returns this number); returns -1 otherwise;
 	 * Returns -2, if no reads were added
 	 * @return
 	 */
 	public int checkConditions() {
+		compile();
 		int re = -2;
-		for (Read r : readProto.keySet()) {
+		for (double[] count : readCount) {
 			if (re==-2)
-				re = r.count.length;
-			else if (re>=0 && re!=r.count.length)
+				re = count.length;
+			else if (re>=0 && re!=count.length)
 				re = -1;
 		}
-		
+
 		if (re>=0)
-			for (Codon c : codonProto.keySet()) 
+			for (Codon c : codons)
 				c.activity = new double[re];
 		return re;
 	}
-	
-	
+
+
 	public void copySlots(int from, int to) {
-		for (Codon c : codonProto.keySet()) {
-			for (double[] s : M.get(c).values())
-				s[to] = s[from];
-		}
+		compile();
+		System.arraycopy(slots[from], 0, slots[to], 0, slots[from].length);
 	}
-	
-	
+
+
 	public void copySlotsCodons(Set<Codon> affected, int from, int to) {
+		compile();
 		for (Codon c : affected) {
-			for (double[] s : M.get(c).values())
-				s[to] = s[from];
+			int ci = codonIndex.get(c);
+			System.arraycopy(slots[from], codonPtr[ci], slots[to], codonPtr[ci], codonPtr[ci+1]-codonPtr[ci]);
 		}
 	}
-	
-	public void copySlotsReads(Set<Read> affected, int from, int to) {
-		for (Read r : affected) {
-			for (double[] s : I.get(r).values())
-				s[to] = s[from];
-		}
-	}
-	
-	public void copySlotsCodons(Read fromRead, int from, int to) {
-		for (Codon c : I.get(fromRead).keySet()) {
-			for (double[] s : M.get(c).values())
-				s[to] = s[from];
-		}
-	}
-	
+
+	/**
+	 * Copies the slot for all entries of all reads of the given codon
+	 * @param fromCodon
+	 * @param from
+	 * @param to
+	 */
 	public void copySlotsReads(Codon fromCodon, int from, int to) {
-		for (Read r : M.get(fromCodon).keySet()) {
-			for (double[] s : I.get(r).values())
-				s[to] = s[from];
+		compile();
+		int ci = codonIndex.get(fromCodon);
+		double[] f = slots[from];
+		double[] t = slots[to];
+		for (int e=codonPtr[ci]; e<codonPtr[ci+1]; e++) {
+			int r = entryRead[e];
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++)
+				t[readEntry[j]] = f[readEntry[j]];
 		}
 	}
-	
+
 
 	/**
 	 * multiply the current codon activity with the probs in slot 0 and store in slot 1
 	 */
 	public void computeExpectedReadsPerCodon() {
-		// for each codon: iterate over entries and multiply by codon activity 
-		for (Codon c : codonProto.keySet()) {
-			for (double[] s : M.get(c).values())
-				s[1] = s[0]*c.totalActivity;
+		compile();
+		// for each codon: iterate over entries and multiply by codon activity
+		double[] s0 = slots[0];
+		double[] s1 = slots[1];
+		for (int c=0; c<codons.length; c++) {
+			double a = codons[c].totalActivity;
+			for (int e=codonPtr[c]; e<codonPtr[c+1]; e++)
+				s1[e] = s0[e]*a;
 		}
 	}
-	
+
 	public double computeLogLikelihood() {
+		compile();
 		double re = 0;
-		for (Read r : I.keySet()) {
+		for (int r=0; r<readTotalCount.length; r++) {
 			re+=computeReadLogLikelihood(r);
 		}
 		return re;
 	}
-	private double computeReadLogLikelihood(Read r) {
+	private double computeReadLogLikelihood(int r) {
 		double re = 0;
-		HashMap<Codon, double[]> codons = I.get(r);
-		for (Codon c : codons.keySet()) {
-			re+=c.totalActivity*codons.get(c)[0];
+		for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+			int e = readEntry[j];
+			re+=codons[entryCodon[e]].totalActivity*slots[0][e];
 		}
-		return r.totalCount*Math.log(re);
+		return readTotalCount[r]*Math.log(re);
 	}
-	
+
 //	private HashMap<Codon,MutableDouble> codonLL = new HashMap<Codon, MutableDouble>();
 //	/**
 //	 * Recalculate only for given codons
@@ -355,83 +464,122 @@ public class ReadsXCodonMatrix {
 	
 	
 	public void removeZeroCodons() {
-		Iterator<Codon> it = codonProto.keySet().iterator();
+		compile();
+		int[] newIndex = new int[codons.length];
+		int nc = 0;
+		for (int c=0; c<codons.length; c++)
+			newIndex[c] = codons[c].totalActivity==0?-1:nc++;
+		if (nc==codons.length) return;
+
+		Iterator<Entry<Codon,Integer>> it = codonIndex.entrySet().iterator();
 		while (it.hasNext()) {
-			Codon c = it.next();
-			if (c.totalActivity==0) {
+			Entry<Codon,Integer> e = it.next();
+			int ni = newIndex[e.getValue()];
+			if (ni==-1)
 				it.remove();
-				for (Read r : M.remove(c).keySet()) 
-					I.get(r).remove(c);
-			}
+			else
+				e.setValue(ni);
 		}
+
+		int nnz = 0;
+		for (int c=0; c<codons.length; c++)
+			if (newIndex[c]>=0)
+				nnz+=codonPtr[c+1]-codonPtr[c];
+
+		Codon[] ncodons = new Codon[nc];
+		int[] ncodonPtr = new int[nc+1];
+		int[] nentryCodon = new int[nnz];
+		int[] nentryRead = new int[nnz];
+		double[][] nslots = new double[slots.length][nnz];
+		int n = 0;
+		for (int c=0; c<codons.length; c++) {
+			int ni = newIndex[c];
+			if (ni==-1) continue;
+			ncodons[ni] = codons[c];
+			int len = codonPtr[c+1]-codonPtr[c];
+			Arrays.fill(nentryCodon, n, n+len, ni);
+			System.arraycopy(entryRead, codonPtr[c], nentryRead, n, len);
+			for (int s=0; s<slots.length; s++)
+				System.arraycopy(slots[s], codonPtr[c], nslots[s], n, len);
+			n+=len;
+			ncodonPtr[ni+1] = n;
+		}
+		codons = ncodons;
+		codonPtr = ncodonPtr;
+		entryCodon = nentryCodon;
+		entryRead = nentryRead;
+		slots = nslots;
+		buildReadIndex();
 	}
 
 	public void resetCodons() {
-		Iterator<Codon> it = codonProto.keySet().iterator();
-		while (it.hasNext()) {
-			Codon c = it.next();
+		compile();
+		for (Codon c : codons)
 			c.totalActivity = 1;
-		}
 	}
 
 	
 	public HashSet<Codon> regularize(Codon codon) {
+		compile();
 		HashSet<Codon> re = new HashSet<Codon>();
 		re.add(codon);
-		
-		HashMap<Read, double[]> rs = M.get(codon);
-		for (Read r : rs.keySet()) {
-			double[] d = rs.get(r);
+
+		double[] s1 = slots[1];
+		int ci = codonIndex.get(codon);
+		for (int d=codonPtr[ci]; d<codonPtr[ci+1]; d++) {
+			int r = entryRead[d];
 			// try to redistribute d[1] to other codons
-			HashMap<Codon,double[]> cs = I.get(r);
 			double s = 0;
-			for (Codon c : cs.keySet()) {
-				re.add(c);
-				double[] d2 = cs.get(c);
-				if (d2!=d) 
-					s+=d2[1];
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				int d2 = readEntry[j];
+				re.add(codons[entryCodon[d2]]);
+				if (d2!=d)
+					s+=s1[d2];
 			}
 			if (s==0) return null;
-			for (Codon c : cs.keySet()) {
-				double[] d2 = cs.get(c);
-				if (d2!=d) 
-					d2[1]+=d[1]*d2[1]/s;
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				int d2 = readEntry[j];
+				if (d2!=d)
+					s1[d2]+=s1[d]*s1[d2]/s;
 			}
-			d[1] = 0;
+			s1[d] = 0;
 		}
 		return re;
 	}
-	
+
 	public double regularize2(Codon codon) {
-		
+		compile();
+
 		double deltaLL = 0;
-		HashMap<Read, double[]> rs = M.get(codon);
-		for (Read r : rs.keySet()) {
-			double[] d = rs.get(r);
-			if (d[1]==0) continue;
-			
+		double[] s0 = slots[0];
+		double[] s1 = slots[1];
+		int ci = codonIndex.get(codon);
+		for (int d=codonPtr[ci]; d<codonPtr[ci+1]; d++) {
+			if (s1[d]==0) continue;
+			int r = entryRead[d];
+
 			// try to redistribute d[1] to other codons
-			HashMap<Codon,double[]> cs = I.get(r);
 			double s = 0;
-			for (Codon c : cs.keySet()) {
-				double[] d2 = cs.get(c);
-				if (d2!=d) 
-					s+=d2[1];
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				int d2 = readEntry[j];
+				if (d2!=d)
+					s+=s1[d2];
 			}
 			if (s==0) return Double.NEGATIVE_INFINITY;
-			
+
 			double beforesum = 0;
 			double aftersum = 0;
-			for (Codon c : cs.keySet()) {
-				double[] d2 = cs.get(c);
-				beforesum+=c.totalActivity*d2[0];
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				int d2 = readEntry[j];
+				Codon c = codons[entryCodon[d2]];
+				beforesum+=c.totalActivity*s0[d2];
 				if (d2!=d) {
-					aftersum+=(c.totalActivity+d[1]*d2[1]/s)*d2[0];
-					d2[1]+=d[1]*d2[1]/s;
+					aftersum+=(c.totalActivity+s1[d]*s1[d2]/s)*s0[d2];
+					s1[d2]+=s1[d]*s1[d2]/s;
 				}
 			}
 			deltaLL+=Math.log(aftersum)-Math.log(beforesum);
-			d[1] = 0;
+			s1[d] = 0;
 		}
 //		int deltaparam = -rs.keySet().size(); 
 //		return 2*deltaparam-2*deltaLL; // == AIC_after - AIC_before, i.e. regularization is successful if this is negative
@@ -439,55 +587,61 @@ public class ReadsXCodonMatrix {
 	}
 
 	public double regularize3(Codon codon) {
-		
-		
+		compile();
+
 		double deltaLL = 0;
-		HashMap<Read, double[]> rs = M.get(codon);
-		HashMap<Codon,MutableDouble> ntotal = new HashMap<Codon, MutableDouble>();
-		
-		for (Read r : rs.keySet()) {
-			double[] d = rs.get(r);
-			if (d[1]==0) continue;
-			
+		double[] s0 = slots[0];
+		double[] s1 = slots[1];
+		int ci = codonIndex.get(codon);
+		// ntotal is only valid for marked codons
+		int stamp = nextMark();
+
+		for (int d=codonPtr[ci]; d<codonPtr[ci+1]; d++) {
+			if (s1[d]==0) continue;
+			int r = entryRead[d];
+
 			// try to redistribute d[1] to other codons
-			HashMap<Codon,double[]> cs = I.get(r);
 			double s = 0;
-			for (Codon c : cs.keySet()) {
-				double[] d2 = cs.get(c);
-				if (d2!=d) 
-					s+=d2[1];
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				int d2 = readEntry[j];
+				if (d2!=d)
+					s+=s1[d2];
 			}
-			if (s==0) 
+			if (s==0)
 				return Double.NEGATIVE_INFINITY; // cannot distribute read to another codon!
-			
+
 			double beforesum = 0;
-			for (Codon c : cs.keySet()) {
-				double[] d2 = cs.get(c);
-				beforesum+=c.totalActivity*d2[0];
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				int d2 = readEntry[j];
+				int c = entryCodon[d2];
+				beforesum+=codons[c].totalActivity*s0[d2];
 				if (d2!=d) {
-					ntotal.computeIfAbsent(c, x->new MutableDouble(c.totalActivity)).N+=d[1]*d2[1]/s;
-					d2[1]+=d[1]*d2[1]/s;
+					if (mark[c]!=stamp) {
+						mark[c] = stamp;
+						ntotal[c] = codons[c].totalActivity;
+					}
+					ntotal[c]+=s1[d]*s1[d2]/s;
+					s1[d2]+=s1[d]*s1[d2]/s;
 				}
 			}//JN555585:112387-112922
-			deltaLL+=r.totalCount*(-Math.log(beforesum));
+			deltaLL+=readTotalCount[r]*(-Math.log(beforesum));
 		}
-		for (Read r : rs.keySet()) {
-			double[] d = rs.get(r);
-			if (d[1]==0) continue;
-			
-			HashMap<Codon,double[]> cs = I.get(r);
+		for (int d=codonPtr[ci]; d<codonPtr[ci+1]; d++) {
+			if (s1[d]==0) continue;
+			int r = entryRead[d];
+
 			double aftersum = 0;
-			for (Codon c : cs.keySet()) {
-				double[] d2 = cs.get(c);
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				int d2 = readEntry[j];
 				if (d2!=d) {
-					aftersum+=ntotal.get(c).N*d2[0];
+					aftersum+=ntotal[entryCodon[d2]]*s0[d2];
 				}
 			}
-			deltaLL+=r.totalCount*(Math.log(aftersum));
+			deltaLL+=readTotalCount[r]*(Math.log(aftersum));
 
-			d[1] = 0;
+			s1[d] = 0;
 		}
-		
+
 //		double deltaparam = -total; 
 //		return 2*deltaparam-2*deltaLL; // == AIC_after - AIC_before, i.e. regularization is successful if this is negative
 		return deltaLL;//codon.totalActivity;
@@ -500,19 +654,23 @@ public class ReadsXCodonMatrix {
 	
 	
 	public double computeGoodnessOfFit(Collection<Codon> codons) {
+		compile();
 		double[] obs = new double[maxHash()];
-		
+
 		for (Codon c : codons) {
-			if (M.containsKey(c))
-				for (Read r : M.get(c).keySet()) {
-					int lm = r.leadingMismatch?1:0;
-					int l = r.region.getTotalLength();
-					int p = plusStrand?r.region.induce(c.getStart()):(r.region.getTotalLength()-1-r.region.induce(c.getStop()));
+			Integer ci = codonIndex.get(c);
+			if (ci!=null)
+				for (int e=codonPtr[ci]; e<codonPtr[ci+1]; e++) {
+					int r = entryRead[e];
+					GenomicRegion region = readRegion[r];
+					int lm = readLeadingMismatch[r]?1:0;
+					int l = region.getTotalLength();
+					int p = plusStrand?region.induce(c.getStart()):(region.getTotalLength()-1-region.induce(c.getStop()));
 					int hash = computeHash(lm, l, p);
-					obs[hash]+=M.get(c).get(r)[1];
+					obs[hash]+=slots[1][e];
 				}
 		}
-		
+
 		double corr = ArrayUtils.sum(obs)/ArrayUtils.sum(posteriorHashed);
 		double ss = 0;
 		for (int i=0; i<obs.length; i++) {
@@ -529,12 +687,14 @@ public class ReadsXCodonMatrix {
 	public void computeGoodnessOfFit() {
 		computePriorReadProbabilities();
 		computeExpectedCodonPerRead();
-		for (Codon c : codonProto.keySet()) {
+		double[] s0 = slots[0];
+		double[] s1 = slots[1];
+		for (int ci=0; ci<codons.length; ci++) {
 			double ps = 0; // sum of propensities
 			double cs = 0; // sum of expected counts
-			for (double[] r : M.get(c).values()) {
-				ps+=r[0];
-				cs+=r[1];
+			for (int e=codonPtr[ci]; e<codonPtr[ci+1]; e++) {
+				ps+=s0[e];
+				cs+=s1[e];
 			}
 			if (ps>1) {
 				// can be, a codon may occur at two reads of same length at the same position due to alternative splicing
@@ -542,13 +702,13 @@ public class ReadsXCodonMatrix {
 				ps=1;
 			}
 			double s = (1-ps)*cs;
-			for (double[] r : M.get(c).values()) {
-				double e = r[0]*cs;
-				double o = r[1];
+			for (int i=codonPtr[ci]; i<codonPtr[ci+1]; i++) {
+				double e = s0[i]*cs;
+				double o = s1[i];
 				double oe = o-e;
 				s+=oe*oe/e;
 			}
-			c.goodness = s;
+			codons[ci].goodness = s;
 		}
 		
 	}
@@ -576,16 +736,20 @@ public class ReadsXCodonMatrix {
 	 * this tends to put all weight onto a single frame...  
 	 */
 	public void computeFrameWeightProbabilities() {
-		for (Read r : readProto.keySet()) {
-			double[] sum = {0,0,0};
-			for (Codon c : I.get(r).keySet()) {
-				int f = r.region.induce(c.getStart())%3;
+		compile();
+		double[] sum = new double[3];
+		for (int r=0; r<readRegion.length; r++) {
+			Arrays.fill(sum, 0);
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				Codon c = codons[entryCodon[readEntry[j]]];
+				int f = readRegion[r].induce(c.getStart())%3;
 				sum[f]+=c.totalActivity;
 			}
 			double sumsum = ArrayUtils.sum(sum);
-			for (Codon c : I.get(r).keySet()) {
-				int f = r.region.induce(c.getStart())%3;
-				I.get(r).get(c)[1]*=sum[f]/sumsum;
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				Codon c = codons[entryCodon[readEntry[j]]];
+				int f = readRegion[r].induce(c.getStart())%3;
+				slots[1][readEntry[j]]*=sum[f]/sumsum;
 			}
 		}
 	}
@@ -594,13 +758,15 @@ public class ReadsXCodonMatrix {
 	 * normalize slot 1 s.t. sums are 1 for each read
 	 */
 	public void computePriorReadProbabilities() {
-		for (Read r : readProto.keySet()) {
+		compile();
+		double[] s1 = slots[1];
+		for (int r=0; r<readTotalCount.length; r++) {
 			double sum = 0;
-			for (double[] s : I.get(r).values())
-				sum+=s[1];
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++)
+				sum+=s1[readEntry[j]];
 			if (sum>0)
-				for (double[] s : I.get(r).values())
-					s[1]/=sum;
+				for (int j=readPtr[r]; j<readPtr[r+1]; j++)
+					s1[readEntry[j]]/=sum;
 		}
 	}
 
@@ -609,20 +775,20 @@ public class ReadsXCodonMatrix {
 	 * multiply slot 1 by the corresponding read count
 	 */
 	public void computeExpectedCodonPerRead() {
-		for (Read r : readProto.keySet()) {
-			for (double[] s : I.get(r).values())
-				s[1] *= r.totalCount;
-		}
+		compile();
+		double[] s1 = slots[1];
+		for (int e=0; e<s1.length; e++)
+			s1[e] *= readTotalCount[entryRead[e]];
 	}
 
 	/**
 	 * multiply slot 1 by the corresponding read count from condition index; overwrites slot 1
 	 */
 	public void computeExpectedCodonPerRead(int index) {
-		for (Read r : readProto.keySet()) {
-			for (double[] s : I.get(r).values())
-				s[1] *= r.count[index];
-		}
+		compile();
+		double[] s1 = slots[1];
+		for (int e=0; e<s1.length; e++)
+			s1[e] *= readCount[entryRead[e]][index];
 	}
 	
 	public double getTotal() {
@@ -630,17 +796,28 @@ public class ReadsXCodonMatrix {
 	}
 
 	public void computeExpectedCodons(Codon codon) {
-		HashSet<Codon> codons = new HashSet<Codon>();
-		for (Read r : M.get(codon).keySet()) {
-			codons.addAll(I.get(r).keySet());
-		}
-		for (Codon c : codons) {
-			double prev = c.totalActivity;
-			c.totalActivity=0;
-			for (double[] s : M.get(c).values())
-				c.totalActivity += s[1];
+		compile();
+		int ci = codonIndex.get(codon);
+		int stamp = nextMark();
+		for (int e=codonPtr[ci]; e<codonPtr[ci+1]; e++) {
+			int r = entryRead[e];
+			for (int j=readPtr[r]; j<readPtr[r+1]; j++) {
+				int c = entryCodon[readEntry[j]];
+				if (mark[c]!=stamp) {
+					mark[c] = stamp;
+					codons[c].totalActivity = sumSlot(1, c);
+				}
+			}
 		}
 	}
+
+	private double sumSlot(int slot, int c) {
+		double re = 0;
+		double[] s = slots[slot];
+		for (int e=codonPtr[c]; e<codonPtr[c+1]; e++)
+			re += s[e];
+		return re;
+	}
 	
 	/**
 	 * sum slot 1 for each codon and store in the codon activity vector
@@ -648,12 +825,12 @@ public class ReadsXCodonMatrix {
 	 * @return
 	 */
 	public double computeExpectedCodons() {
+		compile();
 		double re = 0;
-		for (Codon c : codonProto.keySet()) {
+		for (int ci=0; ci<codons.length; ci++) {
+			Codon c = codons[ci];
 			double prev = c.totalActivity;
-			c.totalActivity=0;
-			for (double[] s : M.get(c).values())
-				c.totalActivity += s[1];
+			c.totalActivity = sumSlot(1, ci);
 			re=Math.max(re,Math.abs(prev-c.totalActivity));
 		}
 		return re;
@@ -665,25 +842,26 @@ public class ReadsXCodonMatrix {
 	 * @return
 	 */
 	public double computeExpectedCodons(int index) {
+		compile();
 		double re = 0;
-		for (Codon c : codonProto.keySet()) {
+		for (int ci=0; ci<codons.length; ci++) {
+			Codon c = codons[ci];
 			double prev = c.activity[index];
-			c.activity[index]=0;
-			for (double[] s : M.get(c).values())
-				c.activity[index] += s[1];
+			c.activity[index] = sumSlot(1, ci);
 			re+=Math.abs(prev-c.activity[index]);
 		}
 		return re;
 	}
-	
+
 	public Set<Codon> getCodons() {
-		return codonProto.keySet();
+		return codonIndex.keySet();
 	}
 
 	
-	private static class Read implements Comparable<Read> {
+	private static class Read {
 		private GenomicRegion region;
 		private boolean leadingMismatch;
+		private int index;
 		private int hashcode;
 		private double totalCount;
 		private double[] count;
@@ -733,13 +911,6 @@ public class ReadsXCodonMatrix {
 		public String toString() {
 			return (leadingMismatch?"L":" ")+region.toRegionString()+":"+count;
 		}
-		
-		@Override
-		public int compareTo(Read o) {
-			int re = region.compareTo(o.region);
-			if (re==0) re = Boolean.compare(leadingMismatch, o.leadingMismatch);
-			return re;
-		}
 	}
 
 
@@ -1149,7 +1149,8 @@ public class OrfFinder {
 		double sum = EI.wrap(alpha).sum();
 		
 		
-		llUnique = new EquivalenceClassCountEM<OrfWithCodons>(E, alpha, orf->orf.getEffectiveLength()).compute(miniter, maxiter, (orf,pi)->orf.setEstimatedTotalActivity(pi*sum,pi));
+		EquivalenceClassCountEM<OrfWithCodons> em = new EquivalenceClassCountEM<OrfWithCodons>(E, alpha, orf->orf.getEffectiveLength());
+		llUnique = em.compute(miniter, maxiter, (orf,pi)->orf.setEstimatedTotalActivity(pi*sum,pi));
 		
 		for (int c=0; c<numCond; c++) {
 			Arrays.fill(alpha, 0);
@@ -1159,7 +1160,7 @@ public class OrfFinder {
 			int uc = c;
 			
 			double csum = EI.wrap(alpha).sum();
-			double lla = new EquivalenceClassCountEM<OrfWithCodons>(E, alpha, orf->orf.getEffectiveLength()).compute(miniter, maxiter, (orf,pi)->orf.setEstimatedTotalActivity(uc,pi*csum,pi));
+			double lla = em.setAlpha(alpha).compute(miniter, maxiter, (orf,pi)->orf.setEstimatedTotalActivity(uc,pi*csum,pi));
 			if (!Double.isNaN(lla))
 				llEach += lla;
 		}
@@ -0,0 +1,97 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import gedi.util.datastructure.tree.AhoCorasickAutomaton;
+import gedi.util.datastructure.tree.Trie;
+import gedi.util.math.stat.RandomNumbers;
+
+import java.util.ArrayList;
+
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+/**
+ * Matching many long texts against a large dictionary (the large case of {@link AhoCorasickTest#scanTest()}),
+ * comparing a single thread to {@link AhoCorasickAutomaton#scan(java.util.Iterator, java.util.function.Function, int)}.
+ * @author erhard
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+public class AhoCorasickBenchmark {
+	@Rule
+	public BenchmarkRule benchmarkRun = new BenchmarkRule();
+
+	private static final String ALPHABET = "ACDEFGHKLMNPQRSTVWY";
+	private static final int THREADS = 4;
+
+	private static Trie<String> trie;
+	private static AhoCorasickAutomaton<String> aut;
+	private static ArrayList<String> texts;
+	private static int expected;
+
+	@BeforeClass
+	public static void createTexts() {
+		RandomNumbers rnd = new RandomNumbers(13);
+		trie = new Trie<String>();
+		for (int i=0; i<1000; i++) {
+			String k = AhoCorasickTest.random(rnd, ALPHABET, rnd.getUnif(6, 12));
+			trie.put(k, k);
+		}
+		texts = new ArrayList<String>();
+		for (int i=0; i<500; i++) {
+			String text = AhoCorasickTest.random(rnd, ALPHABET, rnd.getUnif(100, 2000));
+			for (String k : trie.keySet())
+				if (rnd.getUnif()<0.001) {
+					int p = rnd.getUnif(0, text.length());
+					text = text.substring(0, p)+k+text.substring(p);
+				}
+			texts.add(text);
+		}
+		aut = trie.compileAhoCorasick();
+
+		expected = 0;
+		for (String text : texts)
+			expected+=AhoCorasickTest.naive(trie, text).size();
+	}
+
+	@Test
+	public void match() {
+		int hits = 0;
+		for (String text : texts)
+			hits+=aut.match(text).size();
+		assertEquals(expected, hits);
+	}
+
+	@Test
+	public void scan() {
+		int[] hits = {0};
+		aut.scan(texts.iterator(), s->s, THREADS).forEachRemaining(p->hits[0]+=p.Item2.size());
+		assertEquals(expected, hits[0]);
+	}
+
+}
@@ -0,0 +1,123 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import gedi.util.datastructure.tree.AhoCorasickAutomaton;
+import gedi.util.datastructure.tree.Trie;
+import gedi.util.datastructure.tree.Trie.AhoCorasickResult;
+import gedi.util.functions.EI;
+import gedi.util.math.stat.RandomNumbers;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class AhoCorasickTest {
+
+	static String random(RandomNumbers rnd, String alphabet, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<length; i++)
+			sb.append(alphabet.charAt(rnd.getUnif(0, alphabet.length())));
+		return sb.toString();
+	}
+	
+	/**
+	 * All occurrences ordered by end and decreasing length; only substrings up to the longest key are checked
+	 */
+	static List<String> naive(Trie<String> trie, String text) {
+		int maxLength = 0;
+		for (String k : trie.keySet())
+			maxLength = Math.max(maxLength, k.length());
+		
+		ArrayList<String> re = new ArrayList<String>();
+		for (int e=1; e<=text.length(); e++)
+			for (int s=Math.max(0, e-maxLength); s<e; s++)
+				if (trie.containsKey(text.substring(s, e)))
+					re.add(trie.get(text.substring(s, e))+"@"+s+"-"+e);
+		return re;
+	}
+	
+	static List<String> toString(List<AhoCorasickResult<String>> l) {
+		return EI.wrap(l).map(r->r.toString()).list();
+	}
+	
+	@Test
+	public void randomTest() {
+		RandomNumbers rnd = new RandomNumbers(42);
+		for (String alphabet : new String[] {"AC", "ACGT", "ACDEFGHKLMNPQRSTVWY"}) {
+			Trie<String> trie = new Trie<String>();
+			for (int i=0; i<200; i++) {
+				String k = random(rnd, alphabet, rnd.getUnif(1, 8));
+				trie.put(k, k.toLowerCase());
+			}
+			AhoCorasickAutomaton<String> aut = trie.compileAhoCorasick();
+			for (int t=0; t<20; t++) {
+				String text = random(rnd, alphabet+"XI", rnd.getUnif(0, 300));
+				List<String> expected = naive(trie, text);
+				assertEquals(expected, toString(aut.match(text)));
+				assertEquals(expected, toString(trie.ahoCorasick(text)));
+				assertEquals(expected, aut.iterate(text, true).map(r->r.toString()).list());
+			}
+		}
+	}
+	
+	@Test
+	public void scanTest() {
+		RandomNumbers rnd = new RandomNumbers(13);
+		Trie<String> trie = new Trie<String>();
+		for (int i=0; i<1000; i++) {
+			String k = random(rnd, "ACDEFGHKLMNPQRSTVWY", rnd.getUnif(6, 12));
+			trie.put(k, k);
+		}
+		ArrayList<String> texts = new ArrayList<String>();
+		for (int i=0; i<200; i++) {
+			String text = random(rnd, "ACDEFGHKLMNPQRSTVWY", rnd.getUnif(100, 500));
+			for (String k : trie.keySet())
+				if (rnd.getUnif()<0.001) {
+					int p = rnd.getUnif(0, text.length());
+					text = text.substring(0, p)+k+text.substring(p);
+				}
+			texts.add(text);
+		}
+		
+		AhoCorasickAutomaton<String> aut = trie.compileAhoCorasick();
+		ArrayList<String> seen = new ArrayList<String>();
+		int[] hits = {0};
+		aut.scan(texts.iterator(), s->s, 4).forEachRemaining(p->{
+			seen.add(p.Item1);
+			assertEquals(naive(trie, p.Item1), toString(p.Item2));
+			hits[0]+=p.Item2.size();
+		});
+		assertEquals(new HashSet<String>(texts), new HashSet<String>(seen));
+		assertEquals(texts.size(), seen.size());
+		assertEquals(true, hits[0]>150);
+		
+		// automaton is not affected by later changes
+		trie.put("XXX", "x");
+		assertEquals(0, aut.match("AXXXA").size());
+		assertEquals(1, trie.ahoCorasick("AXXXA").size());
+	}
+
+}
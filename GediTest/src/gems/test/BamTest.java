@@ -32,13 +32,27 @@ import gedi.core.region.intervalTree.MemoryIntervalTreeStorage;
 import gedi.ensembl.BiomartExonFileReader;
 import gedi.region.bam.BamGenomicRegionStorage;
 import gedi.region.bam.BamMerge;
+import gedi.region.bam.SamReaderPool;
 import gedi.util.ArrayUtils;
 import gems.test.tools.StorageTester;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMSequenceDictionary;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.Spliterator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.StreamSupport;
 
 import org.junit.Before;
@@ -210,6 +224,161 @@ public class BamTest {
 	}
 	
 	
+	@Test
+	public void readerPoolTest() throws IOException {
+		String[] files = {"data/bam/reads.bam","data/bam/reads2.bam","data/bam/reads3.bam"};
+		SamReaderPool pool = new SamReaderPool(files.length, i->SamReaderFactory.makeDefault()
+				.validationStringency(ValidationStringency.SILENT)
+				.enable(SamReaderFactory.Option.CACHE_FILE_BASED_INDEXES)
+				.open(new File(files[i])));
+		
+		int[] expected = new int[files.length];
+		for (int i=0; i<files.length; i++)
+			expected[i] = countReads(pool, i);
+		assertEquals(3, pool.getMisses());
+		
+		for (int r=0; r<10; r++)
+			for (int i=0; i<files.length; i++)
+				assertEquals(expected[i], countReads(pool, i));
+		assertEquals(3, pool.getMisses());
+		assertEquals(30, pool.getHits());
+		
+		// concurrent callers must not share readers
+		long n = IntStream.range(0, 300).parallel().filter(i->countReads(pool, i%files.length)==expected[i%files.length]).count();
+		assertEquals(300, n);
+		for (int i=0; i<files.length; i++)
+			assertTrue(pool.getIdle(i)<=pool.getMaxIdlePerFile());
+		
+		pool.setIdleTimeout(0);
+		pool.evictIdle();
+		pool.close();
+		for (int i=0; i<files.length; i++)
+			assertEquals(0, pool.getIdle(i));
+	}
+	
+	@Test
+	public void readerPoolMaxOpenTest() throws IOException {
+		String[] files = {"data/bam/reads.bam","data/bam/reads2.bam","data/bam/reads3.bam"};
+		SamReaderPool pool = new SamReaderPool(files.length, i->SamReaderFactory.makeDefault()
+				.validationStringency(ValidationStringency.SILENT)
+				.enable(SamReaderFactory.Option.CACHE_FILE_BASED_INDEXES)
+				.open(new File(files[i])))
+				.setMaxOpenPerFile(2);
+		
+		int[] expected = new int[files.length];
+		for (int i=0; i<files.length; i++)
+			expected[i] = countReads(pool, i);
+		
+		// concurrent callers wait for released readers instead of opening new ones
+		long n = IntStream.range(0, 300).parallel().filter(i->countReads(pool, i%files.length)==expected[i%files.length]).count();
+		assertEquals(300, n);
+		assertTrue(pool.getMisses()<=2*files.length);
+		for (int i=0; i<files.length; i++)
+			assertTrue(pool.getOpen(i)<=2);
+		
+		pool.close();
+		for (int i=0; i<files.length; i++)
+			assertEquals(0, pool.getOpen(i));
+	}
+	
+	/**
+	 * The test bams use chr1, but chromosome names are normalized to 1; writes copies using 1 (delete with {@link #deleteRenamed(String[])})
+	 * @return
+	 * @throws IOException
+	 */
+	private static String[] writeRenamed() throws IOException {
+		String[] files = {"data/bam/reads.bam","data/bam/reads2.bam","data/bam/reads3.bam"};
+		String[] renamed = new String[files.length];
+		for (int i=0; i<files.length; i++) {
+			renamed[i] = "data/bam/renamed"+i+".bam";
+			SamReader in = SamReaderFactory.makeDefault().validationStringency(ValidationStringency.SILENT).open(new File(files[i]));
+			SAMFileHeader header = in.getFileHeader().clone();
+			header.setSequenceDictionary(new SAMSequenceDictionary(Arrays.asList(new SAMSequenceRecord("1", header.getSequence("chr1").getSequenceLength()))));
+			header.setSortOrder(SAMFileHeader.SortOrder.coordinate);
+			SAMFileWriter out = new SAMFileWriterFactory().setCreateIndex(true).makeBAMWriter(header, false, new File(renamed[i]));
+			for (SAMRecord rec : in) {
+				rec.setHeader(header);
+				if (!rec.getReadUnmappedFlag()) rec.setReferenceName("1");
+				out.addAlignment(rec);
+			}
+			out.close();
+			in.close();
+		}
+		return renamed;
+	}
+	
+	private static void deleteRenamed(String[] renamed) {
+		for (String f : renamed) {
+			new File(f).delete();
+			new File(f.replace(".bam", ".bai")).delete();
+		}
+	}
+	
+	@Test(timeout=60000)
+	public void storageReleasesReadersTest() throws Exception {
+		String[] renamed = writeRenamed();
+		BamGenomicRegionStorage storage = new BamGenomicRegionStorage(true, renamed);
+		SamReaderPool pool = storage.getReaderPool().setMaxOpenPerFile(1);
+		Chromosome refp = Chromosome.obtain("1+");
+		
+		// completely consumed
+		long n = StreamSupport.stream(storage.iterateGenomicRegions(refp), false).count();
+		assertTrue(n>1);
+		for (int r=0; r<5; r++)
+			assertEquals(n, StreamSupport.stream(storage.iterateGenomicRegions(refp), false).count());
+		
+		// partially consumed and closed; with a leaked reader, the next query would wait forever
+		for (int r=0; r<5; r++) {
+			Spliterator<GenomicRegion> spl = storage.iterateGenomicRegions(refp);
+			assertTrue(spl.tryAdvance(g->{}));
+			assertEquals(0, pool.getIdle(0));
+			((AutoCloseable)spl).close();
+			((AutoCloseable)spl).close();
+			assertFalse(spl.tryAdvance(g->{}));
+			for (int i=0; i<renamed.length; i++) {
+				assertEquals(1, pool.getOpen(i));
+				assertEquals(1, pool.getIdle(i));
+			}
+		}
+		
+		assertEquals(n, StreamSupport.stream(storage.iterateGenomicRegions(refp), false).count());
+		storage.close();
+		for (int i=0; i<renamed.length; i++)
+			assertEquals(0, pool.getOpen(i));
+		deleteRenamed(renamed);
+	}
+	
+	@Test(timeout=60000)
+	public void mergedStorageReleasesReadersTest() throws Exception {
+		String[] renamed = writeRenamed();
+		// the header readers must not take the only slot of the pool
+		BamGenomicRegionStorage storage = new BamGenomicRegionStorage(true, BamMerge.fromFilesRegex("renamed", renamed));
+		SamReaderPool pool = storage.getReaderPool().setMaxOpenPerFile(1);
+		Chromosome refp = Chromosome.obtain("1+");
+		for (int i=0; i<renamed.length; i++)
+			assertEquals(0, pool.getOpen(i));
+		
+		long n = StreamSupport.stream(storage.iterateGenomicRegions(refp), false).count();
+		assertTrue(n>1);
+		assertEquals(n, StreamSupport.stream(storage.iterateGenomicRegions(refp), false).count());
+		
+		storage.close();
+		for (int i=0; i<renamed.length; i++)
+			assertEquals(0, pool.getOpen(i));
+		deleteRenamed(renamed);
+	}
+	
+	private static int countReads(SamReaderPool pool, int file) {
+		SamReader reader = pool.obtain(file);
+		int re = 0;
+		SAMRecordIterator it = reader.query("chr1", 1, 102, false);
+		for (; it.hasNext(); it.next())
+			re++;
+		it.close();
+		pool.release(file, reader);
+		return re;
+	}
+	
 	@Test
 	public void bigTest() throws IOException {
 		BamMerge bams = BamMerge.fromFile("/home/proj/Herpes/Data/RibosomalProfiling/combined/new_pipeline/scripts/RNAseq.mapping");
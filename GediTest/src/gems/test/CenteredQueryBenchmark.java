@@ -0,0 +1,117 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import gedi.centeredDiskIntervalTree.CenteredDiskIntervalTreeStorage;
+import gedi.core.reference.Chromosome;
+import gedi.core.reference.ReferenceSequence;
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.core.region.intervalTree.MemoryIntervalTreeStorage;
+import gedi.util.math.stat.RandomNumbers;
+import gedi.util.mutable.MutableInteger;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+/**
+ * Compares the primitive query engine of the CIT against the original hash set based offset collection
+ * for many small window queries.
+ * @author erhard
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+public class CenteredQueryBenchmark {
+	@Rule
+	public BenchmarkRule benchmarkRun = new BenchmarkRule();
+
+	private static final int REGIONS = 500_000;
+	private static final int QUERIES = 200_000;
+	private static final int LENGTH = 10_000_000;
+
+	private static CenteredDiskIntervalTreeStorage<MutableInteger> cit;
+	private static ReferenceSequence ref = Chromosome.obtain("bench+");
+	private static int[] windows;
+	private static int expected;
+
+	@BeforeClass
+	public static void createCit() throws IOException {
+		RandomNumbers rnd = new RandomNumbers(42);
+		MemoryIntervalTreeStorage<MutableInteger> storage = new MemoryIntervalTreeStorage<MutableInteger>(MutableInteger.class);
+		for (int i=0; i<REGIONS; i++) {
+			int start = rnd.getUnif(0, LENGTH);
+			if (rnd.getUnif()<0.2) {
+				int intron = rnd.getUnif(50, 5000);
+				storage.add(ref, new ArrayGenomicRegion(start,start+20,start+20+intron,start+30+intron), new MutableInteger(1));
+			} else
+				storage.add(ref, new ArrayGenomicRegion(start,start+rnd.getUnif(20, 40)), new MutableInteger(1));
+		}
+
+		new File("data/bench.cit").delete();
+		cit = new CenteredDiskIntervalTreeStorage<MutableInteger>("data/bench.cit", MutableInteger.class);
+		cit.fill(storage);
+
+		windows = new int[QUERIES];
+		for (int i=0; i<windows.length; i++)
+			windows[i] = rnd.getUnif(0, LENGTH);
+
+		cit.setPrimitiveQueries(false);
+		int legacy = query();
+		cit.setPrimitiveQueries(true);
+		expected = query();
+		assertEquals(legacy, expected);
+	}
+
+	@AfterClass
+	public static void deleteCit() throws IOException {
+		cit.close();
+		new File(cit.getPath()).delete();
+	}
+
+	private static int query() {
+		int[] n = {0};
+		for (int w : windows)
+			cit.iterateIntersectingMutableReferenceGenomicRegions(ref, new ArrayGenomicRegion(w,w+100)).forEachRemaining(r->n[0]+=r.getData().N);
+		return n[0];
+	}
+
+	@Test
+	public void hashSetQueries() {
+		cit.setPrimitiveQueries(false);
+		assertEquals(expected, query());
+	}
+
+	@Test
+	public void primitiveQueries() {
+		cit.setPrimitiveQueries(true);
+		assertEquals(expected, query());
+	}
+
+}
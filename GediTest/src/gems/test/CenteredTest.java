@@ -19,18 +19,26 @@
 package gems.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import gedi.centeredDiskIntervalTree.CenteredDiskIntervalTreeStorage;
 import gedi.core.reference.Chromosome;
 import gedi.core.reference.ReferenceSequence;
 import gedi.core.region.ArrayGenomicRegion;
+import gedi.core.region.MutableReferenceGenomicRegion;
 import gedi.core.region.intervalTree.MemoryIntervalTreeStorage;
 import gedi.util.io.randomaccess.PageFile;
 import gedi.util.io.randomaccess.PageFileWriter;
+import gedi.util.math.stat.RandomNumbers;
 import gedi.util.mutable.MutableInteger;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.stream.StreamSupport;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -112,4 +120,73 @@ public class CenteredTest {
 		
 	}
 	
+	@Test
+	public void parallelSpliteratorTest() throws IOException {
+		RandomNumbers rnd = new RandomNumbers(42);
+		MemoryIntervalTreeStorage<MutableInteger> storage = new MemoryIntervalTreeStorage<MutableInteger>(MutableInteger.class);
+		ReferenceSequence[] refs = {Chromosome.obtain("chr1+"),Chromosome.obtain("chr2-"),Chromosome.obtain("chr3+")};
+		long total = 0;
+		for (int i=0; i<300_000; i++) {
+			int start = rnd.getUnif(0, 5_000_000);
+			int n = rnd.getUnif(1, 5);
+			storage.add(refs[i%refs.length],new ArrayGenomicRegion(start,start+rnd.getUnif(20, 40)),new MutableInteger(n),(a,b)->new MutableInteger(a.N+b.N));
+			total+=n;
+		}
+		
+		new File("data/parallel.cit").delete();
+		CenteredDiskIntervalTreeStorage<MutableInteger> disk = new CenteredDiskIntervalTreeStorage<MutableInteger>("data/parallel.cit", MutableInteger.class);
+		disk.fill(storage);
+		
+		Spliterator<MutableReferenceGenomicRegion<MutableInteger>> single = disk.iterateMutableReferenceGenomicRegions(refs[0]);
+		assertNotNull(single.trySplit());
+		
+		assertEquals(storage.size(), StreamSupport.stream(disk.iterateMutableReferenceGenomicRegions(),true).count());
+		assertEquals(total, StreamSupport.stream(disk.iterateMutableReferenceGenomicRegions(),true).mapToLong(r->r.getData().N).sum());
+		assertEquals(total, StreamSupport.stream(disk.iterateIntersectingMutableReferenceGenomicRegions(refs[1],new ArrayGenomicRegion(0,6_000_000)),true).mapToLong(r->r.getData().N).sum()
+				+StreamSupport.stream(disk.iterateMutableReferenceGenomicRegions(refs[0]),true).mapToLong(r->r.getData().N).sum()
+				+StreamSupport.stream(disk.iterateMutableReferenceGenomicRegions(refs[2]),true).mapToLong(r->r.getData().N).sum());
+		
+		disk.close();
+		new File("data/parallel.cit").delete();
+	}
+	
+	@Test
+	public void parallelBuildTest() throws IOException {
+		RandomNumbers rnd = new RandomNumbers(42);
+		MemoryIntervalTreeStorage<MutableInteger> storage = new MemoryIntervalTreeStorage<MutableInteger>(MutableInteger.class);
+		ReferenceSequence[] refs = {Chromosome.obtain("chr1+"),Chromosome.obtain("chr2-"),Chromosome.obtain("chr3+"),Chromosome.obtain("chr4+")};
+		for (int i=0; i<100_000; i++) {
+			int start = rnd.getUnif(0, 1_000_000);
+			storage.add(refs[i%refs.length],new ArrayGenomicRegion(start,start+rnd.getUnif(20, 40)),new MutableInteger(1),(a,b)->new MutableInteger(a.N+b.N));
+		}
+		
+		new File("data/sequential.cit").delete();
+		CenteredDiskIntervalTreeStorage<MutableInteger> seq = new CenteredDiskIntervalTreeStorage<MutableInteger>("data/sequential.cit", MutableInteger.class);
+		seq.fill(storage.ei());
+		
+		new File("data/parallel.cit").delete();
+		CenteredDiskIntervalTreeStorage<MutableInteger> par = new CenteredDiskIntervalTreeStorage<MutableInteger>("data/parallel.cit", MutableInteger.class);
+		par.setBuildThreads(4);
+		par.fill(storage.ei());
+		
+		assertTrue(Arrays.equals(Files.readAllBytes(new File(seq.getPath()).toPath()), Files.readAllBytes(new File(par.getPath()).toPath())));
+		
+		new File("data/budget.cit").delete();
+		CenteredDiskIntervalTreeStorage<MutableInteger> budget = new CenteredDiskIntervalTreeStorage<MutableInteger>("data/budget.cit", MutableInteger.class);
+		budget.setBuildThreads(4);
+		budget.setMemoryBudget(1<<20);
+		budget.fill(storage.ei());
+		
+		for (ReferenceSequence ref : refs)
+			for (int i=0; i<1000; i++) {
+				int start = rnd.getUnif(0, 1_000_000);
+				assertEquals(seq.getRegionsIntersectingMap(ref, start, start+100), budget.getRegionsIntersectingMap(ref, start, start+100));
+			}
+		
+		for (CenteredDiskIntervalTreeStorage<MutableInteger> s : Arrays.asList(seq,par,budget)) {
+			s.close();
+			new File(s.getPath()).delete();
+		}
+	}
+	
 }
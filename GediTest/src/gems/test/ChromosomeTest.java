@@ -0,0 +1,138 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import gedi.core.reference.Chromosome;
+import gedi.core.reference.ReferenceSequence;
+import gedi.core.reference.ReferenceSequenceMap;
+import gedi.core.reference.Strand;
+import gedi.util.FileUtils;
+import gedi.util.io.randomaccess.BufferBinaryReaderWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ChromosomeTest {
+
+	@Test
+	public void internTest() {
+		Chromosome a = Chromosome.obtain("chr1", Strand.Plus);
+		assertSame(a, Chromosome.obtain("1+"));
+		assertSame(a, Chromosome.obtain(new StringBuilder("chr1+")));
+		assertSame(a, Chromosome.obtain(new StringBuilder("1"), Strand.Plus));
+		assertSame(Chromosome.obtain("chrM"), Chromosome.obtain("MT"));
+		assertEquals("1", a.getName());
+
+		assertSame(a, Chromosome.get(a.getId()));
+		assertTrue(a.getId()<Chromosome.getNumIds());
+		assertFalse(a.getId()==a.toMinusStrand().getId());
+		assertSame(a.toMinusStrand(), Chromosome.obtain("1-"));
+		assertSame(a.toStrandIndependent(), Chromosome.obtain("1"));
+		assertSame(a, a.toMinusStrand().getOppositeStrand());
+	}
+
+	@Test
+	public void concurrentTest() throws Exception {
+		int threads = 8;
+		int names = 2000;
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		ArrayList<Future<Chromosome[]>> futures = new ArrayList<Future<Chromosome[]>>();
+		for (int t=0; t<threads; t++) {
+			int offset = t;
+			futures.add(pool.submit(()->{
+				Chromosome[] re = new Chromosome[names];
+				for (int i=0; i<names; i++) {
+					int n = (i+offset*97)%names;
+					re[n] = n%2==0?Chromosome.obtain("chrConcurrent"+n, Strand.Minus):Chromosome.obtain(new StringBuilder("Concurrent"+n+"-"));
+				}
+				return re;
+			}));
+		}
+		Chromosome[] first = futures.get(0).get();
+		for (Future<Chromosome[]> f : futures)
+			assertTrue(Arrays.equals(first, f.get()));
+		pool.shutdown();
+
+		boolean[] ids = new boolean[Chromosome.getNumIds()];
+		for (int i=0; i<names; i++) {
+			for (Future<Chromosome[]> f : futures)
+				assertSame(first[i], f.get()[i]);
+			assertEquals("Concurrent"+i, first[i].getName());
+			assertSame(first[i], Chromosome.get(first[i].getId()));
+			assertFalse(ids[first[i].getId()]);
+			ids[first[i].getId()] = true;
+		}
+	}
+
+	@Test
+	public void readTest() throws IOException {
+		BufferBinaryReaderWriter buff = new BufferBinaryReaderWriter();
+		FileUtils.writeReferenceSequence(buff, Chromosome.obtain("chrX-"));
+		FileUtils.writeReferenceSequence(buff, Chromosome.obtain("2"));
+		FileUtils.writeReferenceSequence(buff, Chromosome.obtain("chrReadTest+"));
+		buff.getBuffer().flip();
+		assertSame(Chromosome.obtain("X-"), FileUtils.readReferenceSequence(buff));
+		assertSame(Chromosome.obtain("2"), FileUtils.readReferenceSequence(buff));
+		assertSame(Chromosome.obtain("ReadTest", Strand.Plus), FileUtils.readReferenceSequence(buff));
+	}
+
+	@Test
+	public void mapTest() {
+		ReferenceSequenceMap<Integer> map = new ReferenceSequenceMap<Integer>();
+		ReferenceSequence[] refs = {Chromosome.obtain("3+"), Chromosome.obtain("1-"), Chromosome.obtain("Y"), Chromosome.obtain("1+")};
+		for (int i=0; i<refs.length; i++)
+			map.put(refs[i], i);
+		map.put(Chromosome.obtain("MapTest"), null);
+
+		assertEquals(5, map.size());
+		assertEquals(Integer.valueOf(1), map.get(Chromosome.obtain("chr1-")));
+		assertTrue(map.containsKey(Chromosome.obtain("MapTest")));
+		assertNull(map.get(Chromosome.obtain("MapTest")));
+		assertNull(map.get(Chromosome.obtain("Y+")));
+		assertFalse(map.containsKey("Y"));
+		assertEquals(Arrays.asList(refs[0], refs[1], refs[2], refs[3], Chromosome.obtain("MapTest")), new ArrayList<ReferenceSequence>(map.keySet()));
+
+		map.keySet().removeIf(r->r.getName().equals("1"));
+		assertEquals(3, map.size());
+		assertNull(map.get(refs[1]));
+		assertFalse(map.containsKey(refs[3]));
+		assertEquals(Integer.valueOf(0), map.remove(refs[0]));
+		assertFalse(map.containsKey(refs[0]));
+		map.entrySet().iterator().next().setValue(7);
+		assertEquals(Integer.valueOf(7), map.get(refs[2]));
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(refs[2]));
+	}
+
+}
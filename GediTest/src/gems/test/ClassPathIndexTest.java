@@ -0,0 +1,153 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import gedi.app.classpath.ClassPathCache;
+import gedi.app.classpath.ClassPathIndex;
+import gedi.app.classpath.CompositeClassPath;
+import gedi.app.classpath.JARClassPath;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ClassPathIndexTest {
+
+	private File jar = new File("data/classpath_test.jar");
+	private File index = new File("data/classpath_test.index");
+
+	@After
+	public void deleteFiles() {
+		jar.delete();
+		index.delete();
+	}
+
+	private void writeJar(String... entries) throws IOException {
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (String e : entries) {
+				out.putNextEntry(new ZipEntry(e));
+				out.closeEntry();
+			}
+		}
+	}
+
+	@Test
+	public void indexTest() throws IOException {
+		writeJar("gedi/startup/TestStartup.class","gedi/util/A.class","gedi/util/A$B.class","resources/test.version");
+
+		ClassPathIndex idx = new ClassPathIndex(index);
+		assertFalse(idx.load());
+		JARClassPath cp = new JARClassPath(jar);
+		Map<String,String[]> listing = idx.getListing(cp);
+		assertArrayEquals(new String[] {"TestStartup.class"}, listing.get("gedi/startup"));
+		assertArrayEquals(new String[] {"A$B.class","A.class"}, listing.get("gedi/util"));
+		assertArrayEquals(new String[] {"test.version"}, listing.get("resources"));
+		assertTrue(idx.isDirty());
+		idx.save();
+		assertFalse(idx.isDirty());
+
+		// loaded from the index, the jar is not opened
+		ClassPathIndex idx2 = new ClassPathIndex(index);
+		assertTrue(idx2.load());
+		Map<String,String[]> listing2 = idx2.getListing(new JARClassPath(jar));
+		assertFalse(idx2.isDirty());
+		assertEquals(listing.keySet(), listing2.keySet());
+		for (String p : listing.keySet())
+			assertArrayEquals(listing.get(p), listing2.get(p));
+
+		// modified jar
+		long mod = jar.lastModified();
+		writeJar("gedi/startup/TestStartup.class","gedi/startup/OtherStartup.class");
+		jar.setLastModified(mod+2000);
+		assertArrayEquals(new String[] {"OtherStartup.class","TestStartup.class"}, idx2.getListing(new JARClassPath(jar)).get("gedi/startup"));
+		assertTrue(idx2.isDirty());
+	}
+
+	@Test
+	public void cacheTest() throws IOException {
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (String e : new String[] {"gedi/util/A.class","gedi/util/A$B.class","resources/test.version"}) {
+				out.putNextEntry(new ZipEntry(e));
+				if (e.endsWith(".version"))
+					out.write("Test=1.0\n".getBytes());
+				out.closeEntry();
+			}
+		}
+		ClassPathIndex idx = new ClassPathIndex(index);
+		idx.getListing(new JARClassPath(jar));
+		idx.save();
+
+		ClassPathIndex idx2 = new ClassPathIndex(index);
+		assertTrue(idx2.load());
+		JARClassPath cp = new JARClassPath(jar);
+		ClassPathCache cache = new ClassPathCache(new CompositeClassPath(cp), idx2);
+		assertArrayEquals(new String[] {"test.version"}, cache.listResources(cp, "resources"));
+		assertArrayEquals(new String[0], cache.listResources(cp, "gedi/startup"));
+		assertTrue(cache.existsClass("gedi.util.A"));
+		assertFalse(cache.existsClass("gedi.util.C"));
+		assertSame(cp, cache.getClassPathOfFile("gedi/util/A$B"));
+		assertEquals(new HashSet<String>(Arrays.asList("A","A$B")), cache.getClassesOfPackage("gedi.util"));
+
+		Properties p = new Properties();
+		try (InputStream in = cp.getResourceAsStream("/resources/test.version")) {
+			p.load(in);
+		}
+		assertEquals("1.0", p.getProperty("Test"));
+		assertFalse(cp.isLoaded());
+	}
+
+	@Test
+	public void corruptTest() throws IOException {
+		writeJar("gedi/util/A.class");
+		ClassPathIndex idx = new ClassPathIndex(index);
+		idx.getListing(new JARClassPath(jar));
+		idx.save();
+		assertTrue(new ClassPathIndex(index).load());
+
+		try (RandomAccessFile f = new RandomAccessFile(index, "rw")) {
+			f.seek(f.length()-3);
+			int b = f.read();
+			f.seek(f.length()-3);
+			f.write(b^0xFF);
+		}
+		ClassPathIndex idx2 = new ClassPathIndex(index);
+		assertFalse(idx2.load());
+		assertArrayEquals(new String[] {"A.class"}, idx2.getListing(new JARClassPath(jar)).get("gedi/util"));
+	}
+
+}
@@ -0,0 +1,146 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import gedi.core.data.reads.AlignedReadsData;
+import gedi.core.data.reads.AlignedReadsDataFactory;
+import gedi.core.reference.Chromosome;
+import gedi.core.reference.ReferenceSequence;
+import gedi.core.reference.Strand;
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.core.region.ImmutableReferenceGenomicRegion;
+import gedi.riboseq.cleavage.RiboModel;
+import gedi.riboseq.inference.codon.Codon;
+import gedi.riboseq.inference.codon.CodonInference;
+import gedi.util.ArrayUtils;
+import gedi.util.math.stat.RandomNumbers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class CodonInferenceTest {
+
+	private static RiboModel createModel() {
+		double[] pl = new double[36];
+		double[] pr = new double[36];
+		pl[10] = 0.1; pl[11] = 0.2; pl[12] = 0.5; pl[13] = 0.15; pl[14] = 0.05;
+		pr[13] = 0.1; pr[14] = 0.3; pr[15] = 0.4; pr[16] = 0.2;
+		return new RiboModel(pl, pr, 0.3);
+	}
+
+	/**
+	 * Simulates reads from two overlapping ORFs (in different frames) and some background, in two conditions
+	 * @param ref
+	 * @return
+	 */
+	private static ArrayList<ImmutableReferenceGenomicRegion<AlignedReadsData>> simulate(ReferenceSequence ref, long seed) {
+		RandomNumbers rnd = new RandomNumbers(seed);
+		double[] cpl = ArrayUtils.cumSumAndNormalize(new double[] {0.1,0.2,0.5,0.15,0.05}, 1);
+		double[] cpr = ArrayUtils.cumSumAndNormalize(new double[] {0.1,0.3,0.4,0.2}, 1);
+
+		TreeMap<ArrayGenomicRegion,int[][]> counts = new TreeMap<ArrayGenomicRegion, int[][]>();
+		for (int codon=60; codon<1500; codon++) {
+			double rate = 0.02;
+			if (codon>=300 && codon<900 && codon%3==0) rate += rnd.getUnif(1, 20);
+			if (codon>=700 && codon<1200 && codon%3==1) rate += rnd.getUnif(0, 5);
+			int n = rnd.getPoisson(rate);
+			for (int i=0; i<n; i++) {
+				int five = 10+rnd.getCategorial(cpl);
+				int three = 13+rnd.getCategorial(cpr);
+				boolean lead = rnd.getUnif()<0.3;
+				ArrayGenomicRegion reg = ref.getStrand()==Strand.Plus
+						?new ArrayGenomicRegion(codon-five-(lead?1:0), codon+3+three)
+						:new ArrayGenomicRegion(codon-three, codon+3+five+(lead?1:0));
+				counts.computeIfAbsent(reg, x->new int[2][2])[lead?1:0][rnd.getUnif()<0.4?1:0]++;
+			}
+		}
+
+		ArrayList<ImmutableReferenceGenomicRegion<AlignedReadsData>> re = new ArrayList<ImmutableReferenceGenomicRegion<AlignedReadsData>>();
+		for (ArrayGenomicRegion reg : counts.keySet()) {
+			int[][] c = counts.get(reg);
+			AlignedReadsDataFactory fac = new AlignedReadsDataFactory(2).start();
+			for (int lead=0; lead<2; lead++)
+				if (c[lead][0]+c[lead][1]>0) {
+					fac.newDistinctSequence().setMultiplicity(1).setWeight(1).setCount(c[lead]);
+					if (lead==1)
+						fac.addMismatch(0, 'A', 'C');
+				}
+			re.add(new ImmutableReferenceGenomicRegion<AlignedReadsData>(ref, reg, fac.create()));
+		}
+		return re;
+	}
+
+	private static Codon[] infer(ReferenceSequence ref, long seed) {
+		ArrayList<ImmutableReferenceGenomicRegion<AlignedReadsData>> reads = simulate(ref, seed);
+		CodonInference inf = new CodonInference(new RiboModel[] {createModel()});
+		Set<Codon> codons = inf.inferCodons(()->reads.iterator(), null);
+		Codon[] re = codons.toArray(new Codon[0]);
+		Arrays.sort(re);
+		return re;
+	}
+
+	/**
+	 * Number of codons, total activity per condition, goodness of fit and the activity in the frames of the two ORFs and in
+	 * all other positions
+	 * @param codons
+	 * @return
+	 */
+	private static double[] summarize(Codon[] codons) {
+		double[] re = new double[8];
+		re[0] = codons.length;
+		for (Codon c : codons) {
+			re[1]+=c.getActivity()[0];
+			re[2]+=c.getActivity()[1];
+			re[3]+=c.getGoodness();
+			if (c.getStart()>=300 && c.getStart()<900 && c.getStart()%3==0)
+				re[4]+=c.getTotalActivity();
+			else if (c.getStart()>=700 && c.getStart()<1200 && c.getStart()%3==1)
+				re[5]+=c.getTotalActivity();
+			else
+				re[6]+=c.getTotalActivity();
+			re[7]+=c.getStart()*c.getTotalActivity();
+		}
+		return re;
+	}
+
+	/**
+	 * Values computed with the original HashMap based ReadsXCodonMatrix
+	 */
+	@Test
+	public void regressionTest() {
+		assertSummary(new double[] {330, 1415, 969, 5641.286532666074, 1868.5195824554514, 338.1640900589133, 177.31632748563476, 1525672.5135221966},
+				summarize(infer(Chromosome.obtain("1+"), 42)));
+		assertSummary(new double[] {322, 1415, 969, 5708.45479797179, 1885.3267726432396, 270.14757464469994, 228.52565271206166, 1525583.7352963467},
+				summarize(infer(Chromosome.obtain("1-"), 42)));
+	}
+
+	private static void assertSummary(double[] expected, double[] actual) {
+		for (int i=0; i<expected.length; i++)
+			assertEquals(expected[i], actual[i], 1E-6*Math.abs(expected[i]));
+	}
+
+}
@@ -0,0 +1,135 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import gedi.util.io.randomaccess.ConcurrentPageFile;
+import gedi.util.io.randomaccess.ConcurrentPageFileView;
+import gedi.util.io.randomaccess.PageFileWriter;
+import gedi.util.math.stat.RandomNumbers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+/**
+ * Random reads of many threads from the same {@link ConcurrentPageFile} (as in {@link ConcurrentPageFileViewTest#concurrentByteArrayTest()}),
+ * comparing the locking mode to the shared mode. Pages are small, such that several pages are in use at the same time.
+ * @author erhard
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+public class ConcurrentPageFileBenchmark {
+	@Rule
+	public BenchmarkRule benchmarkRun = new BenchmarkRule();
+
+	private static final int SIZE = 64<<20;
+	private static final long PAGE_SIZE = 4<<20;
+	private static final int THREADS = Math.max(8,Runtime.getRuntime().availableProcessors());
+	private static final int READS = 500_000;
+
+	private static byte[] a;
+	private static String path = "data/pagefile_bench.bin";
+
+	@BeforeClass
+	public static void createFile() throws IOException {
+		RandomNumbers rnd = new RandomNumbers(42);
+		a = new byte[SIZE];
+		for (int i=0; i<a.length; i++)
+			a[i] = (byte)rnd.getUnif(Byte.MIN_VALUE, Byte.MAX_VALUE);
+
+		PageFileWriter out = new PageFileWriter(path);
+		out.put(a, 0, a.length);
+		out.close();
+	}
+
+	@AfterClass
+	public static void deleteFile() {
+		new File(path).delete();
+	}
+
+	private static long read(ConcurrentPageFile in) throws InterruptedException, IOException {
+		ConcurrentPageFileView view = new ConcurrentPageFileView(in);
+		AtomicLong sum = new AtomicLong();
+		Thread[] threads = new Thread[THREADS];
+		for (int t=0; t<threads.length; t++) {
+			int seed = t;
+			threads[t] = new Thread(()->{
+				RandomNumbers trnd = new RandomNumbers(seed);
+				long s = 0;
+				try {
+					for (int i=0; i<READS; i++)
+						s+=view.getInt(trnd.getUnif(0,a.length-Integer.BYTES));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				sum.addAndGet(s);
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		in.close();
+		return sum.get();
+	}
+
+	private static long expected() {
+		long re = 0;
+		for (int t=0; t<THREADS; t++) {
+			RandomNumbers trnd = new RandomNumbers(t);
+			for (int i=0; i<READS; i++) {
+				int p = trnd.getUnif(0,a.length-Integer.BYTES);
+				re+=((a[p]&0xFF)<<24)|((a[p+1]&0xFF)<<16)|((a[p+2]&0xFF)<<8)|(a[p+3]&0xFF);
+			}
+		}
+		return re;
+	}
+
+	private static long expected = Long.MIN_VALUE;
+
+	private static void check(long sum) {
+		if (expected==Long.MIN_VALUE) expected = expected();
+		assertEquals(expected, sum);
+	}
+
+	@Test
+	public void locking() throws InterruptedException, IOException {
+		ConcurrentPageFile in = new ConcurrentPageFile(path, PAGE_SIZE);
+		check(read(in));
+	}
+
+	@Test
+	public void shared() throws InterruptedException, IOException {
+		ConcurrentPageFile in = new ConcurrentPageFile(path, PAGE_SIZE);
+		in.setShared(true);
+		check(read(in));
+	}
+
+}
@@ -160,6 +160,117 @@ public class ConcurrentPageFileViewTest {
 		
 	}
 	
+	@Test
+	public void sharedByteArrayTest() throws IOException, InterruptedException {
+		
+		RandomNumbers rnd = new RandomNumbers();
+		byte[] a = new byte[10_000_000];
+		for (int i=0; i<a.length; i++) {
+			a[i] = (byte)rnd.getUnif(Byte.MIN_VALUE, Byte.MAX_VALUE);
+		}
+		
+		PageFileWriter out = new PageFileWriter("data/pagefile.bin");
+		out.put(a, 0, a.length);
+		out.close();
+		ConcurrentPageFile in = new ConcurrentPageFile(out.getPath(), 1024*434);
+		in.setShared(true);
+		assertTrue(in.isShared());
+		int R = 100_000;
+		
+		AtomicInteger errors = new AtomicInteger();
+		ConcurrentPageFileView view = new ConcurrentPageFileView(in);
+		
+		Thread[] threads = new Thread[32];
+		for (int t=0; t<threads.length; t++) {
+			threads[t] = new Thread(()->{
+				RandomNumbers trnd = new RandomNumbers();
+				byte[] buff = new byte[1024*1024];
+				try {
+					for (int i=0; i<R; i++) {
+						int index = trnd.getUnif(0,a.length);
+						if (a[index]!=view.get(index)) 
+							errors.incrementAndGet();
+						
+						if (i%1000==0) {
+							int l = trnd.getUnif(0,Math.min(buff.length, a.length-index));
+							view.position(index);
+							view.get(buff, 0, l);
+							if (view.position()!=index+l || !Arrays.equals(Arrays.copyOfRange(a, index, index+l), Arrays.copyOf(buff, l)))
+								errors.incrementAndGet();
+						}
+					}
+				} catch (IOException e) {
+					errors.incrementAndGet();
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		
+		assertEquals(0, errors.get());
+			
+		in.close();
+
+		new File(in.getPath()).delete();
+		
+	}
 	
+	@Test
+	public void sharedToggleTest() throws IOException, InterruptedException {
+		
+		RandomNumbers rnd = new RandomNumbers();
+		byte[] a = new byte[3_000_000];
+		for (int i=0; i<a.length; i++) {
+			a[i] = (byte)rnd.getUnif(Byte.MIN_VALUE, Byte.MAX_VALUE);
+		}
+		
+		PageFileWriter out = new PageFileWriter("data/pagefile.bin");
+		out.put(a, 0, a.length);
+		out.close();
+		ConcurrentPageFile in = new ConcurrentPageFile(out.getPath(), 1024*434);
+		ConcurrentPageFileView view = new ConcurrentPageFileView(in);
+		byte[] buff = new byte[1024*1024];
+		
+		for (int round=0; round<3; round++) {
+			in.setShared(true);
+			view.get(0, buff, 0, buff.length);
+			assertTrue(Arrays.equals(Arrays.copyOf(a, buff.length), buff));
+			
+			// pages are unmapped while this thread moves through the file
+			in.setShared(false);
+			for (int p=0; p<a.length; p+=1024*434)
+				assertEquals(a[p], in.get(p));
+		}
+		
+		// bulk reads of the file itself from many threads
+		AtomicInteger errors = new AtomicInteger();
+		Thread[] threads = new Thread[8];
+		for (int t=0; t<threads.length; t++) {
+			threads[t] = new Thread(()->{
+				RandomNumbers trnd = new RandomNumbers();
+				byte[] tbuff = new byte[100_000];
+				try {
+					for (int i=0; i<1000; i++) {
+						int index = trnd.getUnif(0,a.length-tbuff.length);
+						in.get(index, tbuff, 0, tbuff.length);
+						if (!Arrays.equals(Arrays.copyOfRange(a, index, index+tbuff.length), tbuff))
+							errors.incrementAndGet();
+					}
+				} catch (IOException e) {
+					errors.incrementAndGet();
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertEquals(0, errors.get());
+		
+		in.close();
+
+		new File(in.getPath()).delete();
+		
+	}
 	
 }
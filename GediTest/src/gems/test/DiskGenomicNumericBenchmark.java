@@ -0,0 +1,118 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import gedi.core.data.numeric.diskrmq.DiskGenomicNumericBuilder;
+import gedi.core.data.numeric.diskrmq.DiskGenomicNumericProvider;
+import gedi.core.reference.Chromosome;
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.util.math.stat.RandomNumbers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+/**
+ * Throughput of gene level sums from many threads: one {@link DiskGenomicNumericProvider} opened per thread vs. one concurrent
+ * instance shared by all threads.
+ * @author erhard
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@BenchmarkOptions(benchmarkRounds = 40, warmupRounds = 8, concurrency = 8)
+public class DiskGenomicNumericBenchmark {
+	@Rule
+	public BenchmarkRule benchmarkRun = new BenchmarkRule();
+
+	private static final int CONDITIONS = 20;
+	private static final int LENGTH = 2_000_000;
+	private static final int REGIONS = 2_000;
+	private static final String PATH = "data/rmq/bench.rmq";
+
+	private static Chromosome ref = Chromosome.obtain("chr1+");
+	private static ArrayGenomicRegion[] regions;
+	private static double expected;
+
+	private static DiskGenomicNumericProvider shared;
+	private static ArrayList<DiskGenomicNumericProvider> opened = new ArrayList<DiskGenomicNumericProvider>();
+
+	@BeforeClass
+	public static void createFile() throws IOException {
+		RandomNumbers rnd = new RandomNumbers(42);
+		DiskGenomicNumericBuilder builder = new DiskGenomicNumericBuilder(PATH);
+		for (int i=0; i<LENGTH/10; i++) {
+			int[] v = new int[CONDITIONS];
+			for (int c=0; c<v.length; c++)
+				v[c] = rnd.getUnif(0, 100);
+			builder.addValue(ref, rnd.getUnif(0, LENGTH), v);
+		}
+		builder.build();
+
+		regions = new ArrayGenomicRegion[REGIONS];
+		for (int i=0; i<regions.length; i++) {
+			int start = rnd.getUnif(0, LENGTH-10_000);
+			regions[i] = new ArrayGenomicRegion(start, start+rnd.getUnif(500, 2000), start+rnd.getUnif(3000, 5000), start+rnd.getUnif(6000, 10_000));
+		}
+
+		shared = new DiskGenomicNumericProvider(PATH,true);
+		expected = sum(new DiskGenomicNumericProvider(PATH));
+	}
+
+	@AfterClass
+	public static void deleteFile() throws Exception {
+		shared.close();
+		for (DiskGenomicNumericProvider p : opened)
+			p.close();
+		new File(PATH).delete();
+	}
+
+	private static double sum(DiskGenomicNumericProvider provider) {
+		double re = 0;
+		for (ArrayGenomicRegion r : regions)
+			for (int c=0; c<CONDITIONS; c++)
+				re+=provider.getSum(ref, r, c);
+		return re;
+	}
+
+	@Test
+	public void openPerThread() throws IOException {
+		DiskGenomicNumericProvider provider = new DiskGenomicNumericProvider(PATH);
+		synchronized (opened) {
+			opened.add(provider);
+		}
+		assertEquals(expected, sum(provider), 0);
+	}
+
+	@Test
+	public void sharedConcurrent() {
+		assertEquals(expected, sum(shared), 0);
+	}
+
+}
@@ -0,0 +1,150 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gedi.centeredDiskIntervalTree.CenteredDiskIntervalTreeStorage;
+import gedi.core.data.reads.AlignedReadsData;
+import gedi.core.data.reads.AlignedReadsDataFactory;
+import gedi.core.data.reads.DefaultAlignedReadsData;
+import gedi.core.data.reads.FlatAlignedReadsData;
+import gedi.core.data.reads.ReadCountMode;
+import gedi.core.reference.Chromosome;
+import gedi.core.reference.ReferenceSequence;
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.core.region.intervalTree.MemoryIntervalTreeStorage;
+import gedi.util.math.stat.RandomNumbers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FlatAlignedReadsDataTest {
+
+	private static String write(int conditions, boolean idsAndWeights) throws IOException {
+		RandomNumbers rnd = new RandomNumbers(conditions);
+		MemoryIntervalTreeStorage<DefaultAlignedReadsData> mem = new MemoryIntervalTreeStorage<DefaultAlignedReadsData>(DefaultAlignedReadsData.class);
+		for (int i=0; i<2000; i++) {
+			AlignedReadsDataFactory fac = new AlignedReadsDataFactory(conditions).start();
+			int d = rnd.getUnif(1, 4);
+			for (int j=0; j<d; j++) {
+				fac.newDistinctSequence().setMultiplicity(rnd.getUnif(0, 3));
+				for (int c=0; c<conditions; c++)
+					fac.setCount(c, rnd.getUnif()<0.5?0:rnd.getUnif(1, 1000));
+				if (idsAndWeights) {
+					fac.setId(i*4+j);
+					fac.setWeight(1f/rnd.getUnif(1, 5));
+				}
+				if (j>0) fac.addMismatch(j, 'A', "CGTN".charAt(rnd.getUnif(0, 4)));
+				if (j>1) fac.addDeletion(10, "AC");
+				if (j>1) fac.addInsertion(20, "GGT");
+				if (j>1) fac.addSoftclip(0, "TTTA");
+			}
+			int s = rnd.getUnif(0, 100_000);
+			mem.add(Chromosome.obtain(rnd.getUnif()<0.5?"1+":"1-"), new ArrayGenomicRegion(s, s+rnd.getUnif(20, 50)), fac.create());
+		}
+		
+		File f = File.createTempFile("flat", ".cit");
+		f.delete();
+		f.deleteOnExit();
+		CenteredDiskIntervalTreeStorage<DefaultAlignedReadsData> cit = new CenteredDiskIntervalTreeStorage<DefaultAlignedReadsData>(f.getPath(), DefaultAlignedReadsData.class);
+		cit.fill(mem);
+		return f.getPath();
+	}
+	
+	private static void compare(String path) throws IOException {
+		CenteredDiskIntervalTreeStorage<AlignedReadsData> def = new CenteredDiskIntervalTreeStorage<AlignedReadsData>(path);
+		ArrayList<AlignedReadsData> expected = new ArrayList<AlignedReadsData>();
+		for (ReferenceSequence ref : def.getReferenceSequences())
+			def.iterateMutableReferenceGenomicRegions(ref).forEachRemaining(r->expected.add(r.getData()));
+		assertTrue(expected.get(0) instanceof DefaultAlignedReadsData);
+		
+		CenteredDiskIntervalTreeStorage<AlignedReadsData> flat = new CenteredDiskIntervalTreeStorage<AlignedReadsData>(path);
+		flat.setSupplier(FlatAlignedReadsData::new);
+		flat.setReuseData(true);
+		Set<AlignedReadsData> reused = Collections.newSetFromMap(new IdentityHashMap<AlignedReadsData,Boolean>());
+		int[] index = {0};
+		for (ReferenceSequence ref : flat.getReferenceSequences())
+			flat.iterateMutableReferenceGenomicRegions(ref).forEachRemaining(r->{
+				AlignedReadsData e = expected.get(index[0]++);
+				assertTrue(r.getData() instanceof FlatAlignedReadsData);
+				assertEquals(e.toString(), r.getData().toString());
+				assertEquals(e, r.getData());
+				assertEquals(e.hashCode(), r.getData().hashCode());
+				assertEquals(e.getTotalCountOverall(ReadCountMode.Weight), r.getData().getTotalCountOverall(ReadCountMode.Weight), 0);
+				for (int d=0; d<e.getDistinctSequences(); d++) {
+					assertEquals(e.getId(d), r.getData().getId(d));
+					assertEquals(e.getWeight(d), r.getData().getWeight(d), 0);
+				}
+				reused.add(r.getData());
+			});
+		assertEquals(expected.size(), index[0]);
+		// one object per reference sequence
+		assertEquals(flat.getReferenceSequences().size(), reused.size());
+		
+		// intersecting queries
+		ReferenceSequence ref = Chromosome.obtain("1+");
+		ArrayList<String> a = new ArrayList<String>();
+		def.iterateIntersectingMutableReferenceGenomicRegions(ref, new ArrayGenomicRegion(1000, 20000)).forEachRemaining(r->a.add(r.toLocationString()+r.getData()));
+		ArrayList<String> b = new ArrayList<String>();
+		flat.iterateIntersectingMutableReferenceGenomicRegions(ref, new ArrayGenomicRegion(1000, 20000)).forEachRemaining(r->b.add(r.toLocationString()+r.getData()));
+		assertTrue(a.size()>0);
+		assertEquals(a, b);
+	}
+	
+	@Test
+	public void denseTest() throws IOException {
+		compare(write(2, false));
+	}
+	
+	@Test
+	public void sparseTest() throws IOException {
+		compare(write(8, true));
+	}
+	
+	@Test
+	public void reuseBeforeFillTest() throws IOException {
+		String path = write(2, false);
+		CenteredDiskIntervalTreeStorage<DefaultAlignedReadsData> mem = new CenteredDiskIntervalTreeStorage<DefaultAlignedReadsData>(path);
+		
+		File f = File.createTempFile("reuse", ".cit");
+		f.delete();
+		f.deleteOnExit();
+		// set on a storage opened for writing, the trees read after filling must pick it up
+		CenteredDiskIntervalTreeStorage<DefaultAlignedReadsData> cit = new CenteredDiskIntervalTreeStorage<DefaultAlignedReadsData>(f.getPath(), DefaultAlignedReadsData.class);
+		cit.setReuseData(true);
+		cit.fill(mem);
+		assertTrue(cit.isReuseData());
+		
+		Set<AlignedReadsData> reused = Collections.newSetFromMap(new IdentityHashMap<AlignedReadsData,Boolean>());
+		for (ReferenceSequence ref : cit.getReferenceSequences())
+			cit.iterateMutableReferenceGenomicRegions(ref).forEachRemaining(r->reused.add(r.getData()));
+		assertEquals(cit.getReferenceSequences().size(), reused.size());
+	}
+
+}
@@ -0,0 +1,178 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import gedi.core.reference.Chromosome;
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.core.region.ImmutableReferenceGenomicRegion;
+import gedi.core.region.feature.GenomicRegionFeature;
+import gedi.core.region.feature.GenomicRegionFeatureProgram;
+import gedi.core.region.feature.features.AbstractFeature;
+
+import java.util.Set;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class GenomicRegionFeatureProgramTest {
+
+	private static final int N = 100_000;
+
+	@Test
+	public void singleThreadTest() {
+		run(0);
+	}
+
+	@Test
+	public void multiThreadTest() {
+		run(1);
+		run(4);
+	}
+
+	@Test
+	public void exceptionTest() {
+		GenomicRegionFeatureProgram<Void> program = new GenomicRegionFeatureProgram<Void>();
+		CountFeature count = new CountFeature(N/2);
+		count.setId("count");
+		program.add(count);
+		program.setThreads(4);
+		program.setIntermediateInterval(0);
+
+		program.begin();
+		try {
+			for (int i=0; i<N; i++)
+				program.accept(region(i));
+			program.end();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Test", e.getCause().getMessage());
+		}
+	}
+
+	@Test
+	public void acceptExceptionTest() throws InterruptedException {
+		GenomicRegionFeatureProgram<Void> program = new GenomicRegionFeatureProgram<Void>();
+		CountFeature count = new CountFeature(1000);
+		count.setId("count");
+		program.add(count);
+		program.setThreads(4);
+		program.setIntermediateInterval(0);
+
+		program.begin();
+		try {
+			// the failure is noticed when one of the next blocks is submitted
+			for (int i=0; i<N; i++)
+				program.accept(region(i));
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Test", e.getCause().getMessage());
+		}
+		assertFalse(program.isRunning());
+		for (Thread t : Thread.getAllStackTraces().keySet())
+			if (t.getName().startsWith("RunnerThread"))
+				t.join(1000);
+		for (Thread t : Thread.getAllStackTraces().keySet())
+			assertFalse(t.getName().startsWith("RunnerThread") && t.isAlive());
+
+		try {
+			program.end();
+			fail();
+		} catch (RuntimeException e) {
+			assertEquals("Test", e.getCause().getMessage());
+		}
+	}
+
+	private void run(int threads) {
+		GenomicRegionFeatureProgram<Void> program = new GenomicRegionFeatureProgram<Void>();
+		CountFeature count = new CountFeature(-1);
+		count.setId("count");
+		program.add(count);
+		program.setThreads(threads);
+		program.setIntermediateInterval(0);
+		program.setBenchmark(true);
+
+		program.begin();
+		for (int i=0; i<N; i++)
+			program.accept(region(i));
+		program.end();
+
+		assertEquals(N, count.total);
+		assertEquals((long)N*(N-1)/2, count.totalSum);
+
+		long[][] metrics = program.getBenchmarkMetrics();
+		assertNotNull(metrics);
+		assertEquals(N, metrics[0][0]);
+	}
+
+	private static ImmutableReferenceGenomicRegion<Void> region(int i) {
+		return new ImmutableReferenceGenomicRegion<Void>(Chromosome.obtain("chr1+"), new ArrayGenomicRegion(i,i+10));
+	}
+
+	private static class CountFeature extends AbstractFeature<Integer> {
+
+		private int failAt;
+		private int count;
+		private long sum;
+
+		private int total;
+		private long totalSum;
+
+		public CountFeature(int failAt) {
+			this.failAt = failAt;
+		}
+
+		@Override
+		protected void accept_internal(Set<Integer> t) {
+			int start = referenceRegion.getRegion().getStart();
+			if (start==failAt) throw new RuntimeException("Test");
+			count++;
+			sum+=start;
+		}
+
+		@Override
+		public void produceResults(GenomicRegionFeature<Integer>[] o) {
+			if (o==null) {
+				total = count;
+				totalSum = sum;
+			} else {
+				total = 0;
+				totalSum = 0;
+				for (GenomicRegionFeature<Integer> f : o) {
+					total+=((CountFeature)f).count;
+					totalSum+=((CountFeature)f).sum;
+				}
+			}
+		}
+
+		@Override
+		public GenomicRegionFeature<Integer> copy() {
+			CountFeature re = new CountFeature(failAt);
+			re.copyProperties(this);
+			return re;
+		}
+
+	}
+
+}
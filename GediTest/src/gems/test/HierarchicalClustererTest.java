@@ -0,0 +1,154 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gedi.util.algorithm.clustering.hierarchical.CondensedMatrix;
+import gedi.util.algorithm.clustering.hierarchical.HierarchicalCluster;
+import gedi.util.algorithm.clustering.hierarchical.HierarchicalClusterer;
+import gedi.util.algorithm.clustering.hierarchical.HierarchicalClusterer.ClusteringMode;
+import gedi.util.algorithm.clustering.hierarchical.HierarchicalClusterer.MergeListener;
+import gedi.util.functions.DistanceMeasure;
+import gedi.util.functions.Measure.MeasureType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class HierarchicalClustererTest {
+
+	private static Integer[] createPoints(int n, double[][] coords, long seed) {
+		Random rnd = new Random(seed);
+		Integer[] re = new Integer[n];
+		for (int i=0; i<n; i++) {
+			re[i] = i;
+			coords[i] = new double[] {rnd.nextGaussian()+(i%3)*4, rnd.nextGaussian(), rnd.nextGaussian()*2};
+		}
+		return re;
+	}
+
+	private static double value(double[][] coords, int i, int j, MeasureType type) {
+		double d = DistanceMeasure.L2.applyAsDouble(coords[i], coords[j]);
+		return type==MeasureType.Distance?d:1/(1+d);
+	}
+
+	private static ArrayList<Double> values(HierarchicalCluster<Integer> root) {
+		ArrayList<Double> re = new ArrayList<Double>();
+		root.dfs(c->{if (!c.isSingleton()) re.add(c.getValue());});
+		Collections.sort(re);
+		return re;
+	}
+
+	private static HashSet<TreeSet<Integer>> partition(HierarchicalCluster<Integer> root, double cutoff, MeasureType type) {
+		HashSet<TreeSet<Integer>> re = new HashSet<TreeSet<Integer>>();
+		for (HierarchicalCluster<Integer> c : root.cut(cutoff, type==MeasureType.Distance))
+			re.add(new TreeSet<Integer>(c));
+		return re;
+	}
+
+	private static void assertSameDendrogram(HierarchicalCluster<Integer> expected, HierarchicalCluster<Integer> actual, MeasureType type, double tolerance) {
+		ArrayList<Double> ev = values(expected);
+		ArrayList<Double> av = values(actual);
+		assertEquals(ev.size(), av.size());
+		for (int i=0; i<ev.size(); i++)
+			assertEquals(ev.get(i), av.get(i), tolerance);
+		for (int i=ev.size()/10; i<ev.size(); i+=ev.size()/10) {
+			// cut between two merge values
+			double cutoff = (ev.get(i)+ev.get(i-1))/2;
+			assertEquals(partition(expected, cutoff, type), partition(actual, cutoff, type));
+		}
+	}
+
+	@Test
+	public void condensedTest() throws IOException {
+		int n = 300;
+		double[][] coords = new double[n][];
+		createPoints(n, coords, 17);
+
+		for (MeasureType type : new MeasureType[] {MeasureType.Distance, MeasureType.Similarity})
+			for (ClusteringMode mode : ClusteringMode.values()) {
+				double[][] full = new double[n][n];
+				CondensedMatrix dm = CondensedMatrix.doubles(n);
+				CondensedMatrix fm = CondensedMatrix.floats(n);
+				File file = File.createTempFile("condensed", ".bin");
+				CondensedMatrix mm = CondensedMatrix.mapped(file, n, false);
+				for (int i=0; i<n; i++)
+					for (int j=i+1; j<n; j++) {
+						double v = value(coords, i, j, type);
+						full[i][j] = full[j][i] = v;
+						dm.set(i, j, v);
+						fm.set(i, j, v);
+						mm.set(i, j, v);
+					}
+
+				HierarchicalClusterer<Integer> clusterer = new HierarchicalClusterer<Integer>();
+				clusterer.setMode(mode);
+				HierarchicalCluster<Integer> expected = clusterer.cluster(null, full, null, type, false);
+				assertSameDendrogram(expected, clusterer.cluster(null, dm, type), type, 1E-12);
+				assertSameDendrogram(expected, clusterer.cluster(null, fm, type), type, 1E-5);
+				assertSameDendrogram(expected, clusterer.cluster(null, mm, type), type, 1E-5);
+				file.delete();
+			}
+	}
+
+	@Test
+	public void slinkTest() {
+		int n = 5000;
+		double[][] coords = new double[n][];
+		Integer[] points = createPoints(n, coords, 42);
+		DistanceMeasure<Integer> measure = (i,j)->value(coords, i, j, MeasureType.Distance);
+
+		HierarchicalClusterer<Integer> clusterer = new HierarchicalClusterer<Integer>();
+		ArrayList<double[]> merges = new ArrayList<double[]>();
+		MergeListener<Integer> listener = (c,i1,i2)->{
+			if (!c.isSingleton()) {
+				assertTrue(c.leftChild().contains(i1));
+				assertTrue(c.rightChild().contains(i2));
+				merges.add(new double[] {c.getValue(), i1, i2});
+			}
+		};
+		clusterer.addMergeListener(listener);
+		HierarchicalCluster<Integer> parallel = clusterer.cluster(points, measure, 4);
+		assertEquals(n, parallel.size());
+		assertEquals(n-1, merges.size());
+		for (double[] m : merges)
+			assertEquals(m[0], value(coords, (int)m[1], (int)m[2], MeasureType.Distance), 0);
+
+		CondensedMatrix matrix = CondensedMatrix.doubles(n).fill(points, measure, 4);
+		assertEquals(measure.applyAsDouble(17, 4711), matrix.get(4711, 17), 0);
+		assertSameDendrogram(parallel, clusterer.cluster(points, matrix, MeasureType.Distance), MeasureType.Distance, 0);
+
+		clusterer.removeMergeListener(listener);
+		clusterer.setMode(ClusteringMode.UPGMA);
+		HierarchicalCluster<Integer> upgma = clusterer.cluster(points, measure, 4);
+		assertEquals(n, upgma.size());
+		assertTrue(values(upgma).get(n-2)>=values(parallel).get(n-2));
+	}
+
+}
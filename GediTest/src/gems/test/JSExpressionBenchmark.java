@@ -0,0 +1,113 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import gedi.util.nashorn.CompiledJSFunction;
+import gedi.util.nashorn.CompiledJSPredicate;
+import gedi.util.nashorn.JSFunction;
+import gedi.util.nashorn.JSPredicate;
+
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import javax.script.ScriptException;
+
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+/**
+ * Evaluates a condition and a function (as used in GenomicRegionFeature programs) for many records, comparing nashorn
+ * to the expressions compiled by {@link gedi.util.nashorn.JSExpressionCompiler}; divide the round time by N*REPEAT for the per record cost
+ * (the records are evaluated repeatedly to measure the evaluation and not memory access).
+ * @author erhard
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+public class JSExpressionBenchmark {
+	@Rule
+	public BenchmarkRule benchmarkRun = new BenchmarkRule();
+
+	private static final int N = 10_000;
+	private static final int REPEAT = 200;
+
+	private static final String CONDITION = "this.count>2 && this.name.indexOf('e')>=0 || this.score<0";
+	private static final String FUNCTION = "this.count>2 ? this.name+'_'+this.values[1] : 'none'";
+
+	private static JSExpressionCompilerTest.Record[] records;
+	private static int expectedCount;
+	private static int expectedLength;
+
+	private static Predicate<JSExpressionCompilerTest.Record> compiledCondition;
+	private static Function<JSExpressionCompilerTest.Record,Object> compiledFunction;
+	private static Predicate<JSExpressionCompilerTest.Record> nashornCondition;
+	private static Function<JSExpressionCompilerTest.Record,Object> nashornFunction;
+
+	@BeforeClass
+	public static void createRecords() throws ScriptException {
+		records = new JSExpressionCompilerTest.Record[N];
+		for (int i=0; i<records.length; i++)
+			records[i] = new JSExpressionCompilerTest.Record(i%5, i%3==0?"Gene"+i%100:"abc", i%7-1.5, new int[] {i%2,i%11,i%13});
+		for (JSExpressionCompilerTest.Record r : records) {
+			if (r.count>2 && r.name.indexOf('e')>=0 || r.getScore()<0) expectedCount++;
+			expectedLength+=(r.count>2?r.name+"_"+r.getValues()[1]:"none").length();
+		}
+
+		// setup (compilation) is not measured
+		compiledCondition = new CompiledJSPredicate<JSExpressionCompilerTest.Record>(CONDITION, code(CONDITION), JSExpressionCompilerTest.Record.class);
+		compiledFunction = new CompiledJSFunction<JSExpressionCompilerTest.Record,Object>(FUNCTION, code(FUNCTION), JSExpressionCompilerTest.Record.class);
+		nashornCondition = new JSPredicate<JSExpressionCompilerTest.Record>(true, code(CONDITION));
+		nashornFunction = new JSFunction<JSExpressionCompilerTest.Record,Object>(true, code(FUNCTION));
+	}
+
+	private static void run(Predicate<JSExpressionCompilerTest.Record> condition, Function<JSExpressionCompilerTest.Record,Object> function) {
+		for (int i=0; i<REPEAT; i++) {
+			int count = 0;
+			int length = 0;
+			for (JSExpressionCompilerTest.Record r : records) {
+				if (condition.test(r)) count++;
+				length+=function.apply(r).toString().length();
+			}
+			assertEquals(expectedCount, count);
+			assertEquals(expectedLength, length);
+		}
+	}
+
+	private static String code(String expression) {
+		return "function() { return "+expression+"; }";
+	}
+
+	@Test
+	public void compiled() {
+		run(compiledCondition, compiledFunction);
+	}
+
+	@Test
+	public void nashorn() {
+		run(nashornCondition, nashornFunction);
+	}
+
+}
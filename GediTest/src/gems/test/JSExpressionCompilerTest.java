@@ -0,0 +1,185 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gedi.util.nashorn.CompiledJSFunction;
+import gedi.util.nashorn.CompiledJSPredicate;
+import gedi.util.nashorn.JSExpressionCompiler;
+import gedi.util.nashorn.JSFunction;
+import gedi.util.nashorn.JSPredicate;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.script.ScriptException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class JSExpressionCompilerTest {
+
+	public static class Record {
+		public int count;
+		public String name;
+		private double score;
+		private int[] values;
+		private List<String> tags;
+		private Map<String,Integer> attributes = new HashMap<String, Integer>();
+
+		public Record(int count, String name, double score, int[] values, String... tags) {
+			this.count = count;
+			this.name = name;
+			this.score = score;
+			this.values = values;
+			this.tags = Arrays.asList(tags);
+			attributes.put("len", name.length());
+		}
+
+		public double getScore() {
+			return score;
+		}
+		public int[] getValues() {
+			return values;
+		}
+		public List<String> getTags() {
+			return tags;
+		}
+		public Map<String, Integer> getAttributes() {
+			return attributes;
+		}
+		public boolean isEmpty() {
+			return count==0;
+		}
+		public int getInput(int index) {
+			return values[index];
+		}
+		public Integer getBoxed() {
+			return count;
+		}
+		public Record getSelf() {
+			return this;
+		}
+	}
+
+	private static final Record[] records = {
+		new Record(3, "abc", 1.5, new int[] {1,2,3}, "x", "y"),
+		new Record(0, "", 0, new int[] {0,0,0}),
+		new Record(10, "Gene1", -2.25, new int[] {5,0,7}, "x"),
+	};
+
+	private static final String[] predicates = {
+		"this.count>2",
+		"this.count==3 && this.name=='abc'",
+		"this.name==='abc' || this.score<0",
+		"!this.empty",
+		"this.values[1]+this.values[2]>=this.count",
+		"this.getInput(0)%2==1",
+		"this.tags.size()>0 && this.tags.get(0)==='x'",
+		"this.attributes.len==3",
+		"this.name.indexOf('e')>=0",
+		"this.name.substring(0,4)=='Gene'",
+		"this.boxed==this.count",
+		"this.boxed===10",
+		"this.self.score*2>1",
+		"Math.abs(this.score)>=2 ? true : this.count<5",
+		"this.name.length==this.attributes.len",
+		"(this.count-1)/2==1",
+		"this.name!=null",
+	};
+
+	private static final String[] functions = {
+		"this.count",
+		"this.count*2+1",
+		"this.score/2",
+		"this.name+'_'+this.count",
+		"'score: '+this.score",
+		"this.count>2 ? this.name : 'none'",
+		"this.values.length",
+		"Math.max(this.count, Math.min(this.getInput(0), 4))",
+		"Math.sqrt(this.count)*Math.PI",
+		"Math.round(this.score)",
+		"this.name.toUpperCase()",
+		"this.name.charAt(1)",
+		"this.tags.size()>0 ? this.tags.get(0) : null",
+		"this.values[this.count%3]-this.score",
+		"-this.count",
+		"this.count>2",
+		"this.attributes.len",
+	};
+
+	/**
+	 * Statements and expressions outside of the compiled subset
+	 */
+	private static final String[] fallbacks = {
+		"this.name.split('b').length",
+		"[this.count, 1].length",
+		"typeof this.name=='string'",
+		"this.count>2 && this.name",
+		"this.count & 1",
+	};
+
+	@Test
+	public void predicateTest() throws ScriptException {
+		for (String js : predicates) {
+			CompiledJSPredicate<Record> compiled = new CompiledJSPredicate<Record>(js, "function() { return "+js+"; }", Record.class);
+			assertTrue(js, compiled.isCompiled(Record.class));
+			JSPredicate<Record> nashorn = new JSPredicate<Record>(true, "function() { return "+js+"; }");
+			for (Record r : records)
+				assertEquals(js, nashorn.test(r), compiled.test(r));
+		}
+	}
+
+	@Test
+	public void functionTest() throws ScriptException {
+		for (String js : functions) {
+			CompiledJSFunction<Record,Object> compiled = new CompiledJSFunction<Record,Object>(js, "function() { return "+js+"; }", Record.class);
+			assertTrue(js, compiled.isCompiled(Record.class));
+			JSFunction<Record,Object> nashorn = new JSFunction<Record,Object>(true, "function() { return "+js+"; }");
+			for (Record r : records)
+				assertEquals(js, nashorn.apply(r), compiled.apply(r));
+		}
+	}
+
+	@Test
+	public void fallbackTest() throws ScriptException {
+		for (String js : fallbacks) {
+			CompiledJSFunction<Record,Object> compiled = new CompiledJSFunction<Record,Object>(js, "function() { return "+js+"; }", Record.class);
+			assertFalse(js, compiled.isCompiled(Record.class));
+			JSFunction<Record,Object> nashorn = new JSFunction<Record,Object>(true, "function() { return "+js+"; }");
+			for (Record r : records)
+				assertEquals(js, nashorn.apply(r), compiled.apply(r));
+		}
+
+		// unknown properties cannot be compiled, but are still evaluated by nashorn
+		CompiledJSPredicate<Record> compiled = new CompiledJSPredicate<Record>("this.unknown==null", "function() { return this.unknown==null; }", Record.class);
+		assertFalse(compiled.isCompiled(Record.class));
+		assertTrue(compiled.test(records[0]));
+
+		assertEquals(null, JSExpressionCompiler.parse("this.count; this.name", false));
+		assertEquals(null, JSExpressionCompiler.parse("this.count=2", false));
+	}
+
+}
@@ -0,0 +1,86 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import gedi.util.orm.BinaryBlob;
+import gedi.util.orm.OrmSerializer;
+
+import java.io.IOException;
+
+import org.junit.BeforeClass;
+import org.junit.FixMethodOrder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+
+/**
+ * Serializes and deserializes many small objects (as in {@link OrmSerializeTest#testGenerated()}), comparing the reflective
+ * {@link OrmSerializer} to the generated per-class serializers.
+ * @author erhard
+ *
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+@BenchmarkOptions(benchmarkRounds = 5, warmupRounds = 2)
+public class OrmSerializeBenchmark {
+	@Rule
+	public BenchmarkRule benchmarkRun = new BenchmarkRule();
+
+	private static final int N = 200_000;
+
+	private static OrmSerializeTest.PrimitiveClass[] objects;
+
+	@BeforeClass
+	public static void createObjects() {
+		objects = new OrmSerializeTest.PrimitiveClass[N];
+		for (int i=0; i<objects.length; i++)
+			objects[i] = new OrmSerializeTest.PrimitiveClass(i%32);
+	}
+
+	private static void run(OrmSerializer s) throws IOException {
+		BinaryBlob blob = new BinaryBlob(1<<20);
+		for (OrmSerializeTest.PrimitiveClass o : objects)
+			s.serialize(blob, o);
+		blob.finish(false);
+
+		long sum = 0;
+		for (int i=0; i<objects.length; i++) {
+			OrmSerializeTest.PrimitiveClass o = s.deserialize(blob);
+			sum+=o.n;
+		}
+		long expected = 0;
+		for (OrmSerializeTest.PrimitiveClass o : objects)
+			expected+=o.n;
+		assertEquals(expected, sum);
+	}
+
+	@Test
+	public void generated() throws IOException {
+		run(new OrmSerializer().setGenerated(true));
+	}
+
+	@Test
+	public void reflection() throws IOException {
+		run(new OrmSerializer());
+	}
+
+}
@@ -40,6 +40,7 @@ import gedi.util.math.stat.factor.Factor;
 import gedi.util.mutable.MutableInteger;
 import gedi.util.mutable.MutablePair;
 import gedi.util.orm.ClassTree;
+import gedi.util.orm.OrmClassSerializer;
 import gedi.util.orm.OrmSerializer;
 
 import java.io.IOException;
@@ -152,6 +153,26 @@ public class OrmSerializeTest {
 		
 	}
 	
+	@Test
+	public void testChromosome() throws IOException {
+		Chromosome chr = Chromosome.obtain("chr16-");
+		
+		OrmSerializer s = new OrmSerializer();
+		PageFileWriter out = new PageFileWriter("data/orm.data");
+		s.serialize(out, chr);
+		assertEquals(9, out.position()); // class id, object id, name "16" and strand, as before ids were introduced
+		
+		PageFile in = out.read(true);
+		Chromosome chr2 = s.deserialize(in);
+		assertTrue(in.eof());
+		assertSame(chr, chr2);
+		assertEquals(chr.getId(), chr2.getId());
+		in.close();
+		
+		ClassTree<Chromosome> tree = new ClassTree<Chromosome>(chr);
+		assertSame(chr, tree.fromBuffer(tree.toBuffer(chr)));
+	}
+	
 	
 	@Test
 	public void testSimple() throws IOException {
@@ -238,6 +259,113 @@ public class OrmSerializeTest {
 	
 	
 	
+	@Test
+	public void testGenerated() throws IOException {
+		PrimitiveClass[] o = {new PrimitiveClass(1), new PrimitiveClass(2), new PrimitiveClass(3000)};
+		o[1].i = null;
+		
+		OrmSerializer s = new OrmSerializer();
+		PageFileWriter out = new PageFileWriter("data/orm.data");
+		for (PrimitiveClass p : o)
+			s.serialize(out, p);
+		s.serialize(out, new SimpleClass());
+		PageFile in = out.read(true);
+		byte[] reflection = new byte[(int) in.size()];
+		in.get(reflection, 0, reflection.length);
+		in.close();
+		
+		OrmSerializer g = new OrmSerializer().setGenerated(true);
+		out = new PageFileWriter("data/orm.data");
+		for (PrimitiveClass p : o)
+			g.serialize(out, p);
+		g.serialize(out, new SimpleClass());
+		in = out.read(true);
+		byte[] generated = new byte[(int) in.size()];
+		in.get(generated, 0, generated.length);
+		
+		assertArrayEquals(reflection, generated);
+		assertNotNull(OrmClassSerializer.get(PrimitiveClass.class));
+		
+		in.position(0);
+		for (PrimitiveClass p : o)
+			assertEquals(p, g.deserialize(in));
+		assertEquals(new SimpleClass(),g.deserialize(in));
+		assertTrue(in.eof());
+		in.close();
+	}
+	
+	
+	static class PrimitiveClass {
+		boolean z;
+		byte b;
+		short s;
+		int n;
+		long l;
+		char c;
+		float f;
+		double d;
+		byte[] ba;
+		short[] sa;
+		int[] i;
+		long[] la;
+		char[] ca;
+		float[] fa;
+		double[] da;
+		Level level;
+		
+		public PrimitiveClass(int size) {
+			z = size%2==0;
+			b = (byte) -size;
+			s = (short) (size*3);
+			n = -size*7;
+			l = Long.MAX_VALUE-size;
+			c = (char) ('A'+size%26);
+			f = size/3f;
+			d = -size/7.0;
+			ba = new byte[size];
+			sa = new short[size];
+			i = new int[size];
+			la = new long[size];
+			ca = new char[size];
+			fa = new float[size];
+			da = new double[size];
+			for (int j=0; j<size; j++) {
+				ba[j] = (byte) j;
+				sa[j] = (short) -j;
+				i[j] = j*j;
+				la[j] = -(long)j*j*j;
+				ca[j] = (char) j;
+				fa[j] = j/7f;
+				da[j] = -j/3.0;
+			}
+			level = Level.values()[size%Level.values().length];
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof PrimitiveClass)) return false;
+			PrimitiveClass o = (PrimitiveClass) obj;
+			return z==o.z && b==o.b && s==o.s && n==o.n && l==o.l && c==o.c && Float.compare(f, o.f)==0 && Double.compare(d, o.d)==0
+					&& Arrays.equals(ba, o.ba) && Arrays.equals(sa, o.sa) && Arrays.equals(i, o.i) && Arrays.equals(la, o.la)
+					&& Arrays.equals(ca, o.ca) && Arrays.equals(fa, o.fa) && Arrays.equals(da, o.da) && level==o.level;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(i);
+		}
+		
+		@Override
+		public String toString() {
+			return "PrimitiveClass [n="+n+", i="+Arrays.toString(i)+"]";
+		}
+		
+	}
+	
+	enum Level {
+		Low, Mid, High
+	}
+	
 	private static class SimpleClass {
 		String a;
 		int[] x;
@@ -0,0 +1,171 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import gedi.core.processing.SequenceExtractingProcessor;
+import gedi.core.reference.Chromosome;
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.core.region.GenomicRegion;
+import gedi.core.region.MutableReferenceGenomicRegion;
+import gedi.core.sequence.MemorySequenceProvider;
+import gedi.core.sequence.PackedSequenceProvider;
+import gedi.core.sequence.PackedSequenceProvider.PackedSequence;
+import gedi.core.sequence.PackedSequenceWriter;
+import gedi.util.io.text.LineOrientedFile;
+import gedi.util.math.stat.RandomNumbers;
+import gedi.util.sequence.Alphabet;
+import gedi.util.sequence.KmerIteratorBuilder;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PackedSequenceTest {
+
+	private static String path = "data/packed_test.pseq";
+	private static MemorySequenceProvider mem = new MemorySequenceProvider();
+	private static PackedSequenceProvider packed;
+
+	@BeforeClass
+	public static void createFile() throws IOException {
+		RandomNumbers rnd = new RandomNumbers(42);
+		mem.add("1", randomSequence(rnd, 100_003));
+		mem.add("2", randomSequence(rnd, 3));
+		mem.add("3", randomSequence(rnd, 2_000_001));
+
+		PackedSequenceWriter out = new PackedSequenceWriter(path);
+		out.addAll(mem);
+		out.close();
+		packed = new PackedSequenceProvider(path);
+	}
+
+	@AfterClass
+	public static void deleteFile() throws IOException {
+		packed.close();
+		new File(path).delete();
+	}
+
+	private static String randomSequence(RandomNumbers rnd, int length) {
+		String bases = "ACGTacgtNnRY";
+		StringBuilder sb = new StringBuilder();
+		while (sb.length()<length) {
+			char c = bases.charAt(rnd.getUnif(0, bases.length()));
+			int run = rnd.getUnif()<0.9?1:rnd.getUnif(1, 50);
+			for (int i=0; i<run && sb.length()<length; i++)
+				sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	private static String expected(CharSequence s) {
+		return s.toString().replaceAll("[^ACGTacgtn]", "N").replaceAll("[^ACGTacgtN]", "n");
+	}
+
+	@Test
+	public void sequenceTest() {
+		assertEquals(mem.getSequenceNames(), packed.getSequenceNames());
+		for (String n : mem.getSequenceNames()) {
+			int len = mem.getLength(n);
+			assertEquals(len, packed.getLength(n));
+			assertEquals(expected(mem.getPlusSequence(n, new ArrayGenomicRegion(0, len))), packed.getPlusSequence(n, new ArrayGenomicRegion(0, len)).toString());
+		}
+		assertEquals(mem.getLength("1"), packed.getLength("chr1"));
+		assertEquals(-1, packed.getLength("chrX"));
+	}
+
+	@Test
+	public void regionTest() {
+		RandomNumbers rnd = new RandomNumbers(13);
+		for (String n : mem.getSequenceNames()) {
+			int len = mem.getLength(n);
+			for (int i=0; i<1000; i++) {
+				int s = rnd.getUnif(0, len);
+				int e = rnd.getUnif(s+1, Math.min(len, s+200)+1);
+				GenomicRegion reg = new ArrayGenomicRegion(s, e);
+				if (e-s>10)
+					reg = new ArrayGenomicRegion(s, s+3, s+5, e);
+				String exp = expected(mem.getPlusSequence(n, reg));
+				CharSequence seq = packed.getPlusSequence(n, reg);
+				assertEquals(exp, seq.toString());
+				assertEquals(exp.hashCode(), seq.hashCode());
+				for (int j=0; j<exp.length(); j++)
+					assertEquals(exp.charAt(j), seq.charAt(j));
+				assertEquals(expected(mem.getSequence(Chromosome.obtain(n, false), reg)), packed.getSequence(Chromosome.obtain(n, false), reg).toString());
+				assertEquals(expected(mem.getPlusSequence(n, s)+""), packed.getPlusSequence(n, s)+"");
+			}
+		}
+	}
+
+	@Test
+	public void viewTest() {
+		String exp = expected(mem.getPlusSequence("1", new ArrayGenomicRegion(1000, 2000)));
+		PackedSequence view = packed.getPlusSequence("1", 1000, 2000);
+		assertEquals(view, exp);
+		PackedSequence sub = view.subSequence(13, 517).subSequence(7, 400);
+		assertEquals(exp.substring(20, 413), sub.toString());
+		char[] buf = new char[10];
+		sub.getChars(5, 15, buf, 0);
+		assertEquals(exp.substring(25, 35), new String(buf));
+	}
+
+	@Test
+	public void extractTest() throws Exception {
+		LineOrientedFile out = new LineOrientedFile("data/packed_extract.fasta");
+		MutableReferenceGenomicRegion<Void> plus = new MutableReferenceGenomicRegion<Void>().set(Chromosome.obtain("3+"), new ArrayGenomicRegion(1000, 30_000));
+		MutableReferenceGenomicRegion<Void> minus = new MutableReferenceGenomicRegion<Void>().set(Chromosome.obtain("1-"), new ArrayGenomicRegion(17, 70, 80, 500));
+
+		SequenceExtractingProcessor proc = new SequenceExtractingProcessor(out, packed, true);
+		proc.begin(null);
+		proc.beginRegion(plus, null);
+		proc.beginRegion(minus, null);
+		proc.end(null);
+
+		String exp = ">"+plus.getReference()+":"+plus.getRegion()+"\n"+expected(mem.getSequence(plus.getReference(), plus.getRegion()))+"\n"
+				+">"+minus.getReference()+":"+minus.getRegion()+"\n"+expected(mem.getSequence(minus.getReference(), minus.getRegion()))+"\n";
+		assertEquals(exp, out.readAllText());
+		out.delete();
+	}
+
+	@Test
+	public void kmerTest() {
+		for (int k : new int[] {1,4,11,15}) {
+			KmerIteratorBuilder kmers = new KmerIteratorBuilder(Alphabet.getDna(), k);
+			for (String n : mem.getSequenceNames()) {
+				int end = Math.min(mem.getLength(n), 20_000);
+				String upper = expected(mem.getPlusSequence(n, new ArrayGenomicRegion(0, end))).toUpperCase();
+				int[] exp = new int[Math.max(0, end-k+1)];
+				for (int i=0; i<exp.length; i++)
+					exp[i] = kmers.hash(upper.substring(i, i+k));
+				int[] re = packed.getKmers(n, 0, end, k, null);
+				assertArrayEquals(exp, re);
+				for (int i=0; i<exp.length; i+=97)
+					assertEquals(exp[i], packed.getKmer(n, i, k));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,141 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import gedi.util.io.text.LineIterator;
+import gedi.util.io.text.LineOrientedFile;
+import gedi.util.io.text.ParallelGzipInputStream;
+import gedi.util.io.text.ParallelGzipOutputStream;
+import htsjdk.samtools.util.BlockCompressedInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ParallelGzipTest {
+
+	private static byte[] createData(int lines) {
+		Random rnd = new Random(42);
+		StringBuilder sb = new StringBuilder();
+		for (int i=0; i<lines; i++) {
+			sb.append("chr").append(rnd.nextInt(22)+1).append('\t').append(rnd.nextInt(1000000));
+			for (int j=rnd.nextInt(5); j>=0; j--)
+				sb.append('\t').append(Long.toString(rnd.nextLong(), 36));
+			sb.append('\n');
+		}
+		return sb.toString().getBytes();
+	}
+
+	private static byte[] compress(byte[] data, OutputStream out, ByteArrayOutputStream bout) throws IOException {
+		out.write(data, 0, data.length/3);
+		out.flush();
+		for (int i=data.length/3; i<data.length; i+=1000)
+			out.write(data, i, Math.min(1000, data.length-i));
+		out.close();
+		return bout.toByteArray();
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream re = new ByteArrayOutputStream();
+		byte[] buf = new byte[777];
+		int n;
+		while ((n=in.read(buf))>=0)
+			re.write(buf, 0, n);
+		in.close();
+		return re.toByteArray();
+	}
+
+	@Test
+	public void bgzfTest() throws IOException {
+		byte[] data = createData(100000);
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		byte[] gz = compress(data, new ParallelGzipOutputStream(bout, 4), bout);
+
+		assertArrayEquals(data, readAll(new GZIPInputStream(new ByteArrayInputStream(gz))));
+		assertArrayEquals(data, readAll(new BlockCompressedInputStream(new ByteArrayInputStream(gz))));
+		assertArrayEquals(data, readAll(new ParallelGzipInputStream(new ByteArrayInputStream(gz), 4)));
+		assertArrayEquals(data, readAll(new ParallelGzipInputStream(new ByteArrayInputStream(gz), 1)));
+	}
+
+	@Test
+	public void gzipTest() throws IOException {
+		byte[] data = createData(50000);
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		byte[] gz = compress(data, new GZIPOutputStream(bout), bout);
+		assertArrayEquals(data, readAll(new ParallelGzipInputStream(new ByteArrayInputStream(gz), 4)));
+
+		// BGZF blocks followed by a plain gzip member
+		ByteArrayOutputStream bout2 = new ByteArrayOutputStream();
+		byte[] bgz = compress(data, new ParallelGzipOutputStream(bout2, 2), bout2);
+		byte[] mixed = new byte[bgz.length+gz.length];
+		System.arraycopy(bgz, 0, mixed, 0, bgz.length);
+		System.arraycopy(gz, 0, mixed, bgz.length, gz.length);
+		byte[] data2 = new byte[data.length*2];
+		System.arraycopy(data, 0, data2, 0, data.length);
+		System.arraycopy(data, 0, data2, data.length, data.length);
+		assertArrayEquals(data2, readAll(new ParallelGzipInputStream(new ByteArrayInputStream(mixed), 4)));
+	}
+
+	@Test(expected=IOException.class)
+	public void corruptTest() throws IOException {
+		byte[] data = createData(10000);
+		ByteArrayOutputStream bout = new ByteArrayOutputStream();
+		byte[] gz = compress(data, new ParallelGzipOutputStream(bout, 2), bout);
+		gz[gz.length/2]^=0x55;
+		readAll(new ParallelGzipInputStream(new ByteArrayInputStream(gz), 2));
+	}
+
+	@Test
+	public void lineOrientedFileTest() throws IOException {
+		File f = File.createTempFile("parallelgzip", ".tsv.gz");
+		try {
+			String[] lines = new String(createData(20000)).split("\n");
+			LineOrientedFile out = new LineOrientedFile(f.getPath());
+			out.setThreads(3);
+			out.writeAllLines(lines);
+
+			LineOrientedFile in = new LineOrientedFile(f.getPath());
+			assertArrayEquals(lines, in.readAllLines());
+			in.setThreads(3);
+			assertArrayEquals(lines, in.readAllLines());
+
+			// stop reading early
+			LineIterator it = in.lineIterator();
+			assertEquals(lines[0], it.next());
+			assertEquals(lines[1], it.next());
+			it.close();
+		} finally {
+			f.delete();
+		}
+	}
+
+}
@@ -0,0 +1,130 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import gedi.atac.PeakCalling;
+import gedi.core.data.annotation.ScoreAnnotation;
+import gedi.core.data.reads.AlignedReadsData;
+import gedi.core.data.reads.AlignedReadsDataFactory;
+import gedi.core.data.reads.ReadCountMode;
+import gedi.core.reference.Chromosome;
+import gedi.core.reference.ReferenceSequence;
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.core.region.ImmutableReferenceGenomicRegion;
+import gedi.core.region.intervalTree.MemoryIntervalTreeStorage;
+import gedi.util.ArrayUtils;
+import gedi.util.genomic.Coverage;
+import gedi.util.math.stat.RandomNumbers;
+import gedi.util.math.stat.kernel.GaussianKernel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.math3.stat.descriptive.rank.Median;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PeakCallingTest {
+
+	private static MemoryIntervalTreeStorage<AlignedReadsData> simulate(long seed, int length, int fragments, int[] hotspots) {
+		RandomNumbers rnd = new RandomNumbers(seed);
+		MemoryIntervalTreeStorage<AlignedReadsData> re = new MemoryIntervalTreeStorage<AlignedReadsData>(AlignedReadsData.class);
+		String[] refs = {"1","1+","1-"};
+		for (int i=0; i<fragments; i++) {
+			int start = hotspots.length>0 && rnd.getUnif()<0.3?hotspots[rnd.getUnif(0, hotspots.length)]+rnd.getUnif(-50, 50):rnd.getUnif(0, length);
+			ArrayGenomicRegion reg = new ArrayGenomicRegion(Math.max(0, start), Math.max(0, start)+rnd.getUnif(20, 300));
+			AlignedReadsDataFactory fac = new AlignedReadsDataFactory(1).start();
+			fac.newDistinctSequence().setMultiplicity(1).setWeight(1).setCount(new int[] {rnd.getUnif(1, 4)});
+			re.add(Chromosome.obtain(refs[rnd.getUnif(0, refs.length)]), reg, fac.create());
+		}
+		return re;
+	}
+	
+	/**
+	 * The original implementation on the dense coverage
+	 */
+	private static List<String> callDense(MemoryIntervalTreeStorage<AlignedReadsData> storage, ReferenceSequence ref, double bandwidth, double factor, double peakFactor) {
+		Coverage cut = new Coverage();
+		for (ReferenceSequence r : new ReferenceSequence[] {ref.toStrandIndependent(),ref.toPlusStrand(),ref.toMinusStrand()})
+			storage.iterateMutableReferenceGenomicRegions(r).forEachRemaining(rgr->{
+				cut.add(rgr.getRegion().getStart()+4, rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight));	
+				cut.add(rgr.getRegion().getStop()-4, rgr.getData().getTotalCountOverallFloor(ReadCountMode.Weight));
+			});
+		double[] dens = cut.getCoverageAsDouble();
+		new GaussianKernel(bandwidth).prepare().processInPlace(dens, 0, dens.length);
+		
+		double median = new Median().evaluate(dens);
+		double cutoff = median*peakFactor;
+		double cutoff2 = median*factor;
+		
+		ArrayList<String> re = new ArrayList<String>();
+		for (int i=0; i<dens.length; i++) {
+			if (dens[i]>cutoff) {
+				int start;
+				for (start=i-1; start>=0 && dens[start]>cutoff2; start--);
+				start++;
+				for (; i<dens.length && dens[i]>cutoff2; i++);
+				re.add(start+"-"+i+":"+ArrayUtils.max(dens, start, i)/median);
+			}
+		}
+		return re;
+	}
+	
+	private static List<String> call(MemoryIntervalTreeStorage<AlignedReadsData> storage, ReferenceSequence ref, double bandwidth, double factor, double peakFactor) throws IOException {
+		PeakCalling caller = new PeakCalling(storage);
+		caller.setBandwidth(bandwidth);
+		caller.setFactor(factor);
+		caller.setPeakFactor(peakFactor);
+		MemoryIntervalTreeStorage<ScoreAnnotation> peaks = caller.call(Arrays.asList(ref));
+		ArrayList<String> re = new ArrayList<String>();
+		peaks.ei().forEachRemaining(r->re.add(r.getRegion().getStart()+"-"+r.getRegion().getEnd()+":"+r.getData().getScore()));
+		return re;
+	}
+
+	@Test
+	public void denseTest() throws IOException {
+		int[] hotspots = {2000, 7000, 7300, 15000};
+		MemoryIntervalTreeStorage<AlignedReadsData> storage = simulate(42, 20000, 8000, hotspots);
+		ReferenceSequence ref = Chromosome.obtain("1");
+		for (double bw : new double[] {3, 10, 50}) {
+			List<String> expected = callDense(storage, ref, bw, 2, 3);
+			assertTrue(expected.size()>0);
+			assertEquals(expected, call(storage, ref, bw, 2, 3));
+			assertEquals(callDense(storage, ref, bw, 1.2, 1.5), call(storage, ref, bw, 1.2, 1.5));
+		}
+	}
+	
+	@Test
+	public void sparseTest() throws IOException {
+		MemoryIntervalTreeStorage<AlignedReadsData> storage = simulate(13, 1_000_000, 500, new int[0]);
+		ReferenceSequence ref = Chromosome.obtain("1");
+		List<String> expected = callDense(storage, ref, 10, 2, 3);
+		assertTrue(expected.size()>100);
+		assertEquals(expected, call(storage, ref, 10, 2, 3));
+		
+		assertEquals(0, call(new MemoryIntervalTreeStorage<AlignedReadsData>(AlignedReadsData.class), ref, 10, 2, 3).size());
+	}
+
+}
@@ -32,10 +32,13 @@ import gedi.util.job.PetriNet;
 import gedi.util.job.Place;
 import gedi.util.job.Transition;
 import gedi.util.job.schedule.DefaultPetriNetScheduler;
+import gedi.util.job.schedule.PetriNetEvent;
+import gedi.util.job.schedule.PetriNetListener;
 
 import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -94,6 +97,55 @@ public class PetriNetTest {
 		pool.shutdown();
 	}
 
+	@Test
+	public void diamondTest() {
+		PetriNet pn = new PetriNet();
+		Transition src = pn.createTransition(new FunctionJobAdapter<Integer>(Void.class, Integer.class, s->3));
+		Transition inc = pn.createTransition(new FunctionJobAdapter<Integer>(Integer.class, Integer.class, s->s.<Integer>get(0)+1));
+		Transition dbl = pn.createTransition(new FunctionJobAdapter<Integer>(Integer.class, Integer.class, s->s.<Integer>get(0)*2));
+		Transition mul = pn.createTransition(new FunctionJobAdapter<Integer>(new Class[] {Integer.class,Integer.class}, Integer.class, s->s.<Integer>get(0)*s.<Integer>get(1)));
+		Place a = pn.connect(src, pn.createPlace(Integer.class));
+		pn.connect(a, inc, 0);
+		pn.connect(a, dbl, 0);
+		pn.connect(pn.connect(inc, pn.createPlace(Integer.class)), mul, 0);
+		pn.connect(pn.connect(dbl, pn.createPlace(Integer.class)), mul, 1);
+		Place out = pn.connect(mul, pn.createPlace(Integer.class));
+		pn.prepare();
+		
+		ExecutionContext context = pn.createExecutionContext().newContext(ExecutionContext.UID, String.class);
+		ExecutorService pool = Executors.newCachedThreadPool();
+		
+		AtomicInteger executed = new AtomicInteger();
+		AtomicInteger finished = new AtomicInteger();
+		DefaultPetriNetScheduler runner = new DefaultPetriNetScheduler(context,pool);
+		runner.addListener(new PetriNetListener() {
+			@Override
+			public void transitionExecuted(PetriNetEvent event, Transition transition, long queueTime, long executionTime) {
+				assertTrue(queueTime>=0);
+				assertTrue(executionTime>=0);
+				executed.incrementAndGet();
+			}
+			@Override
+			public void petriNetExecutionStarted(PetriNetEvent event) {
+			}
+			@Override
+			public void petriNetExecutionFinished(PetriNetEvent event) {
+				finished.incrementAndGet();
+			}
+			@Override
+			public void petriNetExecutionCancelled(PetriNetEvent event) {
+				fail();
+			}
+		});
+		runner.run();
+		
+		assertEquals(24, context.<Integer>getToken(out).intValue());
+		assertEquals(4, executed.get());
+		assertEquals(1, finished.get());
+		
+		pool.shutdown();
+	}
+	
 	private GenomicRegionDataMapper<Void, CharSequence> source(String prov) throws IOException {
 		SequenceSource re = new SequenceSource();
 		re.addFastaIndex(prov);
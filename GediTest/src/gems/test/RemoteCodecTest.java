@@ -0,0 +1,233 @@
+/**
+ * 
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ * 
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import gedi.remote.codec.AsciiEncoder;
+import gedi.remote.codec.BinaryEncoder;
+import gedi.remote.codec.ByteBufBinaryReader;
+import gedi.remote.codec.ByteBufBinaryWriter;
+import gedi.remote.codec.DefaultDecoder;
+import gedi.remote.codec.Lz4Decoder;
+import gedi.remote.codec.Lz4Encoder;
+import gedi.remote.codec.NumberEncoder;
+import gedi.util.StringUtils;
+import gedi.util.io.randomaccess.BinaryReader;
+import gedi.util.io.randomaccess.BinaryWriter;
+import gedi.util.io.randomaccess.serialization.BinarySerializable;
+import gedi.util.math.stat.RandomNumbers;
+import gedi.util.mutable.MutableString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.EncoderException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class RemoteCodecTest {
+
+	private static ChannelHandler[] codecs(boolean lz4) {
+		ArrayList<ChannelHandler> re = new ArrayList<ChannelHandler>();
+		if (lz4) {
+			re.add(new Lz4Encoder());
+			re.add(new Lz4Decoder());
+		}
+		re.add(new BinaryEncoder());
+		re.add(new NumberEncoder());
+		re.add(new AsciiEncoder());
+		re.add(new DefaultDecoder());
+		return re.toArray(new ChannelHandler[0]);
+	}
+	
+	private static ArrayList<Object> messages() {
+		RandomNumbers rnd = new RandomNumbers(42);
+		ArrayList<Object> re = new ArrayList<Object>();
+		for (int i=0; i<200; i++) {
+			switch (rnd.getUnif(0, 4)) {
+			case 0: re.add(new MutableString(StringUtils.repeat("ACGT", rnd.getUnif(0, 500)))); break;
+			case 1: re.add(new MutableString(StringUtils.createRandomIdentifier(rnd.getUnif(1, 50), rnd))); break;
+			case 2: re.add(rnd.getUnif(0, 1000)); break;
+			case 3: re.add("msg"+i); break;
+			}
+		}
+		return re;
+	}
+	
+	private static void roundtrip(boolean lz4) {
+		ArrayList<Object> messages = messages();
+		
+		EmbeddedChannel sender = new EmbeddedChannel(codecs(lz4));
+		for (Object m : messages)
+			sender.writeOutbound(m);
+		ByteBuf stream = Unpooled.buffer();
+		for (ByteBuf b; (b = sender.readOutbound())!=null; b.release())
+			stream.writeBytes(b);
+		
+		// deliver in chunks of arbitrary size
+		EmbeddedChannel receiver = new EmbeddedChannel(codecs(lz4));
+		RandomNumbers rnd = new RandomNumbers(13);
+		while (stream.isReadable())
+			receiver.writeInbound(stream.readBytes(Math.min(stream.readableBytes(), rnd.getUnif(1, 2000))));
+		
+		for (Object m : messages)
+			assertEquals(m, receiver.readInbound());
+		assertNull(receiver.readInbound());
+		
+		sender.finish();
+		receiver.finish();
+	}
+	
+	@Test
+	public void plainTest() {
+		roundtrip(false);
+	}
+	
+	@Test
+	public void lz4Test() {
+		roundtrip(true);
+	}
+	
+	@Test
+	public void classIdTest() {
+		EmbeddedChannel sender = new EmbeddedChannel(new BinaryEncoder());
+		sender.writeOutbound(new MutableString("first"));
+		sender.writeOutbound(new MutableString("other"));
+		ByteBuf first = sender.readOutbound();
+		ByteBuf second = sender.readOutbound();
+		
+		String n = MutableString.class.getName();
+		assertEquals(n.length(), first.getInt(Integer.BYTES));
+		assertEquals(-1, second.getInt(Integer.BYTES));
+		assertEquals(first.readableBytes()-n.length(), second.readableBytes());
+		first.release();
+		second.release();
+		sender.finish();
+	}
+	
+	public static class FailingMessage implements BinarySerializable {
+		private boolean fail;
+		public FailingMessage() {
+		}
+		public FailingMessage(boolean fail) {
+			this.fail = fail;
+		}
+		@Override
+		public void serialize(BinaryWriter out) throws IOException {
+			if (fail) throw new IOException("Cannot serialize!");
+			out.putInt(17);
+		}
+		@Override
+		public void deserialize(BinaryReader in) throws IOException {
+			in.getInt();
+		}
+	}
+	
+	@Test
+	public void classIdFailedSerializeTest() {
+		EmbeddedChannel sender = new EmbeddedChannel(new BinaryEncoder());
+		try {
+			sender.writeOutbound(new FailingMessage(true));
+		} catch (EncoderException e) {
+		}
+		assertNull(sender.readOutbound());
+		
+		// the failed message must not have defined the class id
+		sender.writeOutbound(new FailingMessage(false));
+		sender.writeOutbound(new FailingMessage(false));
+		ByteBuf first = sender.readOutbound();
+		ByteBuf second = sender.readOutbound();
+		assertEquals(FailingMessage.class.getName().length(), first.getInt(Integer.BYTES));
+		assertEquals(-1, second.getInt(Integer.BYTES));
+		first.release();
+		second.release();
+		sender.finish();
+	}
+	
+	@Test
+	public void unknownClassTest() {
+		EmbeddedChannel sender = new EmbeddedChannel(new BinaryEncoder());
+		sender.writeOutbound(new FailingMessage(false));
+		sender.writeOutbound(new MutableString("first"));
+		sender.writeOutbound(new MutableString("second"));
+		sender.writeOutbound(new FailingMessage(false));
+		ByteBuf unknown = sender.readOutbound();
+		ByteBuf first = sender.readOutbound();
+		ByteBuf second = sender.readOutbound();
+		ByteBuf unknownAgain = sender.readOutbound();
+		
+		// the receiver does not know the first class (same name length, so the frame stays valid)
+		String n = FailingMessage.class.getName();
+		String missing = n.replace("FailingMessage", "MissingMessage");
+		for (int i=0; i<missing.length(); i++)
+			unknown.setByte(2*Integer.BYTES+i, missing.charAt(i));
+		
+		EmbeddedChannel receiver = new EmbeddedChannel(new DefaultDecoder());
+		receiver.writeInbound(unknown, first, second);
+		assertEquals(new MutableString("first"), receiver.readInbound());
+		assertEquals(new MutableString("second"), receiver.readInbound());
+		assertNull(receiver.readInbound());
+		assertTrue(receiver.isOpen());
+		
+		// referencing the unknown class id again is a protocol error
+		receiver.writeInbound(unknownAgain);
+		assertNull(receiver.readInbound());
+		assertFalse(receiver.isOpen());
+		
+		sender.finish();
+		receiver.finish();
+	}
+	
+	@Test
+	public void readerWriterTest() throws IOException {
+		ByteBuf buf = Unpooled.buffer(4);
+		buf.writeByte(7);
+		ByteBufBinaryWriter out = new ByteBufBinaryWriter(buf);
+		out.putInt(0);
+		out.putCInt(100000).putCInt(3).putCLong(1L<<40).putCShort((short)300);
+		out.putString("gedi").putDouble(Math.PI).putFloat(0.5f).putChars("xy");
+		out.putInt(0, (int) out.position());
+		assertEquals(buf.writerIndex()-1, buf.getInt(1));
+		
+		buf.readByte();
+		ByteBufBinaryReader in = new ByteBufBinaryReader(buf);
+		assertEquals(buf.readableBytes(), in.getInt());
+		assertEquals(100000, in.getCInt());
+		assertEquals(3, in.getCInt());
+		assertEquals(1L<<40, in.getCLong());
+		assertEquals(300, in.getCShort());
+		assertEquals("gedi", in.getString());
+		assertEquals(Math.PI, in.getDouble(), 0);
+		assertEquals(0.5f, in.getFloat(), 0);
+		assertEquals('x', in.getChar());
+		assertEquals('y', in.getChar());
+		assertEquals(in.position(), out.position());
+		assertEquals("gedi", in.getString(Integer.BYTES+4+1+8+2));
+	}
+	
+}
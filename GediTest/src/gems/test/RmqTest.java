@@ -18,14 +18,21 @@
 
 package gems.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.stream.IntStream;
 
+import gedi.core.data.numeric.GenomicNumericProvider.PositionNumericIterator;
 import gedi.core.data.numeric.diskrmq.DiskGenomicNumericBuilder;
+import gedi.core.data.numeric.diskrmq.DiskGenomicNumericProvider;
 import gedi.core.reference.Chromosome;
+import gedi.core.region.ArrayGenomicRegion;
 import gedi.util.algorithm.rmq.DiskMinMaxSumIndex;
 import gedi.util.algorithm.rmq.DoubleDiskSuccinctRmaxq;
 import gedi.util.algorithm.rmq.SuccinctRmaxq;
@@ -97,6 +104,117 @@ public class RmqTest {
 		
 	}
 	
+	@Test
+	public void interleavedTest() throws Exception {
+		for (boolean coverage : new boolean[] {false,true}) {
+			RandomNumbers rnd = new RandomNumbers(42);
+			Chromosome ref = Chromosome.obtain("chr1+");
+			DiskGenomicNumericBuilder rows = new DiskGenomicNumericBuilder("data/rmq/rows.rmq");
+			DiskGenomicNumericBuilder inter = new DiskGenomicNumericBuilder("data/rmq/interleaved.rmq");
+			inter.setInterleaved(true);
+			for (int i=0; i<10_000; i++) {
+				int pos = rnd.getUnif(0, 100_000);
+				int[] v = new int[50];
+				for (int c=0; c<v.length; c++)
+					v[c] = rnd.getUnif(0, 100);
+				if (coverage) {
+					int[] neg = v.clone();
+					for (int c=0; c<v.length; c++)
+						neg[c] = -v[c];
+					rows.addValue(ref, pos, v);
+					rows.addValue(ref, pos+10, neg);
+					inter.addValue(ref, pos, v);
+					inter.addValue(ref, pos+10, neg);
+				} else {
+					rows.addValue(ref, pos, v);
+					inter.addValue(ref, pos, v);
+				}
+			}
+			rows.build(coverage);
+			inter.build(coverage);
+			
+			DiskGenomicNumericProvider r = new DiskGenomicNumericProvider("data/rmq/rows.rmq");
+			DiskGenomicNumericProvider in = new DiskGenomicNumericProvider("data/rmq/interleaved.rmq");
+			assertFalse(r.isInterleaved(ref));
+			assertTrue(in.isInterleaved(ref));
+			assertEquals(50, in.getNumDataRows());
+			
+			double[][] block = in.getValues(ref, 0, 100_020, null);
+			double[][] rblock = r.getValues(ref, 0, 100_020, null);
+			double[] re = null;
+			for (int p=0; p<block.length; p++) {
+				re = r.getValues(ref, p, re);
+				assertArrayEquals(re, block[p], 0);
+				assertArrayEquals(re, rblock[p], 0);
+				for (int c=0; c<50; c+=7)
+					assertEquals(re[c], in.getValue(ref, p, c), 0);
+			}
+			
+			for (int i=0; i<100; i++) {
+				int start = rnd.getUnif(0, 100_000);
+				ArrayGenomicRegion reg = new ArrayGenomicRegion(start, start+rnd.getUnif(1, 1000));
+				int c = rnd.getUnif(0, 50);
+				assertEquals(r.getMax(ref, reg, c), in.getMax(ref, reg, c), 0);
+				assertEquals(r.getSum(ref, reg, c), in.getSum(ref, reg, c), 0);
+			}
+			
+			r.close();
+			in.close();
+			new File("data/rmq/rows.rmq").delete();
+			new File("data/rmq/interleaved.rmq").delete();
+		}
+	}
+	
+	@Test
+	public void concurrentTest() throws Exception {
+		RandomNumbers rnd = new RandomNumbers(42);
+		Chromosome ref = Chromosome.obtain("chr1+");
+		DiskGenomicNumericBuilder builder = new DiskGenomicNumericBuilder("data/rmq/concurrent.rmq");
+		for (int i=0; i<10_000; i++) {
+			int[] v = new int[5];
+			for (int c=0; c<v.length; c++)
+				v[c] = rnd.getUnif(0, 100);
+			builder.addValue(ref, rnd.getUnif(0, 100_000), v);
+		}
+		builder.build();
+		
+		DiskGenomicNumericProvider single = new DiskGenomicNumericProvider("data/rmq/concurrent.rmq");
+		DiskGenomicNumericProvider conc = new DiskGenomicNumericProvider("data/rmq/concurrent.rmq",true);
+		assertTrue(conc.isConcurrent());
+		
+		ArrayGenomicRegion[] regions = new ArrayGenomicRegion[1000];
+		double[] sum = new double[regions.length];
+		double[] max = new double[regions.length];
+		double[] it = new double[regions.length];
+		for (int i=0; i<regions.length; i++) {
+			int start = rnd.getUnif(0, 100_000);
+			regions[i] = new ArrayGenomicRegion(start, start+rnd.getUnif(1, 1000));
+			sum[i] = single.getSum(ref, regions[i], i%5);
+			max[i] = single.getMax(ref, regions[i], i%5);
+			PositionNumericIterator pit = single.iterateValues(ref, regions[i]);
+			while (pit.hasNext()) {
+				pit.nextInt();
+				it[i]+=pit.getValue(i%5);
+			}
+		}
+		
+		long correct = IntStream.range(0, 20*regions.length).parallel().filter(j->{
+			int i = j%regions.length;
+			double s = 0;
+			PositionNumericIterator pit = conc.iterateValues(ref, regions[i]);
+			while (pit.hasNext()) {
+				pit.nextInt();
+				s+=pit.getValue(i%5);
+			}
+			return Double.compare(sum[i],conc.getSum(ref, regions[i], i%5))==0 && Double.compare(max[i],conc.getMax(ref, regions[i], i%5))==0 && it[i]==s;
+		}).count();
+		assertEquals(20*regions.length, correct);
+		
+		single.close();
+		conc.close();
+		new File("data/rmq/concurrent.rmq").delete();
+	}
+	
 	@Test
 	public void rmqTest() throws IOException {
 		int[] a = new int[10_000_000];
@@ -0,0 +1,144 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import gedi.util.datastructure.collections.AbstractSortingCollection;
+import gedi.util.datastructure.collections.FastSortingCollection;
+import gedi.util.datastructure.collections.SerializerSortingCollection;
+import gedi.util.datastructure.collections.SortingCollection;
+import gedi.util.io.randomaccess.BinaryReader;
+import gedi.util.io.randomaccess.BinaryWriter;
+import gedi.util.io.randomaccess.serialization.AbstractBinarySerializer;
+import gedi.util.math.stat.RandomNumbers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.function.Function;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SortingCollectionTest {
+
+	private static <T> void test(AbstractSortingCollection<T> coll, Function<RandomNumbers,T> gen, Comparator<? super T> comp, int n) throws IOException {
+		RandomNumbers rnd = new RandomNumbers(42);
+		ArrayList<T> list = new ArrayList<T>();
+		for (int i=0; i<n; i++) {
+			T e = gen.apply(rnd);
+			list.add(e);
+			coll.add(e);
+		}
+		Collections.sort(list, comp);
+		
+		assertEquals(n, coll.size());
+		ArrayList<T> sorted = coll.iterator().list();
+		assertEquals(n, sorted.size());
+		for (int i=0; i<n; i++)
+			assertEquals(0, comp.compare(list.get(i), sorted.get(i)));
+		
+		// iterating again must yield the same
+		assertEquals(n, coll.iterator().count());
+		coll.close();
+	}
+	
+	private static String randomString(RandomNumbers rnd) {
+		char[] re = new char[rnd.getUnif(1, 30)];
+		for (int i=0; i<re.length; i++)
+			re[i] = "ACGT".charAt(rnd.getUnif(0, 4));
+		return String.valueOf(re);
+	}
+	
+	@Test
+	public void inMemoryTest() throws IOException {
+		test(new SortingCollection<String>(String.class, String::compareTo, 1000), SortingCollectionTest::randomString, String::compareTo, 500);
+	}
+	
+	@Test
+	public void ormTest() throws IOException {
+		SortingCollection<String> coll = new SortingCollection<String>(String.class, String::compareTo, 100);
+		coll.setMaxFanIn(4);
+		test(coll, SortingCollectionTest::randomString, String::compareTo, 10000);
+	}
+	
+	@Test
+	public void classTreeTest() throws IOException {
+		FastSortingCollection<String> coll = new FastSortingCollection<String>("proto", String::compareTo, 100);
+		coll.setMaxFanIn(8);
+		test(coll, SortingCollectionTest::randomString, String::compareTo, 10000);
+		
+		coll = new FastSortingCollection<String>("proto", String::compareTo, 100);
+		coll.setCompress(false);
+		test(coll, SortingCollectionTest::randomString, String::compareTo, 10000);
+	}
+	
+	@Test
+	public void serializerTest() throws IOException {
+		Comparator<int[]> comp = (a,b)->{
+			int re = Integer.compare(a.length, b.length);
+			for (int i=0; re==0 && i<a.length; i++)
+				re = Integer.compare(a[i], b[i]);
+			return re;
+		};
+		SerializerSortingCollection<int[]> coll = new SerializerSortingCollection<int[]>(new IntArraySerializer(), comp, 1000);
+		coll.setMaxFanIn(3);
+		test(coll, rnd->{
+			int[] re = new int[rnd.getUnif(0, 5)];
+			for (int i=0; i<re.length; i++)
+				re[i] = rnd.getUnif(0, 100);
+			return re;
+		}, comp, 50000);
+		
+		coll = new SerializerSortingCollection<int[]>(new IntArraySerializer(), comp, 10);
+		coll.add(new int[] {2});
+		coll.add(new int[] {1});
+		assertArrayEquals(new int[] {1}, coll.iterator().next());
+		coll.close();
+	}
+	
+	private static class IntArraySerializer extends AbstractBinarySerializer<int[]> {
+
+		public IntArraySerializer() {
+			super(int[].class, true);
+		}
+
+		@Override
+		public void serialize(BinaryWriter out, int[] object) throws IOException {
+			out.putCInt(object.length);
+			for (int i : object)
+				out.putCInt(i);
+		}
+
+		@Override
+		public int[] deserialize(BinaryReader in) throws IOException {
+			int[] re = new int[in.getCInt()];
+			for (int i=0; i<re.length; i++)
+				re[i] = in.getCInt();
+			return re;
+		}
+		
+	}
+	
+}
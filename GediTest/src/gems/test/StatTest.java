@@ -19,12 +19,16 @@
 package gems.test;
 
 import static org.junit.Assert.*;
+import gedi.util.ArrayUtils;
 import gedi.util.datastructure.array.functions.NumericArrayFunction;
 import gedi.util.math.function.StepFunction;
 import gedi.util.math.stat.counting.RollingStatistics;
+import gedi.util.math.stat.RandomNumbers;
+import gedi.util.math.stat.inference.EquivalenceClassCountEM;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -136,4 +140,65 @@ public class StatTest {
 	}
 	
 	
+
+	@Test
+	public void equivalenceClassEMTest() {
+		RandomNumbers rnd = new RandomNumbers(42);
+		int n = 3000;
+		Integer[][] E = new Integer[40_000][];
+		double[] alpha = new double[E.length];
+		for (int e=0; e<E.length; e++) {
+			E[e] = new Integer[rnd.getUnif(1, 6)];
+			for (int i=0; i<E[e].length; i++)
+				E[e][i] = rnd.getUnif(0, n);
+			alpha[e] = rnd.getUnif(0, 100);
+		}
+		ToDoubleFunction<Integer> len = i->100+i%17;
+
+		double[] plain = new double[n];
+		double[] seq = new double[n];
+		double[] par = new double[n];
+		double llPlain = new EquivalenceClassCountEM<Integer>(E, alpha, len).setAccelerate(false).setThreads(1).compute(0, 200, (i,p)->plain[i]=p);
+		double llSeq = new EquivalenceClassCountEM<Integer>(E, alpha, len).setThreads(1).compute(0, 200, (i,p)->seq[i]=p);
+		double llPar = new EquivalenceClassCountEM<Integer>(E, alpha, len).setThreads(4).compute(0, 200, (i,p)->par[i]=p);
+
+		assertEquals(1, ArrayUtils.sum(seq), 1E-9);
+		assertTrue(llSeq>=llPlain-1E-9*Math.abs(llPlain));
+		assertEquals(llSeq, llPar, 1E-6*Math.abs(llSeq));
+		for (int i=0; i<n; i++)
+			assertEquals(seq[i], par[i], 1E-6);
+
+		// reusing the compiled classes for other values
+		double[] alpha2 = alpha.clone();
+		ArrayUtils.reverse(alpha2);
+		double[] fresh = new double[n];
+		double[] reused = new double[n];
+		EquivalenceClassCountEM<Integer> em = new EquivalenceClassCountEM<Integer>(E, alpha, len);
+		em.compute(0, 200, (i,p)->{});
+		assertEquals(new EquivalenceClassCountEM<Integer>(E, alpha2, len).compute(0, 200, (i,p)->fresh[i]=p), em.setAlpha(alpha2).compute(0, 200, (i,p)->reused[i]=p), 0);
+		assertArrayEquals(fresh, reused, 0);
+	}
+
+	@Test
+	public void equivalenceClassEMZeroCountsTest() {
+		Integer[][] E = {{0},{1},{2},{0,1}};
+		ToDoubleFunction<Integer> len = i->100;
+
+		// object 2 only occurs in a class without counts and gets proportion 0
+		double[] pi = new double[3];
+		EquivalenceClassCountEM<Integer> em = new EquivalenceClassCountEM<Integer>(E, new double[] {5,3,0,2}, len);
+		double ll = em.compute(0, 200, (i,p)->pi[i]=p);
+		assertFalse(Double.isNaN(ll));
+		assertTrue(ll<0 && !Double.isInfinite(ll));
+		assertEquals(0, pi[2], 0);
+		assertEquals(1, ArrayUtils.sum(pi), 1E-9);
+
+		// a condition without any counts
+		double[] zero = new double[3];
+		ll = em.setAlpha(new double[4]).compute(0, 200, (i,p)->zero[i]=p);
+		assertEquals(0, ll, 0);
+		for (double p : zero)
+			assertEquals(1.0/3, p, 0);
+	}
+
 }
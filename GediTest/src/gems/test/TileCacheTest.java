@@ -0,0 +1,172 @@
+/**
+ *
+ *    Copyright 2017 Florian Erhard
+ *
+ *   Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ *
+ */
+
+package gems.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import gedi.core.data.mapper.StorageSource;
+import gedi.core.data.mapper.TileCache;
+import gedi.core.reference.Chromosome;
+import gedi.core.region.ArrayGenomicRegion;
+import gedi.core.region.GenomicRegion;
+import gedi.core.region.intervalTree.MemoryIntervalTreeStorage;
+import gedi.util.math.stat.RandomNumbers;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TileCacheTest {
+
+	private long budget = TileCache.getBudget();
+
+	@After
+	public void restoreBudget() {
+		TileCache.setBudget(budget);
+	}
+
+	@Test
+	public void reuseTest() throws InterruptedException {
+		ConcurrentHashMap<Integer,AtomicInteger> loaded = new ConcurrentHashMap<Integer, AtomicInteger>();
+		TileCache<GenomicRegion> cache = new TileCache<GenomicRegion>((ref,tile)->{
+			loaded.computeIfAbsent(tile.getStart(), s->new AtomicInteger()).incrementAndGet();
+			return tile;
+		}, t->1).setMinTileSize(100).setPrefetch(0);
+
+		ArrayList<GenomicRegion> tiles = cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(150, 250));
+		assertEquals(2, tiles.size());
+		assertEquals(new ArrayGenomicRegion(100, 300), new ArrayGenomicRegion(tiles.get(0).getStart(), tiles.get(1).getEnd()));
+		assertEquals(0, cache.getLevel(new ArrayGenomicRegion(150, 250)));
+		assertEquals(1, cache.getLevel(new ArrayGenomicRegion(150, 351)));
+		assertEquals(2, cache.getMisses());
+
+		// overlapping window on the same level is served from the cache
+		cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(170, 260));
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.getHits());
+		// other strand is another tile
+		cache.get(Chromosome.obtain("1-"), new ArrayGenomicRegion(170, 260));
+		assertEquals(4, cache.getMisses());
+		for (AtomicInteger c : loaded.values())
+			assertTrue(c.get()<=2);
+
+		cache.setPrefetch(1);
+		cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(170, 260));
+		for (int i=0; i<100 && !(loaded.containsKey(0) && loaded.containsKey(300)); i++)
+			Thread.sleep(10);
+		assertEquals(1, loaded.get(0).get());
+		assertEquals(1, loaded.get(300).get());
+		cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(310, 390));
+		assertEquals(1, loaded.get(300).get());
+		cache.clear();
+	}
+
+	@Test
+	public void prefetchTest() throws InterruptedException {
+		ConcurrentHashMap<Integer,AtomicInteger> loaded = new ConcurrentHashMap<Integer, AtomicInteger>();
+		CountDownLatch blocked = new CountDownLatch(1);
+		TileCache<GenomicRegion> cache = new TileCache<GenomicRegion>((ref,tile)->{
+			loaded.computeIfAbsent(tile.getStart(), s->new AtomicInteger()).incrementAndGet();
+			if (tile.getStart()==0)
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+				}
+			return tile;
+		}, t->1).setMinTileSize(100).setPrefetch(1);
+
+		// tile 0 blocks the prefetch thread, tile 2 is queued behind it
+		cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(100, 150));
+		for (int i=0; i<100 && !loaded.containsKey(0); i++)
+			Thread.sleep(10);
+
+		// the queued tile is loaded by the query itself instead of waiting for the prefetch thread
+		long misses = cache.getMisses();
+		assertEquals(new ArrayGenomicRegion(200, 300), cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(200, 250)).get(0));
+		assertEquals(misses+1, cache.getMisses());
+
+		// moving on cancels the queued neighbours of the old position
+		cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(1000, 1050));
+		blocked.countDown();
+		for (int i=0; i<100 && !(loaded.containsKey(900) && loaded.containsKey(1100)); i++)
+			Thread.sleep(10);
+		assertEquals(1, loaded.get(200).get());
+		assertFalse(loaded.containsKey(300));
+		assertEquals(1, loaded.get(900).get());
+		assertEquals(1, loaded.get(1100).get());
+		cache.clear();
+	}
+
+	@Test
+	public void evictionTest() {
+		AtomicInteger loads = new AtomicInteger();
+		TileCache<GenomicRegion> cache = new TileCache<GenomicRegion>((ref,tile)->{
+			loads.incrementAndGet();
+			return tile;
+		}, t->1000).setMinTileSize(100).setPrefetch(0);
+		TileCache.setBudget(TileCache.getUsed()+5000);
+
+		for (int i=0; i<10; i++)
+			cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(i*100, i*100+50));
+		assertEquals(10, loads.get());
+		assertTrue(TileCache.getUsed()<=TileCache.getBudget());
+
+		// most recent tiles are kept, the oldest are loaded again
+		cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(900, 950));
+		assertEquals(10, loads.get());
+		cache.get(Chromosome.obtain("1+"), new ArrayGenomicRegion(0, 50));
+		assertEquals(11, loads.get());
+		cache.clear();
+	}
+
+	@Test
+	public void storageSourceTest() {
+		RandomNumbers rnd = new RandomNumbers(42);
+		MemoryIntervalTreeStorage<Integer> storage = new MemoryIntervalTreeStorage<Integer>(Integer.class);
+		for (int i=0; i<5000; i++) {
+			int s = rnd.getUnif(0, 1_000_000);
+			GenomicRegion reg = rnd.getUnif()<0.5?new ArrayGenomicRegion(s, s+rnd.getUnif(1, 2000)):new ArrayGenomicRegion(s, s+100, s+1000, s+1000+rnd.getUnif(1, 500));
+			storage.add(Chromosome.obtain(rnd.getUnif()<0.5?"1+":"1-"), reg, i);
+		}
+
+		StorageSource<Integer> cached = new StorageSource<Integer>();
+		cached.add(storage);
+		StorageSource<Integer> direct = new StorageSource<Integer>();
+		direct.add(storage);
+		direct.noCache();
+
+		for (String ref : new String[] {"1+","1-","1"})
+			for (int i=0; i<300; i++) {
+				int s = rnd.getUnif(0, 1_000_000);
+				int l = rnd.getUnif(3, 100_000);
+				GenomicRegion reg = i%2==0?new ArrayGenomicRegion(s, s+l):new ArrayGenomicRegion(s, s+l/3, s+2*l/3, s+l);
+				assertEquals(direct.get(Chromosome.obtain(ref), reg, null), cached.get(Chromosome.obtain(ref), reg, null));
+			}
+		cached.getCache().clear();
+	}
+
+}